@@ -0,0 +1,528 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.certificate.impl;
+
+import jakarta.annotation.Nonnull;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.security.certificate.CertificateValidationResult;
+import se.idsec.signservice.security.certificate.CertificateValidator;
+import se.idsec.signservice.security.certificate.impl.SimpleCertificateValidator;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link CertificateValidator} that caches the issuer certificates of certificate paths that have been validated
+ * against a given set of trust anchors.
+ * <p>
+ * Signer certificates received in sign responses are typically issued by a small number of CA certificates. When a
+ * signer certificate has been successfully validated by the underlying validator, the path from its issuer up to the
+ * trust anchor is known to be valid, and the issuer certificate is remembered along with that path. The cache key is
+ * made up of the issuer name and authority key identifier of the signer certificate and a fingerprint of the trust
+ * anchor set. The next time a certificate issued by the same CA is validated against the same trust anchors, only the
+ * signer certificate itself is checked: its validity period, that its issuer name and authority key identifier match
+ * the cached issuer certificate, and that its signature verifies using the public key of the cached issuer. The
+ * validation result is then built from the cached path. If any of these checks (except the validity check) fails, or
+ * if the certificate has properties that only a complete path validation can process, the certificate is validated by
+ * the underlying validator.
+ * </p>
+ * <p>
+ * By default, a cached issuer certificate is only used if the same certificate is also among the additional
+ * certificates supplied in the call, i.e., the sign response must still include the issuer certificate. Use
+ * {@link #setAcceptMissingIssuerCertificate(boolean)} to also accept responses that lack it.
+ * </p>
+ * <p>
+ * The cache is bounded by size and the entries have a maximum age. Since the trust anchors are part of the cache key,
+ * a change of trust anchors for a policy will lead to the full path being validated again. The cache may also be
+ * explicitly cleared using {@link #clear()}.
+ * </p>
+ * <p>
+ * Caching is only used if the underlying validator does not perform revocation checking, and no CRLs are passed in the
+ * call. Otherwise, all calls are passed to the underlying validator.
+ * </p>
+ * <p>
+ * An instance may be shared between several policies and is installed using
+ * {@code DefaultSignResponseProcessor#setCertificateValidators(Map)}.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class CachingCertificateValidator implements CertificateValidator {
+
+  /** The default maximum number of cached certificate paths. */
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  /** The default maximum age of a cache entry (in milliseconds). */
+  public static final long DEFAULT_MAX_AGE = 3600000L;
+
+  /** The authority key identifier extension OID. */
+  private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35";
+
+  /** The subject key identifier extension OID. */
+  private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+
+  /** The name constraints extension OID. */
+  private static final String NAME_CONSTRAINTS_OID = "2.5.29.30";
+
+  /**
+   * The critical extensions of a signer certificate that may be present when only the signer certificate is checked
+   * (key usage, subject alternative name, basic constraints and extended key usage). If other critical extensions are
+   * present, the certificate is passed to the underlying validator.
+   */
+  private static final Set<String> SUPPORTED_CRITICAL_EXTENSIONS =
+      Set.of("2.5.29.15", "2.5.29.17", "2.5.29.19", "2.5.29.37");
+
+  /** The underlying validator. */
+  private final CertificateValidator validator;
+
+  /** Cached issuer certificates keyed by issuer and trust anchor fingerprints. */
+  private final Map<String, CachedIssuer> cache = new ConcurrentHashMap<>();
+
+  /** The maximum number of cached certificate paths. */
+  private int maxSize = DEFAULT_MAX_SIZE;
+
+  /** The maximum age of a cache entry (in milliseconds). */
+  private long maxAge = DEFAULT_MAX_AGE;
+
+  /** Whether a cached issuer certificate may be used even if it is not among the supplied certificates. */
+  private boolean acceptMissingIssuerCertificate = false;
+
+  /** The last trust anchor list that we calculated a key for. */
+  private volatile TrustAnchorsKey lastTrustAnchorsKey;
+
+  /**
+   * Default constructor using a {@link SimpleCertificateValidator} as the underlying validator.
+   */
+  public CachingCertificateValidator() {
+    this(new SimpleCertificateValidator());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param validator the underlying validator
+   */
+  public CachingCertificateValidator(@Nonnull final CertificateValidator validator) {
+    this.validator = validator;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CertificateValidationResult validate(final X509Certificate subjectCertificate,
+      final List<X509Certificate> additionalCertificates, final List<X509CRL> crls) throws GeneralSecurityException {
+    return this.validate(subjectCertificate, additionalCertificates, crls, this.getDefaultTrustAnchors());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CertificateValidationResult validate(final X509Certificate subjectCertificate,
+      final List<X509Certificate> additionalCertificates, final List<X509CRL> crls,
+      final List<X509Certificate> trustAnchors) throws GeneralSecurityException {
+
+    if (this.validator.isRevocationCheckingActive() || (crls != null && !crls.isEmpty())
+        || trustAnchors == null || trustAnchors.isEmpty()) {
+      return this.validator.validate(subjectCertificate, additionalCertificates, crls, trustAnchors);
+    }
+
+    final String key = issuerKey(subjectCertificate) + ":" + this.getTrustAnchorsKey(trustAnchors);
+    final CachedIssuer cachedIssuer = this.cache.get(key);
+    if (cachedIssuer != null) {
+      if (cachedIssuer.expirationTime() > System.currentTimeMillis() && isValidNow(cachedIssuer.path())) {
+        if (this.acceptMissingIssuerCertificate
+            || additionalCertificates != null && additionalCertificates.contains(cachedIssuer.issuer())) {
+          final CertificateValidationResult result = validateIssuedBy(subjectCertificate, cachedIssuer);
+          if (result != null) {
+            log.trace("Certificate '{}' validated using cached issuer certificate",
+                subjectCertificate.getSubjectX500Principal());
+            return result;
+          }
+        }
+      }
+      else {
+        this.cache.remove(key, cachedIssuer);
+      }
+    }
+
+    final CertificateValidationResult result =
+        this.validator.validate(subjectCertificate, additionalCertificates, crls, trustAnchors);
+
+    // The path was successfully validated, so the issuer is trusted under the given trust anchors ...
+    //
+    final CachedIssuer validatedIssuer = this.getValidatedIssuer(result, subjectCertificate, trustAnchors);
+    if (validatedIssuer != null) {
+      this.put(key, validatedIssuer);
+    }
+
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isRevocationCheckingActive() {
+    return this.validator.isRevocationCheckingActive();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<X509Certificate> getDefaultTrustAnchors() {
+    return this.validator.getDefaultTrustAnchors();
+  }
+
+  /**
+   * Clears the cache.
+   */
+  public void clear() {
+    this.cache.clear();
+    this.lastTrustAnchorsKey = null;
+  }
+
+  /**
+   * Gets the number of cached certificate paths.
+   *
+   * @return the number of cached certificate paths
+   */
+  public int size() {
+    return this.cache.size();
+  }
+
+  /**
+   * Assigns the maximum number of cached certificate paths. The default is {@link #DEFAULT_MAX_SIZE}.
+   *
+   * @param maxSize the maximum number of cached certificate paths
+   */
+  public void setMaxSize(final int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be greater than 0");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Assigns the maximum age (in milliseconds) of a cache entry. The default is {@link #DEFAULT_MAX_AGE}.
+   *
+   * @param maxAge the maximum age in milliseconds
+   */
+  public void setMaxAge(final long maxAge) {
+    if (maxAge <= 0) {
+      throw new IllegalArgumentException("maxAge must be greater than 0");
+    }
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * Tells whether a cached issuer certificate may be used even if it is not among the additional certificates supplied
+   * in the call, meaning that sign responses that lack the issuer certificate of the signer certificate are accepted
+   * once the issuer has been cached. The default is {@code false}.
+   *
+   * @param acceptMissingIssuerCertificate whether to accept calls where the issuer certificate is missing
+   */
+  public void setAcceptMissingIssuerCertificate(final boolean acceptMissingIssuerCertificate) {
+    this.acceptMissingIssuerCertificate = acceptMissingIssuerCertificate;
+  }
+
+  /**
+   * Validates a certificate against a cached issuer whose path up to the trust anchor has already been validated.
+   * <p>
+   * An expired (or not yet valid) certificate leads to an exception. If the certificate can not be shown to be issued
+   * by the cached issuer, or if it has properties that need a complete path validation, {@code null} is returned.
+   * </p>
+   *
+   * @param subject the certificate to validate
+   * @param cachedIssuer the cached issuer
+   * @return the validation result, or null if the certificate needs to be validated by the underlying validator
+   * @throws GeneralSecurityException if the certificate is not valid at the current time
+   */
+  private static CertificateValidationResult validateIssuedBy(final X509Certificate subject,
+      final CachedIssuer cachedIssuer) throws GeneralSecurityException {
+
+    final X509Certificate issuer = cachedIssuer.issuer();
+    if (!subject.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())
+        || !subject.getSigAlgOID().equals(cachedIssuer.signatureAlgorithm())
+        || !keyIdentifiersMatch(subject, issuer)) {
+      return null;
+    }
+    final Set<String> criticalExtensions = subject.getCriticalExtensionOIDs();
+    if (criticalExtensions != null && !SUPPORTED_CRITICAL_EXTENSIONS.containsAll(criticalExtensions)) {
+      return null;
+    }
+    try {
+      subject.verify(issuer.getPublicKey());
+    }
+    catch (final GeneralSecurityException e) {
+      log.debug("Signature of '{}' could not be verified using cached issuer certificate - {}",
+          subject.getSubjectX500Principal(), e.getMessage());
+      return null;
+    }
+    subject.checkValidity();
+
+    final List<X509Certificate> path = new ArrayList<>(cachedIssuer.path().size() + 1);
+    path.add(subject);
+    path.addAll(cachedIssuer.path());
+    return new CachedValidationResult(path, cachedIssuer.trustAnchor());
+  }
+
+  /**
+   * Gets the issuer of a path that was validated by the underlying validator. The issuer is only returned if it is an
+   * intermediate CA certificate, i.e., not one of the trust anchors, and if it has no name constraints (which need to
+   * be processed by a complete path validation).
+   *
+   * @param result the validation result
+   * @param subject the subject certificate
+   * @param trustAnchors the trust anchors
+   * @return the validated issuer, or null if it should not be cached
+   */
+  private CachedIssuer getValidatedIssuer(final CertificateValidationResult result, final X509Certificate subject,
+      final List<X509Certificate> trustAnchors) {
+    final List<X509Certificate> path = result != null ? result.getValidatedCertificatePath() : null;
+    if (path == null || path.size() < 2 || !subject.equals(path.get(0)) || trustAnchors.contains(path.get(1))) {
+      return null;
+    }
+    final List<X509Certificate> issuerPath = List.copyOf(path.subList(1, path.size()));
+    for (final X509Certificate c : issuerPath) {
+      if (c.getExtensionValue(NAME_CONSTRAINTS_OID) != null) {
+        return null;
+      }
+    }
+    TrustAnchor trustAnchor = result.getPKIXCertPathValidatorResult() != null
+        ? result.getPKIXCertPathValidatorResult().getTrustAnchor()
+        : null;
+    if (trustAnchor == null && trustAnchors.contains(issuerPath.get(issuerPath.size() - 1))) {
+      trustAnchor = new TrustAnchor(issuerPath.get(issuerPath.size() - 1), null);
+    }
+    return new CachedIssuer(issuerPath.get(0), issuerPath, trustAnchor, subject.getSigAlgOID(),
+        System.currentTimeMillis() + this.maxAge);
+  }
+
+  /**
+   * Adds an issuer to the cache. If the cache is full, expired entries are removed, and if this does not help, an
+   * arbitrary entry is removed.
+   *
+   * @param key the cache key
+   * @param issuer the validated issuer
+   */
+  private void put(final String key, final CachedIssuer issuer) {
+    final long now = System.currentTimeMillis();
+    if (this.cache.size() >= this.maxSize && !this.cache.containsKey(key)) {
+      this.cache.values().removeIf(c -> c.expirationTime() <= now);
+      final Iterator<String> it = this.cache.keySet().iterator();
+      while (this.cache.size() >= this.maxSize && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    this.cache.put(key, issuer);
+  }
+
+  /**
+   * Gets the key for the supplied trust anchors. The key for the last used list of trust anchors is remembered so that
+   * we don't have to re-calculate it for each call.
+   *
+   * @param trustAnchors the trust anchors
+   * @return the trust anchors key
+   * @throws CertificateEncodingException for encoding errors
+   */
+  private String getTrustAnchorsKey(final List<X509Certificate> trustAnchors) throws CertificateEncodingException {
+    final TrustAnchorsKey last = this.lastTrustAnchorsKey;
+    if (last != null && last.trustAnchors() == trustAnchors) {
+      return last.key();
+    }
+    final List<String> fingerprints = new ArrayList<>(trustAnchors.size());
+    for (final X509Certificate anchor : trustAnchors) {
+      fingerprints.add(fingerprint(anchor));
+    }
+    Collections.sort(fingerprints);
+    final String key = String.join(",", fingerprints);
+    this.lastTrustAnchorsKey = new TrustAnchorsKey(trustAnchors, key);
+    return key;
+  }
+
+  /**
+   * Calculates the part of the cache key that identifies the issuer of the subject certificate, i.e., the issuer name
+   * and the authority key identifier extension (if present).
+   *
+   * @param subject the subject certificate
+   * @return the issuer key
+   */
+  private static String issuerKey(final X509Certificate subject) {
+    final byte[] aki = subject.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID);
+    return subject.getIssuerX500Principal().getName()
+        + (aki != null ? "#" + HexFormat.of().formatHex(aki) : "");
+  }
+
+  /**
+   * Tells whether the key identifiers of the subject certificate and its issuer match, i.e., whether the key
+   * identifier of the authority key identifier extension of the subject equals the subject key identifier of the
+   * issuer. If any of the extensions is missing, there is nothing to compare and {@code true} is returned.
+   *
+   * @param subject the subject certificate
+   * @param issuer the issuer certificate
+   * @return true if the key identifiers match (or can not be compared) and false otherwise
+   */
+  private static boolean keyIdentifiersMatch(final X509Certificate subject, final X509Certificate issuer) {
+    final byte[] aki = subject.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID);
+    final byte[] ski = issuer.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+    if (aki == null || ski == null) {
+      return true;
+    }
+    try {
+      final byte[] keyIdentifier =
+          AuthorityKeyIdentifier.getInstance(ASN1OctetString.getInstance(aki).getOctets()).getKeyIdentifier();
+      return keyIdentifier == null || Arrays.equals(keyIdentifier,
+          SubjectKeyIdentifier.getInstance(ASN1OctetString.getInstance(ski).getOctets()).getKeyIdentifier());
+    }
+    catch (final IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Tells whether the supplied certificates are valid at the current time.
+   *
+   * @param certificates the certificates
+   * @return true if all certificates are valid and false otherwise
+   */
+  private static boolean isValidNow(final List<X509Certificate> certificates) {
+    try {
+      for (final X509Certificate c : certificates) {
+        c.checkValidity();
+      }
+      return true;
+    }
+    catch (final GeneralSecurityException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Calculates the SHA-256 fingerprint of a certificate.
+   *
+   * @param certificate the certificate
+   * @return the hex-encoded fingerprint
+   * @throws CertificateEncodingException for encoding errors
+   */
+  private static String fingerprint(final X509Certificate certificate) throws CertificateEncodingException {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new SecurityException(e);
+    }
+  }
+
+  /**
+   * A cached issuer certificate along with the validated path from the issuer up to the trust anchor.
+   *
+   * @param issuer the issuer certificate
+   * @param path the validated path starting with the issuer (as reported by the underlying validator)
+   * @param trustAnchor the trust anchor of the path (may be null)
+   * @param signatureAlgorithm the signature algorithm OID of the certificate that was validated
+   * @param expirationTime the expiration time (millis since epoch)
+   */
+  private record CachedIssuer(X509Certificate issuer, List<X509Certificate> path, TrustAnchor trustAnchor,
+      String signatureAlgorithm, long expirationTime) {
+  }
+
+  /**
+   * The result of a validation using a cached issuer.
+   */
+  private static class CachedValidationResult implements CertificateValidationResult {
+
+    /** The validated path. */
+    private final List<X509Certificate> path;
+
+    /** The PKIX validator result. */
+    private final PKIXCertPathValidatorResult validatorResult;
+
+    /** The PKIX builder result. */
+    private final PKIXCertPathBuilderResult builderResult;
+
+    /**
+     * Constructor.
+     *
+     * @param path the validated path, starting with the subject certificate
+     * @param trustAnchor the trust anchor (may be null)
+     * @throws CertificateException if the certificate path can not be created
+     */
+    CachedValidationResult(final List<X509Certificate> path, final TrustAnchor trustAnchor)
+        throws CertificateException {
+      this.path = Collections.unmodifiableList(path);
+      if (trustAnchor != null) {
+        final CertPath certPath = CertificateFactory.getInstance("X.509").generateCertPath(
+            path.stream().filter(c -> !c.equals(trustAnchor.getTrustedCert())).toList());
+        this.validatorResult = new PKIXCertPathValidatorResult(trustAnchor, null, path.get(0).getPublicKey());
+        this.builderResult =
+            new PKIXCertPathBuilderResult(certPath, trustAnchor, null, path.get(0).getPublicKey());
+      }
+      else {
+        this.validatorResult = null;
+        this.builderResult = null;
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<X509Certificate> getValidatedCertificatePath() {
+      return this.path;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PKIXCertPathBuilderResult getPKIXCertPathBuilderResult() {
+      return this.builderResult;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PKIXCertPathValidatorResult getPKIXCertPathValidatorResult() {
+      return this.validatorResult;
+    }
+  }
+
+  /**
+   * A calculated key for a list of trust anchors.
+   *
+   * @param trustAnchors the trust anchor list
+   * @param key the key
+   */
+  private record TrustAnchorsKey(List<X509Certificate> trustAnchors, String key) {
+  }
+
+}
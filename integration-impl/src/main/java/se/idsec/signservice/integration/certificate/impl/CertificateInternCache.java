@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.certificate.impl;
+
+import jakarta.annotation.Nonnull;
+import se.idsec.signservice.security.certificate.CertificateUtils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache for decoded certificates. The same few CA certificates are received in almost every sign response,
+ * and by interning these we avoid parsing them over and over again. A certificate encoding that has been decoded
+ * before is resolved to the same {@link X509Certificate} instance.
+ * <p>
+ * The cache is keyed by the SHA-256 digest of the DER encoding. When the cache is full an arbitrary entry is removed
+ * before a new certificate is added.
+ * </p>
+ * <p>
+ * The hit and miss counters may be used to monitor the efficiency of the cache (see {@link #getHitRatio()}).
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class CertificateInternCache {
+
+  /** The default maximum number of cached certificates. */
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  /** The cached certificates. */
+  private final Map<String, X509Certificate> cache = new ConcurrentHashMap<>();
+
+  /** The maximum number of cached certificates. */
+  private final int maxSize;
+
+  /** Number of cache hits. */
+  private final LongAdder hits = new LongAdder();
+
+  /** Number of cache misses. */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Constructor creating a cache holding at most {@link #DEFAULT_MAX_SIZE} certificates.
+   */
+  public CertificateInternCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize the maximum number of cached certificates
+   */
+  public CertificateInternCache(final int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be greater than 0");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Gets the certificate for the supplied encoding. If the certificate has been decoded before, the cached instance is
+   * returned, otherwise the encoding is decoded and the result is added to the cache.
+   *
+   * @param encoding the DER encoding of the certificate
+   * @return the certificate
+   * @throws CertificateException for decoding errors
+   */
+  @Nonnull
+  public X509Certificate decodeCertificate(@Nonnull final byte[] encoding) throws CertificateException {
+    final String key = digest(encoding);
+    final X509Certificate cached = this.cache.get(key);
+    if (cached != null) {
+      this.hits.increment();
+      return cached;
+    }
+    this.misses.increment();
+    final X509Certificate certificate = CertificateUtils.decodeCertificate(encoding);
+    if (this.cache.size() >= this.maxSize) {
+      final Iterator<String> it = this.cache.keySet().iterator();
+      while (this.cache.size() >= this.maxSize && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    final X509Certificate previous = this.cache.putIfAbsent(key, certificate);
+    return previous != null ? previous : certificate;
+  }
+
+  /**
+   * Gets the number of cache hits.
+   *
+   * @return the number of cache hits
+   */
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  /**
+   * Gets the number of cache misses.
+   *
+   * @return the number of cache misses
+   */
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * Gets the hit ratio, i.e., the number of hits divided by the number of lookups.
+   *
+   * @return the hit ratio (between 0.0 and 1.0), or 0.0 if no lookups have been made
+   */
+  public double getHitRatio() {
+    final long h = this.hits.sum();
+    final long total = h + this.misses.sum();
+    return total == 0 ? 0.0 : (double) h / total;
+  }
+
+  /**
+   * Gets the number of cached certificates.
+   *
+   * @return the number of cached certificates
+   */
+  public int size() {
+    return this.cache.size();
+  }
+
+  /**
+   * Clears the cache and resets the counters.
+   */
+  public void clear() {
+    this.cache.clear();
+    this.hits.reset();
+    this.misses.reset();
+  }
+
+  /**
+   * Calculates the SHA-256 digest of the supplied encoding.
+   *
+   * @param encoding the encoding
+   * @return the hex-encoded digest
+   */
+  private static String digest(final byte[] encoding) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(encoding));
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new SecurityException(e);
+    }
+  }
+
+}
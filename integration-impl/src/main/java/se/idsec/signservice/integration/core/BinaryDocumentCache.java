@@ -0,0 +1,30 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core;
+
+/**
+ * Interface for a document cache that stores documents as raw bytes (as opposed to {@link DocumentCache} that stores
+ * Base64-encoded documents).
+ * <p>
+ * A binary document cache is used where a {@link DocumentCache} is expected by wrapping it in a
+ * {@link se.idsec.signservice.integration.core.impl.BinaryDocumentCacheAdapter BinaryDocumentCacheAdapter}.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public interface BinaryDocumentCache extends IntegrationServiceCache<byte[]> {
+}
@@ -15,11 +15,64 @@
  */
 package se.idsec.signservice.integration.core;
 
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.util.Base64;
+
 /**
  * Intarface for a document cache that stores Base64-encoded documents.
+ * <p>
+ * The cache may also be used through a byte-oriented API ({@link #getBytes(String, boolean, String)} and
+ * {@link #putBytes(String, byte[], String)}). The default implementations of these methods Base64 encode and decode
+ * the documents, but implementations that store the raw document bytes (see {@link BinaryDocumentCache}) override
+ * them, which saves the Base64 overhead as well as the encoding and decoding passes.
+ * </p>
  *
  * @author Martin Lindström (martin@idsec.se)
  * @author Stefan Santesson (stefan@idsec.se)
  */
 public interface DocumentCache extends IntegrationServiceCache<String> {
+
+  /**
+   * Gets the (raw) bytes of a cached document.
+   * <p>
+   * The default implementation invokes {@link #get(String, boolean, String)} and Base64-decodes the result.
+   * </p>
+   *
+   * @param id the document ID
+   * @param remove if set, the document is removed from the cache
+   * @param requesterId optional ID of the requesting actor
+   * @return the document bytes, or null if it does not exist
+   * @throws NoAccessException if the owner of the cached document does not match the requester ID
+   * @throws IllegalArgumentException if the cached document is not Base64-encoded
+   */
+  default byte[] getBytes(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    final String document = this.get(id, remove, requesterId);
+    return document != null ? Base64.getDecoder().decode(document) : null;
+  }
+
+  /**
+   * Adds a document, given as its (raw) bytes, to the cache.
+   * <p>
+   * The default implementation Base64-encodes the bytes and invokes {@link #put(String, java.io.Serializable, String)}.
+   * </p>
+   *
+   * @param id the document ID
+   * @param document the document bytes
+   * @param ownerId the owner identity (may be null)
+   */
+  default void putBytes(final String id, final byte[] document, final String ownerId) {
+    this.put(id, document != null ? Base64.getEncoder().encodeToString(document) : null, ownerId);
+  }
+
+  /**
+   * Tells whether this cache stores the raw document bytes, meaning that {@link #getBytes(String, boolean, String)}
+   * and {@link #putBytes(String, byte[], String)} are the preferred methods for accessing the cache.
+   *
+   * @return true if the cache stores raw bytes and false otherwise
+   */
+  default boolean isBinary() {
+    return false;
+  }
+
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.error.impl;
+
+import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationCategoryException;
+
+import java.io.Serial;
+
+/**
+ * Exception class for requests that are rejected since the caller has exceeded its quota, for example, the number of
+ * signature states or documents that it may have cached at the same time. The error code is {@code quota.exceeded}.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class QuotaExceededException extends SignServiceIntegrationCategoryException {
+
+  /** For serializing. */
+  @Serial
+  private static final long serialVersionUID = 2433271830357394766L;
+
+  /**
+   * Constructor.
+   *
+   * @param message the error message
+   */
+  public QuotaExceededException(final String message) {
+    this(message, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param message the error message
+   * @param cause the cause of the error
+   */
+  public QuotaExceededException(final String message, final Throwable cause) {
+    super(new ErrorCode.Code("exceeded"), message, cause);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getHttpStatus() {
+    return 429;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected ErrorCode.Category getCategory() {
+    return new ErrorCode.Category("quota");
+  }
+
+}
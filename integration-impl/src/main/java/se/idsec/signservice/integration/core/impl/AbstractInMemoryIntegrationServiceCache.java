@@ -15,17 +15,64 @@
  */
 package se.idsec.signservice.integration.core.impl;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import se.idsec.signservice.integration.core.IntegrationServiceCache;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.Optional;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Base class for an in-memory implementation of the {@link IntegrationServiceCache} interface.
+ * <p>
+ * In addition to the cache itself, an expiry index ordered by expiration time is maintained. This means that
+ * {@link #clearExpired()} only visits the entries that actually have expired, and not the entire cache. The
+ * implementation may also be configured to run a background reaper thread that invokes {@link #clearExpired()} at a
+ * given interval (see {@link #setReaperInterval(long)}).
+ * </p>
+ * <p>
+ * The cache is unbounded by default, meaning that entries are only removed when they expire. By assigning a maximum
+ * number of entries ({@link #setMaxEntries(int)}) and/or a maximum total weight ({@link #setMaxWeight(long)}), the
+ * cache becomes bounded, and the least recently used entries are evicted when a bound is exceeded. The weight of an
+ * entry is given by {@link #getWeight(Serializable)}. An evicted entry is treated as if it did not exist, i.e.,
+ * {@code get} returns {@code null}.
+ * </p>
+ * <p>
+ * Cached objects may also be stored DEFLATE-compressed (see {@link #setCompressionEnabled(boolean)}). An object is
+ * compressed if its serialized form (see {@link #toBytes(Serializable)}) is at least
+ * {@link #setCompressionMinSize(int)} bytes and the compressed form is smaller. Compressed objects are decompressed
+ * when they are read from the cache. For bounded caches, the weight of a compressed entry is its compressed size.
+ * Decompression never inflates more bytes than the entry held before it was compressed, and the deserialization is
+ * restricted by a filter (see {@link #getDeserializationFilter()}).
+ * </p>
+ * <p>
+ * Updates of the cache, its expiry and LRU indexes, and its total weight are made atomically.
+ * </p>
+ * <p>
+ * Per-owner quotas ({@link #setMaxEntriesPerOwner(int)} and {@link #setMaxBytesPerOwner(long)}) protect other callers
+ * from a single caller that fills the cache. A put that would exceed the owner's quota fails with an
+ * {@link OwnerQuotaExceededException}.
+ * </p>
  *
  * @param <T> the cached object type
  * @author Martin Lindström (martin@idsec.se)
@@ -35,37 +82,610 @@ import java.util.concurrent.ConcurrentMap;
 public abstract class AbstractInMemoryIntegrationServiceCache<T extends Serializable>
     extends AbstractIntegrationServiceCache<T> {
 
+  /** Orders entries by expiration time, and for equal expiration times, by insertion order. */
+  private static final Comparator<InMemoryCacheEntry<?>> EXPIRY_ORDER =
+      Comparator.<InMemoryCacheEntry<?>>comparingLong(e -> e.expirationTime).thenComparingLong(e -> e.sequence);
+
+  /** Sequence counter used to give each entry a unique position in the expiry index. */
+  private static final AtomicLong sequenceCounter = new AtomicLong();
+
   /** The cache. */
   private final ConcurrentMap<String, InMemoryCacheEntry<T>> cache = new ConcurrentHashMap<>();
 
+  /** The expiry index, mapping entries (ordered by expiration time) to their IDs. */
+  private final ConcurrentNavigableMap<InMemoryCacheEntry<T>, String> expiryIndex =
+      new ConcurrentSkipListMap<>(EXPIRY_ORDER);
+
+  /** Index of entry IDs ordered by their last access (only maintained for bounded caches). */
+  private final ConcurrentNavigableMap<Long, String> lruIndex = new ConcurrentSkipListMap<>();
+
+  /** Counter for access ticks. */
+  private final AtomicLong accessCounter = new AtomicLong();
+
+  /** The total weight of all entries in the cache. */
+  private final AtomicLong totalWeight = new AtomicLong();
+
+  /** Lock making updates of the cache, its indexes and the total weight atomic. */
+  private final Object lock = new Object();
+
+  /** The maximum number of entries. 0 means no limit. */
+  private int maxEntries = 0;
+
+  /** The maximum total weight of all entries. 0 means no limit. */
+  private long maxWeight = 0L;
+
+  /** The maximum number of entries per owner. 0 means no limit. */
+  private int maxEntriesPerOwner = 0;
+
+  /** The maximum number of bytes (total weight) per owner. 0 means no limit. */
+  private long maxBytesPerOwner = 0L;
+
+  /** The owner quota (null if no per-owner limits are configured). */
+  private OwnerQuota ownerQuota;
+
+  /** The default minimum size (in bytes) of objects that are compressed. */
+  public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+
+  /** Whether cached objects should be compressed. */
+  private boolean compressionEnabled = false;
+
+  /** The minimum size (in bytes) of objects that are compressed. */
+  private int compressionMinSize = DEFAULT_COMPRESSION_MIN_SIZE;
+
+  /** The compression level. */
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  /** The interval (in millis) for the background reaper. 0 means that no reaper is started. */
+  private long reaperInterval = 0L;
+
+  /** The background reaper (if started). */
+  private ScheduledExecutorService reaper;
+
   /** {@inheritDoc} */
   @Override
   protected CacheEntry<T> getCacheEntry(final String id) {
-    return this.cache.get(id);
+    final InMemoryCacheEntry<T> entry = this.cache.get(id);
+    if (entry != null && this.isBounded()) {
+      this.touch(id, entry);
+    }
+    return entry;
   }
 
   /** {@inheritDoc} */
   @Override
   protected void putCacheObject(final String id, final T object, final String ownerId, final long expirationTime) {
-    this.cache.put(id, new InMemoryCacheEntry<>(object, ownerId, expirationTime));
+    final InMemoryCacheEntry<T> entry = this.createEntry(id, object, ownerId, expirationTime);
+    if (entry instanceof final CompressedCacheEntry compressedEntry) {
+      entry.weight = compressedEntry.compressed.length;
+    }
+    else {
+      entry.weight = object != null ? this.getWeight(object) : 0L;
+    }
+    if (this.isBounded()) {
+      if (this.maxWeight > 0 && entry.weight > this.maxWeight) {
+        log.warn("{}: Object '{}' has a weight ({}) that exceeds the maximum cache weight ({}) - will not be cached",
+            CorrelationID.id(), id, entry.weight, this.maxWeight);
+        this.removeCacheObject(id);
+        this.getStatisticsCounter().evicted(ownerId);
+        this.onRemoval(id, entry);
+        this.onEviction(id, entry);
+        return;
+      }
+    }
+    if (this.ownerQuota != null && ownerId != null && object != null) {
+      if (!this.ownerQuota.tryAcquire(ownerId, entry.weight)) {
+        final String msg = String.format("Owner '%s' has exceeded its cache quota - object '%s' will not be cached",
+            ownerId, id);
+        log.warn("{}: {}", CorrelationID.id(), msg);
+        this.getStatisticsCounter().quotaExceeded(ownerId);
+        throw new OwnerQuotaExceededException(ownerId, msg);
+      }
+      entry.quota = this.ownerQuota;
+    }
+    final InMemoryCacheEntry<T> previous;
+    synchronized (this.lock) {
+      previous = this.cache.put(id, entry);
+      if (previous != null) {
+        this.unindex(id, previous);
+      }
+      this.expiryIndex.put(entry, id);
+      this.totalWeight.addAndGet(entry.weight);
+      if (this.isBounded()) {
+        this.touch(id, entry);
+      }
+    }
+    if (previous != null) {
+      this.released(id, previous);
+    }
+    if (this.isBounded()) {
+      this.evictIfNeeded();
+    }
+  }
+
+  /**
+   * Creates a cache entry. If compression is enabled, and the object is large enough, a compressed entry is created.
+   *
+   * @param id the ID
+   * @param object the object to cache
+   * @param ownerId the owner of the object (may be null)
+   * @param expirationTime expiration time (in millis)
+   * @return a cache entry
+   */
+  private InMemoryCacheEntry<T> createEntry(
+      final String id, final T object, final String ownerId, final long expirationTime) {
+    if (this.compressionEnabled && object != null) {
+      try {
+        final byte[] bytes = this.toBytes(object);
+        if (bytes != null && bytes.length >= this.compressionMinSize) {
+          final byte[] compressed = deflate(bytes, this.compressionLevel);
+          if (compressed.length < bytes.length) {
+            log.trace("{}: Compressed cache entry '{}' from {} to {} bytes",
+                CorrelationID.id(), id, bytes.length, compressed.length);
+            return new CompressedCacheEntry(compressed, bytes.length, ownerId, expirationTime);
+          }
+        }
+      }
+      catch (final IOException e) {
+        log.debug("{}: Failed to compress cache entry '{}' - storing uncompressed", CorrelationID.id(), id, e);
+      }
+    }
+    return new InMemoryCacheEntry<>(object, ownerId, expirationTime);
+  }
+
+  /**
+   * Serializes an object before it is compressed. The default implementation uses Java serialization. Subclasses may
+   * override this method (and {@link #fromBytes(byte[])}) with a more compact, or more compressible, encoding.
+   *
+   * @param object the object
+   * @return the serialized object, or null if the object should not be compressed
+   * @throws IOException for serialization errors
+   */
+  protected byte[] toBytes(final T object) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (final ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(object);
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * Deserializes an object serialized by {@link #toBytes(Serializable)}. The classes that may be deserialized are
+   * restricted by the filter given by {@link #getDeserializationFilter()}.
+   *
+   * @param bytes the serialized object
+   * @return the object
+   * @throws IOException for deserialization errors
+   */
+  @SuppressWarnings("unchecked")
+  protected T fromBytes(final byte[] bytes) throws IOException {
+    try (final ObjectInputStream in = CacheDeserializationFilter.createObjectInputStream(
+        new ByteArrayInputStream(bytes), this.getDeserializationFilter())) {
+      return (T) in.readObject();
+    }
+    catch (final ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Failed to deserialize cached object", e);
+    }
+  }
+
+  /**
+   * Gets the filter that restricts the classes that are deserialized by {@link #fromBytes(byte[])}. The default is
+   * {@link CacheDeserializationFilter#getDefaultFilter()}. Subclasses caching other types should override this method.
+   *
+   * @return the deserialization filter
+   */
+  protected ObjectInputFilter getDeserializationFilter() {
+    return CacheDeserializationFilter.getDefaultFilter();
+  }
+
+  /**
+   * DEFLATE compresses the supplied bytes.
+   *
+   * @param bytes the bytes to compress
+   * @param level the compression level
+   * @return the compressed bytes
+   */
+  private static byte[] deflate(final byte[] bytes, final int level) {
+    final Deflater deflater = new Deflater(level);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+      final byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        bos.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return bos.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Decompresses DEFLATE compressed bytes. The decompressed size must equal the size of the bytes before they were
+   * compressed. More bytes are never inflated.
+   *
+   * @param compressed the compressed bytes
+   * @param size the size of the bytes before they were compressed
+   * @return the decompressed bytes
+   * @throws IOException for decompression errors, or if the decompressed size is not the expected size
+   */
+  private static byte[] inflate(final byte[] compressed, final int size) throws IOException {
+    try (final InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+      final byte[] bytes = in.readNBytes(size);
+      if (bytes.length != size || in.read() != -1) {
+        throw new IOException("Unexpected size of decompressed cache entry");
+      }
+      return bytes;
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   protected void removeCacheObject(final String id) {
-    this.cache.remove(id);
+    final InMemoryCacheEntry<T> entry;
+    synchronized (this.lock) {
+      entry = this.cache.remove(id);
+      if (entry != null) {
+        this.unindex(id, entry);
+      }
+    }
+    if (entry != null) {
+      this.released(id, entry);
+    }
   }
 
-  /** {@inheritDoc} */
+  /**
+   * Removes the supplied entry from the cache, unless it has been replaced or removed.
+   *
+   * @param id the entry ID
+   * @param entry the entry
+   * @return true if the entry was removed and false otherwise
+   */
+  private boolean removeEntry(final String id, final InMemoryCacheEntry<T> entry) {
+    synchronized (this.lock) {
+      if (!this.cache.remove(id, entry)) {
+        return false;
+      }
+      this.unindex(id, entry);
+    }
+    this.released(id, entry);
+    return true;
+  }
+
+  /**
+   * Updates the indexes and the total weight after an entry has been removed from the cache. Must be called while
+   * holding the lock.
+   *
+   * @param id the entry ID
+   * @param entry the removed entry
+   */
+  private void unindex(final String id, final InMemoryCacheEntry<T> entry) {
+    this.expiryIndex.remove(entry);
+    this.lruIndex.remove(entry.accessTick, id);
+    this.totalWeight.addAndGet(-entry.weight);
+  }
+
+  /**
+   * Releases the owner quota of a removed entry and notifies subclasses.
+   *
+   * @param id the entry ID
+   * @param entry the removed entry
+   */
+  private void released(final String id, final InMemoryCacheEntry<T> entry) {
+    if (entry.quota != null) {
+      entry.quota.release(entry.ownerId, entry.weight);
+    }
+    this.onRemoval(id, entry);
+  }
+
+  /**
+   * Records an access of the supplied entry in the LRU index.
+   *
+   * @param id the entry ID
+   * @param entry the entry
+   */
+  private void touch(final String id, final InMemoryCacheEntry<T> entry) {
+    final long previousTick = entry.accessTick;
+    final long tick = this.accessCounter.incrementAndGet();
+    entry.accessTick = tick;
+    this.lruIndex.put(tick, id);
+    this.lruIndex.remove(previousTick, id);
+    if (this.cache.get(id) != entry) {
+      // The entry was removed while we were reading it, don't leave it in the index ...
+      this.lruIndex.remove(tick, id);
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries until the cache is within its bounds. Expired entries are cleared first.
+   */
+  private void evictIfNeeded() {
+    if (!this.isOverBounds()) {
+      return;
+    }
+    this.clearExpired();
+    while (this.isOverBounds()) {
+      final Map.Entry<Long, String> lru = this.lruIndex.pollFirstEntry();
+      if (lru == null) {
+        break;
+      }
+      final String id = lru.getValue();
+      final InMemoryCacheEntry<T> entry = this.cache.get(id);
+      if (entry == null || entry.accessTick != lru.getKey()) {
+        // Stale index entry, the entry has been removed or accessed after this tick ...
+        continue;
+      }
+      if (this.removeEntry(id, entry)) {
+        this.getStatisticsCounter().evicted(entry.getOwnerId());
+        log.info("{}: Evicted cache entry '{}' (entries: {}, weight: {})",
+            CorrelationID.id(), id, this.cache.size(), this.totalWeight.get());
+        this.onEviction(id, entry);
+      }
+    }
+  }
+
+  /**
+   * Tells whether the cache currently exceeds any of its bounds.
+   *
+   * @return true if the cache exceeds a bound and false otherwise
+   */
+  private boolean isOverBounds() {
+    return (this.maxEntries > 0 && this.cache.size() > this.maxEntries)
+        || (this.maxWeight > 0 && this.totalWeight.get() > this.maxWeight);
+  }
+
+  /**
+   * Tells whether the cache is bounded.
+   *
+   * @return true if the cache is bounded and false otherwise
+   */
+  private boolean isBounded() {
+    return this.maxEntries > 0 || this.maxWeight > 0;
+  }
+
+  /**
+   * Gets the weight of the supplied object. The weight is used when the cache is bounded by a maximum weight (see
+   * {@link #setMaxWeight(long)}), and as the number of bytes held reported by {@link #getStatistics()}. It should be an
+   * estimate of the number of bytes that the object occupies. The default implementation returns 1.
+   *
+   * @param object the object
+   * @return the weight of the object
+   */
+  protected long getWeight(final T object) {
+    return 1L;
+  }
+
+  /**
+   * Invoked when an entry has left the cache, i.e., when it has been removed, replaced, cleared after expiry or
+   * evicted (or was never admitted because of its weight). The default implementation does nothing.
+   *
+   * @param id the ID of the entry
+   * @param entry the entry
+   */
+  protected void onRemoval(final String id, final CacheEntry<T> entry) {
+  }
+
+  /**
+   * Invoked when an entry has been evicted from the cache because a bound was exceeded. The default implementation
+   * does nothing.
+   *
+   * @param id the ID of the evicted entry
+   * @param entry the evicted entry
+   */
+  protected void onEviction(final String id, final CacheEntry<T> entry) {
+  }
+
+  /**
+   * Removes expired entries. Only the entries that have expired are visited, i.e., the cost is proportional to the
+   * number of expired entries and not to the size of the cache.
+   */
   @Override
   public void clearExpired() {
-    for (final String id : this.cache.keySet()) {
-      final CacheEntry<T> entry = this.cache.get(id);
-      if (System.currentTimeMillis() > Optional.ofNullable(entry.getExpirationTime()).orElse(Long.MAX_VALUE)) {
-        log.debug("{}: Clearing expired cache entry '{}'", CorrelationID.id(), id);
-        this.remove(id);
+    final long now = System.currentTimeMillis();
+    int cleared = 0;
+    Map.Entry<InMemoryCacheEntry<T>, String> first;
+    while ((first = this.expiryIndex.firstEntry()) != null && first.getKey().expirationTime < now) {
+      final InMemoryCacheEntry<T> entry = first.getKey();
+      // Only remove the cached object if it hasn't been replaced ...
+      if (this.removeEntry(first.getValue(), entry)) {
+        log.debug("{}: Clearing expired cache entry '{}'", CorrelationID.id(), first.getValue());
+        cleared++;
+      }
+      else {
+        this.expiryIndex.remove(entry, first.getValue());
       }
     }
+    if (cleared > 0) {
+      log.debug("{}: Cleared {} expired cache entries", CorrelationID.id(), cleared);
+    }
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public void clear() {
+    for (final String id : this.cache.keySet()) {
+      this.removeCacheObject(id);
+    }
+  }
+
+  /**
+   * Gets the number of entries in the cache (including entries that have expired but not yet been cleared).
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return this.cache.size();
+  }
+
+  /**
+   * Gets the total weight of the entries in the cache (see {@link #getWeight(Serializable)}).
+   *
+   * @return the total weight
+   */
+  public long getTotalWeight() {
+    return this.totalWeight.get();
+  }
+
+  /**
+   * Gets the number of entries that have been evicted from the cache since it was created.
+   *
+   * @return the number of evicted entries
+   */
+  public long getEvictionCount() {
+    return this.getStatisticsCounter().getEvictions();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected long getEntryCount() {
+    return this.cache.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected long getBytesHeld() {
+    return this.totalWeight.get();
+  }
+
+  /**
+   * Assigns the maximum number of entries that the cache may hold. When the limit is exceeded, the least recently used
+   * entries are evicted. The default is 0, meaning no limit. Should be assigned before the cache is used.
+   *
+   * @param maxEntries the maximum number of entries
+   */
+  public void setMaxEntries(final int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Assigns the maximum total weight (see {@link #getWeight(Serializable)}) of all entries in the cache. When the limit
+   * is exceeded, the least recently used entries are evicted. An object whose weight alone exceeds the limit is not
+   * cached. The default is 0, meaning no limit. Should be assigned before the cache is used.
+   *
+   * @param maxWeight the maximum weight
+   */
+  public void setMaxWeight(final long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Assigns the maximum number of entries that a single owner may hold in the cache. An attempt to add an object that
+   * would exceed the limit fails with an {@link OwnerQuotaExceededException}. Objects without an owner are not subject
+   * to quotas. The default is 0, meaning no limit. Should be assigned before the cache is used.
+   * <p>
+   * Note that replacing an existing entry counts as a new entry until the replaced entry has been released.
+   * </p>
+   *
+   * @param maxEntriesPerOwner the maximum number of entries per owner
+   */
+  public void setMaxEntriesPerOwner(final int maxEntriesPerOwner) {
+    this.maxEntriesPerOwner = maxEntriesPerOwner;
+    this.updateOwnerQuota();
+  }
+
+  /**
+   * Assigns the maximum number of bytes (total weight, see {@link #getWeight(Serializable)}) that a single owner may
+   * hold in the cache. An attempt to add an object that would exceed the limit fails with an
+   * {@link OwnerQuotaExceededException}. Objects without an owner are not subject to quotas. The default is 0, meaning
+   * no limit. Should be assigned before the cache is used.
+   *
+   * @param maxBytesPerOwner the maximum number of bytes per owner
+   */
+  public void setMaxBytesPerOwner(final long maxBytesPerOwner) {
+    this.maxBytesPerOwner = maxBytesPerOwner;
+    this.updateOwnerQuota();
+  }
+
+  /**
+   * Creates the owner quota based on the configured limits.
+   */
+  private void updateOwnerQuota() {
+    this.ownerQuota = this.maxEntriesPerOwner > 0 || this.maxBytesPerOwner > 0
+        ? new OwnerQuota(this.maxEntriesPerOwner, this.maxBytesPerOwner)
+        : null;
+  }
+
+  /**
+   * Assigns whether cached objects should be DEFLATE-compressed. The default is {@code false}.
+   *
+   * @param compressionEnabled whether compression is enabled
+   */
+  public void setCompressionEnabled(final boolean compressionEnabled) {
+    this.compressionEnabled = compressionEnabled;
+  }
+
+  /**
+   * Assigns the minimum size (in bytes) of the serialized form of an object for it to be compressed. The default is
+   * {@value #DEFAULT_COMPRESSION_MIN_SIZE}.
+   *
+   * @param compressionMinSize the minimum size in bytes
+   */
+  public void setCompressionMinSize(final int compressionMinSize) {
+    this.compressionMinSize = compressionMinSize;
+  }
+
+  /**
+   * Assigns the DEFLATE compression level (0-9, or -1 for the default level). The default is
+   * {@link Deflater#DEFAULT_COMPRESSION}.
+   *
+   * @param compressionLevel the compression level
+   */
+  public void setCompressionLevel(final int compressionLevel) {
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+    }
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * Assigns the interval (in millis) at which a background reaper thread should invoke {@link #clearExpired()}. The
+   * default is 0, meaning that no reaper is started and that the application is responsible of scheduling calls to
+   * {@link #clearExpired()}.
+   * <p>
+   * The reaper is started by {@link #afterPropertiesSet()} and stopped by {@link #destroy()}.
+   * </p>
+   *
+   * @param reaperInterval the interval in millis
+   */
+  public void setReaperInterval(final long reaperInterval) {
+    this.reaperInterval = reaperInterval;
+  }
+
+  /**
+   * Starts the background reaper if a reaper interval has been assigned.
+   */
+  @PostConstruct
+  public synchronized void afterPropertiesSet() {
+    if (this.reaperInterval > 0 && this.reaper == null) {
+      this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, this.getClass().getSimpleName() + "-reaper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.reaper.scheduleWithFixedDelay(() -> {
+        try {
+          this.clearExpired();
+        }
+        catch (final RuntimeException e) {
+          log.error("Failed to clear expired cache entries", e);
+        }
+      }, this.reaperInterval, this.reaperInterval, TimeUnit.MILLISECONDS);
+      log.debug("Started cache reaper for {} with interval {} ms", this.getClass().getSimpleName(),
+          this.reaperInterval);
+    }
+  }
+
+  /**
+   * Stops the background reaper (if started).
+   */
+  @PreDestroy
+  public synchronized void destroy() {
+    if (this.reaper != null) {
+      this.reaper.shutdownNow();
+      this.reaper = null;
+    }
   }
 
   /**
@@ -88,6 +708,18 @@ public abstract class AbstractInMemoryIntegrationServiceCache<T extends Serializ
     /** The owner id. */
     private final String ownerId;
 
+    /** The position of the entry in the expiry index (for entries with the same expiration time). */
+    private final transient long sequence;
+
+    /** The weight of the entry. */
+    private transient long weight;
+
+    /** The owner quota that the entry has been counted against (null if no quota applies). */
+    private transient OwnerQuota quota;
+
+    /** The last access tick of the entry (only maintained for bounded caches). */
+    private transient volatile long accessTick;
+
     /**
      * Constructor.
      *
@@ -99,6 +731,7 @@ public abstract class AbstractInMemoryIntegrationServiceCache<T extends Serializ
       this.object = object;
       this.ownerId = ownerId;
       this.expirationTime = expirationTime;
+      this.sequence = sequenceCounter.incrementAndGet();
     }
 
     /** {@inheritDoc} */
@@ -121,4 +754,45 @@ public abstract class AbstractInMemoryIntegrationServiceCache<T extends Serializ
 
   }
 
+  /**
+   * A cache entry holding a compressed object. The object is decompressed each time it is read.
+   */
+  private final class CompressedCacheEntry extends InMemoryCacheEntry<T> {
+
+    @Serial
+    private static final long serialVersionUID = 4339212875164404512L;
+
+    /** The compressed object. */
+    private final byte[] compressed;
+
+    /** The size of the object before it was compressed. */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param compressed the compressed object
+     * @param size the size of the object before it was compressed
+     * @param ownerId the owner identity (may be null)
+     * @param expirationTime the expiration time
+     */
+    CompressedCacheEntry(final byte[] compressed, final int size, final String ownerId, final long expirationTime) {
+      super(null, ownerId, expirationTime);
+      this.compressed = compressed;
+      this.size = size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public T getObject() {
+      try {
+        return fromBytes(inflate(this.compressed, this.size));
+      }
+      catch (final IOException e) {
+        throw new UncheckedIOException("Failed to decompress cached object", e);
+      }
+    }
+
+  }
+
 }
@@ -38,6 +38,9 @@ public abstract class AbstractIntegrationServiceCache<T extends Serializable> im
   /** The maximum time (in millis) to keep an object in the cache. Default is {@value #MAX_AGE}. */
   private long maxAge = MAX_AGE;
 
+  /** The statistics counters. */
+  private final CacheStatisticsCounter statisticsCounter = new CacheStatisticsCounter();
+
   /** {@inheritDoc} */
   @Override
   public T get(final String id, final String requesterId) throws NoAccessException {
@@ -50,13 +53,42 @@ public abstract class AbstractIntegrationServiceCache<T extends Serializable> im
     final CacheEntry<T> entry = this.getCacheEntry(id);
     if (entry == null) {
       log.info("{}: Entry '{}' does not exist in cache", CorrelationID.id(), id);
+      this.statisticsCounter.miss(requesterId);
+      return null;
+    }
+    this.checkAccess(id, entry, requesterId);
+    if (System.currentTimeMillis() > Optional.ofNullable(entry.getExpirationTime()).orElse(Long.MAX_VALUE)) {
+      log.warn("{}: Cached entry '{}' has expired", CorrelationID.id(), id);
+      this.statisticsCounter.expired(entry.getOwnerId());
+      this.remove(id);
       return null;
     }
+
+    if (remove) {
+      log.trace("{}: Removing entry '{}' from cache", CorrelationID.id(), id);
+      this.remove(id);
+    }
+    final T object = entry.getObject();
+    this.statisticsCounter.hit(entry.getOwnerId(), this.getPolicy(object));
+    return object;
+  }
+
+  /**
+   * Checks that the requester is allowed to access the supplied cache entry.
+   *
+   * @param id the ID of the entry
+   * @param entry the entry
+   * @param requesterId the requester (may be null)
+   * @throws NoAccessException if the requester is not the owner of the entry
+   */
+  protected void checkAccess(final String id, final CacheEntry<T> entry, final String requesterId)
+      throws NoAccessException {
     if (entry.getOwnerId() != null) {
       if (requesterId == null) {
         final String msg =
             String.format("Cached object '%s' has an registered owner - anonymous access is not allowed", id);
         log.error("{}: {}", CorrelationID.id(), msg);
+        this.statisticsCounter.accessDenied(entry.getOwnerId());
         throw new NoAccessException(msg);
       }
       if (!requesterId.equals(entry.getOwnerId())) {
@@ -64,20 +96,10 @@ public abstract class AbstractIntegrationServiceCache<T extends Serializable> im
             String.format("Cached object '%s' has an registered owner that does not match requester (%s)", id,
                 requesterId);
         log.error("{}: {}", CorrelationID.id(), msg);
+        this.statisticsCounter.accessDenied(entry.getOwnerId());
         throw new NoAccessException(msg);
       }
     }
-    if (System.currentTimeMillis() > Optional.ofNullable(entry.getExpirationTime()).orElse(Long.MAX_VALUE)) {
-      log.warn("{}: Cached entry '{}' has expired", CorrelationID.id(), id);
-      this.remove(id);
-      return null;
-    }
-
-    if (remove) {
-      log.trace("{}: Removing entry '{}' from cache", CorrelationID.id(), id);
-      this.remove(id);
-    }
-    return entry.getObject();
   }
 
   /**
@@ -99,6 +121,9 @@ public abstract class AbstractIntegrationServiceCache<T extends Serializable> im
       this.remove(id);
     }
     this.putCacheObject(id, object, ownerId, System.currentTimeMillis() + this.maxAge);
+    if (object != null) {
+      this.statisticsCounter.put(ownerId, this.getPolicy(object));
+    }
   }
 
   /**
@@ -125,6 +150,65 @@ public abstract class AbstractIntegrationServiceCache<T extends Serializable> im
    */
   protected abstract void removeCacheObject(final String id);
 
+  /**
+   * Gets a snapshot of the statistics for this cache.
+   *
+   * @return the cache statistics
+   */
+  public CacheStatistics getStatistics() {
+    return this.statisticsCounter.snapshot(this.getEntryCount(), this.getBytesHeld());
+  }
+
+  /**
+   * Gets the number of entries in the cache. Used for {@link #getStatistics()}. The default implementation returns -1
+   * (not known).
+   *
+   * @return the number of entries or -1
+   */
+  protected long getEntryCount() {
+    return -1L;
+  }
+
+  /**
+   * Gets the approximate number of bytes held by the cache. Used for {@link #getStatistics()}. The default
+   * implementation returns -1 (not known).
+   *
+   * @return the number of bytes or -1
+   */
+  protected long getBytesHeld() {
+    return -1L;
+  }
+
+  /**
+   * Gets the policy that the supplied object belongs to. Used for the policy breakdown of the cache statistics. The
+   * default implementation returns null.
+   *
+   * @param object the cached object
+   * @return the policy or null
+   */
+  protected String getPolicy(final T object) {
+    return null;
+  }
+
+  /**
+   * Gets the statistics counters.
+   *
+   * @return the statistics counters
+   */
+  CacheStatisticsCounter getStatisticsCounter() {
+    return this.statisticsCounter;
+  }
+
+  /**
+   * Assigns the maximum number of owners and policies, respectively, that are broken down in the cache statistics.
+   * Counts for other owners and policies are only included in the totals. 0 turns off the breakdown. Default is 1000.
+   *
+   * @param maxStatisticsBreakdownKeys the maximum number of owners and policies
+   */
+  public void setMaxStatisticsBreakdownKeys(final int maxStatisticsBreakdownKeys) {
+    this.statisticsCounter.setMaxBreakdownKeys(maxStatisticsBreakdownKeys);
+  }
+
   /**
    * Assigns the maximum time (in millis) to keep an object in the cache. Default is {@value #MAX_AGE}.
    *
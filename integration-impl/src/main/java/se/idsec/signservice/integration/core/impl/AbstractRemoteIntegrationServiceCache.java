@@ -0,0 +1,402 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+import se.idsec.signservice.utils.AssertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for caches that are stored in a shared key-value server speaking the Redis serialization protocol (see
+ * {@link RespClient}). This makes it possible to run several instances of the integration service in stateful mode
+ * without sticky sessions.
+ * <p>
+ * Each entry is stored under the key {@code <key prefix><id>} with a server side time-to-live corresponding to the
+ * entry's expiration time, so {@link #clearExpired()} does nothing. The stored value is a small header (format version,
+ * expiration time and owner) followed by the serialized object (see {@link #toBytes(Serializable)}).
+ * </p>
+ * <p>
+ * {@code get(id, true, requesterId)} is atomic, i.e., if several instances try to consume the same entry concurrently,
+ * only one of them gets it. This is implemented using a server side script ({@code EVAL}) that compares the owner
+ * stored in the header with the requester, and only deletes the entry if the requester is allowed to access it. An
+ * entry is therefore never removed, not even temporarily, by a requester that is not its owner.
+ * </p>
+ *
+ * @param <T> the cached object type
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public abstract class AbstractRemoteIntegrationServiceCache<T extends Serializable>
+    extends AbstractIntegrationServiceCache<T> {
+
+  /** The current version of the value format. */
+  private static final int VERSION = 1;
+
+  /**
+   * Script that consumes an entry if the requester is allowed to access it. {@code ARGV[1]} is the encoded owner field
+   * of the requester (see {@link #encodeOwner(String)}), or empty for an anonymous requester. The owner field of the
+   * stored value starts at byte 10 (1-based), after the version and the expiration time. If the entry has no owner, or
+   * if the owner field equals {@code ARGV[1]}, the entry is deleted and returned. Otherwise, the entry is returned
+   * wrapped in an array (and not deleted).
+   */
+  static final String CONSUME_SCRIPT = """
+      local v = redis.call('GET', KEYS[1])
+      if not v then return false end
+      if string.sub(v, 10, 13) == string.char(255, 255, 255, 255)
+          or (ARGV[1] ~= '' and string.sub(v, 10, 9 + string.len(ARGV[1])) == ARGV[1]) then
+        redis.call('DEL', KEYS[1])
+        return v
+      end
+      return { v }
+      """;
+
+  /** The client. */
+  private RespClient client;
+
+  /** The key prefix. */
+  private String keyPrefix;
+
+  /**
+   * Constructor.
+   *
+   * @param defaultKeyPrefix the default key prefix
+   */
+  protected AbstractRemoteIntegrationServiceCache(final String defaultKeyPrefix) {
+    this.keyPrefix = defaultKeyPrefix;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public T get(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    if (!remove) {
+      return super.get(id, false, requesterId);
+    }
+    final Object reply = this.execute(RespClient.bytes("EVAL"), RespClient.bytes(CONSUME_SCRIPT),
+        RespClient.bytes("1"), this.key(id), requesterId != null ? encodeOwner(requesterId) : new byte[0]);
+    if (reply == null) {
+      log.info("{}: Entry '{}' does not exist in cache", CorrelationID.id(), id);
+      this.getStatisticsCounter().miss(requesterId);
+      return null;
+    }
+    if (reply instanceof final List<?> list && list.size() == 1) {
+      // The entry was not removed since the requester is not allowed to access it ...
+      this.checkAccess(id, this.decodeEntry(id, this.bulk(list.get(0))), requesterId);
+      throw new NoAccessException(String.format("Cached object '%s' may not be accessed by requester (%s)",
+          id, requesterId));
+    }
+    final RemoteCacheEntry entry = this.decodeEntry(id, this.bulk(reply));
+    if (System.currentTimeMillis() > entry.getExpirationTime()) {
+      log.warn("{}: Cached entry '{}' has expired", CorrelationID.id(), id);
+      this.getStatisticsCounter().expired(entry.getOwnerId());
+      return null;
+    }
+    log.trace("{}: Removed entry '{}' from cache", CorrelationID.id(), id);
+    final T object = entry.getObject();
+    this.getStatisticsCounter().hit(entry.getOwnerId(), this.getPolicy(object));
+    return object;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<T> getCacheEntry(final String id) {
+    final byte[] value = this.bulk(this.execute(RespClient.bytes("GET"), this.key(id)));
+    return value != null ? this.decodeEntry(id, value) : null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void putCacheObject(final String id, final T object, final String ownerId, final long expirationTime) {
+    if (object == null) {
+      return;
+    }
+    final long ttl = expirationTime - System.currentTimeMillis();
+    if (ttl <= 0) {
+      return;
+    }
+    try {
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (final DataOutputStream out = new DataOutputStream(bos)) {
+        out.writeByte(VERSION);
+        out.writeLong(expirationTime);
+        out.write(encodeOwner(ownerId));
+        out.write(this.toBytes(object));
+      }
+      this.execute(RespClient.bytes("SET"), this.key(id), bos.toByteArray(),
+          RespClient.bytes("PX"), RespClient.bytes(Long.toString(ttl)));
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to serialize cached object", e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.execute(RespClient.bytes("DEL"), this.key(id));
+  }
+
+  /**
+   * Removes several entries using one pipelined request.
+   *
+   * @param ids the IDs of the entries to remove
+   */
+  public void removeAll(final List<String> ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    final List<byte[][]> commands = new ArrayList<>(ids.size());
+    for (final String id : ids) {
+      commands.add(new byte[][] { RespClient.bytes("DEL"), this.key(id) });
+    }
+    try {
+      this.client.pipeline(commands);
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to communicate with cache server", e);
+    }
+  }
+
+  /**
+   * Does nothing. The server removes expired entries.
+   */
+  @Override
+  public void clearExpired() {
+  }
+
+  /**
+   * Serializes an object before it is stored. The default implementation uses Java serialization.
+   *
+   * @param object the object
+   * @return the serialized object
+   * @throws IOException for serialization errors
+   */
+  protected byte[] toBytes(final T object) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (final ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(object);
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * Deserializes an object serialized by {@link #toBytes(Serializable)}. The classes that may be deserialized are
+   * restricted by the filter given by {@link #getDeserializationFilter()}.
+   *
+   * @param bytes the serialized object
+   * @return the object
+   * @throws IOException for deserialization errors
+   */
+  @SuppressWarnings("unchecked")
+  protected T fromBytes(final byte[] bytes) throws IOException {
+    try (final ObjectInputStream in = CacheDeserializationFilter.createObjectInputStream(
+        new ByteArrayInputStream(bytes), this.getDeserializationFilter())) {
+      return (T) in.readObject();
+    }
+    catch (final ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Failed to deserialize cached object", e);
+    }
+  }
+
+  /**
+   * Gets the filter that restricts the classes that are deserialized by {@link #fromBytes(byte[])}. The default is
+   * {@link CacheDeserializationFilter#getDefaultFilter()}. Subclasses caching other types should override this method.
+   *
+   * @return the deserialization filter
+   */
+  protected ObjectInputFilter getDeserializationFilter() {
+    return CacheDeserializationFilter.getDefaultFilter();
+  }
+
+  /**
+   * Assigns the client used to communicate with the key-value server.
+   *
+   * @param client the client
+   */
+  public void setClient(final RespClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Assigns the prefix for all keys stored by this cache. Caches sharing the same server must use different prefixes.
+   *
+   * @param keyPrefix the key prefix
+   */
+  public void setKeyPrefix(final String keyPrefix) {
+    this.keyPrefix = keyPrefix;
+  }
+
+  /**
+   * Ensures that the cache has been correctly configured.
+   */
+  @PostConstruct
+  public void afterPropertiesSet() {
+    AssertThat.isNotNull(this.client, "The 'client' property must be assigned");
+    AssertThat.isNotNull(this.keyPrefix, "The 'keyPrefix' property must be assigned");
+  }
+
+  /**
+   * Encodes the owner field of the value header, i.e., the length of the UTF-8 encoded owner ID (-1 for no owner)
+   * followed by the UTF-8 bytes.
+   *
+   * @param ownerId the owner ID (may be null)
+   * @return the encoded owner field
+   */
+  private static byte[] encodeOwner(final String ownerId) {
+    if (ownerId == null) {
+      return ByteBuffer.allocate(4).putInt(-1).array();
+    }
+    final byte[] owner = ownerId.getBytes(StandardCharsets.UTF_8);
+    return ByteBuffer.allocate(4 + owner.length).putInt(owner.length).put(owner).array();
+  }
+
+  /**
+   * Decodes a stored value.
+   *
+   * @param id the entry ID
+   * @param value the value
+   * @return the entry
+   */
+  private RemoteCacheEntry decodeEntry(final String id, final byte[] value) {
+    try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+      final int version = in.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported cache entry version: " + version);
+      }
+      final long expirationTime = in.readLong();
+      final int ownerLength = in.readInt();
+      final String ownerId = ownerLength >= 0
+          ? new String(in.readNBytes(ownerLength), StandardCharsets.UTF_8)
+          : null;
+      final int offset = value.length - in.available();
+      return new RemoteCacheEntry(value, offset, ownerId, expirationTime);
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Invalid cache entry for '" + id + "'", e);
+    }
+  }
+
+  /**
+   * Gets the key for the supplied ID.
+   *
+   * @param id the ID
+   * @return the key
+   */
+  private byte[] key(final String id) {
+    return RespClient.bytes(this.keyPrefix + id);
+  }
+
+  /**
+   * Executes a command.
+   *
+   * @param command the command
+   * @return the reply
+   */
+  private Object execute(final byte[]... command) {
+    try {
+      return this.client.execute(command);
+    }
+    catch (final IOException e) {
+      log.error("{}: Failed to communicate with cache server - {}", CorrelationID.id(), e.getMessage());
+      throw new UncheckedIOException("Failed to communicate with cache server", e);
+    }
+  }
+
+  /**
+   * Casts a reply to a bulk string.
+   *
+   * @param reply the reply
+   * @return the bulk string (or null)
+   */
+  private byte[] bulk(final Object reply) {
+    if (reply != null && !(reply instanceof byte[])) {
+      throw new UncheckedIOException(new IOException("Unexpected reply from cache server"));
+    }
+    return (byte[]) reply;
+  }
+
+  /**
+   * A cache entry read from the server. The object is deserialized when it is requested.
+   */
+  private class RemoteCacheEntry implements CacheEntry<T> {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** The stored value. */
+    private final byte[] value;
+
+    /** The offset of the serialized object within the value. */
+    private final int offset;
+
+    /** The owner. */
+    private final String ownerId;
+
+    /** The expiration time. */
+    private final long expirationTime;
+
+    RemoteCacheEntry(final byte[] value, final int offset, final String ownerId, final long expirationTime) {
+      this.value = value;
+      this.offset = offset;
+      this.ownerId = ownerId;
+      this.expirationTime = expirationTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public T getObject() {
+      try {
+        final byte[] bytes = new byte[this.value.length - this.offset];
+        System.arraycopy(this.value, this.offset, bytes, 0, bytes.length);
+        return fromBytes(bytes);
+      }
+      catch (final IOException e) {
+        throw new UncheckedIOException("Failed to deserialize cached object", e);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.Nonnull;
+import se.idsec.signservice.integration.core.BinaryDocumentCache;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Adapter that makes a {@link BinaryDocumentCache} usable as a {@link DocumentCache}. The byte-oriented methods of
+ * {@link DocumentCache} are passed directly to the underlying cache, and the String-oriented methods Base64 encode and
+ * decode the documents.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class BinaryDocumentCacheAdapter implements DocumentCache {
+
+  /** The underlying cache. */
+  private final BinaryDocumentCache cache;
+
+  /**
+   * Constructor.
+   *
+   * @param cache the underlying binary document cache
+   */
+  public BinaryDocumentCacheAdapter(@Nonnull final BinaryDocumentCache cache) {
+    this.cache = Objects.requireNonNull(cache, "cache must not be null");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String get(final String id, final String requesterId) throws NoAccessException {
+    return this.get(id, false, requesterId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String get(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    final byte[] document = this.cache.get(id, remove, requesterId);
+    return document != null ? Base64.getEncoder().encodeToString(document) : null;
+  }
+
+  /**
+   * Adds a Base64-encoded document to the cache. The document is decoded and stored as raw bytes.
+   *
+   * @throws IllegalArgumentException if the document is not Base64-encoded
+   */
+  @Override
+  public void put(final String id, final String object, final String ownerId) {
+    this.cache.put(id, object != null ? Base64.getDecoder().decode(object) : null, ownerId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getBytes(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    return this.cache.get(id, remove, requesterId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putBytes(final String id, final byte[] document, final String ownerId) {
+    this.cache.put(id, document, ownerId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isBinary() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove(final String id) {
+    this.cache.remove(id);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    this.cache.clearExpired();
+  }
+
+  /**
+   * Gets the underlying binary document cache.
+   *
+   * @return the underlying cache
+   */
+  @Nonnull
+  public BinaryDocumentCache getCache() {
+    return this.cache;
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.Nonnull;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Executor} that runs at most a given number of tasks concurrently on an underlying executor. Tasks that are
+ * submitted when the limit has been reached are queued and handed over to the underlying executor as running tasks
+ * complete. This makes it possible to limit the number of threads that one operation uses of an unbounded executor,
+ * such as a cached thread pool.
+ * <p>
+ * If the underlying executor rejects a task, the task is run in the thread that hands it over (the thread invoking
+ * {@link #execute(Runnable)} or the thread of a task that just completed).
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class BoundedExecutor implements Executor {
+
+  /** The underlying executor. */
+  private final Executor executor;
+
+  /** The maximum number of concurrently running tasks. */
+  private final int maxConcurrency;
+
+  /** Tasks waiting to be handed over to the underlying executor. */
+  private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+  /** The number of tasks handed over to the underlying executor that have not yet completed. */
+  private final AtomicInteger running = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param executor the underlying executor
+   * @param maxConcurrency the maximum number of concurrently running tasks
+   */
+  public BoundedExecutor(@Nonnull final Executor executor, final int maxConcurrency) {
+    this.executor = Objects.requireNonNull(executor, "executor must not be null");
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+    }
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute(@Nonnull final Runnable command) {
+    this.queue.add(Objects.requireNonNull(command, "command must not be null"));
+    this.schedule();
+  }
+
+  /**
+   * Hands over queued tasks to the underlying executor as long as the concurrency limit allows it.
+   */
+  private void schedule() {
+    while (true) {
+      final int current = this.running.get();
+      if (current >= this.maxConcurrency || this.queue.isEmpty()) {
+        return;
+      }
+      if (!this.running.compareAndSet(current, current + 1)) {
+        continue;
+      }
+      final Runnable task = this.queue.poll();
+      if (task == null) {
+        this.running.decrementAndGet();
+        continue;
+      }
+      try {
+        this.executor.execute(() -> this.run(task));
+      }
+      catch (final RejectedExecutionException e) {
+        this.run(task);
+      }
+    }
+  }
+
+  /**
+   * Runs a task and hands over the next queued task when it has completed.
+   *
+   * @param task the task
+   */
+  private void run(final Runnable task) {
+    try {
+      task.run();
+    }
+    finally {
+      this.running.decrementAndGet();
+      this.schedule();
+    }
+  }
+
+}
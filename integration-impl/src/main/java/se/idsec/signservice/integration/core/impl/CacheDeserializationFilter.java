@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.Nonnull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+
+/**
+ * Deserialization filter for the caches that store objects using Java serialization.
+ * <p>
+ * Cached objects may be read from files or from a remote cache server, and a cache should not deserialize arbitrary
+ * classes from such sources. The default filter only allows the types that make up the objects that are cached by
+ * the integration service, i.e., classes from the {@code se.idsec.signservice} and {@code se.swedenconnect}
+ * packages, and the basic JDK types that these classes use. All other classes are rejected, as are too deep or too
+ * large object graphs.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public final class CacheDeserializationFilter {
+
+  /** The default filter pattern (see {@link ObjectInputFilter.Config#createFilter(String)}). */
+  public static final String DEFAULT_PATTERN = "maxdepth=64;maxrefs=1000000;maxarray=2147483647;"
+      + "java.lang.*;java.util.*;java.math.*;java.time.*;java.security.cert.*;javax.xml.namespace.QName;"
+      + "se.idsec.signservice.**;se.swedenconnect.**;!*";
+
+  /** The default filter. */
+  private static final ObjectInputFilter DEFAULT_FILTER = ObjectInputFilter.Config.createFilter(DEFAULT_PATTERN);
+
+  /**
+   * Gets the default filter.
+   *
+   * @return the default filter
+   */
+  @Nonnull
+  public static ObjectInputFilter getDefaultFilter() {
+    return DEFAULT_FILTER;
+  }
+
+  /**
+   * Creates an {@link ObjectInputStream} that uses the supplied filter.
+   *
+   * @param in the stream to read from
+   * @param filter the filter
+   * @return an ObjectInputStream
+   * @throws IOException for errors reading the stream header
+   */
+  @Nonnull
+  public static ObjectInputStream createObjectInputStream(
+      @Nonnull final InputStream in, @Nonnull final ObjectInputFilter filter) throws IOException {
+    final ObjectInputStream ois = new ObjectInputStream(in);
+    ois.setObjectInputFilter(filter);
+    return ois;
+  }
+
+  // Hidden constructor
+  private CacheDeserializationFilter() {
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics for a cache (see {@link AbstractIntegrationServiceCache#getStatistics()}).
+ * <p>
+ * All counters are cumulative since the cache was created. The owner breakdown is keyed by the owner of the entry (or,
+ * for misses, by the requester), and the policy breakdown is keyed by the policy of the cached object (only available
+ * for state caches). Entries and requests without an owner or policy are only included in the totals, as are those
+ * whose owner or policy did not fit in the bounded breakdown (see
+ * {@link AbstractIntegrationServiceCache#setMaxStatisticsBreakdownKeys(int)}).
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Builder
+@ToString
+public class CacheStatistics {
+
+  /** The number of entries in the cache, or -1 if not known. */
+  @Getter
+  @Builder.Default
+  private long size = -1L;
+
+  /** The approximate number of bytes held by the cache, or -1 if not known. */
+  @Getter
+  @Builder.Default
+  private long bytes = -1L;
+
+  /** The totals. */
+  @Getter
+  private Counts totals;
+
+  /** Counts per owner. */
+  @Getter
+  @Singular
+  private Map<String, Counts> owners;
+
+  /** Counts per policy. */
+  @Getter
+  @Singular
+  private Map<String, Counts> policies;
+
+  /**
+   * Counters for a cache, or for an owner or policy.
+   */
+  @Getter
+  @ToString
+  @AllArgsConstructor
+  public static class Counts {
+
+    /** The number of successful reads. */
+    private final long hits;
+
+    /** The number of reads of entries that did not exist. */
+    private final long misses;
+
+    /** The number of reads of entries that had expired. */
+    private final long expired;
+
+    /** The number of reads that were rejected since the requester was not the owner of the entry. */
+    private final long accessDenied;
+
+    /** The number of added entries. */
+    private final long puts;
+
+    /** The number of entries evicted to keep the cache within its bounds. */
+    private final long evictions;
+
+    /** The number of entries that were rejected since the owner had exceeded its quota. */
+    private final long quotaExceeded;
+
+  }
+
+}
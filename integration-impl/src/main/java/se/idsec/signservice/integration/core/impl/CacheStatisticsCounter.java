@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free counters for cache statistics. Used by {@link AbstractIntegrationServiceCache}.
+ * <p>
+ * The number of owners and policies that are broken down is bounded (see {@link #setMaxBreakdownKeys(int)}), since
+ * the requester of a miss may be any value supplied by a caller. Counts for owners and policies that do not fit are
+ * only included in the totals.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+class CacheStatisticsCounter {
+
+  /** The default maximum number of owners and policies, respectively, that are broken down. */
+  static final int DEFAULT_MAX_BREAKDOWN_KEYS = 1000;
+
+  /** The maximum number of owners and policies, respectively, that are broken down. */
+  private volatile int maxBreakdownKeys = DEFAULT_MAX_BREAKDOWN_KEYS;
+
+  /** The totals. */
+  private final Counters totals = new Counters();
+
+  /** Counters per owner. */
+  private final ConcurrentMap<String, Counters> owners = new ConcurrentHashMap<>();
+
+  /** Counters per policy. */
+  private final ConcurrentMap<String, Counters> policies = new ConcurrentHashMap<>();
+
+  /**
+   * Records a successful read.
+   *
+   * @param ownerId the owner of the entry (may be null)
+   * @param policy the policy of the entry (may be null)
+   */
+  void hit(final String ownerId, final String policy) {
+    this.totals.hits.increment();
+    this.forOwner(ownerId, c -> c.hits.increment());
+    this.forPolicy(policy, c -> c.hits.increment());
+  }
+
+  /**
+   * Records a read of an entry that did not exist.
+   *
+   * @param requesterId the requester (may be null)
+   */
+  void miss(final String requesterId) {
+    this.totals.misses.increment();
+    this.forOwner(requesterId, c -> c.misses.increment());
+  }
+
+  /**
+   * Records a read of an expired entry.
+   *
+   * @param ownerId the owner of the entry (may be null)
+   */
+  void expired(final String ownerId) {
+    this.totals.expired.increment();
+    this.forOwner(ownerId, c -> c.expired.increment());
+  }
+
+  /**
+   * Records a rejected read.
+   *
+   * @param ownerId the owner of the entry
+   */
+  void accessDenied(final String ownerId) {
+    this.totals.accessDenied.increment();
+    this.forOwner(ownerId, c -> c.accessDenied.increment());
+  }
+
+  /**
+   * Records an added entry.
+   *
+   * @param ownerId the owner of the entry (may be null)
+   * @param policy the policy of the entry (may be null)
+   */
+  void put(final String ownerId, final String policy) {
+    this.totals.puts.increment();
+    this.forOwner(ownerId, c -> c.puts.increment());
+    this.forPolicy(policy, c -> c.puts.increment());
+  }
+
+  /**
+   * Records an evicted entry.
+   *
+   * @param ownerId the owner of the entry (may be null)
+   */
+  void evicted(final String ownerId) {
+    this.totals.evictions.increment();
+    this.forOwner(ownerId, c -> c.evictions.increment());
+  }
+
+  /**
+   * Records an entry that was rejected since its owner exceeded its quota.
+   *
+   * @param ownerId the owner of the entry
+   */
+  void quotaExceeded(final String ownerId) {
+    this.totals.quotaExceeded.increment();
+    this.forOwner(ownerId, c -> c.quotaExceeded.increment());
+  }
+
+  /**
+   * Gets the number of evicted entries.
+   *
+   * @return the number of evicted entries
+   */
+  long getEvictions() {
+    return this.totals.evictions.sum();
+  }
+
+  /**
+   * Creates a snapshot of the counters.
+   *
+   * @param size the number of entries (-1 if not known)
+   * @param bytes the number of bytes held (-1 if not known)
+   * @return a snapshot
+   */
+  CacheStatistics snapshot(final long size, final long bytes) {
+    final CacheStatistics.CacheStatisticsBuilder builder = CacheStatistics.builder()
+        .size(size)
+        .bytes(bytes)
+        .totals(this.totals.snapshot());
+    for (final Map.Entry<String, Counters> e : this.owners.entrySet()) {
+      builder.owner(e.getKey(), e.getValue().snapshot());
+    }
+    for (final Map.Entry<String, Counters> e : this.policies.entrySet()) {
+      builder.policy(e.getKey(), e.getValue().snapshot());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Assigns the maximum number of owners and policies, respectively, that are broken down. The bound is approximate
+   * under concurrent updates. 0 turns off the breakdown. Default is {@value #DEFAULT_MAX_BREAKDOWN_KEYS}.
+   *
+   * @param maxBreakdownKeys the maximum number of keys
+   */
+  void setMaxBreakdownKeys(final int maxBreakdownKeys) {
+    if (maxBreakdownKeys < 0) {
+      throw new IllegalArgumentException("maxBreakdownKeys must not be negative");
+    }
+    this.maxBreakdownKeys = maxBreakdownKeys;
+  }
+
+  private void forOwner(final String ownerId, final Consumer<Counters> action) {
+    this.forKey(this.owners, ownerId, action);
+  }
+
+  private void forPolicy(final String policy, final Consumer<Counters> action) {
+    this.forKey(this.policies, policy, action);
+  }
+
+  private void forKey(final ConcurrentMap<String, Counters> map, final String key, final Consumer<Counters> action) {
+    if (key == null) {
+      return;
+    }
+    Counters counters = map.get(key);
+    if (counters == null) {
+      if (map.size() >= this.maxBreakdownKeys) {
+        return;
+      }
+      counters = map.computeIfAbsent(key, k -> new Counters());
+    }
+    action.accept(counters);
+  }
+
+  /**
+   * The counters.
+   */
+  private static class Counters {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder expired = new LongAdder();
+    final LongAdder accessDenied = new LongAdder();
+    final LongAdder puts = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder quotaExceeded = new LongAdder();
+
+    CacheStatistics.Counts snapshot() {
+      return new CacheStatistics.Counts(this.hits.sum(), this.misses.sum(), this.expired.sum(),
+          this.accessDenied.sum(), this.puts.sum(), this.evictions.sum(), this.quotaExceeded.sum());
+    }
+  }
+
+}
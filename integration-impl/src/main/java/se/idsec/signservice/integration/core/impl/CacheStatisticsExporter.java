@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.Nonnull;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Exports cache statistics (see {@link CacheStatistics}) to a metrics system without requiring a dependency to the
+ * metrics library. The application implements {@link MetricsSink} using its metrics library (for example, by
+ * registering Micrometer gauges and function counters) and invokes {@link #export(MetricsSink)} when metrics are
+ * collected.
+ * <p>
+ * The following metrics are exported (all with the tag {@code cache} set to the cache name):
+ * </p>
+ * <ul>
+ * <li>{@code signservice.cache.size} and {@code signservice.cache.bytes} - gauges (only if known).</li>
+ * <li>{@code signservice.cache.hits}, {@code .misses}, {@code .expired}, {@code .access-denied}, {@code .puts},
+ * {@code .evictions} and {@code .quota-exceeded} - cumulative counters. These are exported for the totals, and also
+ * with the tag {@code owner} for each owner and with the tag {@code policy} for each policy.</li>
+ * </ul>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class CacheStatisticsExporter {
+
+  /** The prefix for all metric names. */
+  public static final String METRIC_PREFIX = "signservice.cache.";
+
+  /** The cache name. */
+  private final String cacheName;
+
+  /** Supplies the statistics. */
+  private final Supplier<CacheStatistics> statistics;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheName the cache name (used as the value of the {@code cache} tag)
+   * @param statistics supplies the statistics, for example, {@code cache::getStatistics}
+   */
+  public CacheStatisticsExporter(@Nonnull final String cacheName, @Nonnull final Supplier<CacheStatistics> statistics) {
+    this.cacheName = Objects.requireNonNull(cacheName, "cacheName must be set");
+    this.statistics = Objects.requireNonNull(statistics, "statistics must be set");
+  }
+
+  /**
+   * Exports the current statistics to the supplied sink.
+   *
+   * @param sink the metrics sink
+   */
+  public void export(@Nonnull final MetricsSink sink) {
+    final CacheStatistics snapshot = this.statistics.get();
+    final Map<String, String> tags = Map.of("cache", this.cacheName);
+    if (snapshot.getSize() >= 0) {
+      sink.gauge(METRIC_PREFIX + "size", tags, snapshot.getSize());
+    }
+    if (snapshot.getBytes() >= 0) {
+      sink.gauge(METRIC_PREFIX + "bytes", tags, snapshot.getBytes());
+    }
+    exportCounts(sink, tags, snapshot.getTotals());
+    snapshot.getOwners().forEach(
+        (owner, counts) -> exportCounts(sink, Map.of("cache", this.cacheName, "owner", owner), counts));
+    snapshot.getPolicies().forEach(
+        (policy, counts) -> exportCounts(sink, Map.of("cache", this.cacheName, "policy", policy), counts));
+  }
+
+  private static void exportCounts(
+      final MetricsSink sink, final Map<String, String> tags, final CacheStatistics.Counts counts) {
+    sink.counter(METRIC_PREFIX + "hits", tags, counts.getHits());
+    sink.counter(METRIC_PREFIX + "misses", tags, counts.getMisses());
+    sink.counter(METRIC_PREFIX + "expired", tags, counts.getExpired());
+    sink.counter(METRIC_PREFIX + "access-denied", tags, counts.getAccessDenied());
+    sink.counter(METRIC_PREFIX + "puts", tags, counts.getPuts());
+    sink.counter(METRIC_PREFIX + "evictions", tags, counts.getEvictions());
+    sink.counter(METRIC_PREFIX + "quota-exceeded", tags, counts.getQuotaExceeded());
+  }
+
+  /**
+   * Receiver of exported metrics. Implemented by the application using its metrics library.
+   */
+  public interface MetricsSink {
+
+    /**
+     * Receives a gauge value.
+     *
+     * @param name the metric name
+     * @param tags the tags
+     * @param value the current value
+     */
+    void gauge(@Nonnull final String name, @Nonnull final Map<String, String> tags, final long value);
+
+    /**
+     * Receives a counter value.
+     *
+     * @param name the metric name
+     * @param tags the tags
+     * @param value the cumulative value
+     */
+    void counter(@Nonnull final String name, @Nonnull final Map<String, String> tags, final long value);
+
+  }
+
+}
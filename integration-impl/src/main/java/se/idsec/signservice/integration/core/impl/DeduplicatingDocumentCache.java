@@ -0,0 +1,277 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory {@link DocumentCache} that stores each distinct document only once.
+ * <p>
+ * Document bodies are stored keyed by their SHA-256 digest, and each document reference (the ID under which a document
+ * is cached) maps to such a body. A body is reference counted and is released when the last reference to it has been
+ * removed or has expired. This means that if the same document is cached by many callers, for example, when a common
+ * PDF document is prepared by many users, the memory used for the document is constant.
+ * </p>
+ * <p>
+ * Owner checks and expiration apply per reference, exactly as for {@link InMemoryDocumentCache}.
+ * </p>
+ * <p>
+ * Since a stored document may be shared by several callers, the cache never hands out the stored bytes. A document is
+ * copied when it is stored, and {@link #getBytes(String, boolean, String)} returns a copy, so a caller modifying its
+ * array can not affect the documents of other callers.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class DeduplicatingDocumentCache implements DocumentCache {
+
+  /** The references, mapping document references to the digest of the document body. */
+  private final ReferenceIndex references = new ReferenceIndex();
+
+  /** The document bodies, keyed by their digests. */
+  private final Map<String, Body> bodies = new ConcurrentHashMap<>();
+
+  /** {@inheritDoc} */
+  @Override
+  public String get(final String id, final String requesterId) throws NoAccessException {
+    return this.get(id, false, requesterId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String get(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    final byte[] document = this.getBytes(id, remove, requesterId);
+    return document != null ? Base64.getEncoder().encodeToString(document) : null;
+  }
+
+  /**
+   * Adds a Base64-encoded document to the cache. The document is decoded and stored as raw bytes.
+   *
+   * @throws IllegalArgumentException if the document is not Base64-encoded
+   */
+  @Override
+  public void put(final String id, final String object, final String ownerId) {
+    this.putBytes(id, object != null ? Base64.getDecoder().decode(object) : null, ownerId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getBytes(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    final String digest = this.references.get(id, false, requesterId);
+    if (digest == null) {
+      return null;
+    }
+    final Body body = this.bodies.get(digest);
+    if (remove) {
+      this.references.remove(id);
+    }
+    if (body == null) {
+      log.info("{}: Document '{}' is no longer available in cache", CorrelationID.id(), id);
+      return null;
+    }
+    return body.document.clone();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putBytes(final String id, final byte[] document, final String ownerId) {
+    if (document == null) {
+      this.references.remove(id);
+      return;
+    }
+    final String digest = digest(document);
+
+    // Increase the reference count before adding the reference. If the same ID is re-used for the same document, the
+    // release of the previous reference will not drop the body.
+    //
+    this.bodies.compute(digest, (k, b) -> {
+      if (b == null) {
+        return new Body(document.clone());
+      }
+      b.references++;
+      log.debug("{}: Document '{}' is a duplicate - sharing stored document (references: {})",
+          CorrelationID.id(), id, b.references);
+      return b;
+    });
+    this.references.put(id, digest, ownerId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isBinary() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove(final String id) {
+    this.references.remove(id);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    this.references.clearExpired();
+  }
+
+  /**
+   * Gets the number of document references in the cache.
+   *
+   * @return the number of references
+   */
+  public int size() {
+    return this.references.size();
+  }
+
+  /**
+   * Gets the number of distinct documents stored in the cache.
+   *
+   * @return the number of distinct documents
+   */
+  public int getDocumentCount() {
+    return this.bodies.size();
+  }
+
+  /**
+   * Gets the total number of bytes of the distinct documents stored in the cache.
+   *
+   * @return the number of bytes
+   */
+  public long getStoredBytes() {
+    return this.bodies.values().stream().mapToLong(b -> b.document.length).sum();
+  }
+
+  /**
+   * Gets a snapshot of the statistics for this cache. The size is the number of references and the number of bytes
+   * held is the size of the distinct documents.
+   *
+   * @return the cache statistics
+   */
+  public CacheStatistics getStatistics() {
+    return this.references.getStatistics();
+  }
+
+  /**
+   * Assigns the maximum time (in millis) to keep a document reference in the cache. Default is
+   * {@value AbstractIntegrationServiceCache#MAX_AGE}.
+   *
+   * @param maxAge age in millis
+   */
+  public void setMaxAge(final long maxAge) {
+    this.references.setMaxAge(maxAge);
+  }
+
+  /**
+   * Assigns the interval (in millis) at which a background reaper should clear expired references. The default is 0,
+   * meaning that no reaper is started.
+   *
+   * @param reaperInterval the interval in millis
+   */
+  public void setReaperInterval(final long reaperInterval) {
+    this.references.setReaperInterval(reaperInterval);
+  }
+
+  /**
+   * Starts the background reaper (if configured).
+   */
+  @PostConstruct
+  public void afterPropertiesSet() {
+    this.references.afterPropertiesSet();
+  }
+
+  /**
+   * Stops the background reaper (if started).
+   */
+  @PreDestroy
+  public void destroy() {
+    this.references.destroy();
+  }
+
+  /**
+   * Releases one reference to the body with the given digest.
+   *
+   * @param digest the digest
+   */
+  private void release(final String digest) {
+    this.bodies.computeIfPresent(digest, (k, b) -> --b.references > 0 ? b : null);
+  }
+
+  /**
+   * Calculates the hex-encoded SHA-256 digest of the supplied document.
+   *
+   * @param document the document
+   * @return the digest
+   */
+  private static String digest(final byte[] document) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(document));
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new SecurityException(e);
+    }
+  }
+
+  /**
+   * The index of document references.
+   */
+  private class ReferenceIndex extends AbstractInMemoryIntegrationServiceCache<String> {
+
+    /** {@inheritDoc} */
+    @Override
+    protected long getBytesHeld() {
+      return getStoredBytes();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onRemoval(final String id, final CacheEntry<String> entry) {
+      release(entry.getObject());
+    }
+
+  }
+
+  /**
+   * A stored document body along with its reference count. The count is only updated within the compute methods of
+   * the body map.
+   */
+  private static final class Body {
+
+    /** The document bytes. */
+    private final byte[] document;
+
+    /** The number of references to this body. */
+    private int references = 1;
+
+    Body(final byte[] document) {
+      this.document = document;
+    }
+
+  }
+
+}
@@ -17,11 +17,74 @@ package se.idsec.signservice.integration.core.impl;
 
 import se.idsec.signservice.integration.core.DocumentCache;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
 /**
  * An in-memory document cache.
+ * <p>
+ * The cache may be bounded using {@link #setMaxEntries(int)} and {@link #setMaxWeight(long)}. The weight of a cached
+ * document is the length of its Base64 encoding, i.e., approximately the number of bytes that it occupies.
+ * </p>
+ * <p>
+ * If compression is enabled (see {@link #setCompressionEnabled(boolean)}), documents are Base64-decoded before they
+ * are compressed, since the raw bytes compress much better than their Base64 encoding.
+ * </p>
  *
  * @author Martin Lindström (martin@idsec.se)
  * @author Stefan Santesson (stefan@idsec.se)
  */
 public class InMemoryDocumentCache extends AbstractInMemoryIntegrationServiceCache<String> implements DocumentCache {
+
+  /** Marker telling that the serialized document is the Base64-decoded document. */
+  private static final byte BASE64_MARKER = 1;
+
+  /** Marker telling that the serialized document is the UTF-8 encoding of the document. */
+  private static final byte STRING_MARKER = 0;
+
+  /** {@inheritDoc} */
+  @Override
+  protected long getWeight(final String object) {
+    return object.length();
+  }
+
+  /**
+   * Returns the Base64-decoded document (prefixed with a marker byte). If the document is not canonically
+   * Base64-encoded, its UTF-8 encoding is returned.
+   */
+  @Override
+  protected byte[] toBytes(final String object) {
+    byte[] bytes;
+    byte marker = BASE64_MARKER;
+    try {
+      bytes = Base64.getDecoder().decode(object);
+      if (!Base64.getEncoder().encodeToString(bytes).equals(object)) {
+        bytes = object.getBytes(StandardCharsets.UTF_8);
+        marker = STRING_MARKER;
+      }
+    }
+    catch (final IllegalArgumentException e) {
+      bytes = object.getBytes(StandardCharsets.UTF_8);
+      marker = STRING_MARKER;
+    }
+    final byte[] result = new byte[bytes.length + 1];
+    result[0] = marker;
+    System.arraycopy(bytes, 0, result, 1, bytes.length);
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String fromBytes(final byte[] bytes) throws IOException {
+    if (bytes.length == 0) {
+      throw new IOException("Invalid cached document");
+    }
+    if (bytes[0] == BASE64_MARKER) {
+      return Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, 1, bytes.length));
+    }
+    return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+  }
+
 }
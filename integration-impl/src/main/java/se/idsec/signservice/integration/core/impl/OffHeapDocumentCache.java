@@ -0,0 +1,512 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DocumentCache} that keeps the document bodies outside of the Java heap. Only a small index (IDs, owners,
+ * expiration times and document locations) is kept on the heap.
+ * <p>
+ * Documents smaller than the spill threshold (see {@link #setSpillThreshold(int)}) are stored off-heap, as long as the
+ * off-heap limit ({@link #setMaxOffHeapSize(long)}) is not exceeded. Larger documents, and documents that do not fit
+ * within the off-heap limit, are written to files in the configured directory (see {@link #setDirectory(File)}).
+ * </p>
+ * <p>
+ * The off-heap memory is handed out in fixed-size blocks (see {@link #setBlockSize(int)}) from a pool of direct
+ * buffers. A document occupies the blocks needed to hold it, and when the document is removed or expires, its blocks
+ * are returned to the pool and reused. Blocks are allocated lazily, but never beyond the off-heap limit, so the limit is
+ * a real bound for the native memory held by the cache, and it does not depend on when the garbage collector frees
+ * direct buffers.
+ * </p>
+ * <p>
+ * Files are deleted when a document is removed or expires. Files left in the directory by a previous run (for example,
+ * after a crash) are deleted by {@link #afterPropertiesSet()}.
+ * </p>
+ * <p>
+ * The cache stores raw document bytes (see {@link #isBinary()}), and may be used as a drop-in replacement for
+ * {@link InMemoryDocumentCache}. Expired documents are cleared by {@link #clearExpired()}, or by a background reaper
+ * if {@link #setReaperInterval(long)} has been assigned.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class OffHeapDocumentCache implements DocumentCache {
+
+  /** The default spill threshold (256 KiB). */
+  public static final int DEFAULT_SPILL_THRESHOLD = 256 * 1024;
+
+  /** The default maximum size of all off-heap buffers (64 MiB). */
+  public static final long DEFAULT_MAX_OFF_HEAP_SIZE = 64L * 1024 * 1024;
+
+  /** The default size of the off-heap blocks (16 KiB). */
+  public static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+  /** The file suffix for spilled documents. */
+  private static final String FILE_SUFFIX = ".doc";
+
+  /** The index of stored documents. */
+  private final DocumentIndex index = new DocumentIndex();
+
+  /** The current total size of the off-heap blocks used by documents. */
+  private final AtomicLong offHeapSize = new AtomicLong();
+
+  /** The total size of the off-heap blocks that have been allocated. */
+  private final AtomicLong allocatedOffHeapSize = new AtomicLong();
+
+  /** Allocated off-heap blocks that currently are not used. */
+  private final Queue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<>();
+
+  /** Documents larger than this are written to disk. */
+  private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+  /** The maximum total size of the off-heap buffers. */
+  private long maxOffHeapSize = DEFAULT_MAX_OFF_HEAP_SIZE;
+
+  /** The size of the off-heap blocks. */
+  private int blockSize = DEFAULT_BLOCK_SIZE;
+
+  /** The directory where spilled documents are stored. */
+  private Path directory;
+
+  /** {@inheritDoc} */
+  @Override
+  public String get(final String id, final String requesterId) throws NoAccessException {
+    return this.get(id, false, requesterId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String get(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    final byte[] document = this.getBytes(id, remove, requesterId);
+    return document != null ? Base64.getEncoder().encodeToString(document) : null;
+  }
+
+  /**
+   * Adds a Base64-encoded document to the cache. The document is decoded and stored as raw bytes.
+   *
+   * @throws IllegalArgumentException if the document is not Base64-encoded
+   */
+  @Override
+  public void put(final String id, final String object, final String ownerId) {
+    this.putBytes(id, object != null ? Base64.getDecoder().decode(object) : null, ownerId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getBytes(final String id, final boolean remove, final String requesterId) throws NoAccessException {
+    final StoredDocument document = this.index.get(id, false, requesterId);
+    if (document == null) {
+      return null;
+    }
+    final byte[] bytes = this.read(id, document);
+    if (remove) {
+      this.index.remove(id);
+    }
+    return bytes;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putBytes(final String id, final byte[] document, final String ownerId) {
+    if (document == null) {
+      this.index.remove(id);
+      return;
+    }
+    this.index.put(id, this.store(document), ownerId);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isBinary() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove(final String id) {
+    this.index.remove(id);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearExpired() {
+    this.index.clearExpired();
+  }
+
+  /**
+   * Gets the number of documents in the cache.
+   *
+   * @return the number of documents
+   */
+  public int size() {
+    return this.index.size();
+  }
+
+  /**
+   * Gets a snapshot of the statistics for this cache. The number of bytes held includes documents stored on disk.
+   *
+   * @return the cache statistics
+   */
+  public CacheStatistics getStatistics() {
+    return this.index.getStatistics();
+  }
+
+  /**
+   * Gets the total size of the off-heap blocks that are used by the documents currently stored off-heap.
+   *
+   * @return the off-heap size in bytes
+   */
+  public long getOffHeapSize() {
+    return this.offHeapSize.get();
+  }
+
+  /**
+   * Gets the total size of the off-heap blocks that have been allocated (used or pooled). This never exceeds the
+   * maximum off-heap size.
+   *
+   * @return the allocated off-heap size in bytes
+   */
+  public long getAllocatedOffHeapSize() {
+    return this.allocatedOffHeapSize.get();
+  }
+
+  /**
+   * Stores the supplied document off-heap or on disk.
+   *
+   * @param document the document bytes
+   * @return a stored document
+   */
+  private StoredDocument store(final byte[] document) {
+    final int blockCount = Math.max(1, (document.length + this.blockSize - 1) / this.blockSize);
+    if (document.length <= this.spillThreshold && this.reserveOffHeap((long) blockCount * this.blockSize)) {
+      final ByteBuffer[] blocks = new ByteBuffer[blockCount];
+      for (int i = 0; i < blockCount; i++) {
+        blocks[i] = this.acquireBlock();
+        final int offset = i * this.blockSize;
+        blocks[i].put(document, offset, Math.min(this.blockSize, document.length - offset));
+      }
+      return new StoredDocument(blocks, null, document.length);
+    }
+    try {
+      final Path file = Files.createFile(this.getDirectory().resolve(UUID.randomUUID() + FILE_SUFFIX));
+      Files.write(file, document);
+      return new StoredDocument(null, file.toString(), document.length);
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to write document to cache directory", e);
+    }
+  }
+
+  /**
+   * Reads the bytes of a stored document.
+   *
+   * @param id the document ID (for logging)
+   * @param document the stored document
+   * @return the document bytes, or null if the document no longer is available
+   */
+  private byte[] read(final String id, final StoredDocument document) {
+    if (document.blocks != null) {
+      synchronized (document) {
+        if (document.released) {
+          // The document was removed after we got hold of it ...
+          log.info("{}: Document '{}' is no longer available in cache", CorrelationID.id(), id);
+          return null;
+        }
+        final byte[] bytes = new byte[document.length];
+        for (int i = 0; i < document.blocks.length; i++) {
+          final int offset = i * this.blockSize;
+          document.blocks[i].get(0, bytes, offset, Math.min(this.blockSize, document.length - offset));
+        }
+        return bytes;
+      }
+    }
+    try {
+      return Files.readAllBytes(Path.of(document.file));
+    }
+    catch (final NoSuchFileException e) {
+      // The document was removed after we got hold of it ...
+      log.info("{}: Document '{}' is no longer available in cache", CorrelationID.id(), id);
+      return null;
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to read document from cache directory", e);
+    }
+  }
+
+  /**
+   * Releases the resources held by a stored document.
+   *
+   * @param document the stored document
+   */
+  private void release(final StoredDocument document) {
+    if (document.blocks != null) {
+      synchronized (document) {
+        if (document.released) {
+          return;
+        }
+        document.released = true;
+      }
+      // Return the blocks to the pool before the reservation is released, so that a thread that has reserved space
+      // always will find the blocks it needs ...
+      for (final ByteBuffer block : document.blocks) {
+        this.freeBlocks.add(block.clear());
+      }
+      this.offHeapSize.addAndGet(-(long) document.blocks.length * this.blockSize);
+    }
+    else if (document.file != null) {
+      try {
+        Files.deleteIfExists(Path.of(document.file));
+      }
+      catch (final IOException e) {
+        log.warn("Failed to delete cached document file {}", document.file, e);
+      }
+    }
+  }
+
+  /**
+   * Reserves off-heap space for a document.
+   *
+   * @param size the size to reserve
+   * @return true if the space was reserved and false if the off-heap limit would be exceeded
+   */
+  private boolean reserveOffHeap(final long size) {
+    long current;
+    do {
+      current = this.offHeapSize.get();
+      if (current + size > this.maxOffHeapSize) {
+        return false;
+      }
+    }
+    while (!this.offHeapSize.compareAndSet(current, current + size));
+    return true;
+  }
+
+  /**
+   * Gets an off-heap block. A pooled block is used if available. Otherwise, a new block is allocated, unless the off-heap
+   * limit has been reached, in which case we wait for a block to be returned to the pool. Since space has been reserved
+   * (see {@link #reserveOffHeap(long)}), a block is either available for allocation or about to be returned.
+   *
+   * @return a cleared block
+   */
+  private ByteBuffer acquireBlock() {
+    while (true) {
+      final ByteBuffer block = this.freeBlocks.poll();
+      if (block != null) {
+        return block;
+      }
+      final long allocated = this.allocatedOffHeapSize.get();
+      if (allocated + this.blockSize <= this.maxOffHeapSize
+          && this.allocatedOffHeapSize.compareAndSet(allocated, allocated + this.blockSize)) {
+        return ByteBuffer.allocateDirect(this.blockSize);
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Deletes document files left in the directory, for example, after a crash.
+   *
+   * @param directory the directory
+   * @throws IOException for errors listing the directory
+   */
+  private static void deleteStaleFiles(final Path directory) throws IOException {
+    int deleted = 0;
+    try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+      for (final Path file : files) {
+        if (Files.isRegularFile(file) && Files.deleteIfExists(file)) {
+          deleted++;
+        }
+      }
+    }
+    if (deleted > 0) {
+      log.info("Deleted {} stale document file(s) from {}", deleted, directory);
+    }
+  }
+
+  /**
+   * Gets the directory for spilled documents. If no directory has been configured, a temporary directory is created.
+   *
+   * @return the directory
+   * @throws IOException if the directory can not be created
+   */
+  private synchronized Path getDirectory() throws IOException {
+    if (this.directory == null) {
+      this.directory = Files.createTempDirectory("signservice-document-cache");
+      log.info("Created temporary directory {} for document cache", this.directory);
+    }
+    return this.directory;
+  }
+
+  /**
+   * Assigns the directory where documents that are spilled to disk are stored. The directory should be dedicated to
+   * this cache. If not assigned, a temporary directory is created.
+   *
+   * @param directory the directory
+   */
+  public synchronized void setDirectory(final File directory) {
+    this.directory = directory.toPath();
+  }
+
+  /**
+   * Assigns the size (in bytes) above which documents are written to disk instead of being stored off-heap. The default
+   * is {@value #DEFAULT_SPILL_THRESHOLD}. A value of 0 means that all documents are written to disk.
+   *
+   * @param spillThreshold the threshold in bytes
+   */
+  public void setSpillThreshold(final int spillThreshold) {
+    this.spillThreshold = spillThreshold;
+  }
+
+  /**
+   * Assigns the maximum total size (in bytes) of the off-heap memory held by the cache. When the limit is reached,
+   * documents are written to disk. The default is {@value #DEFAULT_MAX_OFF_HEAP_SIZE}. Should be assigned before the
+   * cache is used.
+   *
+   * @param maxOffHeapSize the maximum size in bytes
+   */
+  public void setMaxOffHeapSize(final long maxOffHeapSize) {
+    this.maxOffHeapSize = maxOffHeapSize;
+  }
+
+  /**
+   * Assigns the size (in bytes) of the off-heap blocks. A document stored off-heap occupies a whole number of blocks,
+   * so a smaller block size wastes less memory for small documents. The default is {@value #DEFAULT_BLOCK_SIZE}.
+   * Should be assigned before the cache is used.
+   *
+   * @param blockSize the block size in bytes
+   */
+  public void setBlockSize(final int blockSize) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be greater than 0");
+    }
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Assigns the maximum time (in millis) to keep a document in the cache. Default is
+   * {@value AbstractIntegrationServiceCache#MAX_AGE}.
+   *
+   * @param maxAge age in millis
+   */
+  public void setMaxAge(final long maxAge) {
+    this.index.setMaxAge(maxAge);
+  }
+
+  /**
+   * Assigns the interval (in millis) at which a background reaper should clear expired documents. The default is 0,
+   * meaning that no reaper is started.
+   *
+   * @param reaperInterval the interval in millis
+   */
+  public void setReaperInterval(final long reaperInterval) {
+    this.index.setReaperInterval(reaperInterval);
+  }
+
+  /**
+   * Creates the directory for spilled documents (if needed), deletes document files left by a previous run, and starts
+   * the background reaper (if configured).
+   *
+   * @throws IOException if the directory can not be created
+   */
+  @PostConstruct
+  public void afterPropertiesSet() throws IOException {
+    final Path dir = Files.createDirectories(this.getDirectory());
+    if (this.index.size() == 0) {
+      deleteStaleFiles(dir);
+    }
+    this.index.afterPropertiesSet();
+  }
+
+  /**
+   * Stops the background reaper and releases all stored documents.
+   */
+  @PreDestroy
+  public void destroy() {
+    this.index.destroy();
+    this.index.clear();
+  }
+
+  /**
+   * The on-heap index of stored documents.
+   */
+  private class DocumentIndex extends AbstractInMemoryIntegrationServiceCache<StoredDocument> {
+
+    /** {@inheritDoc} */
+    @Override
+    protected long getWeight(final StoredDocument object) {
+      return object.length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onRemoval(final String id, final CacheEntry<StoredDocument> entry) {
+      release(entry.getObject());
+    }
+
+  }
+
+  /**
+   * Reference to a document stored off-heap or on disk.
+   */
+  private static final class StoredDocument implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -3540893312870358213L;
+
+    /** The off-heap blocks holding the document (null if stored on disk). */
+    private final transient ByteBuffer[] blocks;
+
+    /** The file holding the document (null if stored off-heap). */
+    private final String file;
+
+    /** The document length. */
+    private final int length;
+
+    /** Whether the blocks have been returned to the pool. */
+    private transient boolean released;
+
+    StoredDocument(final ByteBuffer[] blocks, final String file, final int length) {
+      this.blocks = blocks;
+      this.file = file;
+      this.length = length;
+    }
+
+  }
+
+}
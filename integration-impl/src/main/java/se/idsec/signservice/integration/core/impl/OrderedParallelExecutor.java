@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Utility for executing a number of indexed tasks, possibly in parallel, and collecting the results in index order.
+ * <p>
+ * If no executor is given, or if there is only one task, all tasks are executed sequentially in the calling thread.
+ * Otherwise, each task is submitted to the executor and the calling thread waits for the results in index order. The
+ * {@link CorrelationID} of the calling thread is propagated to the worker threads, and the worker thread's previous
+ * correlation ID is restored when the task has completed (the executor may run tasks in the calling thread).
+ * </p>
+ * <p>
+ * Error reporting is deterministic. If several tasks fail, the error from the task having the lowest index is thrown,
+ * regardless of which task that failed first in time. The remaining tasks are cancelled.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class OrderedParallelExecutor {
+
+  /**
+   * Executes {@code count} tasks and returns their results ordered by index.
+   *
+   * @param executor the executor to use (if {@code null} the tasks are executed in the calling thread)
+   * @param count the number of tasks
+   * @param task the task to execute for each index
+   * @param interruptHandler creates the exception that is thrown if the calling thread is interrupted while waiting
+   *     for the tasks to complete
+   * @param <R> the result type
+   * @param <E> the checked exception type that the task may throw
+   * @return a list of results where the element at position {@code i} is the result for index {@code i}
+   * @throws E the exception thrown by the failing task having the lowest index, or the exception created by
+   *     {@code interruptHandler}
+   */
+  @Nonnull
+  public static <R, E extends Exception> List<R> invokeAll(@Nullable final Executor executor, final int count,
+      @Nonnull final IndexedTask<R, E> task,
+      @Nonnull final Function<InterruptedException, ? extends E> interruptHandler) throws E {
+
+    final List<R> results = new ArrayList<>(count);
+
+    if (executor == null || count <= 1) {
+      for (int i = 0; i < count; i++) {
+        results.add(task.execute(i));
+      }
+      return results;
+    }
+
+    final String correlationId = CorrelationID.id();
+    final List<CompletableFuture<R>> futures = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        final String previousCorrelationId = CorrelationID.id();
+        if (correlationId != null) {
+          CorrelationID.init(correlationId);
+        }
+        try {
+          return task.execute(index);
+        }
+        catch (final RuntimeException e) {
+          throw e;
+        }
+        catch (final Exception e) {
+          throw new TaskException(e);
+        }
+        finally {
+          if (previousCorrelationId != null) {
+            CorrelationID.init(previousCorrelationId);
+          }
+          else {
+            CorrelationID.clear();
+          }
+        }
+      }, executor));
+    }
+
+    try {
+      for (final CompletableFuture<R> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    }
+    catch (final ExecutionException e) {
+      cancelAll(futures);
+      throw OrderedParallelExecutor.<E>unwrap(e.getCause());
+    }
+    catch (final InterruptedException e) {
+      cancelAll(futures);
+      Thread.currentThread().interrupt();
+      log.warn("{}: Interrupted while waiting for parallel tasks to complete", correlationId);
+      throw interruptHandler.apply(e);
+    }
+  }
+
+  /**
+   * Cancels all futures that have not yet completed.
+   *
+   * @param futures the futures
+   */
+  private static void cancelAll(final List<? extends CompletableFuture<?>> futures) {
+    futures.forEach(f -> f.cancel(true));
+  }
+
+  /**
+   * Re-throws the original exception thrown by a task.
+   *
+   * @param cause the cause reported by the future
+   * @param <E> the checked exception type
+   * @return never returns
+   * @throws E the checked exception thrown by the task
+   */
+  @SuppressWarnings("unchecked")
+  private static <E extends Exception> E unwrap(final Throwable cause) throws E {
+    if (cause instanceof final TaskException taskException) {
+      throw (E) taskException.getCause();
+    }
+    if (cause instanceof final RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    if (cause instanceof final Error error) {
+      throw error;
+    }
+    throw new IllegalStateException(cause);
+  }
+
+  /**
+   * A task that is executed for a given index.
+   *
+   * @param <R> the result type
+   * @param <E> the checked exception type
+   */
+  @FunctionalInterface
+  public interface IndexedTask<R, E extends Exception> {
+
+    /**
+     * Executes the task for the given index.
+     *
+     * @param index the index (0-based)
+     * @return the result
+     * @throws E for task errors
+     */
+    R execute(final int index) throws E;
+  }
+
+  /**
+   * Used to transport checked exceptions out of the worker threads.
+   */
+  private static class TaskException extends RuntimeException {
+
+    /** For serializing. */
+    @Serial
+    private static final long serialVersionUID = -2380137652219364721L;
+
+    TaskException(final Exception cause) {
+      super(cause);
+    }
+  }
+
+  // Hidden constructor
+  private OrderedParallelExecutor() {
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the number of entries and bytes that each owner holds in a cache, and enforces per-owner limits.
+ * <p>
+ * The usage of an owner is updated atomically using {@link ConcurrentMap#compute}, so the check is O(1) and callers
+ * with different owners do not contend with each other. Owners that no longer hold any entries are removed.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+class OwnerQuota {
+
+  /** The maximum number of entries per owner. 0 means no limit. */
+  private final int maxEntries;
+
+  /** The maximum number of bytes per owner. 0 means no limit. */
+  private final long maxBytes;
+
+  /** The usage per owner. */
+  private final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries the maximum number of entries per owner (0 means no limit)
+   * @param maxBytes the maximum number of bytes per owner (0 means no limit)
+   */
+  OwnerQuota(final int maxEntries, final long maxBytes) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Tries to acquire room for an entry.
+   *
+   * @param ownerId the owner
+   * @param bytes the size of the entry
+   * @return true if the entry fits within the owner's quota, and false otherwise
+   */
+  boolean tryAcquire(final String ownerId, final long bytes) {
+    final boolean[] acquired = new boolean[1];
+    this.usages.compute(ownerId, (o, usage) -> {
+      final Usage current = usage != null ? usage : Usage.EMPTY;
+      if (!fits(current.entries() + 1, this.maxEntries) || !fits(current.bytes() + bytes, this.maxBytes)) {
+        return usage;
+      }
+      acquired[0] = true;
+      return new Usage(current.entries() + 1, current.bytes() + bytes);
+    });
+    return acquired[0];
+  }
+
+  /**
+   * Releases an entry that was previously acquired. The owner is forgotten when it no longer holds any entries.
+   *
+   * @param ownerId the owner
+   * @param bytes the size of the entry
+   */
+  void release(final String ownerId, final long bytes) {
+    this.usages.computeIfPresent(ownerId,
+        (o, usage) -> usage.entries() > 1 ? new Usage(usage.entries() - 1, usage.bytes() - bytes) : null);
+  }
+
+  /**
+   * Gets the number of entries held by the owner.
+   *
+   * @param ownerId the owner
+   * @return the number of entries
+   */
+  long getEntries(final String ownerId) {
+    final Usage usage = this.usages.get(ownerId);
+    return usage != null ? usage.entries() : 0L;
+  }
+
+  /**
+   * Gets the number of bytes held by the owner.
+   *
+   * @param ownerId the owner
+   * @return the number of bytes
+   */
+  long getBytes(final String ownerId) {
+    final Usage usage = this.usages.get(ownerId);
+    return usage != null ? usage.bytes() : 0L;
+  }
+
+  /**
+   * Gets the number of owners that currently hold entries.
+   *
+   * @return the number of owners
+   */
+  int getOwnerCount() {
+    return this.usages.size();
+  }
+
+  /**
+   * Tells whether {@code value} is within {@code limit} (0 means no limit).
+   */
+  private static boolean fits(final long value, final long limit) {
+    return limit <= 0 || value <= limit;
+  }
+
+  /**
+   * The usage for an owner.
+   *
+   * @param entries the number of entries
+   * @param bytes the number of bytes
+   */
+  private record Usage(long entries, long bytes) {
+
+    /** An owner without entries. */
+    static final Usage EMPTY = new Usage(0L, 0L);
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import java.io.Serial;
+
+/**
+ * Exception thrown by a cache when an object can not be added since its owner has exceeded its quota (see
+ * {@link AbstractInMemoryIntegrationServiceCache#setMaxEntriesPerOwner(int)} and
+ * {@link AbstractInMemoryIntegrationServiceCache#setMaxBytesPerOwner(long)}).
+ * <p>
+ * The exception is unchecked since the cache interfaces do not declare any exceptions. The service layer translates it
+ * into a {@link se.idsec.signservice.integration.core.error.impl.QuotaExceededException QuotaExceededException}.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class OwnerQuotaExceededException extends RuntimeException {
+
+  @Serial
+  private static final long serialVersionUID = -1717960384283542893L;
+
+  /** The owner. */
+  private final String ownerId;
+
+  /**
+   * Constructor.
+   *
+   * @param ownerId the owner that has exceeded its quota
+   * @param message the error message
+   */
+  public OwnerQuotaExceededException(final String ownerId, final String message) {
+    super(message);
+    this.ownerId = ownerId;
+  }
+
+  /**
+   * Gets the owner that has exceeded its quota.
+   *
+   * @return the owner id
+   */
+  public String getOwnerId() {
+    return this.ownerId;
+  }
+
+}
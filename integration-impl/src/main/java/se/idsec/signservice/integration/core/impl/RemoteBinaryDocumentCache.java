@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import se.idsec.signservice.integration.core.BinaryDocumentCache;
+
+/**
+ * A document cache that stores documents as raw bytes in a shared key-value server (see
+ * {@link AbstractRemoteIntegrationServiceCache}). Use {@link BinaryDocumentCacheAdapter} to use it as a
+ * {@link se.idsec.signservice.integration.core.DocumentCache DocumentCache}.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class RemoteBinaryDocumentCache extends AbstractRemoteIntegrationServiceCache<byte[]>
+    implements BinaryDocumentCache {
+
+  /** The default key prefix. */
+  public static final String DEFAULT_KEY_PREFIX = "signservice:document:";
+
+  /**
+   * Default constructor.
+   */
+  public RemoteBinaryDocumentCache() {
+    super(DEFAULT_KEY_PREFIX);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected byte[] toBytes(final byte[] object) {
+    return object;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected byte[] fromBytes(final byte[] bytes) {
+    return bytes;
+  }
+
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.utils.AssertThat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal client for key-value servers speaking the Redis serialization protocol (RESP), for example, Redis or
+ * Valkey.
+ * <p>
+ * The client holds a fixed pool of connections. Commands are pipelined, i.e., several commands (from one or several
+ * threads) may be written to a connection before their replies have been received. The replies are read by a reader
+ * thread per connection and dispatched in order. Broken connections are replaced when they are next used.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class RespClient {
+
+  /** The default number of connections. */
+  public static final int DEFAULT_POOL_SIZE = 4;
+
+  /** The default timeout (in millis) for connecting and waiting for replies. */
+  public static final long DEFAULT_TIMEOUT = 5000L;
+
+  /** The server host. */
+  private String host = "localhost";
+
+  /** The server port. */
+  private int port = 6379;
+
+  /** Optional password. */
+  private String password;
+
+  /** The number of connections. */
+  private int poolSize = DEFAULT_POOL_SIZE;
+
+  /** The timeout (in millis). */
+  private long timeout = DEFAULT_TIMEOUT;
+
+  /** The connections. */
+  private Connection[] connections;
+
+  /** Counter used to select connections. */
+  private final AtomicInteger counter = new AtomicInteger();
+
+  /**
+   * Executes a command and waits for its reply.
+   *
+   * @param command the command and its arguments
+   * @return the reply ({@code byte[]} for bulk strings, {@code String} for simple strings, {@code Long} for integers,
+   *     {@code List} for arrays or {@code null})
+   * @throws IOException for communication errors, timeouts and error replies
+   */
+  public Object execute(@Nonnull final byte[]... command) throws IOException {
+    return this.pipeline(List.<byte[][]>of(command)).get(0);
+  }
+
+  /**
+   * Executes a sequence of commands in a pipeline, i.e., all commands are written before the replies are read.
+   *
+   * @param commands the commands
+   * @return the replies (see {@link #execute(byte[]...)})
+   * @throws IOException for communication errors, timeouts and error replies
+   */
+  public List<Object> pipeline(@Nonnull final List<byte[][]> commands) throws IOException {
+    final List<CompletableFuture<Object>> futures = this.getConnection().send(commands);
+    final List<Object> replies = new ArrayList<>(futures.size());
+    try {
+      for (final CompletableFuture<Object> future : futures) {
+        replies.add(future.get(this.timeout, TimeUnit.MILLISECONDS));
+      }
+    }
+    catch (final ExecutionException e) {
+      throw e.getCause() instanceof final IOException ioe ? ioe : new IOException(e.getCause());
+    }
+    catch (final TimeoutException e) {
+      throw new IOException("Timeout waiting for reply from " + this.host + ":" + this.port, e);
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for reply", e);
+    }
+    return replies;
+  }
+
+  /**
+   * Gets a connection from the pool (round-robin). A broken connection is replaced.
+   *
+   * @return a connection
+   * @throws IOException if a new connection can not be established
+   */
+  private Connection getConnection() throws IOException {
+    if (this.connections == null) {
+      throw new IllegalStateException("Client has not been initialized");
+    }
+    final int slot = Math.floorMod(this.counter.getAndIncrement(), this.connections.length);
+    Connection connection = this.connections[slot];
+    if (connection == null || connection.broken) {
+      synchronized (this) {
+        connection = this.connections[slot];
+        if (connection == null || connection.broken) {
+          connection = new Connection();
+          this.connections[slot] = connection;
+        }
+      }
+    }
+    return connection;
+  }
+
+  /**
+   * Assigns the server host. The default is {@code localhost}.
+   *
+   * @param host the host
+   */
+  public void setHost(final String host) {
+    this.host = host;
+  }
+
+  /**
+   * Assigns the server port. The default is 6379.
+   *
+   * @param port the port
+   */
+  public void setPort(final int port) {
+    this.port = port;
+  }
+
+  /**
+   * Assigns the password used to authenticate to the server (if required).
+   *
+   * @param password the password
+   */
+  public void setPassword(final String password) {
+    this.password = password;
+  }
+
+  /**
+   * Assigns the number of connections. The default is {@value #DEFAULT_POOL_SIZE}.
+   *
+   * @param poolSize the number of connections
+   */
+  public void setPoolSize(final int poolSize) {
+    this.poolSize = poolSize;
+  }
+
+  /**
+   * Assigns the timeout (in millis) for connecting and waiting for replies. The default is {@value #DEFAULT_TIMEOUT}.
+   *
+   * @param timeout the timeout in millis
+   */
+  public void setTimeout(final long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Sets up the connection pool. Connections are established when they are first used.
+   */
+  @PostConstruct
+  public synchronized void afterPropertiesSet() {
+    AssertThat.isNotNull(this.host, "The 'host' property must be assigned");
+    if (this.poolSize <= 0) {
+      throw new IllegalArgumentException("The 'poolSize' property must be greater than 0");
+    }
+    if (this.connections == null) {
+      this.connections = new Connection[this.poolSize];
+    }
+  }
+
+  /**
+   * Closes all connections.
+   */
+  @PreDestroy
+  public synchronized void destroy() {
+    if (this.connections != null) {
+      for (final Connection connection : this.connections) {
+        if (connection != null) {
+          connection.close(new IOException("Client closed"));
+        }
+      }
+      this.connections = null;
+    }
+  }
+
+  /**
+   * A connection to the server.
+   */
+  private class Connection {
+
+    /** The socket. */
+    private final Socket socket;
+
+    /** The output stream. */
+    private final OutputStream out;
+
+    /** Replies that we are waiting for. */
+    private final Queue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+
+    /** Whether the connection is broken. */
+    private volatile boolean broken;
+
+    /**
+     * Connects to the server and starts the reader thread.
+     *
+     * @throws IOException for connection errors
+     */
+    Connection() throws IOException {
+      this.socket = new Socket();
+      this.socket.setTcpNoDelay(true);
+      this.socket.connect(new InetSocketAddress(host, port), (int) timeout);
+      this.out = new BufferedOutputStream(this.socket.getOutputStream());
+      final InputStream in = new BufferedInputStream(this.socket.getInputStream());
+
+      final Thread reader = new Thread(() -> this.read(in), "resp-client-" + host + ":" + port);
+      reader.setDaemon(true);
+      reader.start();
+
+      if (password != null) {
+        final CompletableFuture<Object> auth =
+            this.send(List.<byte[][]>of(new byte[][] { bytes("AUTH"), bytes(password) })).get(0);
+        try {
+          auth.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (final Exception e) {
+          this.close(new IOException("Authentication failed", e));
+          throw new IOException("Failed to authenticate to " + host + ":" + port, e);
+        }
+      }
+      log.debug("Connected to {}:{}", host, port);
+    }
+
+    /**
+     * Writes the supplied commands to the server.
+     *
+     * @param commands the commands
+     * @return futures for the replies
+     * @throws IOException for write errors
+     */
+    List<CompletableFuture<Object>> send(final List<byte[][]> commands) throws IOException {
+      final List<CompletableFuture<Object>> futures = new ArrayList<>(commands.size());
+      synchronized (this.out) {
+        if (this.broken) {
+          throw new IOException("Connection to " + host + ":" + port + " is broken");
+        }
+        try {
+          for (final byte[][] command : commands) {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            this.pending.add(future);
+            futures.add(future);
+            writeCommand(this.out, command);
+          }
+          this.out.flush();
+        }
+        catch (final IOException e) {
+          this.close(e);
+          throw e;
+        }
+      }
+      return futures;
+    }
+
+    /**
+     * The reader loop. Reads replies and completes the pending futures in order.
+     *
+     * @param in the input stream
+     */
+    private void read(final InputStream in) {
+      try {
+        while (true) {
+          final Object reply = readReply(in);
+          final CompletableFuture<Object> future = this.pending.poll();
+          if (future == null) {
+            throw new IOException("Received unexpected reply");
+          }
+          if (reply instanceof final ErrorReply error) {
+            future.completeExceptionally(new IOException("Server error: " + error.message()));
+          }
+          else {
+            future.complete(reply);
+          }
+        }
+      }
+      catch (final IOException e) {
+        if (!this.broken) {
+          log.info("Connection to {}:{} closed - {}", host, port, e.getMessage());
+        }
+        this.close(e);
+      }
+      catch (final RuntimeException e) {
+        log.warn("Failed to process reply from {}:{}", host, port, e);
+        this.close(new IOException("Failed to process reply", e));
+      }
+    }
+
+    /**
+     * Closes the connection and fails all pending replies. The pending replies are drained while holding the output
+     * lock, so a concurrent {@link #send(List)} either fails, or has its futures failed here.
+     *
+     * @param cause the cause
+     */
+    void close(final IOException cause) {
+      this.broken = true;
+      try {
+        this.socket.close();
+      }
+      catch (final IOException ignored) {
+      }
+      synchronized (this.out) {
+        CompletableFuture<Object> future;
+        while ((future = this.pending.poll()) != null) {
+          future.completeExceptionally(cause);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Writes a command as a RESP array of bulk strings.
+   *
+   * @param out the stream
+   * @param command the command
+   * @throws IOException for write errors
+   */
+  static void writeCommand(final OutputStream out, final byte[][] command) throws IOException {
+    out.write(bytes("*" + command.length + "\r\n"));
+    for (final byte[] arg : command) {
+      out.write(bytes("$" + arg.length + "\r\n"));
+      out.write(arg);
+      out.write('\r');
+      out.write('\n');
+    }
+  }
+
+  /**
+   * Reads a RESP value.
+   *
+   * @param in the stream
+   * @return the value
+   * @throws IOException for read errors
+   */
+  static Object readReply(final InputStream in) throws IOException {
+    final int type = in.read();
+    if (type < 0) {
+      throw new EOFException("Connection closed");
+    }
+    final String line = readLine(in);
+    switch (type) {
+    case '+':
+      return line;
+    case '-':
+      return new ErrorReply(line);
+    case ':':
+      return parseLong(line);
+    case '$': {
+      final int length = parseInt(line);
+      if (length < 0) {
+        return null;
+      }
+      final byte[] data = in.readNBytes(length);
+      if (data.length != length || in.read() != '\r' || in.read() != '\n') {
+        throw new EOFException("Unexpected end of bulk string");
+      }
+      return data;
+    }
+    case '*': {
+      final int count = parseInt(line);
+      if (count < 0) {
+        return null;
+      }
+      final List<Object> list = new ArrayList<>(Math.min(count, 1024));
+      for (int i = 0; i < count; i++) {
+        list.add(readReply(in));
+      }
+      return list;
+    }
+    default:
+      throw new IOException("Invalid reply type: " + (char) type);
+    }
+  }
+
+  /**
+   * Parses an integer from a reply.
+   *
+   * @param line the reply line
+   * @return the integer
+   * @throws IOException if the line is not a valid integer
+   */
+  private static int parseInt(final String line) throws IOException {
+    try {
+      return Integer.parseInt(line);
+    }
+    catch (final NumberFormatException e) {
+      throw new IOException("Invalid length in reply: " + line, e);
+    }
+  }
+
+  /**
+   * Parses a long from a reply.
+   *
+   * @param line the reply line
+   * @return the long
+   * @throws IOException if the line is not a valid integer
+   */
+  private static long parseLong(final String line) throws IOException {
+    try {
+      return Long.parseLong(line);
+    }
+    catch (final NumberFormatException e) {
+      throw new IOException("Invalid integer reply: " + line, e);
+    }
+  }
+
+  /**
+   * Reads a CRLF terminated line.
+   *
+   * @param in the stream
+   * @return the line
+   * @throws IOException for read errors
+   */
+  static String readLine(final InputStream in) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\r') {
+      if (c < 0) {
+        throw new EOFException("Unexpected end of line");
+      }
+      sb.append((char) c);
+    }
+    if (in.read() != '\n') {
+      throw new IOException("Invalid line ending");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Gets the UTF-8 bytes of a string.
+   *
+   * @param s the string
+   * @return the bytes
+   */
+  static byte[] bytes(final String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * An error reply.
+   *
+   * @param message the error message
+   */
+  record ErrorReply(String message) {
+  }
+
+}
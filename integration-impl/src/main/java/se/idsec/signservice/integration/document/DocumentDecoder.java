@@ -15,6 +15,11 @@
  */
 package se.idsec.signservice.integration.document;
 
+import se.idsec.signservice.integration.core.error.ErrorCode;
+
+import java.io.IOException;
+import java.util.Base64;
+
 /**
  * Document decoder interface.
  *
@@ -33,4 +38,44 @@ public interface DocumentDecoder<T> {
    */
   T decodeDocument(final String content) throws DocumentProcessingException;
 
+  /**
+   * Given the raw document bytes, the document object is returned.
+   * <p>
+   * The default implementation Base64-encodes the bytes and invokes {@link #decodeDocument(String)}. Implementations
+   * should override this method to decode the bytes directly.
+   * </p>
+   *
+   * @param content the document bytes
+   * @return the document object
+   * @throws DocumentProcessingException for decoding errors
+   */
+  default T decodeDocument(final byte[] content) throws DocumentProcessingException {
+    return this.decodeDocument(Base64.getEncoder().encodeToString(content));
+  }
+
+  /**
+   * Given a document source, the document object is returned.
+   * <p>
+   * The default implementation invokes {@link #decodeDocument(String)} for sources created from a Base64 encoded
+   * string, and otherwise reads the source into a byte array and invokes {@link #decodeDocument(byte[])}.
+   * Implementations that can parse the document from a stream should override this method so that large documents
+   * are not read into memory more than needed.
+   * </p>
+   *
+   * @param source the document source
+   * @return the document object
+   * @throws DocumentProcessingException for decoding errors
+   */
+  default T decodeDocument(final DocumentSource source) throws DocumentProcessingException {
+    if (source.getBase64() != null) {
+      return this.decodeDocument(source.getBase64());
+    }
+    try {
+      return this.decodeDocument(source.toByteArray());
+    }
+    catch (final IOException | IllegalArgumentException e) {
+      throw new DocumentProcessingException(new ErrorCode.Code("decode"), "Failed to read document", e);
+    }
+  }
+
 }
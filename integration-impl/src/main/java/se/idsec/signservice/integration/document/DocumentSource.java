@@ -0,0 +1,350 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document;
+
+import jakarta.annotation.Nonnull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * The contents of a document that is to be processed. A document source makes it possible to pass a document as a
+ * file, a stream or a buffer, with or without Base64 encoding, without first reading it into a {@code byte[]} or a
+ * {@code String}.
+ * <p>
+ * Base64 encoded sources are decoded on the fly when read.
+ * </p>
+ * <p>
+ * A source created from an {@link InputStream} can only be read once (see {@link #isRepeatable()}).
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public final class DocumentSource {
+
+  /** The raw document bytes. */
+  private final byte[] bytes;
+
+  /** The document buffer. */
+  private final ByteBuffer buffer;
+
+  /** The document file. */
+  private final Path path;
+
+  /** The Base64 encoded document. */
+  private final String base64;
+
+  /** The document stream. */
+  private InputStream stream;
+
+  /** Whether the stream is Base64 encoded. */
+  private final boolean base64Stream;
+
+  private DocumentSource(final byte[] bytes, final ByteBuffer buffer, final Path path, final String base64,
+      final InputStream stream, final boolean base64Stream) {
+    this.bytes = bytes;
+    this.buffer = buffer;
+    this.path = path;
+    this.base64 = base64;
+    this.stream = stream;
+    this.base64Stream = base64Stream;
+  }
+
+  /**
+   * Creates a source for the raw document bytes.
+   *
+   * @param bytes the document bytes
+   * @return a DocumentSource
+   */
+  @Nonnull
+  public static DocumentSource of(@Nonnull final byte[] bytes) {
+    return new DocumentSource(Objects.requireNonNull(bytes, "bytes must not be null"), null, null, null, null, false);
+  }
+
+  /**
+   * Creates a source for the raw document bytes held in the remaining part of the supplied buffer. The buffer's position
+   * is not changed.
+   *
+   * @param buffer the document buffer
+   * @return a DocumentSource
+   */
+  @Nonnull
+  public static DocumentSource of(@Nonnull final ByteBuffer buffer) {
+    return new DocumentSource(
+        null, Objects.requireNonNull(buffer, "buffer must not be null").slice(), null, null, null, false);
+  }
+
+  /**
+   * Creates a source for a document file.
+   *
+   * @param path the document file
+   * @return a DocumentSource
+   */
+  @Nonnull
+  public static DocumentSource of(@Nonnull final Path path) {
+    return new DocumentSource(null, null, Objects.requireNonNull(path, "path must not be null"), null, null, false);
+  }
+
+  /**
+   * Creates a source for a document stream. The stream is read once and closed by the consumer of the source.
+   *
+   * @param stream the document stream
+   * @return a DocumentSource
+   */
+  @Nonnull
+  public static DocumentSource of(@Nonnull final InputStream stream) {
+    return new DocumentSource(
+        null, null, null, null, Objects.requireNonNull(stream, "stream must not be null"), false);
+  }
+
+  /**
+   * Creates a source for a Base64 encoded document.
+   *
+   * @param base64 the Base64 encoded document
+   * @return a DocumentSource
+   */
+  @Nonnull
+  public static DocumentSource ofBase64(@Nonnull final String base64) {
+    return new DocumentSource(
+        null, null, null, Objects.requireNonNull(base64, "base64 must not be null"), null, false);
+  }
+
+  /**
+   * Creates a source for a stream holding a Base64 encoded document. The stream is read once and closed by the
+   * consumer of the source.
+   *
+   * @param stream the stream holding the Base64 encoded document
+   * @return a DocumentSource
+   */
+  @Nonnull
+  public static DocumentSource ofBase64(@Nonnull final InputStream stream) {
+    return new DocumentSource(
+        null, null, null, null, Objects.requireNonNull(stream, "stream must not be null"), true);
+  }
+
+  /**
+   * Opens a stream for reading the (decoded) document. The caller is responsible for closing the stream.
+   *
+   * @return an input stream
+   * @throws IOException if the document can not be read
+   * @throws IllegalStateException if the source is not repeatable and has already been read
+   */
+  @Nonnull
+  public InputStream openStream() throws IOException {
+    if (this.bytes != null) {
+      return new ByteArrayInputStream(this.bytes);
+    }
+    if (this.buffer != null) {
+      return new ByteBufferInputStream(this.buffer.duplicate());
+    }
+    if (this.path != null) {
+      return Files.newInputStream(this.path);
+    }
+    if (this.base64 != null) {
+      return Base64.getDecoder().wrap(new StringInputStream(this.base64));
+    }
+    if (this.stream == null) {
+      throw new IllegalStateException("Document stream has already been read");
+    }
+    final InputStream is = this.base64Stream ? Base64.getDecoder().wrap(this.stream) : this.stream;
+    this.stream = null;
+    return is;
+  }
+
+  /**
+   * Gets the (decoded) document bytes. For a source created from a {@code byte[]}, the array itself is returned,
+   * otherwise the document is read into a new array.
+   *
+   * @return the document bytes
+   * @throws IOException if the document can not be read
+   * @throws IllegalStateException if the source is not repeatable and has already been read
+   */
+  @Nonnull
+  public byte[] toByteArray() throws IOException {
+    if (this.bytes != null) {
+      return this.bytes;
+    }
+    if (this.path != null) {
+      return Files.readAllBytes(this.path);
+    }
+    if (this.buffer != null) {
+      final byte[] contents = new byte[this.buffer.remaining()];
+      this.buffer.duplicate().get(contents);
+      return contents;
+    }
+    try (final InputStream is = this.openStream()) {
+      return is.readAllBytes();
+    }
+  }
+
+  /**
+   * Tells whether the document may be read more than once.
+   *
+   * @return true if the source is repeatable and false otherwise
+   */
+  public boolean isRepeatable() {
+    return this.bytes != null || this.buffer != null || this.path != null || this.base64 != null;
+  }
+
+  /**
+   * Gets the document bytes if the source was created from a {@code byte[]}.
+   *
+   * @return the document bytes or null
+   */
+  public byte[] getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Gets the document buffer (positioned at the start of the document) if the source was created from a
+   * {@link ByteBuffer}.
+   *
+   * @return a new view of the document buffer or null
+   */
+  public ByteBuffer getBuffer() {
+    return this.buffer != null ? this.buffer.duplicate() : null;
+  }
+
+  /**
+   * Gets the Base64 encoded document if the source was created from a Base64 encoded {@code String}.
+   *
+   * @return the Base64 encoded document or null
+   */
+  public String getBase64() {
+    return this.base64;
+  }
+
+  /**
+   * Gets the document file if the source was created from a {@link Path}. This makes it possible for document parsers
+   * to read the document directly from the file.
+   *
+   * @return the document file or null
+   */
+  public Path getPath() {
+    return this.path;
+  }
+
+  /**
+   * Reads the characters of a Base64 string as bytes, without copying the string. Since Base64 only uses ASCII
+   * characters, any other character is reported as an error instead of being truncated to a (possibly valid) byte.
+   */
+  private static class StringInputStream extends InputStream {
+
+    /** The string. */
+    private final String string;
+
+    /** The current position. */
+    private int position = 0;
+
+    StringInputStream(final String string) {
+      this.string = string;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+      return this.position < this.string.length() ? this.nextByte() : -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      Objects.checkFromIndexSize(off, len, b.length);
+      if (len == 0) {
+        return 0;
+      }
+      final int n = Math.min(len, this.string.length() - this.position);
+      if (n <= 0) {
+        return -1;
+      }
+      for (int i = 0; i < n; i++) {
+        b[off + i] = (byte) this.nextByte();
+      }
+      return n;
+    }
+
+    /**
+     * Reads the character at the current position and advances the position.
+     *
+     * @return the character as a byte value
+     * @throws IOException if the character is not an ASCII character
+     */
+    private int nextByte() throws IOException {
+      final char c = this.string.charAt(this.position);
+      if (c > 0x7f) {
+        throw new IOException(String.format("Invalid Base64 character 0x%04x at position %d", (int) c, this.position));
+      }
+      this.position++;
+      return c;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() {
+      return this.string.length() - this.position;
+    }
+
+  }
+
+  /**
+   * An input stream reading from a {@link ByteBuffer}.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    /** The buffer. */
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() {
+      return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      if (len == 0) {
+        return 0;
+      }
+      if (!this.buffer.hasRemaining()) {
+        return -1;
+      }
+      final int n = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, n);
+      return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() {
+      return this.buffer.remaining();
+    }
+
+  }
+
+}
@@ -26,6 +26,7 @@ import se.idsec.signservice.integration.process.SignResponseProcessingConfig;
 import se.swedenconnect.schemas.csig.dssext_1_1.SignTaskData;
 
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -46,6 +47,22 @@ public interface SignedDocumentProcessor<T, X extends AdesObject> extends Docume
    */
   boolean supports(@Nonnull final SignTaskData signData);
 
+  /**
+   * Gets the signature types ({@code SigType} of {@code SignTaskData}) that this processor handles. The types are used
+   * to index the processors so that the processor for a sign task can be found without invoking
+   * {@link #supports(SignTaskData)} on each processor.
+   * <p>
+   * The default implementation returns an empty list, meaning that the processor is only selected using
+   * {@link #supports(SignTaskData)}.
+   * </p>
+   *
+   * @return a (possibly empty) list of signature types
+   */
+  @Nonnull
+  default List<String> getSupportedSigTypes() {
+    return Collections.emptyList();
+  }
+
   /**
    * Given a {@code SignTaskData} received in a sign response containing a signature and a {@code TbsDocument} from the
    * corresponding sign request the method compiles a complete signed document.
@@ -22,6 +22,9 @@ import se.idsec.signservice.integration.core.DocumentCache;
 import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.swedenconnect.schemas.csig.dssext_1_1.SignTaskData;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Interface for a processor of a "to be signed" document.
  *
@@ -39,6 +42,21 @@ public interface TbsDocumentProcessor<T> extends DocumentProcessor<T> {
    */
   boolean supports(@Nonnull final TbsDocument document);
 
+  /**
+   * Gets the MIME types that this processor handles. The MIME types are used to index the processors so that the
+   * processor for a document can be found without invoking {@link #supports(TbsDocument)} on each processor.
+   * <p>
+   * The default implementation returns an empty list, meaning that the processor is only selected using
+   * {@link #supports(TbsDocument)}.
+   * </p>
+   *
+   * @return a (possibly empty) list of MIME types
+   */
+  @Nonnull
+  default List<String> getSupportedMimeTypes() {
+    return Collections.emptyList();
+  }
+
   /**
    * Performs a pre-processing of the supplied document where the document is validated, and in some cases updated with
    * default settings.
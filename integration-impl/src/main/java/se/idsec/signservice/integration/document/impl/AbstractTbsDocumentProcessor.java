@@ -27,6 +27,7 @@ import se.idsec.signservice.integration.core.error.NoAccessException;
 import se.idsec.signservice.integration.core.impl.CorrelationID;
 import se.idsec.signservice.integration.document.DocumentDecoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.ProcessedTbsDocument;
 import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.document.TbsDocumentProcessor;
@@ -34,6 +35,7 @@ import se.idsec.signservice.utils.AssertThat;
 import se.swedenconnect.schemas.csig.dssext_1_1.AdESObject;
 import se.swedenconnect.schemas.csig.dssext_1_1.SignTaskData;
 
+import java.util.Base64;
 import java.util.UUID;
 
 /**
@@ -79,13 +81,23 @@ public abstract class AbstractTbsDocumentProcessor<T> implements TbsDocumentProc
     this.getTbsDocumentValidator().validateObject(updatedDocument, fieldName, config);
 
     // Check if the document holds a content reference, if so, get the cached document ...
+    // If the cache stores raw bytes, we use the bytes directly when validating the contents, and thus save
+    // a decoding pass.
     //
+    byte[] cachedBytes = null;
     if (StringUtils.isNotBlank(updatedDocument.getContentReference())) {
       if (documentCache == null) {
         throw new RuntimeException("No document cache available");
       }
       try {
-        final String cachedDocument = documentCache.get(updatedDocument.getContentReference(), true, callerId);
+        final String cachedDocument;
+        if (documentCache.isBinary()) {
+          cachedBytes = documentCache.getBytes(updatedDocument.getContentReference(), true, callerId);
+          cachedDocument = cachedBytes != null ? Base64.getEncoder().encodeToString(cachedBytes) : null;
+        }
+        else {
+          cachedDocument = documentCache.get(updatedDocument.getContentReference(), true, callerId);
+        }
 
         if (cachedDocument == null) {
           final String msg = String.format("reference '%s' not found in cache", updatedDocument.getContentReference());
@@ -106,7 +118,9 @@ public abstract class AbstractTbsDocumentProcessor<T> implements TbsDocumentProc
 
     // Validate the document content ...
     //
-    final T validatedContent = this.validateDocumentContent(updatedDocument, config, fieldName);
+    final T validatedContent = cachedBytes != null
+        ? this.validateDocumentContent(updatedDocument, cachedBytes, config, fieldName)
+        : this.validateDocumentContent(updatedDocument, config, fieldName);
 
     return new ProcessedTbsDocument(updatedDocument, validatedContent);
   }
@@ -168,7 +182,8 @@ public abstract class AbstractTbsDocumentProcessor<T> implements TbsDocumentProc
 
   /**
    * Validates the document contents. The default implementation invokes
-   * {@link DocumentDecoder#decodeDocument(String)}.
+   * {@link #validateDocumentContent(TbsDocument, DocumentSource, IntegrationServiceConfiguration, String)} with a
+   * source for the Base64 encoded content of the document.
    *
    * @param document the document holding the content to validate
    * @param config the current policy configuration
@@ -179,9 +194,52 @@ public abstract class AbstractTbsDocumentProcessor<T> implements TbsDocumentProc
   protected T validateDocumentContent(
       final TbsDocument document, final IntegrationServiceConfiguration config, final String fieldName)
       throws InputValidationException {
+    return this.validateDocumentContent(document, (byte[]) null, config, fieldName);
+  }
+
+  /**
+   * Validates the document contents. If {@code content} is given, it is validated, otherwise the Base64 encoded content
+   * of the document is validated. See
+   * {@link #validateDocumentContent(TbsDocument, DocumentSource, IntegrationServiceConfiguration, String)}.
+   *
+   * @param document the document holding the content to validate
+   * @param content the raw document bytes (if available, otherwise null)
+   * @param config the current policy configuration
+   * @param fieldName used for error reporting and logging
+   * @return the contents represented according to the document format
+   * @throws InputValidationException for validation errors
+   */
+  protected T validateDocumentContent(final TbsDocument document, final byte[] content,
+      final IntegrationServiceConfiguration config, final String fieldName) throws InputValidationException {
 
+    final DocumentSource source = content != null
+        ? DocumentSource.of(content)
+        : document.getContent() != null ? DocumentSource.ofBase64(document.getContent()) : null;
+    return this.validateDocumentContent(document, source, config, fieldName);
+  }
+
+  /**
+   * Validates the document contents by invoking {@link DocumentDecoder#decodeDocument(DocumentSource)}. Base64
+   * encoded content is decoded on the fly, so decoders that parse from a stream never need the decoded document in a
+   * byte array.
+   *
+   * @param document the document holding the content to validate
+   * @param source the document content (null if the document has no content)
+   * @param config the current policy configuration
+   * @param fieldName used for error reporting and logging
+   * @return the contents represented according to the document format
+   * @throws InputValidationException for validation errors
+   */
+  protected T validateDocumentContent(final TbsDocument document, final DocumentSource source,
+      final IntegrationServiceConfiguration config, final String fieldName) throws InputValidationException {
+
+    if (source == null) {
+      final String msg = String.format("Missing content for document '%s'", document.getId());
+      log.error("{}: {}", CorrelationID.id(), msg);
+      throw new InputValidationException(fieldName + ".content", msg);
+    }
     try {
-      final T documentObject = this.getDocumentDecoder().decodeDocument(document.getContent());
+      final T documentObject = this.getDocumentDecoder().decodeDocument(source);
       log.debug("{}: Successfully validated document (doc-id: {})", CorrelationID.id(), document.getId());
       return documentObject;
     }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.impl;
+
+import jakarta.annotation.Nonnull;
+import se.idsec.signservice.integration.document.SignedDocumentProcessor;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.document.TbsDocumentProcessor;
+import se.swedenconnect.schemas.csig.dssext_1_1.SignTaskData;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * A registry that resolves the document processor to use for a given document (or sign task).
+ * <p>
+ * The registry is built once from a list of processors. Each processor may declare the keys it handles (MIME types for
+ * {@link TbsDocumentProcessor} and signature types for {@link SignedDocumentProcessor}), and these are indexed so that
+ * a processor may be found using a single (case-insensitive) map lookup. If several processors declare the same key,
+ * the first one in the list wins, which is the same order as the {@code supports} methods would be evaluated.
+ * </p>
+ * <p>
+ * If no processor has declared the key for a given document, the registry falls back to invoking the {@code supports}
+ * method of each processor in order. This ensures that processors not declaring any keys, or that accept aliases of
+ * a declared key, are still found.
+ * </p>
+ *
+ * @param <P> the processor type
+ * @param <D> the type of object that is to be processed
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DocumentProcessorRegistry<P, D> {
+
+  /** All processors (in the configured order). */
+  private final List<P> processors;
+
+  /** Processors indexed by their declared (lower-cased) keys. */
+  private final Map<String, P> index;
+
+  /** Function that gets the key from the object to process. */
+  private final Function<D, String> keyFunction;
+
+  /** Predicate that tells whether a processor supports an object. */
+  private final BiPredicate<P, D> supportsPredicate;
+
+  /**
+   * Constructor.
+   *
+   * @param processors the processors
+   * @param declaredKeysFunction function that gets the declared keys of a processor
+   * @param keyFunction function that gets the key from an object to process
+   * @param supportsPredicate predicate that tells whether a processor supports an object
+   */
+  public DocumentProcessorRegistry(@Nonnull final List<? extends P> processors,
+      @Nonnull final Function<P, List<String>> declaredKeysFunction,
+      @Nonnull final Function<D, String> keyFunction,
+      @Nonnull final BiPredicate<P, D> supportsPredicate) {
+    this.processors = List.copyOf(processors);
+    this.keyFunction = keyFunction;
+    this.supportsPredicate = supportsPredicate;
+
+    final Map<String, P> map = new HashMap<>();
+    for (final P processor : this.processors) {
+      final List<String> keys = declaredKeysFunction.apply(processor);
+      if (keys != null) {
+        keys.stream()
+            .filter(k -> k != null && !k.isBlank())
+            .forEach(k -> map.putIfAbsent(normalize(k), processor));
+      }
+    }
+    this.index = Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * Creates a registry for {@link TbsDocumentProcessor} instances where the document MIME type is used as the key.
+   *
+   * @param processors the processors
+   * @return a registry
+   */
+  @Nonnull
+  public static DocumentProcessorRegistry<TbsDocumentProcessor<?>, TbsDocument> forTbsDocumentProcessors(
+      @Nonnull final List<? extends TbsDocumentProcessor<?>> processors) {
+    return new DocumentProcessorRegistry<>(processors, TbsDocumentProcessor::getSupportedMimeTypes,
+        TbsDocument::getMimeType, TbsDocumentProcessor::supports);
+  }
+
+  /**
+   * Creates a registry for {@link SignedDocumentProcessor} instances where the {@code SigType} of the sign task is used
+   * as the key.
+   *
+   * @param processors the processors
+   * @return a registry
+   */
+  @Nonnull
+  public static DocumentProcessorRegistry<SignedDocumentProcessor<?, ?>, SignTaskData> forSignedDocumentProcessors(
+      @Nonnull final List<? extends SignedDocumentProcessor<?, ?>> processors) {
+    return new DocumentProcessorRegistry<>(processors, SignedDocumentProcessor::getSupportedSigTypes,
+        SignTaskData::getSigType, SignedDocumentProcessor::supports);
+  }
+
+  /**
+   * Gets the processor that should be used to process the supplied object.
+   *
+   * @param object the object to process
+   * @return the processor, or an empty {@link Optional} if no processor supports the object
+   */
+  @Nonnull
+  public Optional<P> getProcessor(@Nonnull final D object) {
+    final String key = this.keyFunction.apply(object);
+    if (key != null) {
+      final P processor = this.index.get(normalize(key));
+      if (processor != null) {
+        return Optional.of(processor);
+      }
+    }
+    return this.processors.stream().filter(p -> this.supportsPredicate.test(p, object)).findFirst();
+  }
+
+  /**
+   * Gets all processors of this registry.
+   *
+   * @return an unmodifiable list of processors
+   */
+  @Nonnull
+  public List<P> getProcessors() {
+    return this.processors;
+  }
+
+  private static String normalize(final String key) {
+    return key.trim().toLowerCase(Locale.ROOT);
+  }
+
+}
@@ -34,9 +34,15 @@ import se.idsec.signservice.integration.config.PolicyNotFoundException;
 import se.idsec.signservice.integration.core.SignatureState;
 import se.idsec.signservice.integration.core.error.BadRequestException;
 import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
 import se.idsec.signservice.integration.core.error.impl.InternalSignServiceIntegrationException;
+import se.idsec.signservice.integration.core.error.impl.QuotaExceededException;
+import se.idsec.signservice.integration.core.impl.BoundedExecutor;
 import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.core.impl.OrderedParallelExecutor;
+import se.idsec.signservice.integration.core.impl.OwnerQuotaExceededException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
 import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
 import se.idsec.signservice.integration.process.SignRequestProcessingResult;
@@ -46,9 +52,17 @@ import se.idsec.signservice.integration.state.SignatureSessionState;
 import se.idsec.signservice.integration.state.SignatureStateProcessor;
 import se.idsec.signservice.utils.AssertThat;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Implementation of the SignService Integration Service.
@@ -84,6 +98,15 @@ public class DefaultSignServiceIntegrationService implements ExtendedSignService
    */
   private PdfSignaturePagePreparator pdfSignaturePagePreparator;
 
+  /**
+   * The executor used by the asynchronous methods. If not assigned, virtual threads will be used if available (Java
+   * 21 and above), and otherwise a cached thread pool. The default executor is created when first needed.
+   */
+  private volatile Executor asyncExecutor;
+
+  /** The maximum number of inputs of a batch that are processed concurrently. */
+  private int batchParallelism = Runtime.getRuntime().availableProcessors();
+
   /**
    * Default constructor.
    */
@@ -102,50 +125,231 @@ public class DefaultSignServiceIntegrationService implements ExtendedSignService
     try {
       // Find out under which policy we should create the SignRequest.
       //
-      final IntegrationServiceConfiguration config =
-          this.configurationManager.getConfiguration(signRequestInput.getPolicy());
-      if (config == null) {
-        final String msg = String.format("Policy '%s' does not exist", signRequestInput.getPolicy());
-        log.info("{}", msg);
-        throw new PolicyNotFoundException(msg);
+      final IntegrationServiceConfiguration config = this.checkPolicyConfiguration(signRequestInput.getPolicy(),
+          this.configurationManager.getConfiguration(signRequestInput.getPolicy()));
+
+      return this.createSignRequest(signRequestInput, config, callerId);
+    }
+    finally {
+      CorrelationID.clear();
+    }
+  }
+
+  /**
+   * Creates a batch of SignRequests. This is useful for bulk signing jobs where a large number of SignRequests are
+   * created at once.
+   * <p>
+   * The policies needed by the batch are resolved once. This includes the configuration lookup and the checks of the
+   * policy default values, so an input that relies on a default value that the policy does not have fails without
+   * being processed. The inputs are then processed concurrently using the configured asynchronous executor (see
+   * {@link #setAsyncExecutor(Executor)}), but at most {@code batchParallelism} inputs at the same time (see
+   * {@link #setBatchParallelism(int)}).
+   * </p>
+   * <p>
+   * An error for one input does not affect the processing of the other inputs. The returned list holds one
+   * {@link SignRequestBatchResult} per input, in the same order as the inputs, containing either the created
+   * {@link SignRequestData} or the error that would have been thrown by {@link #createSignRequest(SignRequestInput,
+   * String)}.
+   * </p>
+   *
+   * @param signRequestInputs the inputs for the sign requests
+   * @param callerId optional ID for the calling entity
+   * @return a list of results ordered as the inputs
+   */
+  @Nonnull
+  public List<SignRequestBatchResult> createSignRequests(@Nonnull final List<SignRequestInput> signRequestInputs,
+      @Nullable final String callerId) {
+
+    // Resolve the policies once for the entire batch ...
+    //
+    final Map<String, BatchPolicy> policies = new HashMap<>();
+    for (final SignRequestInput input : signRequestInputs) {
+      if (input != null && !policies.containsKey(input.getPolicy())) {
+        policies.put(input.getPolicy(),
+            BatchPolicy.resolve(input.getPolicy(), this.configurationManager.getConfiguration(input.getPolicy())));
       }
+    }
+    log.debug("Request for creating a batch of {} SignRequests using {} policies",
+        signRequestInputs.size(), policies.size());
 
-      // Validate the input to make sure that we can process it. Also assign default values to use as input.
-      //
-      final SignRequestInput input = this.signRequestProcessor.preProcess(signRequestInput, config, callerId);
-      log.trace("{}: After validation and pre-processing the following input will be processed: {}",
-          input.getCorrelationId(), input);
+    final Executor executor = signRequestInputs.size() > 1
+        ? new BoundedExecutor(this.getAsyncExecutor(), this.batchParallelism)
+        : null;
+    try {
+      return OrderedParallelExecutor.invokeAll(executor, signRequestInputs.size(),
+          i -> this.createSignRequestBatchItem(i, signRequestInputs.get(i), policies, callerId),
+          e -> new InternalSignServiceIntegrationException(new ErrorCode.Code("interrupted"),
+              "Interrupted while creating SignRequests", e));
+    }
+    catch (final InternalSignServiceIntegrationException e) {
+      log.warn("Interrupted while creating batch of {} SignRequests", signRequestInputs.size());
+      final List<SignRequestBatchResult> results = new ArrayList<>(signRequestInputs.size());
+      for (int i = 0; i < signRequestInputs.size(); i++) {
+        results.add(SignRequestBatchResult.failure(i, e));
+      }
+      return results;
+    }
+  }
 
-      // Create the SignRequest ...
-      //
-      // Generate an ID for this request.
-      //
-      final String requestID = UUID.randomUUID().toString();
-      log.info("{}: Generated SignRequest RequestID attribute: {}", input.getCorrelationId(), requestID);
+  /**
+   * Creates the SignRequest for one item of a batch.
+   *
+   * @param index the position of the input in the batch
+   * @param signRequestInput the input
+   * @param policies the resolved policies for the batch
+   * @param callerId optional ID for the calling entity
+   * @return the result for the item
+   */
+  private SignRequestBatchResult createSignRequestBatchItem(final int index,
+      final SignRequestInput signRequestInput, final Map<String, BatchPolicy> policies, final String callerId) {
 
-      final SignRequestProcessingResult processingResult = this.signRequestProcessor.process(input, requestID, config);
+    if (signRequestInput == null) {
+      return SignRequestBatchResult.failure(index,
+          new InputValidationException("signRequestInputs[" + index + "]", "Missing sign request input"));
+    }
 
-      // Set up the signature state ...
-      //
-      final SignatureState state =
-          this.signatureStateProcessor.createSignatureState(input, processingResult.getSignRequest(), config
-              .isStateless(), callerId);
+    CorrelationID.init(signRequestInput.getCorrelationId());
+    log.debug("{}: Request for creating a SignRequest (batch item {}): {}", CorrelationID.id(), index,
+        signRequestInput);
 
-      // And finally build the result structure that the caller may use to build the POST form
-      // that takes the user to the signature service.
-      //
-      return SignRequestData.builder()
-          .state(state)
-          .signRequest(processingResult.getEncodedSignRequest())
-          .relayState(requestID)
-          .destinationUrl(input.getDestinationUrl())
-          .build();
+    try {
+      final BatchPolicy policy = policies.get(signRequestInput.getPolicy());
+      final IntegrationServiceConfiguration config =
+          this.checkPolicyConfiguration(signRequestInput.getPolicy(), policy.config());
+      policy.checkDefaults(signRequestInput);
+
+      return SignRequestBatchResult.success(index, this.createSignRequest(signRequestInput, config, callerId));
+    }
+    catch (final SignServiceIntegrationException e) {
+      log.info("{}: Failed to create SignRequest for batch item {} - {}", CorrelationID.id(), index, e.getMessage());
+      return SignRequestBatchResult.failure(index, e);
+    }
+    catch (final RuntimeException e) {
+      log.error("{}: Failed to create SignRequest for batch item {} - {}", CorrelationID.id(), index,
+          e.getMessage(), e);
+      return SignRequestBatchResult.failure(index, new InternalSignServiceIntegrationException(
+          new ErrorCode.Code("batch"), "Failed to create SignRequest - " + e.getMessage(), e));
     }
     finally {
       CorrelationID.clear();
     }
   }
 
+  /**
+   * A policy resolved once for all inputs of a batch.
+   *
+   * @param config the policy configuration (null if the policy does not exist)
+   * @param missingSignRequesterID whether the policy lacks a default signRequesterID
+   * @param missingReturnUrl whether the policy lacks a default returnUrl
+   */
+  private record BatchPolicy(IntegrationServiceConfiguration config, boolean missingSignRequesterID,
+      boolean missingReturnUrl) {
+
+    /**
+     * Resolves a policy.
+     *
+     * @param policy the policy name
+     * @param config the configuration (may be null)
+     * @return a BatchPolicy
+     */
+    static BatchPolicy resolve(final String policy, final IntegrationServiceConfiguration config) {
+      if (config == null) {
+        return new BatchPolicy(null, false, false);
+      }
+      final boolean missingSignRequesterID = StringUtils.isBlank(config.getDefaultSignRequesterID());
+      final boolean missingReturnUrl = StringUtils.isBlank(config.getDefaultReturnUrl());
+      if (missingSignRequesterID || missingReturnUrl) {
+        log.debug("Policy '{}' lacks default values - inputs of the batch must supply them", policy);
+      }
+      return new BatchPolicy(config, missingSignRequesterID, missingReturnUrl);
+    }
+
+    /**
+     * Makes sure that the input does not rely on default values that the policy does not have.
+     *
+     * @param input the input
+     * @throws InputValidationException if the input relies on a missing default value
+     */
+    void checkDefaults(final SignRequestInput input) throws InputValidationException {
+      if (this.missingSignRequesterID && StringUtils.isBlank(input.getSignRequesterID())) {
+        throw new InputValidationException("signRequestInput.signRequesterID",
+            "No signRequesterID given and configuration does not contain a default value");
+      }
+      if (this.missingReturnUrl && StringUtils.isBlank(input.getReturnUrl())) {
+        throw new InputValidationException("signRequestInput.returnUrl",
+            "No returnUrl given and configuration does not contain a default value");
+      }
+    }
+  }
+
+  /**
+   * Makes sure that the policy configuration that was looked up exists.
+   *
+   * @param policy the requested policy (may be null)
+   * @param config the configuration that was found (may be null)
+   * @return the configuration
+   * @throws PolicyNotFoundException if the policy does not exist
+   */
+  private IntegrationServiceConfiguration checkPolicyConfiguration(
+      final String policy, final IntegrationServiceConfiguration config) throws PolicyNotFoundException {
+    if (config == null) {
+      final String msg = String.format("Policy '%s' does not exist", policy);
+      log.info("{}", msg);
+      throw new PolicyNotFoundException(msg);
+    }
+    return config;
+  }
+
+  /**
+   * Creates a SignRequest using the supplied policy configuration. The caller is responsible for the correlation ID.
+   *
+   * @param signRequestInput the requirements and input for the sign request
+   * @param config the policy configuration
+   * @param callerId optional ID for the calling entity
+   * @return a SignRequestData structure
+   * @throws SignServiceIntegrationException for processing errors
+   */
+  private SignRequestData createSignRequest(final SignRequestInput signRequestInput,
+      final IntegrationServiceConfiguration config, final String callerId) throws SignServiceIntegrationException {
+
+    // Validate the input to make sure that we can process it. Also assign default values to use as input.
+    //
+    final SignRequestInput input = this.signRequestProcessor.preProcess(signRequestInput, config, callerId);
+    log.trace("{}: After validation and pre-processing the following input will be processed: {}",
+        input.getCorrelationId(), input);
+
+    // Create the SignRequest ...
+    //
+    // Generate an ID for this request.
+    //
+    final String requestID = UUID.randomUUID().toString();
+    log.info("{}: Generated SignRequest RequestID attribute: {}", input.getCorrelationId(), requestID);
+
+    final SignRequestProcessingResult processingResult = this.signRequestProcessor.process(input, requestID, config);
+
+    // Set up the signature state ...
+    //
+    final SignatureState state;
+    try {
+      state = this.signatureStateProcessor.createSignatureState(input, processingResult.getSignRequest(), config
+          .isStateless(), callerId);
+    }
+    catch (final OwnerQuotaExceededException e) {
+      log.info("{}: Failed to save signature state - {}", input.getCorrelationId(), e.getMessage());
+      throw new QuotaExceededException(e.getMessage(), e);
+    }
+
+    // And finally build the result structure that the caller may use to build the POST form
+    // that takes the user to the signature service.
+    //
+    return SignRequestData.builder()
+        .state(state)
+        .signRequest(processingResult.getEncodedSignRequest())
+        .relayState(requestID)
+        .destinationUrl(input.getDestinationUrl())
+        .build();
+  }
+
   /** {@inheritDoc} */
   @Override
   @Nonnull
@@ -193,6 +397,34 @@ public class DefaultSignServiceIntegrationService implements ExtendedSignService
       @Nullable final Boolean returnDocumentReference, @Nullable final String callerId)
       throws SignServiceIntegrationException {
 
+    return this.preparePdfDocumentFromSource(policy, pdfDocument != null ? DocumentSource.of(pdfDocument) : null,
+        signaturePagePreferences, returnDocumentReference, callerId);
+  }
+
+  /**
+   * Corresponds to {@link #preparePdfDocument(String, byte[], PdfSignaturePagePreferences, Boolean, String)}, but the
+   * PDF document is given as a {@link DocumentSource}. This makes it possible to prepare a large document from a file,
+   * a stream or a buffer (Base64 encoded or not) without first reading it into memory.
+   * <p>
+   * For stateful policies, the prepared document is best passed on using the returned document reference, since the
+   * document then never has to be held as a Base64 encoded string.
+   * </p>
+   *
+   * @param policy the policy under which the operation is performed (may be null)
+   * @param pdfDocument the PDF document that is to be prepared
+   * @param signaturePagePreferences optional signature page preferences
+   * @param returnDocumentReference tells whether a document reference should be returned
+   * @param callerId optional ID for the calling entity
+   * @return a PreparedPdfDocument object
+   * @throws SignServiceIntegrationException for processing errors
+   */
+  @Nonnull
+  public PreparedPdfDocument preparePdfDocumentFromSource(@Nullable final String policy,
+      @Nonnull final DocumentSource pdfDocument,
+      @Nullable final PdfSignaturePagePreferences signaturePagePreferences,
+      @Nullable final Boolean returnDocumentReference, @Nullable final String callerId)
+      throws SignServiceIntegrationException {
+
     if (this.pdfSignaturePagePreparator != null) {
       final String _policy = policy != null ? policy : this.configurationManager.getDefaultPolicyName();
       final IntegrationServiceConfiguration config = this.configurationManager.getConfiguration(_policy);
@@ -201,7 +433,7 @@ public class DefaultSignServiceIntegrationService implements ExtendedSignService
         log.info("{}", msg);
         throw new PolicyNotFoundException(msg);
       }
-      return this.pdfSignaturePagePreparator.preparePdfDocument(
+      return this.pdfSignaturePagePreparator.preparePdfDocumentFromSource(
           pdfDocument, signaturePagePreferences, config, returnDocumentReference, callerId);
     }
     else {
@@ -209,6 +441,153 @@ public class DefaultSignServiceIntegrationService implements ExtendedSignService
     }
   }
 
+  /**
+   * Asynchronous version of {@link #createSignRequest(SignRequestInput, String)}. The operation is executed using the
+   * configured asynchronous executor (see {@link #setAsyncExecutor(Executor)}).
+   * <p>
+   * The correlation ID is carried over to the executing thread. If the input does not hold a correlation ID, the
+   * correlation ID of the calling thread (if set) is used.
+   * </p>
+   * <p>
+   * If the operation fails, the returned future is completed exceptionally with the {@link
+   * SignServiceIntegrationException} that would have been thrown by the blocking method.
+   * </p>
+   *
+   * @param signRequestInput the requirements and input for the sign request
+   * @param callerId optional ID for the calling entity
+   * @return a future that will hold the SignRequestData
+   */
+  @Nonnull
+  public CompletableFuture<SignRequestData> createSignRequestAsync(@Nonnull final SignRequestInput signRequestInput,
+      @Nullable final String callerId) {
+
+    final String correlationId = signRequestInput != null && signRequestInput.getCorrelationId() != null
+        ? signRequestInput.getCorrelationId()
+        : CorrelationID.id();
+    final SignRequestInput input = signRequestInput != null && signRequestInput.getCorrelationId() == null
+        && correlationId != null
+        ? signRequestInput.toBuilder().correlationId(correlationId).build()
+        : signRequestInput;
+
+    return this.executeAsync(correlationId, () -> this.createSignRequest(input, callerId));
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #processSignResponse(String, String, SignatureState, SignResponseProcessingParameters, String)}. The
+   * operation is executed using the configured asynchronous executor (see {@link #setAsyncExecutor(Executor)}).
+   * <p>
+   * The correlation ID of the calling thread (if set) is carried over to the executing thread until it is replaced by
+   * the correlation ID stored in the signature state.
+   * </p>
+   * <p>
+   * If the operation fails, the returned future is completed exceptionally with the {@link
+   * SignResponseErrorStatusException} or {@link SignServiceIntegrationException} that would have been thrown by the
+   * blocking method.
+   * </p>
+   *
+   * @param signResponse the Base64-encoded SignResponse message
+   * @param relayState the relay state
+   * @param state the signature state
+   * @param parameters optional processing parameters
+   * @param callerId optional ID for the calling entity
+   * @return a future that will hold the signature result
+   */
+  @Nonnull
+  public CompletableFuture<SignatureResult> processSignResponseAsync(@Nonnull final String signResponse,
+      @Nonnull final String relayState, @Nonnull final SignatureState state,
+      @Nullable final SignResponseProcessingParameters parameters, @Nullable final String callerId) {
+
+    return this.executeAsync(CorrelationID.id(),
+        () -> this.processSignResponse(signResponse, relayState, state, parameters, callerId));
+  }
+
+  /**
+   * Asynchronous version of {@link #preparePdfDocument(String, byte[], PdfSignaturePagePreferences, Boolean, String)}.
+   * The operation is executed using the configured asynchronous executor (see {@link #setAsyncExecutor(Executor)}).
+   * <p>
+   * The correlation ID of the calling thread (if set) is carried over to the executing thread.
+   * </p>
+   * <p>
+   * If the operation fails, the returned future is completed exceptionally with the {@link
+   * SignServiceIntegrationException} that would have been thrown by the blocking method.
+   * </p>
+   *
+   * @param policy the policy under which the operation is performed (may be null)
+   * @param pdfDocument the contents of the PDF document that is to be prepared
+   * @param signaturePagePreferences optional signature page preferences
+   * @param returnDocumentReference tells whether a document reference should be returned
+   * @param callerId optional ID for the calling entity
+   * @return a future that will hold the prepared PDF document
+   */
+  @Nonnull
+  public CompletableFuture<PreparedPdfDocument> preparePdfDocumentAsync(@Nullable final String policy,
+      @Nonnull final byte[] pdfDocument, @Nullable final PdfSignaturePagePreferences signaturePagePreferences,
+      @Nullable final Boolean returnDocumentReference, @Nullable final String callerId) {
+
+    return this.executeAsync(CorrelationID.id(), () -> this.preparePdfDocument(
+        policy, pdfDocument, signaturePagePreferences, returnDocumentReference, callerId));
+  }
+
+  /**
+   * Executes the supplied call using the asynchronous executor.
+   *
+   * @param correlationId the correlation ID to install in the executing thread (may be null)
+   * @param call the call to execute
+   * @param <T> the result type
+   * @return a future holding the result
+   */
+  private <T> CompletableFuture<T> executeAsync(@Nullable final String correlationId,
+      @Nonnull final AsyncCall<T> call) {
+
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      this.getAsyncExecutor().execute(() -> {
+        // The executor may run the call in the calling thread, so we restore the thread's correlation ID ...
+        final String previousCorrelationId = CorrelationID.id();
+        if (correlationId != null) {
+          CorrelationID.init(correlationId);
+        }
+        try {
+          future.complete(call.call());
+        }
+        catch (final Throwable e) {
+          future.completeExceptionally(e);
+        }
+        finally {
+          if (previousCorrelationId != null) {
+            CorrelationID.init(previousCorrelationId);
+          }
+          else {
+            CorrelationID.clear();
+          }
+        }
+      });
+    }
+    catch (final RejectedExecutionException e) {
+      log.error("{}: Asynchronous call was rejected by executor - {}", correlationId, e.getMessage());
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Represents a blocking call that is executed asynchronously.
+   *
+   * @param <T> the result type
+   */
+  @FunctionalInterface
+  private interface AsyncCall<T> {
+
+    /**
+     * Executes the call.
+     *
+     * @return the result
+     * @throws Exception for errors
+     */
+    T call() throws Exception;
+  }
+
   /** {@inheritDoc} */
   @Override
   @Nonnull
@@ -298,6 +677,85 @@ public class DefaultSignServiceIntegrationService implements ExtendedSignService
     this.pdfSignaturePagePreparator = pdfSignaturePagePreparator;
   }
 
+  /**
+   * Assigns the executor used by the asynchronous methods ({@link #createSignRequestAsync(SignRequestInput, String)},
+   * {@link #processSignResponseAsync(String, String, SignatureState, SignResponseProcessingParameters, String)} and
+   * {@link #preparePdfDocumentAsync(String, byte[], PdfSignaturePagePreferences, Boolean, String)}).
+   * <p>
+   * If not assigned, a virtual thread per task executor is used if the runtime supports virtual threads (Java 21 and
+   * above). Otherwise, a cached thread pool using daemon threads is used. The default executor is created the first
+   * time it is needed.
+   * </p>
+   *
+   * @param asyncExecutor the executor
+   */
+  public void setAsyncExecutor(final Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  /**
+   * Assigns the maximum number of inputs of a batch (see {@link #createSignRequests(List, String)}) that are processed
+   * concurrently. The default is the number of available processors.
+   * <p>
+   * Note: The batch items are executed by the asynchronous executor (see {@link #setAsyncExecutor(Executor)}). If the
+   * sign request processor also processes documents in parallel (see
+   * {@link se.idsec.signservice.integration.process.impl.DefaultSignRequestProcessor#setTbsProcessingExecutor(Executor)
+   * DefaultSignRequestProcessor.setTbsProcessingExecutor}), it must not use the same bounded thread pool as the
+   * asynchronous executor. A batch item waits for its document tasks, and if all threads of the pool are occupied by
+   * waiting batch items, the document tasks will never run.
+   * </p>
+   *
+   * @param batchParallelism the maximum number of concurrently processed batch inputs
+   */
+  public void setBatchParallelism(final int batchParallelism) {
+    if (batchParallelism <= 0) {
+      throw new IllegalArgumentException("batchParallelism must be greater than 0");
+    }
+    this.batchParallelism = batchParallelism;
+  }
+
+  /**
+   * Gets the executor used by the asynchronous methods. If no executor has been assigned, the default executor is
+   * created (see {@link #setAsyncExecutor(Executor)}).
+   *
+   * @return the executor
+   */
+  private Executor getAsyncExecutor() {
+    Executor executor = this.asyncExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = this.asyncExecutor;
+        if (executor == null) {
+          executor = createDefaultAsyncExecutor();
+          this.asyncExecutor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * Creates the default executor for asynchronous calls. Virtual threads are used if available.
+   *
+   * @return an executor
+   */
+  private static Executor createDefaultAsyncExecutor() {
+    try {
+      final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      final Executor executor = (Executor) method.invoke(null);
+      log.debug("Using virtual threads for asynchronous calls");
+      return executor;
+    }
+    catch (final ReflectiveOperationException e) {
+      log.debug("Virtual threads are not available - using cached thread pool for asynchronous calls");
+      return Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "signservice-integration-async");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
   /**
    * Ensures that all required properties have been assigned.
    *
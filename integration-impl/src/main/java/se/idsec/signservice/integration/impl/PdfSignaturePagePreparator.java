@@ -21,6 +21,7 @@ import se.idsec.signservice.integration.ExtendedSignServiceIntegrationService;
 import se.idsec.signservice.integration.config.IntegrationServiceConfiguration;
 import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.pdf.PdfAConsistencyCheckException;
 import se.idsec.signservice.integration.document.pdf.PdfContainsAcroformException;
 import se.idsec.signservice.integration.document.pdf.PdfContainsEncryptionDictionaryException;
@@ -28,6 +29,8 @@ import se.idsec.signservice.integration.document.pdf.PdfSignaturePageFullExcepti
 import se.idsec.signservice.integration.document.pdf.PdfSignaturePagePreferences;
 import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
 
+import java.io.IOException;
+
 /**
  * Implementation of
  * {@link ExtendedSignServiceIntegrationService#preparePdfDocument(String, byte[], PdfSignaturePagePreferences, Boolean,
@@ -68,4 +71,40 @@ public interface PdfSignaturePagePreparator {
       throws InputValidationException, PdfSignaturePageFullException, PdfAConsistencyCheckException,
       PdfContainsAcroformException, PdfContainsEncryptionDictionaryException, SignServiceIntegrationException;
 
+  /**
+   * Corresponds to
+   * {@link #preparePdfDocument(byte[], PdfSignaturePagePreferences, IntegrationServiceConfiguration, Boolean, String)}
+   * but the PDF document is given as a {@link DocumentSource}, for example a file or a stream, so that large documents
+   * do not have to be read into memory by the caller.
+   * <p>
+   * The default implementation reads the source into a byte array.
+   * </p>
+   *
+   * @param pdfDocument the PDF document that is to be prepared
+   * @param signaturePagePreferences the PDF signature page preferences
+   * @param policyConfiguration the policy configuration under which this operation is to be executed
+   * @param returnDocumentReference whether to use document references
+   * @param callerId optional id for the caller
+   * @return a PreparedPdfDocument object
+   * @throws SignServiceIntegrationException for processing errors (see
+   *     {@link #preparePdfDocument(byte[], PdfSignaturePagePreferences, IntegrationServiceConfiguration, Boolean,
+   *     String)})
+   */
+  default PreparedPdfDocument preparePdfDocumentFromSource(@Nonnull final DocumentSource pdfDocument,
+      @Nullable final PdfSignaturePagePreferences signaturePagePreferences,
+      @Nonnull final IntegrationServiceConfiguration policyConfiguration,
+      @Nullable final Boolean returnDocumentReference, @Nullable final String callerId)
+      throws SignServiceIntegrationException {
+
+    final byte[] contents;
+    try {
+      contents = pdfDocument != null ? pdfDocument.toByteArray() : null;
+    }
+    catch (final IOException | IllegalStateException e) {
+      throw new InputValidationException("pdfDocument", String.format("Invalid pdfDocument - %s", e.getMessage()), e);
+    }
+    return this.preparePdfDocument(
+        contents, signaturePagePreferences, policyConfiguration, returnDocumentReference, callerId);
+  }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.impl;
+
+import se.idsec.signservice.integration.SignRequestData;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+
+import java.util.List;
+
+/**
+ * Representation of the result for one item of a batch of sign requests. Used as the element type of the list
+ * returned by {@link DefaultSignServiceIntegrationService#createSignRequests(List, String)}.
+ * <p>
+ * An item either holds the created {@link SignRequestData} or the error that occurred when processing the
+ * corresponding {@link SignRequestInput}.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class SignRequestBatchResult {
+
+  /** The position of the corresponding input in the batch. */
+  private final int index;
+
+  /** The created SignRequest data (null if the processing failed). */
+  private final SignRequestData signRequestData;
+
+  /** The processing error (null if the processing was successful). */
+  private final SignServiceIntegrationException error;
+
+  /**
+   * Constructor.
+   *
+   * @param index the position of the corresponding input in the batch
+   * @param signRequestData the created SignRequest data (null if the processing failed)
+   * @param error the processing error (null if the processing was successful)
+   */
+  private SignRequestBatchResult(
+      final int index, final SignRequestData signRequestData, final SignServiceIntegrationException error) {
+    this.index = index;
+    this.signRequestData = signRequestData;
+    this.error = error;
+  }
+
+  /**
+   * Creates a result for a successfully processed input.
+   *
+   * @param index the position of the corresponding input in the batch
+   * @param signRequestData the created SignRequest data
+   * @return a SignRequestBatchResult
+   */
+  public static SignRequestBatchResult success(final int index, final SignRequestData signRequestData) {
+    return new SignRequestBatchResult(index, signRequestData, null);
+  }
+
+  /**
+   * Creates a result for an input that could not be processed.
+   *
+   * @param index the position of the corresponding input in the batch
+   * @param error the processing error
+   * @return a SignRequestBatchResult
+   */
+  public static SignRequestBatchResult failure(final int index, final SignServiceIntegrationException error) {
+    return new SignRequestBatchResult(index, null, error);
+  }
+
+  /**
+   * Gets the position of the corresponding input in the batch.
+   *
+   * @return the index (0-based)
+   */
+  public int getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Tells whether the processing of the corresponding input was successful.
+   *
+   * @return true if a SignRequest was created and false otherwise
+   */
+  public boolean isSuccess() {
+    return this.error == null;
+  }
+
+  /**
+   * Gets the created SignRequest data.
+   *
+   * @return the SignRequest data, or null if the processing failed
+   */
+  public SignRequestData getSignRequestData() {
+    return this.signRequestData;
+  }
+
+  /**
+   * Gets the processing error.
+   *
+   * @return the error, or null if the processing was successful
+   */
+  public SignServiceIntegrationException getError() {
+    return this.error;
+  }
+
+}
@@ -34,9 +34,11 @@ import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
 import se.idsec.signservice.integration.core.error.impl.InternalSignServiceIntegrationException;
 import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.core.impl.OrderedParallelExecutor;
 import se.idsec.signservice.integration.document.ProcessedTbsDocument;
 import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.document.TbsDocumentProcessor;
+import se.idsec.signservice.integration.document.impl.DocumentProcessorRegistry;
 import se.idsec.signservice.integration.dss.DssUtils;
 import se.idsec.signservice.integration.dss.SignRequestWrapper;
 import se.idsec.signservice.integration.process.SignRequestProcessingResult;
@@ -68,6 +70,7 @@ import java.security.SignatureException;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Default implementation of the {@link SignRequestProcessor} interface.
@@ -81,12 +84,21 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
   /** Processors for different TBS documents. */
   private List<TbsDocumentProcessor<?>> tbsDocumentProcessors;
 
+  /** Registry for finding the TBS document processor for a given document. Built from tbsDocumentProcessors. */
+  private DocumentProcessorRegistry<TbsDocumentProcessor<?>, TbsDocument> tbsDocumentProcessorRegistry;
+
   /** Validator. */
   private final SignRequestInputValidator signRequestInputValidator = new SignRequestInputValidator();
 
   /** Document cache. */
   private DocumentCache documentCache;
 
+  /**
+   * Optional executor for processing the TBS documents of a request in parallel. If not assigned, documents are
+   * processed sequentially in the calling thread.
+   */
+  private Executor tbsProcessingExecutor;
+
   /** The processor for SignMessages. */
   private SignMessageProcessor signMessageProcessor;
 
@@ -244,27 +256,13 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
     // For each document that is to be signed, invoke a matching processor and pre-process it ...
     //
     inputBuilder.clearTbsDocuments();
-    int pos = 0;
-    for (final TbsDocument doc : signRequestInput.getTbsDocuments()) {
-      final String fieldName = "signRequestInput.tbsDocuments[" + pos++ + "]";
-      final TbsDocumentProcessor<?> processor = this.tbsDocumentProcessors.stream()
-          .filter(p -> p.supports(doc))
-          .findFirst()
-          .orElseThrow(() -> new InputValidationException(fieldName,
-              String.format("Document of type '%s' is not supported", doc.getMimeType())));
-
-      final ProcessedTbsDocument processedTbsDocument = processor.preProcess(
-          doc, signRequestInput, config, this.documentCache, callerId, fieldName);
-
-      if (processedTbsDocument.getDocumentObject() != null) {
-        final Extension ext = processedTbsDocument.getTbsDocument().getExtension();
-        final DocumentExtension docExt = ext == null ? new DocumentExtension() : new DocumentExtension(ext);
-        docExt.setDocument(processedTbsDocument.getDocumentObject());
-        processedTbsDocument.getTbsDocument().setExtension(docExt);
-      }
-
-      inputBuilder.tbsDocument(processedTbsDocument.getTbsDocument());
-    }
+    final List<TbsDocument> tbsDocuments = signRequestInput.getTbsDocuments();
+    final List<TbsDocument> processedTbsDocuments = OrderedParallelExecutor.invokeAll(
+        this.tbsProcessingExecutor, tbsDocuments.size(),
+        i -> this.preProcessTbsDocument(tbsDocuments.get(i), i, signRequestInput, config, callerId),
+        e -> new InputValidationException("signRequestInput.tbsDocuments", "Interrupted while processing documents",
+            e));
+    processedTbsDocuments.forEach(inputBuilder::tbsDocument);
 
     // SignMessageParameters
     //
@@ -411,31 +409,12 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
     // Invoke all TBS processors ...
     //
     final SignTasks signTasks = dssExtObjectFactory.createSignTasks();
-    for (final TbsDocument doc : signRequestInput.getTbsDocuments()) {
-      final TbsDocumentProcessor<?> processor = this.tbsDocumentProcessors.stream()
-          .filter(p -> p.supports(doc))
-          .findFirst()
-          .orElseThrow(() -> new InternalSignServiceIntegrationException(new ErrorCode.Code("config"),
-              "Could not find document processor"));
-
-      final Object cachedDocument = doc.getExtension() != null && doc.getExtension() instanceof DocumentExtension
-          ? ((DocumentExtension) doc.getExtension()).getDocument()
-          : null;
-      if (cachedDocument != null) {
-        // Clean up cached object. We don't want to save it to the session ...
-        if (doc.getExtension().isEmpty()) {
-          doc.setExtension(null);
-        }
-        else {
-          doc.setExtension(new Extension(doc.getExtension()));
-        }
-      }
-
-      final SignTaskData signTaskData =
-          processor.process(new ProcessedTbsDocument(doc, cachedDocument), signRequestInput
-              .getSignatureAlgorithm(), config);
-      signTasks.getSignTaskDatas().add(signTaskData);
-    }
+    final List<TbsDocument> tbsDocuments = signRequestInput.getTbsDocuments();
+    signTasks.getSignTaskDatas().addAll(OrderedParallelExecutor.invokeAll(
+        this.tbsProcessingExecutor, tbsDocuments.size(),
+        i -> this.processTbsDocument(tbsDocuments.get(i), signRequestInput.getSignatureAlgorithm(), config),
+        e -> new InternalSignServiceIntegrationException(new ErrorCode.Code("interrupted"),
+            "Interrupted while processing documents", e)));
 
     // Install the documents ...
     //
@@ -456,6 +435,72 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
     return new SignRequestProcessingResult(signRequest, DOMUtils.nodeToBase64(signedSignRequest));
   }
 
+  /**
+   * Pre-processes a single TBS document by invoking a matching {@link TbsDocumentProcessor}.
+   *
+   * @param doc the document to pre-process
+   * @param pos the position of the document in the input (0-based)
+   * @param signRequestInput the sign request input
+   * @param config the policy configuration
+   * @param callerId optional ID for the calling entity
+   * @return the pre-processed document
+   * @throws InputValidationException for validation errors
+   */
+  private TbsDocument preProcessTbsDocument(final TbsDocument doc, final int pos,
+      final SignRequestInput signRequestInput, final IntegrationServiceConfiguration config, final String callerId)
+      throws InputValidationException {
+
+    final String fieldName = "signRequestInput.tbsDocuments[" + pos + "]";
+    final TbsDocumentProcessor<?> processor = this.getTbsDocumentProcessorRegistry().getProcessor(doc)
+        .orElseThrow(() -> new InputValidationException(fieldName,
+            String.format("Document of type '%s' is not supported", doc.getMimeType())));
+
+    final ProcessedTbsDocument processedTbsDocument = processor.preProcess(
+        doc, signRequestInput, config, this.documentCache, callerId, fieldName);
+
+    if (processedTbsDocument.getDocumentObject() != null) {
+      final Extension ext = processedTbsDocument.getTbsDocument().getExtension();
+      final DocumentExtension docExt = ext == null ? new DocumentExtension() : new DocumentExtension(ext);
+      docExt.setDocument(processedTbsDocument.getDocumentObject());
+      processedTbsDocument.getTbsDocument().setExtension(docExt);
+    }
+
+    return processedTbsDocument.getTbsDocument();
+  }
+
+  /**
+   * Invokes a matching {@link TbsDocumentProcessor} for the supplied document and creates a {@code SignTaskData}
+   * element for it.
+   *
+   * @param doc the pre-processed document
+   * @param signatureAlgorithm the signature algorithm
+   * @param config the policy configuration
+   * @return a SignTaskData element
+   * @throws SignServiceIntegrationException for processing errors
+   */
+  private SignTaskData processTbsDocument(final TbsDocument doc, final String signatureAlgorithm,
+      final IntegrationServiceConfiguration config) throws SignServiceIntegrationException {
+
+    final TbsDocumentProcessor<?> processor = this.getTbsDocumentProcessorRegistry().getProcessor(doc)
+        .orElseThrow(() -> new InternalSignServiceIntegrationException(new ErrorCode.Code("config"),
+            "Could not find document processor"));
+
+    final Object cachedDocument = doc.getExtension() != null && doc.getExtension() instanceof DocumentExtension
+        ? ((DocumentExtension) doc.getExtension()).getDocument()
+        : null;
+    if (cachedDocument != null) {
+      // Clean up cached object. We don't want to save it to the session ...
+      if (doc.getExtension().isEmpty()) {
+        doc.setExtension(null);
+      }
+      else {
+        doc.setExtension(new Extension(doc.getExtension()));
+      }
+    }
+
+    return processor.process(new ProcessedTbsDocument(doc, cachedDocument), signatureAlgorithm, config);
+  }
+
   /**
    * Signs the supplied {@code SignRequest} message.
    *
@@ -508,6 +553,22 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
    */
   public void setTbsDocumentProcessors(final List<TbsDocumentProcessor<?>> tbsDocumentProcessors) {
     this.tbsDocumentProcessors = tbsDocumentProcessors;
+    this.tbsDocumentProcessorRegistry = null;
+  }
+
+  /**
+   * Gets the registry used to find the TBS document processor for a document. If the registry has not been built by
+   * {@link #afterPropertiesSet()} it is built here.
+   *
+   * @return the registry
+   */
+  private DocumentProcessorRegistry<TbsDocumentProcessor<?>, TbsDocument> getTbsDocumentProcessorRegistry() {
+    DocumentProcessorRegistry<TbsDocumentProcessor<?>, TbsDocument> registry = this.tbsDocumentProcessorRegistry;
+    if (registry == null) {
+      registry = DocumentProcessorRegistry.forTbsDocumentProcessors(this.tbsDocumentProcessors);
+      this.tbsDocumentProcessorRegistry = registry;
+    }
+    return registry;
   }
 
   /**
@@ -528,6 +589,25 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
     this.documentCache = documentCache;
   }
 
+  /**
+   * Assigns an executor that is used to pre-process and process the TBS documents of a request in parallel. This is
+   * useful for requests containing several documents since the time needed to calculate the to-be-signed bytes then
+   * tracks the largest document instead of the sum of all documents.
+   * <p>
+   * The executor should be bounded (for example a fixed thread pool) and is not shut down by this processor. The
+   * resulting sign tasks are always ordered as the input documents, and if processing of several documents fail, the
+   * error for the document with the lowest index is reported.
+   * </p>
+   * <p>
+   * If not assigned, documents are processed sequentially in the calling thread.
+   * </p>
+   *
+   * @param tbsProcessingExecutor the executor
+   */
+  public void setTbsProcessingExecutor(final Executor tbsProcessingExecutor) {
+    this.tbsProcessingExecutor = tbsProcessingExecutor;
+  }
+
   /**
    * Assigns the default version to use. If not set, section 3.1 of "DSS Extension for Federated Central Signing
    * Services" states that version 1.1 is the default. So, if the {@code defaultVersion} is not set, we don't include
@@ -570,6 +650,7 @@ public class DefaultSignRequestProcessor implements SignRequestProcessor {
   @PostConstruct
   public void afterPropertiesSet() throws Exception {
     AssertThat.isNotEmpty(this.tbsDocumentProcessors, "At least one TBS document processor must be configured");
+    this.tbsDocumentProcessorRegistry = DocumentProcessorRegistry.forTbsDocumentProcessors(this.tbsDocumentProcessors);
     if (this.signMessageProcessor == null) {
       log.warn("No signMessageProcessor assigned - Processor will not be able to process the SignMessage extension");
     }
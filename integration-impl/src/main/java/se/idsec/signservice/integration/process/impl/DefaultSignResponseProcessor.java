@@ -28,17 +28,21 @@ import se.idsec.signservice.integration.SignResponseProcessingParameters;
 import se.idsec.signservice.integration.SignatureResult;
 import se.idsec.signservice.integration.SignatureResult.SignatureResultBuilder;
 import se.idsec.signservice.integration.authentication.SignerAssertionInformation;
+import se.idsec.signservice.integration.certificate.impl.CachingCertificateValidator;
+import se.idsec.signservice.integration.certificate.impl.CertificateInternCache;
 import se.idsec.signservice.integration.config.IntegrationServiceConfiguration;
 import se.idsec.signservice.integration.core.error.ErrorCode;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
 import se.idsec.signservice.integration.core.error.impl.InternalSignServiceIntegrationException;
 import se.idsec.signservice.integration.core.error.impl.SignServiceProtocolException;
 import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.core.impl.OrderedParallelExecutor;
 import se.idsec.signservice.integration.document.CompiledSignedDocument;
 import se.idsec.signservice.integration.document.SignedDocument;
 import se.idsec.signservice.integration.document.SignedDocumentProcessor;
 import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.document.ades.AdesObject;
+import se.idsec.signservice.integration.document.impl.DocumentProcessorRegistry;
 import se.idsec.signservice.integration.dss.DssUtils;
 import se.idsec.signservice.integration.dss.SignRequestWrapper;
 import se.idsec.signservice.integration.dss.SignResponseWrapper;
@@ -72,6 +76,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Default implementation of the {@link SignResponseProcessor} interface.
@@ -91,9 +97,15 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
   /** Needed when validating the SignResponse signatures. */
   private final XMLSignatureLocation xmlSignatureLocation;
 
+  /** SignService certificate indexes for each policy. Used when validating the SignResponse signatures. */
+  private final Map<String, SignServiceCertificateIndex> signServiceCertificateIndexes = new ConcurrentHashMap<>();
+
   /** The processors for handling the signed documents. */
   private List<SignedDocumentProcessor<?, ?>> signedDocumentProcessors;
 
+  /** Registry for finding the processor for a given sign task. Built from signedDocumentProcessors. */
+  private DocumentProcessorRegistry<SignedDocumentProcessor<?, ?>, SignTaskData> signedDocumentProcessorRegistry;
+
   /** Processor for handling the signer assertion info. */
   private SignerAssertionInfoProcessor signerAssertionInfoProcessor;
 
@@ -114,6 +126,18 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
   /** The default certificate validator. This instance is used if no explicit mapping exists. */
   private final CertificateValidator defaultCertificateValidator = new SimpleCertificateValidator();
 
+  /**
+   * Cache for the CA certificates received in the signer certificate chains. If {@code null}, all certificates are
+   * decoded for each response.
+   */
+  private CertificateInternCache certificateInternCache = new CertificateInternCache();
+
+  /**
+   * Optional executor for compiling and validating the signed documents of a response in parallel. If not assigned,
+   * documents are processed sequentially in the calling thread.
+   */
+  private Executor signedDocumentProcessingExecutor;
+
   /**
    * Constructor.
    */
@@ -162,8 +186,22 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
     // Validate the signature of the SignResponse ...
     //
     try {
-      this.signResponseSignatureValidator.validate(signResponseDocument, config.getSignServiceCertificatesInternal(),
-          this.xmlSignatureLocation);
+      final SignServiceCertificateIndex certificateIndex = this.getSignServiceCertificateIndex(config);
+      final List<X509Certificate> signServiceCertificates = certificateIndex.getCertificates(signResponseDocument);
+      try {
+        this.signResponseSignatureValidator.validate(
+            signResponseDocument, signServiceCertificates, this.xmlSignatureLocation);
+      }
+      catch (final SignatureException e) {
+        if (signServiceCertificates.size() == certificateIndex.getCertificates().size()) {
+          throw e;
+        }
+        // The certificate given in KeyInfo did not work out. Try all configured certificates ...
+        log.debug("{}: Failed to verify SignResponse signature using certificate from KeyInfo - trying all",
+            CorrelationID.id());
+        this.signResponseSignatureValidator.validate(
+            signResponseDocument, certificateIndex.getCertificates(), this.xmlSignatureLocation);
+      }
     }
     catch (final SignatureException e) {
       final String msg = String.format("Failed to verify signature on SignResponse - %s", e.getMessage());
@@ -298,28 +336,66 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
 
     // Now, iterate over all signatures and build signed documents and validate them ...
     //
-    for (final SignTaskData signTaskData : signTasks.getSignTaskDatas()) {
+    final List<SignedDocument> signedDocuments = this.processSignTaskDatas(
+        signTasks.getSignTaskDatas(), signerCertificateChain, sessionState, response, parameters);
 
-      // Make sure the SignTaskData follows the specs and holds all required fields ...
-      this.checkSignTaskData(signTaskData, sessionState.getSignRequest());
+    // Add them to the result ...
+    signedDocuments.forEach(resultBuilder::signedDocument);
 
-      // Find a processor for this object ...
-      final SignedDocumentProcessor<?, ?> processor = this.signedDocumentProcessors.stream()
-          .filter(p -> p.supports(signTaskData))
-          .findFirst()
-          .orElseThrow(() -> new InternalSignServiceIntegrationException(new ErrorCode.Code("config"),
-              "Could not find document processor"));
+    return resultBuilder.build();
+  }
 
-      // Process the document ...
-      final SignedDocument signedDocument =
-          this.processDocument(processor, signTaskData, signerCertificateChain, sessionState, response,
-              parameters);
+  /**
+   * Checks the supplied {@code SignTaskData}, finds a processor for it, and compiles and validates the signed document.
+   *
+   * @param signTaskData the sign task data
+   * @param signerCertificateChain the certificate chain
+   * @param state the session state
+   * @param signResponse the sign response
+   * @param parameters optional processing parameters
+   * @return a signed document
+   * @throws SignServiceIntegrationException for processing errors
+   */
+  private SignedDocument processSignTaskData(final SignTaskData signTaskData,
+      final List<X509Certificate> signerCertificateChain,
+      final SignatureSessionState state,
+      final SignResponseWrapper signResponse,
+      final SignResponseProcessingParameters parameters) throws SignServiceIntegrationException {
 
-      // Add it to the result ...
-      resultBuilder.signedDocument(signedDocument);
-    }
+    // Make sure the SignTaskData follows the specs and holds all required fields ...
+    this.checkSignTaskData(signTaskData, state.getSignRequest());
 
-    return resultBuilder.build();
+    // Find a processor for this object ...
+    final SignedDocumentProcessor<?, ?> processor = this.getSignedDocumentProcessorRegistry().getProcessor(signTaskData)
+        .orElseThrow(() -> new InternalSignServiceIntegrationException(new ErrorCode.Code("config"),
+            "Could not find document processor"));
+
+    // Process the document ...
+    return this.processDocument(processor, signTaskData, signerCertificateChain, state, signResponse, parameters);
+  }
+
+  /**
+   * Builds and validates the signed documents for all sign tasks of a response. If a
+   * {@code signedDocumentProcessingExecutor} has been assigned, the sign tasks are processed in parallel.
+   *
+   * @param signTaskDatas the sign tasks
+   * @param signerCertificateChain the certificate chain
+   * @param state the session state
+   * @param signResponse the sign response
+   * @param parameters optional processing parameters
+   * @return the signed documents (ordered as the sign tasks)
+   * @throws SignServiceIntegrationException for processing errors (for the sign task having the lowest index)
+   */
+  List<SignedDocument> processSignTaskDatas(final List<SignTaskData> signTaskDatas,
+      final List<X509Certificate> signerCertificateChain,
+      final SignatureSessionState state,
+      final SignResponseWrapper signResponse,
+      final SignResponseProcessingParameters parameters) throws SignServiceIntegrationException {
+
+    return OrderedParallelExecutor.invokeAll(this.signedDocumentProcessingExecutor, signTaskDatas.size(),
+        i -> this.processSignTaskData(signTaskDatas.get(i), signerCertificateChain, state, signResponse, parameters),
+        e -> new InternalSignServiceIntegrationException(new ErrorCode.Code("interrupted"),
+            "Interrupted while processing signed documents", e));
   }
 
   /**
@@ -445,6 +521,25 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
     // TODO: If strict processing is active compare this request with our request from the session state.
   }
 
+  /**
+   * Gets the SignService certificate index for the supplied policy configuration. The index is built the first time a
+   * policy is used, and rebuilt if the SignService certificates of the policy are changed.
+   *
+   * @param config the policy configuration
+   * @return the certificate index
+   */
+  private SignServiceCertificateIndex getSignServiceCertificateIndex(final IntegrationServiceConfiguration config) {
+    final List<X509Certificate> certificates = config.getSignServiceCertificatesInternal();
+    final SignServiceCertificateIndex index = this.signServiceCertificateIndexes.get(config.getPolicy());
+    if (index != null && index.isIndexFor(certificates)) {
+      return index;
+    }
+    log.debug("Building SignService certificate index for policy '{}'", config.getPolicy());
+    final SignServiceCertificateIndex newIndex = new SignServiceCertificateIndex(certificates);
+    this.signServiceCertificateIndexes.put(config.getPolicy(), newIndex);
+    return newIndex;
+  }
+
   /**
    * Gets a list of {@link X509Certificate} by reading the supplied {@code SignatureCertificateChain}.
    *
@@ -466,12 +561,16 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
       throw new SignServiceProtocolException(msg);
     }
 
-    // Next, decode all certificates ...
+    // Next, decode all certificates. The signer certificate is always decoded, but the CA certificates are
+    // resolved using the intern cache (if configured) ...
     //
-    final List<X509Certificate> certificates = new ArrayList<>();
-    for (final byte[] enc : signatureCertificateChain.getX509Certificates()) {
+    final List<byte[]> encodedCertificates = signatureCertificateChain.getX509Certificates();
+    final List<X509Certificate> certificates = new ArrayList<>(encodedCertificates.size());
+    for (final byte[] enc : encodedCertificates) {
       try {
-        certificates.add(CertificateUtils.decodeCertificate(enc));
+        certificates.add(certificates.isEmpty() || this.certificateInternCache == null
+            ? CertificateUtils.decodeCertificate(enc)
+            : this.certificateInternCache.decodeCertificate(enc));
       }
       catch (final CertificateException e) {
         final String msg =
@@ -597,6 +696,23 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
    */
   public void setSignedDocumentProcessors(final List<SignedDocumentProcessor<?, ?>> signedDocumentProcessors) {
     this.signedDocumentProcessors = signedDocumentProcessors;
+    this.signedDocumentProcessorRegistry = null;
+  }
+
+  /**
+   * Gets the registry used to find the processor for a sign task. If the registry has not been built by
+   * {@link #afterPropertiesSet()} it is built here.
+   *
+   * @return the registry
+   */
+  private DocumentProcessorRegistry<SignedDocumentProcessor<?, ?>, SignTaskData> getSignedDocumentProcessorRegistry() {
+    DocumentProcessorRegistry<SignedDocumentProcessor<?, ?>, SignTaskData> registry =
+        this.signedDocumentProcessorRegistry;
+    if (registry == null) {
+      registry = DocumentProcessorRegistry.forSignedDocumentProcessors(this.signedDocumentProcessors);
+      this.signedDocumentProcessorRegistry = registry;
+    }
+    return registry;
   }
 
   /**
@@ -633,6 +749,10 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
    * If no mapping for a given policy exists, a default validator will be used (see
    * {@link SimpleCertificateValidator}).
    * </p>
+   * <p>
+   * To avoid validating the complete certificate path of each signer certificate, a {@link CachingCertificateValidator}
+   * may be used. Such an instance may be shared between policies.
+   * </p>
    *
    * @param certificateValidators policy to certificate validator mappings
    */
@@ -640,6 +760,46 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
     this.certificateValidators = certificateValidators;
   }
 
+  /**
+   * Assigns the cache used to intern the decoded CA certificates of the signer certificate chains received in sign
+   * responses. The signer certificate itself is always decoded. By default a {@link CertificateInternCache} holding at
+   * most {@value CertificateInternCache#DEFAULT_MAX_SIZE} certificates is used.
+   * <p>
+   * Assign an instance to be able to read its hit ratio metrics, or {@code null} to disable interning.
+   * </p>
+   *
+   * @param certificateInternCache the certificate cache (may be null)
+   */
+  public void setCertificateInternCache(final CertificateInternCache certificateInternCache) {
+    this.certificateInternCache = certificateInternCache;
+  }
+
+  /**
+   * Assigns an executor that is used to compile and validate the signed documents of a response in parallel. For
+   * responses holding several documents this is usually the dominating cost, since each document is rebuilt and fully
+   * validated.
+   * <p>
+   * The executor should be bounded (for example a fixed thread pool) and is not shut down by this processor. The
+   * signed documents of the resulting {@link SignatureResult} are always ordered as the sign tasks of the response,
+   * and if processing of several documents fail, the error for the sign task with the lowest index is reported. The
+   * current {@link CorrelationID} is propagated to the worker threads.
+   * </p>
+   * <p>
+   * Note that when an executor is assigned, the {@link SignedDocumentProcessor} instances, and the validators they
+   * use, are invoked concurrently for the different documents of a response. The processors of this library keep no
+   * per-document state in instance fields and are safe to use this way. Custom processors must also be thread safe
+   * before an executor is assigned.
+   * </p>
+   * <p>
+   * If not assigned, documents are processed sequentially in the calling thread.
+   * </p>
+   *
+   * @param signedDocumentProcessingExecutor the executor
+   */
+  public void setSignedDocumentProcessingExecutor(final Executor signedDocumentProcessingExecutor) {
+    this.signedDocumentProcessingExecutor = signedDocumentProcessingExecutor;
+  }
+
   /**
    * Ensures that all required properties have been assigned. The method also makes sure that the
    * {@code processingConfiguration} property is assigned (by default
@@ -656,6 +816,8 @@ public class DefaultSignResponseProcessor implements SignResponseProcessor {
   @PostConstruct
   public void afterPropertiesSet() throws Exception {
     AssertThat.isNotEmpty(this.signedDocumentProcessors, "At least one document processor must be configured");
+    this.signedDocumentProcessorRegistry =
+        DocumentProcessorRegistry.forSignedDocumentProcessors(this.signedDocumentProcessors);
     if (this.processingConfiguration == null) {
       this.processingConfiguration = SignResponseProcessingConfig.defaultSignResponseProcessingConfig();
     }
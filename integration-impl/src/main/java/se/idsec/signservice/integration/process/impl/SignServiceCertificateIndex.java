@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.process.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index over the SignService certificates of a policy. The index is used to pick the certificate that should be
+ * used to verify the signature of a SignResponse directly from the {@code ds:KeyInfo} element of the signature, instead
+ * of trying each of the configured certificates (which is the case if several certificates are configured, for
+ * example, during a key rollover).
+ * <p>
+ * The index maps SHA-256 fingerprints of the certificates ({@code ds:X509Certificate}) and the subject key identifiers
+ * ({@code ds:X509SKI}) to the corresponding certificate. An index is built for a given list of certificates, and
+ * {@link #isIndexFor(List)} may be used to find out whether it needs to be rebuilt.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class SignServiceCertificateIndex {
+
+  /** The XML Signature namespace. */
+  private static final String DS_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+  /** The OID for the subject key identifier extension. */
+  private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+
+  /** The certificates that the index was built from. */
+  private final List<X509Certificate> certificates;
+
+  /** Certificates indexed by their SHA-256 fingerprints. */
+  private final Map<String, X509Certificate> byFingerprint = new HashMap<>();
+
+  /** Certificates indexed by their subject key identifiers. */
+  private final Map<String, X509Certificate> bySubjectKeyIdentifier = new HashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param certificates the SignService certificates
+   */
+  public SignServiceCertificateIndex(@Nonnull final List<X509Certificate> certificates) {
+    this.certificates = certificates;
+    for (final X509Certificate certificate : certificates) {
+      try {
+        this.byFingerprint.putIfAbsent(fingerprint(certificate.getEncoded()), certificate);
+      }
+      catch (final CertificateEncodingException e) {
+        log.warn("Failed to encode SignService certificate '{}' - will not be indexed",
+            certificate.getSubjectX500Principal(), e);
+      }
+      final byte[] ski = getSubjectKeyIdentifier(certificate);
+      if (ski != null) {
+        this.bySubjectKeyIdentifier.putIfAbsent(HexFormat.of().formatHex(ski), certificate);
+      }
+    }
+  }
+
+  /**
+   * Tells whether this index was built from the supplied certificate list.
+   *
+   * @param certificates the SignService certificates of a policy
+   * @return true if the index was built from the supplied list and false otherwise
+   */
+  public boolean isIndexFor(@Nonnull final List<X509Certificate> certificates) {
+    return this.certificates == certificates;
+  }
+
+  /**
+   * Gets the certificates to use when verifying the signature of the supplied SignResponse document. If a certificate
+   * given in the {@code ds:KeyInfo} element of the signature can be found in the index, a list holding this certificate
+   * is returned. Otherwise, all certificates of the index are returned.
+   *
+   * @param signResponseDocument the SignResponse document
+   * @return a list of certificates
+   */
+  @Nonnull
+  public List<X509Certificate> getCertificates(@Nonnull final Document signResponseDocument) {
+    if (this.certificates.size() <= 1) {
+      return this.certificates;
+    }
+    final X509Certificate certificate = this.find(getKeyInfo(signResponseDocument));
+    return certificate != null ? Collections.singletonList(certificate) : this.certificates;
+  }
+
+  /**
+   * Gets all certificates of the index.
+   *
+   * @return a list of certificates
+   */
+  @Nonnull
+  public List<X509Certificate> getCertificates() {
+    return this.certificates;
+  }
+
+  /**
+   * Finds the certificate identified by the supplied {@code ds:KeyInfo} element.
+   *
+   * @param keyInfo the KeyInfo element (may be null)
+   * @return the certificate or null if no match is found
+   */
+  private X509Certificate find(@Nullable final Element keyInfo) {
+    if (keyInfo == null) {
+      return null;
+    }
+    try {
+      final Element x509Certificate = getDescendant(keyInfo, "X509Certificate");
+      if (x509Certificate != null) {
+        final X509Certificate c =
+            this.byFingerprint.get(fingerprint(Base64.getMimeDecoder().decode(x509Certificate.getTextContent())));
+        if (c != null) {
+          return c;
+        }
+      }
+      final Element x509Ski = getDescendant(keyInfo, "X509SKI");
+      if (x509Ski != null) {
+        return this.bySubjectKeyIdentifier.get(
+            HexFormat.of().formatHex(Base64.getMimeDecoder().decode(x509Ski.getTextContent())));
+      }
+    }
+    catch (final IllegalArgumentException e) {
+      log.debug("Invalid Base64 in KeyInfo of SignResponse signature - {}", e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Gets the {@code ds:KeyInfo} element of the SignResponse signature. The signature is the last child of the
+   * {@code OptionalOutputs} element.
+   *
+   * @param document the SignResponse document
+   * @return the KeyInfo element, or null if it is not found
+   */
+  private static Element getKeyInfo(final Document document) {
+    final Element optionalOutputs = getChild(document.getDocumentElement(), null, "OptionalOutputs");
+    if (optionalOutputs == null) {
+      return null;
+    }
+    final Element signature = getChild(optionalOutputs, DS_NS, "Signature");
+    return signature != null ? getChild(signature, DS_NS, "KeyInfo") : null;
+  }
+
+  /**
+   * Gets the last child element with the given name.
+   *
+   * @param parent the parent element
+   * @param namespace the namespace (null matches any namespace)
+   * @param localName the local name
+   * @return the element or null
+   */
+  private static Element getChild(final Element parent, final String namespace, final String localName) {
+    Element result = null;
+    for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+      if (n.getNodeType() == Node.ELEMENT_NODE && localName.equals(n.getLocalName())
+          && (namespace == null || namespace.equals(n.getNamespaceURI()))) {
+        result = (Element) n;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the first descendant element (in the XML Signature namespace) with the given name.
+   *
+   * @param parent the parent element
+   * @param localName the local name
+   * @return the element or null
+   */
+  private static Element getDescendant(final Element parent, final String localName) {
+    final NodeList list = parent.getElementsByTagNameNS(DS_NS, localName);
+    return list.getLength() > 0 ? (Element) list.item(0) : null;
+  }
+
+  /**
+   * Gets the subject key identifier of a certificate.
+   *
+   * @param certificate the certificate
+   * @return the key identifier bytes or null
+   */
+  private static byte[] getSubjectKeyIdentifier(final X509Certificate certificate) {
+    // The extension value is an OCTET STRING containing the DER encoding of the SubjectKeyIdentifier which itself is
+    // an OCTET STRING ...
+    final byte[] value = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+    if (value == null) {
+      return null;
+    }
+    final byte[] inner = getOctetStringContents(value);
+    return inner != null ? getOctetStringContents(inner) : null;
+  }
+
+  /**
+   * Gets the contents of a DER encoded OCTET STRING.
+   *
+   * @param encoding the encoding
+   * @return the contents or null if the encoding is not a valid OCTET STRING
+   */
+  private static byte[] getOctetStringContents(final byte[] encoding) {
+    if (encoding.length < 2 || encoding[0] != 0x04) {
+      return null;
+    }
+    int length = encoding[1] & 0xff;
+    int offset = 2;
+    if (length > 0x7f) {
+      final int lengthBytes = length & 0x7f;
+      if (lengthBytes > 3 || encoding.length < 2 + lengthBytes) {
+        return null;
+      }
+      length = 0;
+      for (int i = 0; i < lengthBytes; i++) {
+        length = (length << 8) | (encoding[2 + i] & 0xff);
+      }
+      offset += lengthBytes;
+    }
+    if (offset + length != encoding.length) {
+      return null;
+    }
+    final byte[] contents = new byte[length];
+    System.arraycopy(encoding, offset, contents, 0, length);
+    return contents;
+  }
+
+  /**
+   * Calculates the SHA-256 fingerprint of the supplied bytes.
+   *
+   * @param bytes the bytes
+   * @return the hex-encoded fingerprint
+   */
+  private static String fingerprint(final byte[] bytes) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new SecurityException(e);
+    }
+  }
+
+}
@@ -22,9 +22,12 @@ import lombok.extern.slf4j.Slf4j;
 import se.idsec.signservice.integration.SignRequestInput;
 import se.idsec.signservice.integration.config.ConfigurationManager;
 import se.idsec.signservice.integration.config.IntegrationServiceConfiguration;
+import se.idsec.signservice.integration.core.DocumentCache;
 import se.idsec.signservice.integration.core.SignatureState;
 import se.idsec.signservice.integration.core.error.ErrorCode;
 import se.idsec.signservice.integration.core.error.NoAccessException;
+import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.dss.SignRequestWrapper;
 import se.idsec.signservice.integration.state.CacheableSignatureState;
 import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
@@ -37,6 +40,13 @@ import se.swedenconnect.xml.jaxb.JAXBMarshaller;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Default implementation for signature state processing.
@@ -56,9 +66,33 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
   /** Should state objects be Base64-encoded? */
   private boolean base64Encoded = false;
 
+  /** The encoding to use for Base64-encoded state objects, unless a policy specific encoding has been assigned. */
+  private SessionStateEncoding defaultStateEncoding = SessionStateEncoding.JSON;
+
+  /** Optional mapping between policies and the encoding to use for Base64-encoded state objects. */
+  private Map<String, SessionStateEncoding> stateEncodings;
+
+  /** The maximum size (in bytes) of a decoded binary encoded state. */
+  private long maxDecodedStateSize = SignatureSessionStateCodec.DEFAULT_MAX_DECODED_SIZE;
+
   /** For JSON deserialization. */
   private final ObjectMapper objectMapper = new ObjectMapper();
 
+  /** Prefix for content references of documents that have been moved out of a stateless state. */
+  public static final String STATE_DOCUMENT_REFERENCE_PREFIX = "sha256:";
+
+  /** The default maximum size (in characters of the Base64-encoded content) for documents kept in the state. */
+  public static final int DEFAULT_INLINE_DOCUMENT_MAX_SIZE = 65536;
+
+  /**
+   * Optional document cache. If assigned, stateless states are created in "hybrid" mode, meaning that the contents of
+   * documents larger than {@code inlineDocumentMaxSize} are stored in the cache and the state only holds a reference.
+   */
+  private DocumentCache documentCache;
+
+  /** The maximum size of documents that are kept in a stateless state (in hybrid mode). */
+  private int inlineDocumentMaxSize = DEFAULT_INLINE_DOCUMENT_MAX_SIZE;
+
   /** {@inheritDoc} */
   @Override
   public SignatureState createSignatureState(final SignRequestInput requestInput, final SignRequestWrapper signRequest,
@@ -75,6 +109,13 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
         .signMessage(requestInput.getSignMessageParameters())
         .build();
 
+    // In hybrid mode we move the contents of large documents to the document cache ...
+    //
+    if (stateless && this.documentCache != null) {
+      sessionState.setTbsDocuments(
+          this.storeLargeDocuments(requestInput.getTbsDocuments(), signRequest.getRequestID(), ownerId));
+    }
+
     // If we are running in stateless mode we add the Base64-encoded SignRequest to the state, since the
     // SignRequest instance itself isn't something we can serialize to JSON (which will be done if we are
     // running as a REST-service).
@@ -110,7 +151,7 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
         try {
           return EncodedSignatureState.builder()
               .id(signRequest.getRequestID())
-              .state(new EncodedSignatureSessionState(sessionState))
+              .state(new EncodedSignatureSessionState(sessionState, this.getStateEncoding(requestInput.getPolicy())))
               .build();
         }
         catch (final IOException e) {
@@ -166,7 +207,7 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
         final EncodedSignatureSessionState encodedState =
             (EncodedSignatureSessionState) inputState.getState();
         try {
-          state = encodedState.getSignatureSessionState();
+          state = encodedState.getSignatureSessionState(this.maxDecodedStateSize);
         }
         catch (final IOException e) {
           throw new StateException(new ErrorCode.Code("format-error"), "Failed to deserialize state", e);
@@ -180,7 +221,7 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
           if (this.base64Encoded) {
             final EncodedSignatureSessionState encodedState = this.objectMapper.convertValue(receivedState,
                 EncodedSignatureSessionState.class);
-            state = encodedState.getSignatureSessionState();
+            state = encodedState.getSignatureSessionState(this.maxDecodedStateSize);
           }
           else {
             state = this.objectMapper.convertValue(receivedState, SignatureSessionState.class);
@@ -217,10 +258,138 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
         log.error(msg);
         throw new StateException(new ErrorCode.Code("policy-error"), msg);
       }
+      this.restoreLargeDocuments(state, inputState.getId(), requesterId);
       return state;
     }
   }
 
+  /**
+   * Stores the contents of documents larger than {@code inlineDocumentMaxSize} in the document cache, and returns a
+   * list of documents where the contents of these documents have been replaced with a content reference. The content
+   * reference is the SHA-256 digest of the contents. The contents are stored under an ID made up of the state ID and
+   * the reference, and are owned by the owner of the state.
+   *
+   * @param tbsDocuments the documents
+   * @param stateId the state ID
+   * @param ownerId the owner identity (may be null)
+   * @return a list of documents to be stored in the state
+   */
+  List<TbsDocument> storeLargeDocuments(final List<TbsDocument> tbsDocuments, final String stateId,
+      final String ownerId) {
+    if (tbsDocuments == null) {
+      return null;
+    }
+    final List<TbsDocument> documents = new ArrayList<>(tbsDocuments.size());
+    for (final TbsDocument document : tbsDocuments) {
+      final String content = document.getContent();
+      if (content == null || content.length() <= this.inlineDocumentMaxSize) {
+        documents.add(document);
+        continue;
+      }
+      final String reference = STATE_DOCUMENT_REFERENCE_PREFIX + digest(content);
+      this.documentCache.put(getStateDocumentCacheId(stateId, reference), content, ownerId);
+      log.debug("{}: Contents of document '{}' stored in document cache with reference '{}'",
+          CorrelationID.id(), document.getId(), reference);
+
+      final TbsDocument updatedDocument = document.toBuilder().build();
+      updatedDocument.setContent(null);
+      updatedDocument.setContentReference(reference);
+      documents.add(updatedDocument);
+    }
+    return documents;
+  }
+
+  /**
+   * Restores the contents of documents that were stored in the document cache when the state was created. The digest
+   * of the contents is verified against the reference. The document cache makes sure that the requester is the owner
+   * of the contents. The contents are consumed, i.e., removed from the document cache, when read.
+   *
+   * @param state the session state
+   * @param stateId the state ID
+   * @param requesterId the requester ID (may be null)
+   * @throws StateException if the contents are missing or do not match the reference
+   * @throws NoAccessException if the requester does not have access to the cached contents
+   */
+  void restoreLargeDocuments(final SignatureSessionState state, final String stateId,
+      final String requesterId) throws StateException, NoAccessException {
+
+    final List<TbsDocument> tbsDocuments = state.getTbsDocuments();
+    if (tbsDocuments == null || tbsDocuments.stream().noneMatch(DefaultSignatureStateProcessor::isStateDocument)) {
+      return;
+    }
+    if (this.documentCache == null) {
+      final String msg = String.format("Signature state '%s' holds document references, but no document cache is "
+          + "configured", stateId);
+      log.error(msg);
+      throw new StateException(new ErrorCode.Code("format-error"), msg);
+    }
+    final List<TbsDocument> documents = new ArrayList<>(tbsDocuments.size());
+    for (final TbsDocument document : tbsDocuments) {
+      if (!isStateDocument(document)) {
+        documents.add(document);
+        continue;
+      }
+      final String reference = document.getContentReference();
+      final String content = this.documentCache.get(getStateDocumentCacheId(stateId, reference), true, requesterId);
+      if (content == null) {
+        final String msg = String.format("Contents for document '%s' of signature state '%s' is not available",
+            document.getId(), stateId);
+        log.info(msg);
+        throw new StateException(new ErrorCode.Code("not-found"), msg);
+      }
+      if (!reference.equals(STATE_DOCUMENT_REFERENCE_PREFIX + digest(content))) {
+        final String msg = String.format("Digest of contents for document '%s' of signature state '%s' does not match",
+            document.getId(), stateId);
+        log.error(msg);
+        throw new StateException(new ErrorCode.Code("integrity-error"), msg);
+      }
+      final TbsDocument updatedDocument = document.toBuilder().build();
+      updatedDocument.setContent(content);
+      updatedDocument.setContentReference(null);
+      documents.add(updatedDocument);
+    }
+    state.setTbsDocuments(documents);
+  }
+
+  /**
+   * Predicate telling whether the supplied document holds a reference to contents stored by
+   * {@link #storeLargeDocuments(List, String, String)}.
+   *
+   * @param document the document
+   * @return true if the document holds a state document reference and false otherwise
+   */
+  private static boolean isStateDocument(final TbsDocument document) {
+    return document.getContent() == null && document.getContentReference() != null
+        && document.getContentReference().startsWith(STATE_DOCUMENT_REFERENCE_PREFIX);
+  }
+
+  /**
+   * Gets the document cache ID for a reference of a given state.
+   *
+   * @param stateId the state ID
+   * @param reference the content reference
+   * @return the cache ID
+   */
+  private static String getStateDocumentCacheId(final String stateId, final String reference) {
+    return stateId + "/" + reference;
+  }
+
+  /**
+   * Calculates the hex-encoded SHA-256 digest of the supplied contents.
+   *
+   * @param content the contents
+   * @return the hex-encoded digest
+   */
+  private static String digest(final String content) {
+    try {
+      return HexFormat.of().formatHex(
+          MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.US_ASCII)));
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new SecurityException(e);
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public IntegrationServiceStateCache getStateCache() {
@@ -254,6 +423,80 @@ public class DefaultSignatureStateProcessor implements SignatureStateProcessor {
     this.base64Encoded = base64Encoded;
   }
 
+  /**
+   * Assigns the encoding to use for Base64-encoded state objects (see {@link #setBase64Encoded(boolean)}). The default
+   * is {@link SessionStateEncoding#JSON}. Encoded states are always decoded, regardless of the encoding used.
+   *
+   * @param defaultStateEncoding the encoding
+   */
+  public void setDefaultStateEncoding(final SessionStateEncoding defaultStateEncoding) {
+    this.defaultStateEncoding = defaultStateEncoding;
+  }
+
+  /**
+   * Assigns a mapping between policies and the encoding to use for Base64-encoded state objects. For policies not
+   * present in the mapping, the default encoding is used (see {@link #setDefaultStateEncoding(SessionStateEncoding)}).
+   *
+   * @param stateEncodings policy to encoding mappings
+   */
+  public void setStateEncodings(final Map<String, SessionStateEncoding> stateEncodings) {
+    this.stateEncodings = stateEncodings;
+  }
+
+  /**
+   * Assigns the maximum size (in bytes) of a received binary encoded state after it has been decoded (and inflated).
+   * States exceeding this size are rejected. The default is {@link SignatureSessionStateCodec#DEFAULT_MAX_DECODED_SIZE}.
+   *
+   * @param maxDecodedStateSize the maximum size in bytes
+   */
+  public void setMaxDecodedStateSize(final long maxDecodedStateSize) {
+    if (maxDecodedStateSize <= 0) {
+      throw new IllegalArgumentException("maxDecodedStateSize must be greater than 0");
+    }
+    this.maxDecodedStateSize = maxDecodedStateSize;
+  }
+
+  /**
+   * Gets the encoding to use for Base64-encoded state objects for the given policy.
+   *
+   * @param policy the policy
+   * @return the encoding
+   */
+  private SessionStateEncoding getStateEncoding(final String policy) {
+    final SessionStateEncoding encoding =
+        this.stateEncodings != null && policy != null ? this.stateEncodings.get(policy) : null;
+    if (encoding != null) {
+      return encoding;
+    }
+    return this.defaultStateEncoding != null ? this.defaultStateEncoding : SessionStateEncoding.JSON;
+  }
+
+  /**
+   * Assigns a document cache. If assigned, stateless states are created in "hybrid" mode: The contents of documents
+   * larger than the inline threshold (see {@link #setInlineDocumentMaxSize(int)}) are stored in the document cache and
+   * the state only holds the SHA-256 digest of the contents as a reference. The digest is verified when the state is
+   * read back. Smaller documents are kept in the state.
+   * <p>
+   * For this to work when running several instances, the document cache must be shared between the instances.
+   * </p>
+   *
+   * @param documentCache the document cache
+   */
+  public void setDocumentCache(final DocumentCache documentCache) {
+    this.documentCache = documentCache;
+  }
+
+  /**
+   * Assigns the maximum size (in characters of the Base64-encoded content) for documents that are kept in a stateless
+   * state when running in hybrid mode (see {@link #setDocumentCache(DocumentCache)}). The default is
+   * {@value #DEFAULT_INLINE_DOCUMENT_MAX_SIZE}.
+   *
+   * @param inlineDocumentMaxSize the maximum size
+   */
+  public void setInlineDocumentMaxSize(final int inlineDocumentMaxSize) {
+    this.inlineDocumentMaxSize = inlineDocumentMaxSize;
+  }
+
   /**
    * Ensures that all required properties have been assigned.
    *
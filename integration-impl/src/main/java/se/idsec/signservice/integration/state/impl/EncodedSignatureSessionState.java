@@ -18,7 +18,6 @@ package se.idsec.signservice.integration.state.impl;
 import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -50,7 +49,8 @@ public class EncodedSignatureSessionState implements Serializable {
   private final static ObjectMapper mapper = new ObjectMapper();
 
   /**
-   * The state in the Base64-encoded form of the JSON-serialization of SignatureSessionState.
+   * The state in the Base64-encoded form of the JSON-serialization, or binary encoding (see
+   * {@link SignatureSessionStateCodec}), of SignatureSessionState.
    */
   @Setter
   @Getter
@@ -87,6 +87,22 @@ public class EncodedSignatureSessionState implements Serializable {
     this.setSignatureSessionState(state);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param state
+   *          the state
+   * @param encoding
+   *          the encoding to use
+   * @throws IOException
+   *           for serialization errors
+   */
+  public EncodedSignatureSessionState(final SignatureSessionState state, final SessionStateEncoding encoding)
+      throws IOException {
+    this();
+    this.setSignatureSessionState(state, encoding);
+  }
+
   /**
    * Assigns the state to be compressed.
    *
@@ -97,12 +113,32 @@ public class EncodedSignatureSessionState implements Serializable {
    */
   @JsonIgnore
   public void setSignatureSessionState(final SignatureSessionState state) throws IOException {
-    final String json = mapper.writer().writeValueAsString(state);
-    this.encodedState = Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    this.setSignatureSessionState(state, SessionStateEncoding.JSON);
   }
 
   /**
-   * Decompresses and gets the session state.
+   * Assigns the state using the given encoding.
+   *
+   * @param state
+   *          the state
+   * @param encoding
+   *          the encoding to use
+   * @throws IOException
+   *           for serialization or compression errors
+   */
+  @JsonIgnore
+  public void setSignatureSessionState(final SignatureSessionState state, final SessionStateEncoding encoding)
+      throws IOException {
+    final byte[] bytes = switch (encoding) {
+      case BINARY -> SignatureSessionStateCodec.encode(state, false);
+      case BINARY_COMPRESSED -> SignatureSessionStateCodec.encode(state, true);
+      default -> mapper.writer().writeValueAsBytes(state);
+    };
+    this.encodedState = Base64.getEncoder().encodeToString(bytes);
+  }
+
+  /**
+   * Decompresses and gets the session state. Both the JSON and binary encodings are supported.
    *
    * @return the state
    * @throws IOException
@@ -110,10 +146,35 @@ public class EncodedSignatureSessionState implements Serializable {
    */
   @JsonIgnore
   public SignatureSessionState getSignatureSessionState() throws IOException {
+    return this.getSignatureSessionState(SignatureSessionStateCodec.DEFAULT_MAX_DECODED_SIZE);
+  }
+
+  /**
+   * Decompresses and gets the session state. Both the JSON and binary encodings are supported.
+   *
+   * @param maxDecodedSize
+   *          the maximum size (in bytes) of a decoded, and inflated, binary encoding (see
+   *          {@link SignatureSessionStateCodec#decode(byte[], long)})
+   * @return the state
+   * @throws IOException
+   *           for deserialization errors
+   */
+  @JsonIgnore
+  public SignatureSessionState getSignatureSessionState(final long maxDecodedSize) throws IOException {
     if (this.encodedState == null) {
       return null;
     }
-    return mapper.readValue(Base64.getDecoder().decode(this.encodedState), SignatureSessionState.class);
+    final byte[] bytes;
+    try {
+      bytes = Base64.getDecoder().decode(this.encodedState);
+    }
+    catch (final IllegalArgumentException e) {
+      throw new IOException("Invalid Base64 encoding of state", e);
+    }
+    if (SignatureSessionStateCodec.isBinaryEncoding(bytes)) {
+      return SignatureSessionStateCodec.decode(bytes, maxDecodedSize);
+    }
+    return mapper.readValue(bytes, SignatureSessionState.class);
   }
 
 }
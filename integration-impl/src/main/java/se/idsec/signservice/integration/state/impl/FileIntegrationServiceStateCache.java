@@ -0,0 +1,835 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import se.idsec.signservice.integration.core.impl.AbstractIntegrationServiceCache;
+import se.idsec.signservice.integration.core.impl.CacheDeserializationFilter;
+import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+import se.idsec.signservice.utils.AssertThat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A file-backed implementation of the {@link IntegrationServiceStateCache} interface. States survive restarts of the
+ * application, which means that signature operations that are in progress during, for example, a rolling deploy can be
+ * completed.
+ * <p>
+ * States are written to append-only log segments in the configured directory (see {@link #setDirectory(File)}), and an
+ * in-memory index maps each state ID to the location of the state in the log. When the application is started, the
+ * index is recovered by reading the segments. A segment is closed when it reaches {@link #setMaxSegmentSize(long)}
+ * bytes, and closed segments where most of the data is removed or expired are compacted, i.e., the live states are
+ * copied to the active segment and the segment is deleted. Compaction is performed by {@link #compact()}, which is
+ * invoked periodically if {@link #setCompactionInterval(long)} is assigned.
+ * </p>
+ * <p>
+ * States are serialized using Java serialization, and are deserialized using the filter given by
+ * {@link CacheDeserializationFilter#getDefaultFilter()}. Expiration follows the same {@code maxAge} semantics as for
+ * the in-memory cache.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class FileIntegrationServiceStateCache extends AbstractIntegrationServiceCache<CacheableSignatureState>
+    implements IntegrationServiceStateCache {
+
+  /** The default maximum size of a log segment (16 MiB). */
+  public static final long DEFAULT_MAX_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+  /** The default share of live data in a segment below which the segment is compacted. */
+  public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+  /** Record type for an added state. */
+  private static final byte RECORD_PUT = 1;
+
+  /** Record type for a removed state. */
+  private static final byte RECORD_REMOVE = 2;
+
+  /** Pattern for segment file names. */
+  private static final Pattern SEGMENT_NAME = Pattern.compile("state-(\\d{10})\\.log");
+
+  /** The index of all live states. */
+  private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+
+  /** The segments, ordered by their sequence numbers. */
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+  /** Lock protecting the segments. Reads use the read lock and writes use the write lock. */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** The segment that we are currently writing to. */
+  private Segment activeSegment;
+
+  /** The directory holding the log segments. */
+  private Path directory;
+
+  /** The maximum size of a log segment. */
+  private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+  /** The share of live data in a segment below which the segment is compacted. */
+  private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+  /** Whether each write should be forced to disk. */
+  private boolean syncOnWrite = false;
+
+  /** The interval (in millis) for periodic compaction. 0 means that no periodic compaction is performed. */
+  private long compactionInterval = 0L;
+
+  /** The scheduler for periodic compaction (if started). */
+  private ScheduledExecutorService scheduler;
+
+  /** {@inheritDoc} */
+  @Override
+  protected CacheEntry<CacheableSignatureState> getCacheEntry(final String id) {
+    this.lock.readLock().lock();
+    try {
+      final IndexEntry entry = this.index.get(id);
+      if (entry == null) {
+        return null;
+      }
+      final byte[] payload = new byte[entry.payloadLength];
+      entry.segment.read(payload, entry.payloadPosition);
+      return new FileCacheEntry(payload, entry.ownerId, entry.expirationTime);
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to read state from log segment", e);
+    }
+    finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void putCacheObject(final String id, final CacheableSignatureState object, final String ownerId,
+      final long expirationTime) {
+    if (object == null) {
+      return;
+    }
+    final byte[] payload;
+    try {
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (final ObjectOutputStream out = new ObjectOutputStream(bos)) {
+        out.writeObject(object);
+      }
+      payload = bos.toByteArray();
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to serialize state", e);
+    }
+
+    this.lock.writeLock().lock();
+    try {
+      this.append(id, payload, ownerId, expirationTime);
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to write state to log segment", e);
+    }
+    finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void removeCacheObject(final String id) {
+    this.lock.writeLock().lock();
+    try {
+      final IndexEntry entry = this.index.remove(id);
+      if (entry != null) {
+        entry.segment.liveBytes -= entry.recordLength;
+        this.write(encodeRemove(id));
+      }
+    }
+    catch (final IOException e) {
+      throw new UncheckedIOException("Failed to write to log segment", e);
+    }
+    finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes expired states from the index. The log records of expired states are reclaimed when the segments holding
+   * them are compacted. Since expired records are skipped during recovery, no removal records are written.
+   */
+  @Override
+  public void clearExpired() {
+    final long now = System.currentTimeMillis();
+    this.lock.writeLock().lock();
+    try {
+      this.index.entrySet().removeIf(e -> {
+        if (e.getValue().expirationTime < now) {
+          log.debug("{}: Clearing expired state '{}'", CorrelationID.id(), e.getKey());
+          e.getValue().segment.liveBytes -= e.getValue().recordLength;
+          return true;
+        }
+        return false;
+      });
+    }
+    finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Compacts the log. All closed segments where the share of live data is below the compaction threshold (see
+   * {@link #setCompactionThreshold(double)}) are compacted. The live states of these segments are copied to the active
+   * segment and the segments are deleted.
+   *
+   * @throws IOException for file errors
+   */
+  public void compact() throws IOException {
+    this.lock.writeLock().lock();
+    try {
+      final List<Segment> candidates = new ArrayList<>();
+      for (final Segment segment : this.segments.values()) {
+        if (segment != this.activeSegment && segment.liveBytes < segment.size * this.compactionThreshold) {
+          candidates.add(segment);
+        }
+      }
+      for (final Segment segment : candidates) {
+        int copied = 0;
+        for (final Map.Entry<String, IndexEntry> e : List.copyOf(this.index.entrySet())) {
+          final IndexEntry entry = e.getValue();
+          if (entry.segment == segment) {
+            final byte[] payload = new byte[entry.payloadLength];
+            segment.read(payload, entry.payloadPosition);
+            segment.liveBytes -= entry.recordLength;
+            this.append(e.getKey(), payload, entry.ownerId, entry.expirationTime);
+            copied++;
+          }
+        }
+        // The segments must be deleted in order. If a later segment, holding the removal record for a state, is
+        // deleted before an earlier segment holding the state, the state would be resurrected during recovery.
+        // Therefore, we only delete a compacted segment if all earlier segments are gone.
+        segment.compacted = true;
+        log.debug("Compacted state log segment {} - {} live states copied", segment.file, copied);
+      }
+      while (!this.segments.isEmpty() && this.segments.firstEntry().getValue().compacted) {
+        final Segment segment = this.segments.pollFirstEntry().getValue();
+        segment.close();
+        Files.deleteIfExists(segment.file);
+        log.debug("Deleted state log segment {}", segment.file);
+      }
+    }
+    finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of states in the cache.
+   *
+   * @return the number of states
+   */
+  public int size() {
+    return this.index.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected long getEntryCount() {
+    return this.index.size();
+  }
+
+  /**
+   * Returns the total size of the serialized live states.
+   */
+  @Override
+  protected long getBytesHeld() {
+    return this.index.values().stream().mapToLong(e -> e.payloadLength).sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String getPolicy(final CacheableSignatureState object) {
+    return object.getState() instanceof final SignatureSessionState sessionState ? sessionState.getPolicy() : null;
+  }
+
+  /**
+   * Gets the number of log segments.
+   *
+   * @return the number of segments
+   */
+  public int getSegmentCount() {
+    this.lock.readLock().lock();
+    try {
+      return this.segments.size();
+    }
+    finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Appends a put record to the log and updates the index. Must be called while holding the write lock.
+   *
+   * @param id the state ID
+   * @param payload the serialized state
+   * @param ownerId the owner (may be null)
+   * @param expirationTime the expiration time
+   * @throws IOException for write errors
+   */
+  private void append(final String id, final byte[] payload, final String ownerId, final long expirationTime)
+      throws IOException {
+    final byte[] record = encodePut(id, payload, ownerId, expirationTime);
+    final long position = this.write(record);
+    final IndexEntry entry = new IndexEntry(this.activeSegment, position + record.length - 4 - payload.length,
+        payload.length, record.length, ownerId, expirationTime);
+    this.activeSegment.liveBytes += record.length;
+    final IndexEntry previous = this.index.put(id, entry);
+    if (previous != null) {
+      previous.segment.liveBytes -= previous.recordLength;
+    }
+  }
+
+  /**
+   * Writes a record to the active segment, and rolls over to a new segment if the maximum segment size is reached.
+   * Must be called while holding the write lock.
+   *
+   * @param record the record to write
+   * @return the position of the record within the active segment
+   * @throws IOException for write errors
+   */
+  private long write(final byte[] record) throws IOException {
+    if (this.activeSegment == null) {
+      throw new IllegalStateException("State cache has not been initialized");
+    }
+    if (this.activeSegment.size > 0 && this.activeSegment.size + record.length > this.maxSegmentSize) {
+      this.activeSegment = this.openSegment(this.segments.lastKey() + 1);
+    }
+    return this.activeSegment.append(record, this.syncOnWrite);
+  }
+
+  /**
+   * Creates and opens a new segment.
+   *
+   * @param sequence the sequence number of the segment
+   * @return the segment
+   * @throws IOException for file errors
+   */
+  private Segment openSegment(final long sequence) throws IOException {
+    final Path file = this.directory.resolve(String.format("state-%010d.log", sequence));
+    final Segment segment = new Segment(file, FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE));
+    this.segments.put(sequence, segment);
+    log.debug("Opened state log segment {}", file);
+    return segment;
+  }
+
+  /**
+   * Recovers the index from the segments in the directory.
+   *
+   * @throws IOException for file errors
+   */
+  private void recover() throws IOException {
+    final TreeMap<Long, Path> files = new TreeMap<>();
+    try (final Stream<Path> list = Files.list(this.directory)) {
+      list.forEach(p -> {
+        final Matcher matcher = SEGMENT_NAME.matcher(p.getFileName().toString());
+        if (matcher.matches()) {
+          files.put(Long.parseLong(matcher.group(1)), p);
+        }
+      });
+    }
+    final long now = System.currentTimeMillis();
+    for (final Map.Entry<Long, Path> f : files.entrySet()) {
+      final Segment segment = new Segment(f.getValue(),
+          FileChannel.open(f.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+      this.segments.put(f.getKey(), segment);
+      this.recoverSegment(segment, now);
+    }
+    this.activeSegment = this.openSegment(files.isEmpty() ? 1L : files.lastKey() + 1);
+  }
+
+  /**
+   * Reads the records of a segment and applies them to the index. A corrupt or truncated record (for example, caused
+   * by a crash during a write) ends the segment, and the segment is truncated at that position.
+   * <p>
+   * The segment is streamed and the payloads are skipped (while the checksum is calculated), so only the record headers
+   * are held in memory.
+   * </p>
+   *
+   * @param segment the segment
+   * @param now the current time
+   * @throws IOException for file errors
+   */
+  private void recoverSegment(final Segment segment, final long now) throws IOException {
+    final long fileSize = segment.channel.size();
+    final CRC32 crc = new CRC32();
+    final PositionInputStream position = new PositionInputStream(new CheckedInputStream(
+        new BufferedInputStream(Channels.newInputStream(segment.channel.position(0)), 64 * 1024), crc));
+    final DataInputStream in = new DataInputStream(position);
+
+    int states = 0;
+    while (position.getPosition() < fileSize) {
+      final long start = position.getPosition();
+      crc.reset();
+      try {
+        final byte type = in.readByte();
+        final String id = readString(in, fileSize - position.getPosition());
+        if (type == RECORD_PUT) {
+          final long expirationTime = in.readLong();
+          final String ownerId = readString(in, fileSize - position.getPosition());
+          final int payloadLength = in.readInt();
+          if (payloadLength < 0 || payloadLength > fileSize - position.getPosition()) {
+            throw new IOException("Invalid payload length");
+          }
+          final long payloadPosition = position.getPosition();
+          in.skipNBytes(payloadLength);
+          checkCrc(in, crc);
+          final int recordLength = (int) (position.getPosition() - start);
+          final IndexEntry previous;
+          if (expirationTime < now) {
+            previous = this.index.remove(id);
+          }
+          else {
+            segment.liveBytes += recordLength;
+            previous = this.index.put(id,
+                new IndexEntry(segment, payloadPosition, payloadLength, recordLength, ownerId, expirationTime));
+            states++;
+          }
+          if (previous != null) {
+            previous.segment.liveBytes -= previous.recordLength;
+          }
+        }
+        else if (type == RECORD_REMOVE) {
+          checkCrc(in, crc);
+          final IndexEntry previous = this.index.remove(id);
+          if (previous != null) {
+            previous.segment.liveBytes -= previous.recordLength;
+          }
+        }
+        else {
+          throw new IOException("Invalid record type: " + type);
+        }
+      }
+      catch (final IOException | RuntimeException e) {
+        log.warn("Corrupt or truncated record at position {} in state log segment {} - truncating segment",
+            start, segment.file);
+        segment.channel.truncate(start);
+        break;
+      }
+    }
+    segment.size = segment.channel.size();
+    log.info("Recovered state log segment {} ({} states)", segment.file, states);
+  }
+
+  /**
+   * Assigns the directory where the log segments are stored. The directory must be dedicated to this cache.
+   *
+   * @param directory the directory
+   */
+  public void setDirectory(final File directory) {
+    this.directory = directory != null ? directory.toPath() : null;
+  }
+
+  /**
+   * Assigns the maximum size (in bytes) of a log segment. The default is {@value #DEFAULT_MAX_SEGMENT_SIZE}.
+   *
+   * @param maxSegmentSize the maximum size in bytes
+   */
+  public void setMaxSegmentSize(final long maxSegmentSize) {
+    this.maxSegmentSize = maxSegmentSize;
+  }
+
+  /**
+   * Assigns the share (0.0 - 1.0) of live data in a closed segment below which the segment is compacted. The default is
+   * {@value #DEFAULT_COMPACTION_THRESHOLD}.
+   *
+   * @param compactionThreshold the compaction threshold
+   */
+  public void setCompactionThreshold(final double compactionThreshold) {
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Assigns whether each write should be forced to disk. The default is {@code false}, meaning that a state written
+   * just before a crash of the machine (not only the application) may be lost.
+   *
+   * @param syncOnWrite whether writes should be synced
+   */
+  public void setSyncOnWrite(final boolean syncOnWrite) {
+    this.syncOnWrite = syncOnWrite;
+  }
+
+  /**
+   * Assigns the interval (in millis) at which expired states are cleared and the log is compacted. The default is 0,
+   * meaning that the application is responsible for calling {@link #clearExpired()} and {@link #compact()}.
+   *
+   * @param compactionInterval the interval in millis
+   */
+  public void setCompactionInterval(final long compactionInterval) {
+    this.compactionInterval = compactionInterval;
+  }
+
+  /**
+   * Ensures that the directory is assigned, recovers the index from the log and starts periodic compaction (if
+   * configured).
+   *
+   * @throws IOException for file errors
+   */
+  @PostConstruct
+  public void afterPropertiesSet() throws IOException {
+    AssertThat.isNotNull(this.directory, "The 'directory' property must be assigned");
+    Files.createDirectories(this.directory);
+    this.lock.writeLock().lock();
+    try {
+      if (this.activeSegment == null) {
+        this.recover();
+      }
+    }
+    finally {
+      this.lock.writeLock().unlock();
+    }
+    if (this.compactionInterval > 0 && this.scheduler == null) {
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "state-cache-compaction");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          this.clearExpired();
+          this.compact();
+        }
+        catch (final Exception e) {
+          log.error("Failed to compact state log", e);
+        }
+      }, this.compactionInterval, this.compactionInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops periodic compaction and closes all segments.
+   */
+  @PreDestroy
+  public void destroy() {
+    if (this.scheduler != null) {
+      this.scheduler.shutdownNow();
+      this.scheduler = null;
+    }
+    this.lock.writeLock().lock();
+    try {
+      for (final Segment segment : this.segments.values()) {
+        segment.close();
+      }
+      this.segments.clear();
+      this.index.clear();
+      this.activeSegment = null;
+    }
+    finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private static byte[] encodePut(final String id, final byte[] payload, final String ownerId,
+      final long expirationTime) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream(payload.length + 64);
+    final DataOutputStream out = new DataOutputStream(bos);
+    out.writeByte(RECORD_PUT);
+    writeString(out, id);
+    out.writeLong(expirationTime);
+    writeString(out, ownerId);
+    out.writeInt(payload.length);
+    out.write(payload);
+    return withCrc(bos);
+  }
+
+  private static byte[] encodeRemove(final String id) throws IOException {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+    final DataOutputStream out = new DataOutputStream(bos);
+    out.writeByte(RECORD_REMOVE);
+    writeString(out, id);
+    return withCrc(bos);
+  }
+
+  private static byte[] withCrc(final ByteArrayOutputStream bos) throws IOException {
+    final CRC32 crc = new CRC32();
+    crc.update(bos.toByteArray());
+    new DataOutputStream(bos).writeInt((int) crc.getValue());
+    return bos.toByteArray();
+  }
+
+  private static void checkCrc(final DataInputStream in, final CRC32 crc) throws IOException {
+    final int expected = (int) crc.getValue();
+    if (in.readInt() != expected) {
+      throw new IOException("CRC mismatch");
+    }
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    }
+    else {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(final DataInputStream in, final long remaining) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > remaining) {
+      throw new IOException("Invalid string length");
+    }
+    return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Input stream keeping track of the number of bytes read (or skipped).
+   */
+  private static class PositionInputStream extends FilterInputStream {
+
+    /** The number of bytes read. */
+    private long position;
+
+    PositionInputStream(final InputStream in) {
+      super(in);
+    }
+
+    /**
+     * Gets the number of bytes read.
+     *
+     * @return the position of the next byte
+     */
+    long getPosition() {
+      return this.position;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0) {
+        this.position++;
+      }
+      return b;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final int n = super.read(b, off, len);
+      if (n > 0) {
+        this.position += n;
+      }
+      return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(final long n) throws IOException {
+      final long skipped = super.skip(n);
+      this.position += skipped;
+      return skipped;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+  }
+
+  /**
+   * A log segment.
+   */
+  private static class Segment {
+
+    /** The segment file. */
+    private final Path file;
+
+    /** The file channel. */
+    private final FileChannel channel;
+
+    /** The size of the segment. */
+    private long size;
+
+    /** The number of bytes of the segment that belongs to live states. */
+    private long liveBytes;
+
+    /** Whether the segment has been compacted (and is waiting to be deleted). */
+    private boolean compacted;
+
+    Segment(final Path file, final FileChannel channel) {
+      this.file = file;
+      this.channel = channel;
+    }
+
+    /**
+     * Appends a record to the segment.
+     *
+     * @param record the record
+     * @param sync whether the write should be forced to disk
+     * @return the position of the record
+     * @throws IOException for write errors
+     */
+    long append(final byte[] record, final boolean sync) throws IOException {
+      final long position = this.size;
+      final ByteBuffer buffer = ByteBuffer.wrap(record);
+      long p = position;
+      while (buffer.hasRemaining()) {
+        p += this.channel.write(buffer, p);
+      }
+      if (sync) {
+        this.channel.force(false);
+      }
+      this.size += record.length;
+      return position;
+    }
+
+    /**
+     * Reads bytes from the segment.
+     *
+     * @param bytes the buffer to read into
+     * @param position the position to read from
+     * @throws IOException for read errors
+     */
+    void read(final byte[] bytes, final long position) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      long p = position;
+      while (buffer.hasRemaining()) {
+        final int read = this.channel.read(buffer, p);
+        if (read < 0) {
+          throw new IOException("Unexpected end of log segment " + this.file);
+        }
+        p += read;
+      }
+    }
+
+    void close() {
+      try {
+        this.channel.close();
+      }
+      catch (final IOException e) {
+        log.warn("Failed to close state log segment {}", this.file, e);
+      }
+    }
+
+  }
+
+  /**
+   * The index entry for a state.
+   *
+   * @param segment the segment holding the state
+   * @param payloadPosition the position of the serialized state within the segment
+   * @param payloadLength the length of the serialized state
+   * @param recordLength the length of the entire record
+   * @param ownerId the owner (may be null)
+   * @param expirationTime the expiration time
+   */
+  private record IndexEntry(Segment segment, long payloadPosition, int payloadLength, int recordLength,
+      String ownerId, long expirationTime) {
+  }
+
+  /**
+   * Cache entry for a state read from the log. The state is deserialized when it is requested.
+   */
+  private static class FileCacheEntry implements CacheEntry<CacheableSignatureState> {
+
+    @Serial
+    private static final long serialVersionUID = -2270066938718335473L;
+
+    /** The serialized state. */
+    private final byte[] payload;
+
+    /** The owner id. */
+    private final String ownerId;
+
+    /** The expiration time. */
+    private final long expirationTime;
+
+    FileCacheEntry(final byte[] payload, final String ownerId, final long expirationTime) {
+      this.payload = payload;
+      this.ownerId = ownerId;
+      this.expirationTime = expirationTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CacheableSignatureState getObject() {
+      try (final ObjectInputStream in = CacheDeserializationFilter.createObjectInputStream(
+          new ByteArrayInputStream(this.payload), CacheDeserializationFilter.getDefaultFilter())) {
+        return (CacheableSignatureState) in.readObject();
+      }
+      catch (final IOException | ClassNotFoundException | ClassCastException e) {
+        throw new IllegalStateException("Failed to deserialize cached state", e);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long getExpirationTime() {
+      return this.expirationTime;
+    }
+
+  }
+
+}
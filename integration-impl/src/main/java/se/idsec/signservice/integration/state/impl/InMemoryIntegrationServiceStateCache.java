@@ -16,8 +16,10 @@
 package se.idsec.signservice.integration.state.impl;
 
 import se.idsec.signservice.integration.core.impl.AbstractInMemoryIntegrationServiceCache;
+import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.state.CacheableSignatureState;
 import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+import se.idsec.signservice.integration.state.SignatureSessionState;
 
 /**
  * A simple in-memory implementation of the {@link IntegrationServiceStateCache} interface.
@@ -29,4 +31,30 @@ public class InMemoryIntegrationServiceStateCache
     extends AbstractInMemoryIntegrationServiceCache<CacheableSignatureState>
     implements IntegrationServiceStateCache {
 
+  /** Estimated weight of the parts of a state that are not documents, for example, the SignRequest. */
+  private static final long STATE_OVERHEAD = 8192L;
+
+  /** {@inheritDoc} */
+  @Override
+  protected long getWeight(final CacheableSignatureState object) {
+    long weight = STATE_OVERHEAD;
+    if (object.getState() instanceof final SignatureSessionState sessionState) {
+      if (sessionState.getTbsDocuments() != null) {
+        for (final TbsDocument document : sessionState.getTbsDocuments()) {
+          weight += document.getContent() != null ? document.getContent().length() : 0;
+        }
+      }
+      if (sessionState.getEncodedSignRequest() != null) {
+        weight += sessionState.getEncodedSignRequest().length();
+      }
+    }
+    return weight;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String getPolicy(final CacheableSignatureState object) {
+    return object.getState() instanceof final SignatureSessionState sessionState ? sessionState.getPolicy() : null;
+  }
+
 }
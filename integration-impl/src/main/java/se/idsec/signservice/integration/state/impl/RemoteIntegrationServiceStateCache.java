@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import se.idsec.signservice.integration.core.impl.AbstractRemoteIntegrationServiceCache;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+
+/**
+ * An {@link IntegrationServiceStateCache} that stores states in a shared key-value server (see
+ * {@link AbstractRemoteIntegrationServiceCache}). This makes it possible to run several instances of the integration
+ * service in stateful mode without sticky sessions.
+ * <p>
+ * States are stored in their (binary) Java serialization form.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class RemoteIntegrationServiceStateCache extends AbstractRemoteIntegrationServiceCache<CacheableSignatureState>
+    implements IntegrationServiceStateCache {
+
+  /** The default key prefix. */
+  public static final String DEFAULT_KEY_PREFIX = "signservice:state:";
+
+  /**
+   * Default constructor.
+   */
+  public RemoteIntegrationServiceStateCache() {
+    super(DEFAULT_KEY_PREFIX);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected String getPolicy(final CacheableSignatureState object) {
+    return object.getState() instanceof final SignatureSessionState sessionState ? sessionState.getPolicy() : null;
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+/**
+ * Enumeration of the encodings that may be used for an {@link EncodedSignatureSessionState}.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public enum SessionStateEncoding {
+
+  /** The JSON serialization of the session state. */
+  JSON,
+
+  /** The binary encoding of the session state (see {@link SignatureSessionStateCodec}). */
+  BINARY,
+
+  /** The DEFLATE compressed binary encoding of the session state (see {@link SignatureSessionStateCodec}). */
+  BINARY_COMPRESSED
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.Nonnull;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact, versioned, binary encoding of {@link SignatureSessionState} objects.
+ * <p>
+ * The JSON serialization of a session state holds the Base64-encoded contents of the documents to be signed as well as
+ * the Base64-encoded SignRequest, and when the resulting JSON is Base64-encoded, these fields are Base64-encoded twice.
+ * This codec instead stores these fields as raw bytes. All other fields of the state are stored in a JSON header, which
+ * means that fields added to the state are encoded without changes to this codec. Just like the JSON serialization,
+ * the encoding does not include the owner ID of the state. The payload may optionally be compressed using DEFLATE.
+ * </p>
+ * <p>
+ * Format (version 1):
+ * </p>
+ * <pre>
+ * magic (2 bytes: 0xB5 0x53) | version (1 byte) | flags (1 byte, bit 0 = DEFLATE) | payload
+ *
+ * payload:
+ *   bytes header (the state JSON without encodedSignRequest and without the content of each tbsDocument),
+ *   field encodedSignRequest,
+ *   for each document of the header's tbsDocuments: field content
+ * </pre>
+ * <p>
+ * A string/bytes value is an int length (-1 for null) followed by the (UTF-8) bytes. A field is a one-byte marker
+ * (0 = null, 1 = raw bytes of a Base64-encoded value, 2 = string) followed by bytes or string.
+ * </p>
+ * <p>
+ * Since encoded states are received from the caller, the decoder does not trust the lengths of the encoding. The size
+ * of the decoded (and inflated) payload is limited (see {@link #decode(byte[], long)}).
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class SignatureSessionStateCodec {
+
+  /** The first magic byte. A JSON encoding can never start with this byte. */
+  private static final int MAGIC_1 = 0xB5;
+
+  /** The second magic byte. */
+  private static final int MAGIC_2 = 0x53;
+
+  /** The current version of the binary format. */
+  public static final int VERSION = 1;
+
+  /** The default maximum size (in bytes) of a decoded payload. */
+  public static final long DEFAULT_MAX_DECODED_SIZE = 100L * 1024L * 1024L;
+
+  /** Flag telling that the payload is DEFLATE compressed. */
+  private static final int FLAG_DEFLATE = 0x01;
+
+  /** Field marker for null. */
+  private static final int FIELD_NULL = 0;
+
+  /** Field marker for a Base64-encoded value stored as raw bytes. */
+  private static final int FIELD_RAW = 1;
+
+  /** Field marker for a value stored as a string. */
+  private static final int FIELD_STRING = 2;
+
+  /** The field name for the encoded SignRequest in the JSON serialization of a SignatureSessionState. */
+  private static final String ENCODED_SIGN_REQUEST_FIELD = "encodedSignRequest";
+
+  /** The field name for the documents in the JSON serialization of a SignatureSessionState. */
+  private static final String TBS_DOCUMENTS_FIELD = "tbsDocuments";
+
+  /** The field name for the document content in the JSON serialization of a TbsDocument. */
+  private static final String CONTENT_FIELD = "content";
+
+  /** JSON mapper for the header. */
+  private static final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+
+  /**
+   * Encodes the supplied session state into the binary format.
+   *
+   * @param state the state to encode
+   * @param compress whether the payload should be DEFLATE compressed
+   * @return the encoding
+   * @throws IOException for encoding errors
+   */
+  @Nonnull
+  public static byte[] encode(@Nonnull final SignatureSessionState state, final boolean compress) throws IOException {
+    final ObjectNode header = mapper.valueToTree(state);
+    final JsonNode encodedSignRequest = header.remove(ENCODED_SIGN_REQUEST_FIELD);
+    final List<JsonNode> contents = new ArrayList<>();
+    if (header.get(TBS_DOCUMENTS_FIELD) instanceof final ArrayNode documents) {
+      for (final JsonNode document : documents) {
+        contents.add(((ObjectNode) document).remove(CONTENT_FIELD));
+      }
+    }
+
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(MAGIC_1);
+    bos.write(MAGIC_2);
+    bos.write(VERSION);
+    bos.write(compress ? FLAG_DEFLATE : 0);
+
+    final OutputStream payloadStream = compress ? new DeflaterOutputStream(bos) : bos;
+    try (final DataOutputStream out = new DataOutputStream(payloadStream)) {
+      writeBytes(out, mapper.writeValueAsBytes(header));
+      writeBase64Field(out, textValue(encodedSignRequest));
+      for (final JsonNode content : contents) {
+        writeBase64Field(out, textValue(content));
+      }
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * Decodes a binary encoding into a session state. The size of the decoded payload is limited to
+   * {@link #DEFAULT_MAX_DECODED_SIZE}.
+   *
+   * @param encoding the binary encoding
+   * @return the session state
+   * @throws IOException for decoding errors, or if the encoding is not a binary encoding of a supported version
+   */
+  @Nonnull
+  public static SignatureSessionState decode(@Nonnull final byte[] encoding) throws IOException {
+    return decode(encoding, DEFAULT_MAX_DECODED_SIZE);
+  }
+
+  /**
+   * Decodes a binary encoding into a session state.
+   *
+   * @param encoding the binary encoding
+   * @param maxDecodedSize the maximum size (in bytes) of the decoded, and inflated, payload
+   * @return the session state
+   * @throws IOException for decoding errors, if the decoded payload exceeds the maximum size, or if the encoding is not
+   *           a binary encoding of a supported version
+   */
+  @Nonnull
+  public static SignatureSessionState decode(@Nonnull final byte[] encoding, final long maxDecodedSize)
+      throws IOException {
+    if (!isBinaryEncoding(encoding)) {
+      throw new IOException("Not a binary encoded signature session state");
+    }
+    final int version = encoding[2] & 0xff;
+    if (version != VERSION) {
+      throw new IOException("Unsupported signature session state version: " + version);
+    }
+    final boolean compressed = (encoding[3] & FLAG_DEFLATE) != 0;
+
+    final InputStream bis = new ByteArrayInputStream(encoding, 4, encoding.length - 4);
+    final LimitedInputStream limited =
+        new LimitedInputStream(compressed ? new InflaterInputStream(bis) : bis, maxDecodedSize);
+    try (final DataInputStream in = new DataInputStream(limited)) {
+      final byte[] headerBytes = readBytes(in, limited);
+      if (headerBytes == null) {
+        throw new IOException("Invalid signature session state encoding - missing header");
+      }
+      final ObjectNode header = (ObjectNode) mapper.readTree(headerBytes);
+      final String encodedSignRequest = readBase64Field(in, limited);
+      if (encodedSignRequest != null) {
+        header.put(ENCODED_SIGN_REQUEST_FIELD, encodedSignRequest);
+      }
+      if (header.get(TBS_DOCUMENTS_FIELD) instanceof final ArrayNode documents) {
+        for (final JsonNode document : documents) {
+          final String content = readBase64Field(in, limited);
+          if (content != null) {
+            ((ObjectNode) document).put(CONTENT_FIELD, content);
+          }
+        }
+      }
+      return mapper.treeToValue(header, SignatureSessionState.class);
+    }
+    catch (final ClassCastException e) {
+      throw new IOException("Invalid signature session state encoding", e);
+    }
+  }
+
+  /**
+   * Predicate that tells whether the supplied bytes is a binary encoding (as opposed to a JSON encoding).
+   *
+   * @param encoding the encoding
+   * @return true if the bytes is a binary encoding and false otherwise
+   */
+  public static boolean isBinaryEncoding(@Nonnull final byte[] encoding) {
+    return encoding.length >= 4 && (encoding[0] & 0xff) == MAGIC_1 && (encoding[1] & 0xff) == MAGIC_2;
+  }
+
+  /**
+   * Writes a Base64-encoded value. If the value is canonically Base64-encoded, the raw bytes are written, otherwise the
+   * string is written.
+   *
+   * @param out the stream
+   * @param value the value (may be null)
+   * @throws IOException for write errors
+   */
+  private static void writeBase64Field(final DataOutputStream out, final String value) throws IOException {
+    if (value == null) {
+      out.writeByte(FIELD_NULL);
+      return;
+    }
+    try {
+      final byte[] raw = Base64.getDecoder().decode(value);
+      if (Base64.getEncoder().encodeToString(raw).equals(value)) {
+        out.writeByte(FIELD_RAW);
+        writeBytes(out, raw);
+        return;
+      }
+    }
+    catch (final IllegalArgumentException e) {
+      // Not Base64, write as string below ...
+    }
+    out.writeByte(FIELD_STRING);
+    writeString(out, value);
+  }
+
+  /**
+   * Reads a value written by {@link #writeBase64Field(DataOutputStream, String)}.
+   *
+   * @param in the stream
+   * @param limit the limited stream that {@code in} reads from
+   * @return the value (may be null)
+   * @throws IOException for read errors
+   */
+  private static String readBase64Field(final DataInputStream in, final LimitedInputStream limit) throws IOException {
+    final int marker = in.readUnsignedByte();
+    return switch (marker) {
+      case FIELD_NULL -> null;
+      case FIELD_RAW -> {
+        final byte[] raw = readBytes(in, limit);
+        yield raw != null ? Base64.getEncoder().encodeToString(raw) : null;
+      }
+      case FIELD_STRING -> readString(in, limit);
+      default -> throw new IOException("Invalid field marker: " + marker);
+    };
+  }
+
+  private static String textValue(final JsonNode node) {
+    return node != null && !node.isNull() ? node.asText() : null;
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+  }
+
+  private static String readString(final DataInputStream in, final LimitedInputStream limit) throws IOException {
+    final byte[] bytes = readBytes(in, limit);
+    return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+  }
+
+  private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    }
+    else {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+  }
+
+  private static byte[] readBytes(final DataInputStream in, final LimitedInputStream limit) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > limit.remaining()) {
+      throw new IOException("Signature session state encoding exceeds maximum size");
+    }
+    final byte[] bytes = in.readNBytes(length);
+    if (bytes.length != length) {
+      throw new EOFException("Unexpected end of signature session state encoding");
+    }
+    return bytes;
+  }
+
+  /**
+   * An input stream that fails if more than a given number of bytes are read.
+   */
+  private static class LimitedInputStream extends FilterInputStream {
+
+    /** The number of bytes that may still be read. */
+    private long remaining;
+
+    LimitedInputStream(final InputStream in, final long maxSize) {
+      super(in);
+      this.remaining = maxSize;
+    }
+
+    long remaining() {
+      return this.remaining;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0) {
+        this.consumed(1);
+      }
+      return b;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final int n = super.read(b, off, (int) Math.min(len, this.remaining + 1));
+      if (n > 0) {
+        this.consumed(n);
+      }
+      return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(final long n) throws IOException {
+      final long skipped = super.skip(Math.min(n, this.remaining + 1));
+      this.consumed(skipped);
+      return skipped;
+    }
+
+    private void consumed(final long n) throws IOException {
+      this.remaining -= n;
+      if (this.remaining < 0) {
+        throw new IOException("Signature session state encoding exceeds maximum size");
+      }
+    }
+  }
+
+  // Hidden constructor
+  private SignatureSessionStateCodec() {
+  }
+
+}
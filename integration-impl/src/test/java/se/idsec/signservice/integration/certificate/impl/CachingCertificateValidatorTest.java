@@ -0,0 +1,300 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.certificate.impl;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.security.certificate.CertificateValidationResult;
+import se.idsec.signservice.security.certificate.CertificateValidator;
+import se.idsec.signservice.security.certificate.impl.SimpleCertificateValidator;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test cases for CachingCertificateValidator.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class CachingCertificateValidatorTest {
+
+  private static final AtomicLong serial = new AtomicLong(1);
+
+  private final KeyPair rootKey;
+  private final X509Certificate root;
+  private final KeyPair caKey;
+  private final X509Certificate ca;
+
+  public CachingCertificateValidatorTest() throws Exception {
+    this.rootKey = generateKeyPair();
+    this.root = createCertificate("CN=Test Root", this.rootKey, "CN=Test Root", this.rootKey, true);
+    this.caKey = generateKeyPair();
+    this.ca = createCertificate("CN=Test CA", this.caKey, "CN=Test Root", this.rootKey, true);
+  }
+
+  @Test
+  public void testMissAndHit() throws Exception {
+    final RecordingValidator recorder = new RecordingValidator();
+    final CachingCertificateValidator validator = new CachingCertificateValidator(recorder);
+    final List<X509Certificate> trustAnchors = List.of(this.root);
+
+    // Miss - the complete path is validated by the underlying validator ...
+    final CertificateValidationResult first =
+        validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, trustAnchors);
+    Assertions.assertEquals(1, recorder.invocations);
+    Assertions.assertEquals(1, validator.size());
+
+    // Hit - only the signer certificate is checked against the cached issuer ...
+    final X509Certificate signer2 = this.createSigner("CN=Signer 2");
+    final CertificateValidationResult result = validator.validate(signer2, List.of(this.ca), null, trustAnchors);
+    Assertions.assertEquals(1, recorder.invocations);
+    Assertions.assertEquals(signer2, result.getValidatedCertificatePath().get(0));
+    Assertions.assertEquals(first.getValidatedCertificatePath().subList(1, first.getValidatedCertificatePath().size()),
+        result.getValidatedCertificatePath().subList(1, result.getValidatedCertificatePath().size()));
+    Assertions.assertEquals(this.root, result.getPKIXCertPathValidatorResult().getTrustAnchor().getTrustedCert());
+    Assertions.assertEquals(signer2.getPublicKey(), result.getPKIXCertPathValidatorResult().getPublicKey());
+    Assertions.assertEquals(1, validator.size());
+
+    validator.clear();
+    Assertions.assertEquals(0, validator.size());
+    validator.validate(this.createSigner("CN=Signer 3"), List.of(this.ca), null, trustAnchors);
+    Assertions.assertEquals(2, recorder.invocations);
+  }
+
+  @Test
+  public void testMissingIssuerCertificate() throws Exception {
+    final RecordingValidator recorder = new RecordingValidator();
+    final CachingCertificateValidator validator = new CachingCertificateValidator(recorder);
+    final List<X509Certificate> trustAnchors = List.of(this.root);
+
+    validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, trustAnchors);
+    Assertions.assertEquals(1, validator.size());
+
+    // By default, the issuer certificate must be supplied ...
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(this.createSigner("CN=Signer 2"), List.of(), null, trustAnchors));
+    Assertions.assertEquals(2, recorder.invocations);
+
+    validator.setAcceptMissingIssuerCertificate(true);
+    validator.validate(this.createSigner("CN=Signer 3"), List.of(), null, trustAnchors);
+    Assertions.assertEquals(2, recorder.invocations);
+  }
+
+  @Test
+  public void testExpiredSignerOnHit() throws Exception {
+    final RecordingValidator recorder = new RecordingValidator();
+    final CachingCertificateValidator validator = new CachingCertificateValidator(recorder);
+    final List<X509Certificate> trustAnchors = List.of(this.root);
+
+    validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, trustAnchors);
+
+    final long now = System.currentTimeMillis();
+    final X509Certificate expired = createCertificate("CN=Expired", generateKeyPair(), "CN=Test CA", this.caKey,
+        false, new Date(now - 7200000L), new Date(now - 3600000L));
+    Assertions.assertThrows(CertificateExpiredException.class,
+        () -> validator.validate(expired, List.of(this.ca), null, trustAnchors));
+    Assertions.assertEquals(1, recorder.invocations);
+  }
+
+  @Test
+  public void testUnsupportedCriticalExtension() throws Exception {
+    final RecordingValidator recorder = new RecordingValidator();
+    final CachingCertificateValidator validator = new CachingCertificateValidator(recorder);
+    final List<X509Certificate> trustAnchors = List.of(this.root);
+
+    validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, trustAnchors);
+
+    // A certificate with a critical extension that is unknown to us must be validated by the underlying validator ...
+    final long now = System.currentTimeMillis();
+    final KeyPair key = generateKeyPair();
+    final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name("CN=Test CA"),
+        BigInteger.valueOf(serial.getAndIncrement()), new Date(now - 60000L), new Date(now + 3600000L),
+        new X500Name("CN=Signer 2"), key.getPublic());
+    builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+    builder.addExtension(new ASN1ObjectIdentifier("1.2.3.4.5"), true, DERNull.INSTANCE);
+    final X509Certificate signer = new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(this.caKey.getPrivate())));
+
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(signer, List.of(this.ca), null, trustAnchors));
+    Assertions.assertEquals(2, recorder.invocations);
+  }
+
+  @Test
+  public void testDirectlyIssuedByTrustAnchor() throws Exception {
+    final CachingCertificateValidator validator = new CachingCertificateValidator(new RecordingValidator());
+    final KeyPair key = generateKeyPair();
+    final X509Certificate signer = createCertificate("CN=Signer", key, "CN=Test Root", this.rootKey, false);
+
+    validator.validate(signer, List.of(), null, List.of(this.root));
+    Assertions.assertEquals(0, validator.size());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    final CachingCertificateValidator validator = new CachingCertificateValidator(new RecordingValidator());
+    validator.setMaxAge(1);
+    final List<X509Certificate> trustAnchors = List.of(this.root);
+
+    validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, trustAnchors);
+    Assertions.assertEquals(1, validator.size());
+    Thread.sleep(10);
+
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(this.createSigner("CN=Signer 2"), List.of(), null, trustAnchors));
+    Assertions.assertEquals(0, validator.size());
+  }
+
+  @Test
+  public void testTrustAnchorChange() throws Exception {
+    final RecordingValidator recorder = new RecordingValidator();
+    final CachingCertificateValidator validator = new CachingCertificateValidator(recorder);
+
+    validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, List.of(this.root));
+    Assertions.assertEquals(1, validator.size());
+
+    // Other trust anchors - the cached CA certificate must not be used ...
+    final KeyPair otherRootKey = generateKeyPair();
+    final X509Certificate otherRoot =
+        createCertificate("CN=Other Root", otherRootKey, "CN=Other Root", otherRootKey, true);
+    final X509Certificate signer = this.createSigner("CN=Signer 2");
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(signer, List.of(this.ca), null, List.of(otherRoot)));
+    Assertions.assertEquals(2, recorder.invocations);
+    Assertions.assertEquals(List.of(otherRoot), recorder.lastTrustAnchors);
+
+    // A new list with the same trust anchors gives a hit ...
+    validator.validate(signer, List.of(this.ca), null, new ArrayList<>(List.of(this.root)));
+    Assertions.assertEquals(2, recorder.invocations);
+  }
+
+  @Test
+  public void testForgedIssuerWithSameName() throws Exception {
+    final CachingCertificateValidator validator = new CachingCertificateValidator(new RecordingValidator());
+    final List<X509Certificate> trustAnchors = List.of(this.root);
+
+    // A CA certificate with the same name as the real CA, but with another key, and not issued by the root ...
+    final KeyPair forgedKey = generateKeyPair();
+    final X509Certificate forgedCa = createCertificate("CN=Test CA", forgedKey, "CN=Test CA", forgedKey, true);
+    final KeyPair signerKey = generateKeyPair();
+    final X509Certificate forgedSigner =
+        createCertificate("CN=Forged Signer", signerKey, "CN=Test CA", forgedKey, false);
+
+    // Validating the forged certificate must not populate the cache ...
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(forgedSigner, List.of(forgedCa), null, trustAnchors));
+    Assertions.assertEquals(0, validator.size());
+
+    // Populate the cache with the real CA and make sure the forged certificate is still rejected ...
+    validator.validate(this.createSigner("CN=Signer 1"), List.of(this.ca), null, trustAnchors);
+    Assertions.assertEquals(1, validator.size());
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(forgedSigner, List.of(forgedCa), null, trustAnchors));
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(forgedSigner, List.of(this.ca, forgedCa), null, trustAnchors));
+    validator.setAcceptMissingIssuerCertificate(true);
+    Assertions.assertThrows(GeneralSecurityException.class,
+        () -> validator.validate(forgedSigner, List.of(), null, trustAnchors));
+
+    // The genuine entry is still there ...
+    Assertions.assertEquals(1, validator.size());
+    validator.validate(this.createSigner("CN=Signer 2"), List.of(), null, trustAnchors);
+  }
+
+  private X509Certificate createSigner(final String subject) throws Exception {
+    return createCertificate(subject, generateKeyPair(), "CN=Test CA", this.caKey, false);
+  }
+
+  private static KeyPair generateKeyPair() throws GeneralSecurityException {
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+    return generator.generateKeyPair();
+  }
+
+  private static X509Certificate createCertificate(final String subject, final KeyPair subjectKey,
+      final String issuer, final KeyPair issuerKey, final boolean ca) throws Exception {
+    final long now = System.currentTimeMillis();
+    return createCertificate(subject, subjectKey, issuer, issuerKey, ca, new Date(now - 60000L),
+        new Date(now + 3600000L));
+  }
+
+  private static X509Certificate createCertificate(final String subject, final KeyPair subjectKey,
+      final String issuer, final KeyPair issuerKey, final boolean ca, final Date notBefore, final Date notAfter)
+      throws Exception {
+    final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name(issuer),
+        BigInteger.valueOf(serial.getAndIncrement()), notBefore, notAfter, new X500Name(subject),
+        subjectKey.getPublic());
+    builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKey.getPrivate())));
+  }
+
+  /**
+   * Validator that records the arguments of the last call and passes it to a {@link SimpleCertificateValidator}.
+   */
+  private static class RecordingValidator implements CertificateValidator {
+
+    private final SimpleCertificateValidator validator = new SimpleCertificateValidator();
+
+    private int invocations;
+    private List<X509Certificate> lastTrustAnchors;
+
+    @Override
+    public CertificateValidationResult validate(final X509Certificate subjectCertificate,
+        final List<X509Certificate> additionalCertificates, final List<X509CRL> crls)
+        throws GeneralSecurityException {
+      return this.validate(subjectCertificate, additionalCertificates, crls, this.getDefaultTrustAnchors());
+    }
+
+    @Override
+    public CertificateValidationResult validate(final X509Certificate subjectCertificate,
+        final List<X509Certificate> additionalCertificates, final List<X509CRL> crls,
+        final List<X509Certificate> trustAnchors) throws GeneralSecurityException {
+      this.invocations++;
+      this.lastTrustAnchors = trustAnchors;
+      return this.validator.validate(subjectCertificate, additionalCertificates, crls, trustAnchors);
+    }
+
+    @Override
+    public boolean isRevocationCheckingActive() {
+      return false;
+    }
+
+    @Override
+    public List<X509Certificate> getDefaultTrustAnchors() {
+      return List.of();
+    }
+  }
+
+}
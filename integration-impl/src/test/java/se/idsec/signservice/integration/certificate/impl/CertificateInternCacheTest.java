@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.certificate.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Test cases for CertificateInternCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class CertificateInternCacheTest {
+
+  private final byte[] encoding;
+
+  public CertificateInternCacheTest() throws IOException {
+    try (final InputStream is = new ClassPathResource("idsec.se.cer").getInputStream()) {
+      this.encoding = is.readAllBytes();
+    }
+  }
+
+  @Test
+  public void testIntern() throws Exception {
+    final CertificateInternCache cache = new CertificateInternCache();
+
+    final X509Certificate cert1 = cache.decodeCertificate(this.encoding);
+    final X509Certificate cert2 = cache.decodeCertificate(this.encoding.clone());
+
+    Assertions.assertSame(cert1, cert2);
+    Assertions.assertEquals(1, cache.size());
+    Assertions.assertEquals(1, cache.getHits());
+    Assertions.assertEquals(1, cache.getMisses());
+    Assertions.assertEquals(0.5, cache.getHitRatio(), 0.0001);
+
+    cache.clear();
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals(0.0, cache.getHitRatio(), 0.0001);
+  }
+
+  @Test
+  public void testBadEncoding() {
+    final CertificateInternCache cache = new CertificateInternCache();
+    Assertions.assertThrows(CertificateException.class, () -> cache.decodeCertificate(new byte[] { 1, 2, 3 }));
+    Assertions.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidMaxSize() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new CertificateInternCache(0));
+  }
+
+}
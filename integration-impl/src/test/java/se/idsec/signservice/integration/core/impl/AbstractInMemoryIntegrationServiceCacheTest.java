@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test cases for AbstractInMemoryIntegrationServiceCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class AbstractInMemoryIntegrationServiceCacheTest {
+
+  @Test
+  public void testDeserializationFilter() throws Exception {
+    final SerializableCache cache = new SerializableCache();
+    cache.setCompressionEnabled(true);
+    cache.setCompressionMinSize(100);
+
+    final ArrayList<String> list = new ArrayList<>(List.of("A".repeat(1000), "B".repeat(1000)));
+    cache.put("allowed", list, null);
+    Assertions.assertEquals(list, cache.get("allowed", null));
+
+    // A class that is not allowed by the filter ...
+    cache.put("rejected", URI.create("https://www.example.com/" + "a".repeat(1000)), null);
+    final UncheckedIOException e =
+        Assertions.assertThrows(UncheckedIOException.class, () -> cache.get("rejected", null));
+    Assertions.assertTrue(e.getCause() instanceof InvalidClassException);
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxEntries(20);
+    cache.setMaxWeight(25 * 100);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int seed = t;
+        futures.add(executor.submit(() -> {
+          final Random random = new Random(seed);
+          for (int i = 0; i < 5000; i++) {
+            final String id = Integer.toString(random.nextInt(50));
+            switch (random.nextInt(3)) {
+            case 0 -> cache.put(id, "A".repeat(100), null);
+            case 1 -> cache.get(id, true, null);
+            default -> cache.get(id, null);
+            }
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> f : futures) {
+        f.get();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    // All entries have the same weight, so the total weight must match the number of entries ...
+    Assertions.assertTrue(cache.size() <= 20);
+    Assertions.assertEquals(cache.size() * 100L, cache.getTotalWeight());
+
+    cache.clear();
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals(0L, cache.getTotalWeight());
+  }
+
+  /**
+   * Cache using the default (Java) serialization for compressed entries.
+   */
+  private static class SerializableCache extends AbstractInMemoryIntegrationServiceCache<Serializable> {
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.DocumentCache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Test cases for BinaryDocumentCacheAdapter.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class BinaryDocumentCacheAdapterTest {
+
+  private static final byte[] DOCUMENT = "<doc>Hello</doc>".getBytes(StandardCharsets.UTF_8);
+
+  private static final String ENCODED_DOCUMENT = Base64.getEncoder().encodeToString(DOCUMENT);
+
+  @Test
+  public void testBinaryCache() throws Exception {
+    final InMemoryBinaryDocumentCache binaryCache = new InMemoryBinaryDocumentCache();
+    final DocumentCache cache = new BinaryDocumentCacheAdapter(binaryCache);
+    Assertions.assertTrue(cache.isBinary());
+
+    cache.putBytes("1", DOCUMENT, "owner");
+    Assertions.assertSame(DOCUMENT, binaryCache.get("1", "owner"));
+    Assertions.assertEquals(ENCODED_DOCUMENT, cache.get("1", "owner"));
+
+    cache.put("2", ENCODED_DOCUMENT, null);
+    Assertions.assertArrayEquals(DOCUMENT, cache.getBytes("2", true, null));
+    Assertions.assertNull(cache.getBytes("2", false, null));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> cache.put("3", "***", null));
+  }
+
+  @Test
+  public void testStringCache() throws Exception {
+    final DocumentCache cache = new InMemoryDocumentCache();
+    Assertions.assertFalse(cache.isBinary());
+
+    cache.putBytes("1", DOCUMENT, null);
+    Assertions.assertEquals(ENCODED_DOCUMENT, cache.get("1", null));
+    Assertions.assertArrayEquals(DOCUMENT, cache.getBytes("1", true, null));
+    Assertions.assertNull(cache.get("1", null));
+  }
+
+}
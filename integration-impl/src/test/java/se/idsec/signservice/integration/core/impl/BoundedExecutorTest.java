@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test cases for BoundedExecutor.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class BoundedExecutorTest {
+
+  @Test
+  public void testConcurrencyIsBounded() throws Exception {
+    final ExecutorService pool = Executors.newCachedThreadPool();
+    try {
+      final BoundedExecutor executor = new BoundedExecutor(pool, 3);
+      final AtomicInteger concurrent = new AtomicInteger();
+      final AtomicInteger maxConcurrent = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(20);
+
+      for (int i = 0; i < 20; i++) {
+        executor.execute(() -> {
+          maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(10L);
+          }
+          catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          concurrent.decrementAndGet();
+          done.countDown();
+        });
+      }
+      Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+      Assertions.assertTrue(maxConcurrent.get() <= 3);
+      Assertions.assertTrue(maxConcurrent.get() > 1);
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRejectedTasksRunInSubmittingThread() {
+    final BoundedExecutor executor = new BoundedExecutor(r -> {
+      throw new RejectedExecutionException();
+    }, 2);
+    final AtomicInteger count = new AtomicInteger();
+    for (int i = 0; i < 5; i++) {
+      executor.execute(count::incrementAndGet);
+    }
+    Assertions.assertEquals(5, count.get());
+  }
+
+  @Test
+  public void testInvalidConcurrency() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedExecutor(Runnable::run, 0));
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test cases for DeduplicatingDocumentCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DeduplicatingDocumentCacheTest {
+
+  private static final byte[] DOCUMENT = "%PDF-1.7 contract".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void testDeduplication() throws Exception {
+    final DeduplicatingDocumentCache cache = new DeduplicatingDocumentCache();
+    for (int i = 0; i < 10; i++) {
+      cache.putBytes("ref-" + i, DOCUMENT.clone(), "user-" + i);
+    }
+    cache.putBytes("other", "%PDF-1.7 other".getBytes(StandardCharsets.US_ASCII), null);
+
+    Assertions.assertEquals(11, cache.size());
+    Assertions.assertEquals(2, cache.getDocumentCount());
+
+    // Owner checks still apply per reference ...
+    Assertions.assertArrayEquals(DOCUMENT, cache.getBytes("ref-3", false, "user-3"));
+    Assertions.assertThrows(NoAccessException.class, () -> cache.getBytes("ref-3", false, "user-4"));
+
+    for (int i = 0; i < 9; i++) {
+      Assertions.assertArrayEquals(DOCUMENT, cache.getBytes("ref-" + i, true, "user-" + i));
+    }
+    Assertions.assertEquals(2, cache.getDocumentCount());
+    cache.remove("ref-9");
+    Assertions.assertEquals(1, cache.getDocumentCount());
+    Assertions.assertNull(cache.getBytes("ref-9", false, "user-9"));
+  }
+
+  @Test
+  public void testReplaceAndExpire() throws Exception {
+    final DeduplicatingDocumentCache cache = new DeduplicatingDocumentCache();
+    cache.putBytes("ref", DOCUMENT, null);
+    cache.putBytes("ref", DOCUMENT, null);
+    Assertions.assertEquals(1, cache.getDocumentCount());
+    Assertions.assertEquals(DOCUMENT.length, cache.getStoredBytes());
+
+    cache.setMaxAge(-1000L);
+    cache.putBytes("ref2", DOCUMENT, null);
+    cache.clearExpired();
+    Assertions.assertEquals(1, cache.size());
+    Assertions.assertEquals(1, cache.getDocumentCount());
+
+    cache.remove("ref");
+    Assertions.assertEquals(0, cache.getDocumentCount());
+  }
+
+  @Test
+  public void testDocumentsAreNotShared() throws Exception {
+    final DeduplicatingDocumentCache cache = new DeduplicatingDocumentCache();
+    final byte[] document = DOCUMENT.clone();
+    cache.putBytes("ref-1", document, "user-1");
+    cache.putBytes("ref-2", DOCUMENT.clone(), "user-2");
+
+    // Modifying the stored array, or a returned array, must not affect the cached document ...
+    document[0] = 'X';
+    final byte[] returned = cache.getBytes("ref-1", false, "user-1");
+    Assertions.assertArrayEquals(DOCUMENT, returned);
+    returned[1] = 'X';
+    Assertions.assertArrayEquals(DOCUMENT, cache.getBytes("ref-2", false, "user-2"));
+    Assertions.assertArrayEquals(DOCUMENT, cache.getBytes("ref-1", false, "user-1"));
+  }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Test cases for InMemoryDocumentCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class InMemoryDocumentCacheTest {
+
+  @Test
+  public void testClearExpired() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.put("live", "ABCD", null);
+    cache.setMaxAge(-1000L);
+    cache.put("expired1", "ABCD", null);
+    cache.put("expired2", "ABCD", "owner");
+
+    // Replace an expired entry with a live one ...
+    cache.put("replaced", "ABCD", null);
+    cache.setMaxAge(AbstractIntegrationServiceCache.MAX_AGE);
+    cache.put("replaced", "EFGH", null);
+    Assertions.assertEquals(4, cache.size());
+
+    cache.clearExpired();
+    Assertions.assertEquals(2, cache.size());
+    Assertions.assertEquals("ABCD", cache.get("live", null));
+    Assertions.assertEquals("EFGH", cache.get("replaced", null));
+    Assertions.assertNull(cache.get("expired1", null));
+  }
+
+  @Test
+  public void testMaxEntries() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxEntries(2);
+    cache.put("1", "AAAA", null);
+    cache.put("2", "BBBB", null);
+    // Access 1 so that 2 becomes the least recently used ...
+    Assertions.assertEquals("AAAA", cache.get("1", null));
+    cache.put("3", "CCCC", null);
+
+    Assertions.assertEquals(2, cache.size());
+    Assertions.assertEquals(1, cache.getEvictionCount());
+    Assertions.assertNull(cache.get("2", null));
+    Assertions.assertEquals("AAAA", cache.get("1", null));
+    Assertions.assertEquals("CCCC", cache.get("3", null));
+  }
+
+  @Test
+  public void testMaxWeight() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxWeight(10);
+    cache.put("1", "AAAA", null);
+    cache.put("2", "BBBB", null);
+    Assertions.assertEquals(8, cache.getTotalWeight());
+
+    cache.put("3", "CCCC", null);
+    Assertions.assertEquals(8, cache.getTotalWeight());
+    Assertions.assertNull(cache.get("1", null));
+
+    // Too heavy to be cached at all ...
+    cache.put("4", "DDDDDDDDDDDD", null);
+    Assertions.assertNull(cache.get("4", null));
+    Assertions.assertEquals(2, cache.getEvictionCount());
+
+    cache.remove("2");
+    cache.remove("3");
+    Assertions.assertEquals(0, cache.getTotalWeight());
+    Assertions.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testStatistics() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxEntries(2);
+    cache.setMaxAge(-1000L);
+    cache.put("expired", "DDDD", "other");
+    Assertions.assertNull(cache.get("expired", "other"));
+
+    cache.setMaxAge(AbstractIntegrationServiceCache.MAX_AGE);
+    cache.put("1", "AAAA", "owner");
+    cache.put("2", "BBBBBBBB", "owner");
+    cache.put("3", "CC", null);
+    Assertions.assertEquals("CC", cache.get("3", null));
+    Assertions.assertNull(cache.get("1", "owner"));
+    Assertions.assertThrows(NoAccessException.class, () -> cache.get("2", "other"));
+
+    final CacheStatistics statistics = cache.getStatistics();
+    Assertions.assertEquals(2, statistics.getSize());
+    Assertions.assertEquals(10, statistics.getBytes());
+    Assertions.assertEquals(1, statistics.getTotals().getHits());
+    Assertions.assertEquals(1, statistics.getTotals().getMisses());
+    Assertions.assertEquals(1, statistics.getTotals().getExpired());
+    Assertions.assertEquals(1, statistics.getTotals().getAccessDenied());
+    Assertions.assertEquals(4, statistics.getTotals().getPuts());
+    Assertions.assertEquals(1, statistics.getTotals().getEvictions());
+
+    final CacheStatistics.Counts owner = statistics.getOwners().get("owner");
+    Assertions.assertEquals(2, owner.getPuts());
+    Assertions.assertEquals(1, owner.getMisses());
+    Assertions.assertEquals(1, owner.getAccessDenied());
+    Assertions.assertEquals(1, owner.getEvictions());
+    Assertions.assertEquals(1, statistics.getOwners().get("other").getExpired());
+    Assertions.assertTrue(statistics.getPolicies().isEmpty());
+
+    final Map<String, Long> metrics = new HashMap<>();
+    new CacheStatisticsExporter("documents", cache::getStatistics).export(new CacheStatisticsExporter.MetricsSink() {
+      @Override
+      public void gauge(final String name, final Map<String, String> tags, final long value) {
+        metrics.put(name + tags.getOrDefault("owner", ""), value);
+      }
+
+      @Override
+      public void counter(final String name, final Map<String, String> tags, final long value) {
+        metrics.put(name + tags.getOrDefault("owner", ""), value);
+      }
+    });
+    Assertions.assertEquals(2L, metrics.get("signservice.cache.size").longValue());
+    Assertions.assertEquals(4L, metrics.get("signservice.cache.puts").longValue());
+    Assertions.assertEquals(2L, metrics.get("signservice.cache.putsowner").longValue());
+  }
+
+  @Test
+  public void testOwnerQuota() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxEntriesPerOwner(2);
+    cache.setMaxBytesPerOwner(10);
+
+    cache.put("1", "AAAA", "owner");
+    cache.put("2", "BBBB", "owner");
+    Assertions.assertThrows(OwnerQuotaExceededException.class, () -> cache.put("3", "CC", "owner"));
+
+    // Other owners, and anonymous entries, are not affected ...
+    cache.put("4", "DDDD", "other");
+    cache.put("5", "EEEE", null);
+    cache.put("6", "FFFF", null);
+    cache.put("7", "GGGG", null);
+
+    // Releasing an entry makes room for a new one, but the byte limit still applies ...
+    Assertions.assertEquals("AAAA", cache.get("1", true, "owner"));
+    Assertions.assertThrows(OwnerQuotaExceededException.class, () -> cache.put("3", "CCCCCCCC", "owner"));
+    cache.put("3", "CCCCCC", "owner");
+    Assertions.assertNull(cache.get("1", "owner"));
+
+    // Expired entries are released when cleared ...
+    cache.setMaxAge(-1000L);
+    cache.put("8", "HHHH", "other");
+    cache.setMaxAge(AbstractIntegrationServiceCache.MAX_AGE);
+    Assertions.assertThrows(OwnerQuotaExceededException.class, () -> cache.put("9", "IIII", "other"));
+    cache.clearExpired();
+    cache.put("9", "IIII", "other");
+
+    Assertions.assertEquals(3, cache.getStatistics().getTotals().getQuotaExceeded());
+    Assertions.assertEquals(2, cache.getStatistics().getOwners().get("owner").getQuotaExceeded());
+  }
+
+  @Test
+  public void testStatisticsBreakdownBounded() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxStatisticsBreakdownKeys(2);
+    cache.put("1", "AAAA", "owner");
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertNull(cache.get("missing", "requester-" + i));
+    }
+    Assertions.assertEquals("AAAA", cache.get("1", "owner"));
+
+    final CacheStatistics statistics = cache.getStatistics();
+    Assertions.assertEquals(100, statistics.getTotals().getMisses());
+    Assertions.assertEquals(2, statistics.getOwners().size());
+    Assertions.assertEquals(1, statistics.getOwners().get("owner").getHits());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> cache.setMaxStatisticsBreakdownKeys(-1));
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setCompressionEnabled(true);
+    cache.setCompressionMinSize(100);
+    cache.setMaxWeight(Long.MAX_VALUE);
+
+    final String document = createDocument(10_000, 0.0);
+    cache.put("1", document, null);
+    Assertions.assertTrue(cache.getTotalWeight() < document.length() / 4);
+    Assertions.assertEquals(document, cache.get("1", null));
+
+    // Not Base64 ...
+    final String text = "Hello ".repeat(100);
+    cache.put("2", text, null);
+    Assertions.assertEquals(text, cache.get("2", null));
+
+    // Too small to be compressed ...
+    cache.put("3", "AAAA", null);
+    Assertions.assertEquals("AAAA", cache.get("3", true, null));
+    Assertions.assertNull(cache.get("3", null));
+  }
+
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void benchmarkCompression() throws Exception {
+    final int count = 200;
+    for (final double randomShare : new double[] { 0.0, 0.5, 0.9 }) {
+      final String document = createDocument(500_000, randomShare);
+      for (final int level : new int[] { -2, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION }) {
+        final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+        cache.setMaxWeight(Long.MAX_VALUE);
+        if (level != -2) {
+          cache.setCompressionEnabled(true);
+          cache.setCompressionLevel(level);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          cache.put("doc-" + i, document, null);
+        }
+        final long putTime = (System.nanoTime() - start) / count / 1000;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          cache.get("doc-" + i, null);
+        }
+        final long getTime = (System.nanoTime() - start) / count / 1000;
+
+        System.out.printf("random share: %.1f, compression: %s, stored: %d KiB (%d%%), put: %d us, get: %d us%n",
+            randomShare, level == -2 ? "off" : "level " + level, cache.getTotalWeight() / 1024,
+            cache.getTotalWeight() * 100 / ((long) count * document.length()), putTime, getTime);
+      }
+    }
+  }
+
+  /**
+   * Creates a Base64-encoded document that resembles an uncompressed PDF, where the given share of the bytes are
+   * random (images, fonts) and the rest is repetitive text.
+   */
+  private static String createDocument(final int size, final double randomShare) {
+    final byte[] bytes = new byte[size];
+    final byte[] text = "BT /F1 12 Tf 72 712 Td (Employment contract) Tj ET\n".getBytes(StandardCharsets.US_ASCII);
+    final Random random = new Random(size);
+    final int randomBytes = (int) (size * randomShare);
+    for (int i = 0; i < size; i++) {
+      bytes[i] = i < randomBytes ? (byte) random.nextInt() : text[i % text.length];
+    }
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+  @Test
+  public void testReaper() throws Exception {
+    final InMemoryDocumentCache cache = new InMemoryDocumentCache();
+    cache.setMaxAge(-1000L);
+    cache.setReaperInterval(10L);
+    cache.afterPropertiesSet();
+    try {
+      cache.put("expired", "ABCD", null);
+      for (int i = 0; i < 100 && cache.size() > 0; i++) {
+        Thread.sleep(10L);
+      }
+      Assertions.assertEquals(0, cache.size());
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A minimal in-JVM stand-in for a Redis server used by tests and benchmarks. Supports {@code PING}, {@code AUTH},
+ * {@code GET}, {@code SET} (with {@code PX} and {@code NX}), {@code GETDEL}, {@code DEL} and {@code EVAL}. Since the
+ * server can not run scripts, {@code EVAL} only supports
+ * {@link AbstractRemoteIntegrationServiceCache#CONSUME_SCRIPT}, which is emulated.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class LocalRespServer implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+
+  private final Map<String, Value> data = new ConcurrentHashMap<>();
+
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+  public LocalRespServer() throws IOException {
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    final Thread acceptor = new Thread(this::accept, "local-resp-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return this.serverSocket.getLocalPort();
+  }
+
+  public int size() {
+    this.data.values().removeIf(Value::isExpired);
+    return this.data.size();
+  }
+
+  public void disconnectAll() throws IOException {
+    for (final Socket socket : this.connections) {
+      socket.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.serverSocket.close();
+    this.disconnectAll();
+  }
+
+  private void accept() {
+    while (!this.serverSocket.isClosed()) {
+      try {
+        final Socket socket = this.serverSocket.accept();
+        this.connections.add(socket);
+        final Thread handler = new Thread(() -> this.handle(socket), "local-resp-server-connection");
+        handler.setDaemon(true);
+        handler.start();
+      }
+      catch (final IOException e) {
+        // Closed
+      }
+    }
+  }
+
+  private void handle(final Socket socket) {
+    try (socket) {
+      socket.setTcpNoDelay(true);
+      final InputStream in = new BufferedInputStream(socket.getInputStream());
+      final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+      while (true) {
+        final Object request = RespClient.readReply(in);
+        if (!(request instanceof final List<?> command) || command.isEmpty()) {
+          throw new IOException("Invalid request");
+        }
+        this.execute(command, out);
+        // Only flush when there are no more pipelined commands to read ...
+        if (in.available() == 0) {
+          out.flush();
+        }
+      }
+    }
+    catch (final IOException e) {
+      // Connection closed
+    }
+    finally {
+      this.connections.remove(socket);
+    }
+  }
+
+  private void execute(final List<?> command, final OutputStream out) throws IOException {
+    final String name = string(command.get(0)).toUpperCase();
+    switch (name) {
+    case "PING" -> write(out, "+PONG\r\n");
+    case "AUTH" -> write(out, "+OK\r\n");
+    case "GET" -> bulk(out, this.get(string(command.get(1)), false));
+    case "GETDEL" -> bulk(out, this.get(string(command.get(1)), true));
+    case "DEL" -> {
+      int count = 0;
+      for (int i = 1; i < command.size(); i++) {
+        final Value value = this.data.remove(string(command.get(i)));
+        if (value != null && !value.isExpired()) {
+          count++;
+        }
+      }
+      write(out, ":" + count + "\r\n");
+    }
+    case "SET" -> {
+      final String key = string(command.get(1));
+      long expirationTime = Long.MAX_VALUE;
+      boolean nx = false;
+      for (int i = 3; i < command.size(); i++) {
+        final String option = string(command.get(i)).toUpperCase();
+        if ("PX".equals(option)) {
+          expirationTime = System.currentTimeMillis() + Long.parseLong(string(command.get(++i)));
+        }
+        else if ("NX".equals(option)) {
+          nx = true;
+        }
+      }
+      final Value value = new Value((byte[]) command.get(2), expirationTime);
+      if (nx) {
+        final boolean[] set = { false };
+        this.data.compute(key, (k, v) -> {
+          if (v == null || v.isExpired()) {
+            set[0] = true;
+            return value;
+          }
+          return v;
+        });
+        bulkOrOk(out, set[0]);
+      }
+      else {
+        this.data.put(key, value);
+        write(out, "+OK\r\n");
+      }
+    }
+    case "EVAL" -> {
+      if (!AbstractRemoteIntegrationServiceCache.CONSUME_SCRIPT.equals(string(command.get(1)))) {
+        write(out, "-ERR unsupported script\r\n");
+      }
+      else {
+        final Object result = this.consume(string(command.get(3)), (byte[]) command.get(4));
+        if (result instanceof final byte[] value) {
+          bulk(out, value);
+        }
+        else if (result instanceof final byte[][] wrapped) {
+          write(out, "*1\r\n");
+          bulk(out, wrapped[0]);
+        }
+        else {
+          bulk(out, null);
+        }
+      }
+    }
+    default -> write(out, "-ERR unknown command '" + name + "'\r\n");
+    }
+  }
+
+  /**
+   * Emulates {@link AbstractRemoteIntegrationServiceCache#CONSUME_SCRIPT}. Returns the value if it was removed, the
+   * value wrapped in an array if it was not removed, and null if there is no value.
+   */
+  private Object consume(final String key, final byte[] requesterOwner) {
+    final Object[] result = new Object[1];
+    this.data.compute(key, (k, v) -> {
+      if (v == null || v.isExpired()) {
+        return null;
+      }
+      final byte[] data = v.data();
+      final boolean noOwner = data.length >= 13
+          && Arrays.equals(data, 9, 13, new byte[] { -1, -1, -1, -1 }, 0, 4);
+      final boolean owner = requesterOwner.length > 0 && data.length >= 9 + requesterOwner.length
+          && Arrays.equals(data, 9, 9 + requesterOwner.length, requesterOwner, 0, requesterOwner.length);
+      if (noOwner || owner) {
+        result[0] = data;
+        return null;
+      }
+      result[0] = new byte[][] { data };
+      return v;
+    });
+    return result[0];
+  }
+
+  private byte[] get(final String key, final boolean remove) {
+    final Value value = remove ? this.data.remove(key) : this.data.get(key);
+    if (value == null || value.isExpired()) {
+      return null;
+    }
+    return value.data();
+  }
+
+  private static void bulkOrOk(final OutputStream out, final boolean ok) throws IOException {
+    write(out, ok ? "+OK\r\n" : "$-1\r\n");
+  }
+
+  private static void bulk(final OutputStream out, final byte[] data) throws IOException {
+    if (data == null) {
+      write(out, "$-1\r\n");
+    }
+    else {
+      write(out, "$" + data.length + "\r\n");
+      out.write(data);
+      write(out, "\r\n");
+    }
+  }
+
+  private static void write(final OutputStream out, final String s) throws IOException {
+    out.write(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String string(final Object arg) {
+    return new String((byte[]) arg, StandardCharsets.UTF_8);
+  }
+
+  private record Value(byte[] data, long expirationTime) {
+
+    boolean isExpired() {
+      return System.currentTimeMillis() > this.expirationTime;
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Test cases for OffHeapDocumentCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class OffHeapDocumentCacheTest {
+
+  private Path directory;
+
+  private OffHeapDocumentCache cache;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    this.directory = Files.createTempDirectory("offheap-test");
+    this.cache = new OffHeapDocumentCache();
+    this.cache.setDirectory(this.directory.toFile());
+    this.cache.setSpillThreshold(1000);
+    this.cache.setMaxOffHeapSize(1500);
+    this.cache.setBlockSize(100);
+    this.cache.afterPropertiesSet();
+  }
+
+  @AfterEach
+  public void cleanup() throws Exception {
+    this.cache.destroy();
+    try (final Stream<Path> files = Files.walk(this.directory)) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  @Test
+  public void testOffHeapAndSpill() throws Exception {
+    final byte[] small = document(800);
+    final byte[] large = document(5000);
+
+    this.cache.putBytes("small", small, "owner");
+    this.cache.putBytes("large", large, null);
+    Assertions.assertEquals(800, this.cache.getOffHeapSize());
+    Assertions.assertEquals(1, this.fileCount());
+
+    // Doesn't fit within the off-heap limit - should be spilled ...
+    this.cache.put("small2", Base64.getEncoder().encodeToString(small), null);
+    Assertions.assertEquals(800, this.cache.getOffHeapSize());
+    Assertions.assertEquals(2, this.fileCount());
+
+    Assertions.assertArrayEquals(small, this.cache.getBytes("small", false, "owner"));
+    Assertions.assertEquals(Base64.getEncoder().encodeToString(large), this.cache.get("large", null));
+    Assertions.assertArrayEquals(small, this.cache.getBytes("small2", true, null));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("small", "other"));
+
+    Assertions.assertEquals(1, this.fileCount());
+    Assertions.assertNull(this.cache.getBytes("small2", false, null));
+
+    this.cache.remove("small");
+    this.cache.remove("large");
+    Assertions.assertEquals(0, this.cache.size());
+    Assertions.assertEquals(0, this.cache.getOffHeapSize());
+    Assertions.assertEquals(0, this.fileCount());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    this.cache.setMaxAge(-1000L);
+    this.cache.putBytes("small", document(10), null);
+    this.cache.putBytes("large", document(2000), null);
+    Assertions.assertEquals(1, this.fileCount());
+
+    this.cache.clearExpired();
+    Assertions.assertEquals(0, this.cache.size());
+    Assertions.assertEquals(0, this.cache.getOffHeapSize());
+    Assertions.assertEquals(0, this.fileCount());
+  }
+
+  @Test
+  public void testBlocksAreReused() throws Exception {
+    final byte[] document = document(450);
+    for (int i = 0; i < 100; i++) {
+      this.cache.putBytes("doc" + i, document, null);
+      this.cache.putBytes("other" + i, document(250), null);
+      Assertions.assertArrayEquals(document, this.cache.getBytes("doc" + i, true, null));
+      this.cache.remove("other" + i);
+    }
+    Assertions.assertEquals(0, this.cache.getOffHeapSize());
+    Assertions.assertTrue(this.cache.getAllocatedOffHeapSize() <= 800);
+    Assertions.assertEquals(0, this.fileCount());
+  }
+
+  @Test
+  public void testOffHeapLimitIsBound() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      this.cache.putBytes("doc" + i, document(120 + i), null);
+    }
+    // Each document occupies two blocks, so only seven documents fit off-heap ...
+    Assertions.assertEquals(1400, this.cache.getOffHeapSize());
+    Assertions.assertTrue(this.cache.getAllocatedOffHeapSize() <= 1500);
+    Assertions.assertEquals(13, this.fileCount());
+    for (int i = 0; i < 20; i++) {
+      Assertions.assertArrayEquals(document(120 + i), this.cache.getBytes("doc" + i, false, null));
+    }
+  }
+
+  @Test
+  public void testStaleFilesDeletedAtStartup() throws Exception {
+    this.cache.putBytes("large", document(2000), null);
+    Files.writeString(this.directory.resolve("other.txt"), "Not a document");
+    Assertions.assertEquals(2, this.fileCount());
+
+    // Simulate a restart without a proper shutdown ...
+    final OffHeapDocumentCache restarted = new OffHeapDocumentCache();
+    restarted.setDirectory(this.directory.toFile());
+    restarted.afterPropertiesSet();
+    try {
+      Assertions.assertEquals(1, this.fileCount());
+      Assertions.assertTrue(Files.exists(this.directory.resolve("other.txt")));
+    }
+    finally {
+      restarted.destroy();
+    }
+  }
+
+  private long fileCount() throws Exception {
+    try (final Stream<Path> files = Files.list(this.directory)) {
+      return files.count();
+    }
+  }
+
+  private static byte[] document(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test cases for OrderedParallelExecutor.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class OrderedParallelExecutorTest {
+
+  private static ExecutorService executor;
+
+  @BeforeAll
+  public static void init() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterAll
+  public static void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSequential() throws Exception {
+    final List<Integer> result = OrderedParallelExecutor.invokeAll(null, 5, i -> i * 2, IOException::new);
+    Assertions.assertEquals(List.of(0, 2, 4, 6, 8), result);
+  }
+
+  @Test
+  public void testResultsInInputOrder() throws Exception {
+    final List<Integer> result = OrderedParallelExecutor.invokeAll(executor, 8, i -> {
+      // Make the first tasks the slowest ones ...
+      Thread.sleep((8 - i) * 10L);
+      return i;
+    }, IOException::new);
+    Assertions.assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), result);
+  }
+
+  @Test
+  public void testLowestFailingIndexIsReported() {
+    final IOException e = Assertions.assertThrows(IOException.class,
+        () -> OrderedParallelExecutor.invokeAll(executor, 6, i -> {
+          if (i == 4) {
+            throw new IOException("4");
+          }
+          if (i == 1) {
+            // Make sure index 4 fails first in time ...
+            Thread.sleep(100L);
+            throw new IOException("1");
+          }
+          return i;
+        }, IOException::new));
+    Assertions.assertEquals("1", e.getMessage());
+  }
+
+  @Test
+  public void testRuntimeException() {
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> OrderedParallelExecutor.invokeAll(executor, 3, i -> {
+          if (i == 2) {
+            throw new IllegalArgumentException();
+          }
+          return i;
+        }, IOException::new));
+  }
+
+  @Test
+  public void testCorrelationIdPropagated() throws Exception {
+    CorrelationID.init("test-correlation-id");
+    try {
+      final List<String> result = OrderedParallelExecutor.invokeAll(executor, 4, i -> CorrelationID.id(),
+          IOException::new);
+      result.forEach(id -> Assertions.assertEquals("test-correlation-id", id));
+    }
+    finally {
+      CorrelationID.clear();
+    }
+  }
+
+  @Test
+  public void testCorrelationIdKeptWhenRunInCallingThread() throws Exception {
+    CorrelationID.init("caller-correlation-id");
+    try {
+      final List<String> result = OrderedParallelExecutor.invokeAll(Runnable::run, 3, i -> CorrelationID.id(),
+          IOException::new);
+      result.forEach(id -> Assertions.assertEquals("caller-correlation-id", id));
+      Assertions.assertEquals("caller-correlation-id", CorrelationID.id());
+    }
+    finally {
+      CorrelationID.clear();
+    }
+  }
+
+  @Test
+  public void testInterrupted() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<Exception> error = new AtomicReference<>();
+    final Thread caller = new Thread(() -> {
+      try {
+        OrderedParallelExecutor.invokeAll(executor, 2, i -> {
+          latch.await();
+          return i;
+        }, e -> new IOException("interrupted", e));
+      }
+      catch (final Exception e) {
+        error.set(e);
+      }
+    });
+    caller.start();
+    caller.interrupt();
+    caller.join(5000L);
+    latch.countDown();
+
+    Assertions.assertTrue(error.get() instanceof IOException);
+    Assertions.assertEquals("interrupted", error.get().getMessage());
+    Assertions.assertTrue(error.get().getCause() instanceof InterruptedException);
+  }
+
+}
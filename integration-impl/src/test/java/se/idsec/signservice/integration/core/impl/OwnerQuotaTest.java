@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for OwnerQuota.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class OwnerQuotaTest {
+
+  @Test
+  public void testLimits() {
+    final OwnerQuota quota = new OwnerQuota(2, 10);
+    Assertions.assertTrue(quota.tryAcquire("owner", 4));
+    Assertions.assertFalse(quota.tryAcquire("owner", 7));
+    Assertions.assertTrue(quota.tryAcquire("owner", 6));
+    Assertions.assertFalse(quota.tryAcquire("owner", 0));
+    Assertions.assertEquals(2, quota.getEntries("owner"));
+    Assertions.assertEquals(10, quota.getBytes("owner"));
+
+    quota.release("owner", 4);
+    Assertions.assertEquals(1, quota.getEntries("owner"));
+    Assertions.assertEquals(6, quota.getBytes("owner"));
+  }
+
+  @Test
+  public void testOwnersAreRemoved() {
+    final OwnerQuota quota = new OwnerQuota(0, 100);
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertTrue(quota.tryAcquire("owner-" + i, 10));
+    }
+    // A rejected owner is not remembered ...
+    Assertions.assertFalse(quota.tryAcquire("too-large", 1000));
+    Assertions.assertEquals(100, quota.getOwnerCount());
+
+    for (int i = 0; i < 100; i++) {
+      quota.release("owner-" + i, 10);
+    }
+    Assertions.assertEquals(0, quota.getOwnerCount());
+    Assertions.assertEquals(0, quota.getEntries("owner-0"));
+    Assertions.assertEquals(0, quota.getBytes("owner-0"));
+  }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.core.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test cases for RemoteBinaryDocumentCache, AbstractRemoteIntegrationServiceCache and RespClient.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class RemoteBinaryDocumentCacheTest {
+
+  private LocalRespServer server;
+
+  private RespClient client;
+
+  private RemoteBinaryDocumentCache cache;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    this.server = new LocalRespServer();
+    this.client = new RespClient();
+    this.client.setPort(this.server.getPort());
+    this.client.setPoolSize(2);
+    this.client.afterPropertiesSet();
+
+    this.cache = new RemoteBinaryDocumentCache();
+    this.cache.setClient(this.client);
+    this.cache.afterPropertiesSet();
+  }
+
+  @AfterEach
+  public void cleanup() throws Exception {
+    this.client.destroy();
+    this.server.close();
+  }
+
+  @Test
+  public void testPutGetRemove() throws Exception {
+    final byte[] document = document(10_000);
+    this.cache.put("doc", document, "owner");
+    this.cache.put("anonymous", document, null);
+    Assertions.assertEquals(2, this.server.size());
+
+    Assertions.assertArrayEquals(document, this.cache.get("doc", "owner"));
+    Assertions.assertArrayEquals(document, this.cache.get("anonymous", null));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("doc", "other"));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("doc", null));
+
+    // A failed attempt to consume an entry should leave the entry in place ...
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("doc", true, "other"));
+    Assertions.assertArrayEquals(document, this.cache.get("doc", true, "owner"));
+    Assertions.assertNull(this.cache.get("doc", "owner"));
+
+    this.cache.remove("anonymous");
+    Assertions.assertNull(this.cache.get("anonymous", null));
+    Assertions.assertEquals(0, this.server.size());
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    this.cache.setMaxAge(100);
+    this.cache.put("doc", document(100), null);
+    Thread.sleep(200);
+    Assertions.assertNull(this.cache.get("doc", null));
+    Assertions.assertEquals(0, this.server.size());
+  }
+
+  @Test
+  public void testRemoveAll() throws Exception {
+    final List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      this.cache.put("doc-" + i, document(100), null);
+      ids.add("doc-" + i);
+    }
+    Assertions.assertEquals(100, this.server.size());
+    this.cache.removeAll(ids);
+    Assertions.assertEquals(0, this.server.size());
+  }
+
+  @Test
+  public void testAtomicConsume() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (int round = 0; round < 20; round++) {
+        this.cache.put("doc", document(1000), "owner");
+        final List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+          results.add(executor.submit(() -> this.cache.get("doc", true, "owner")));
+        }
+        int consumed = 0;
+        for (final Future<byte[]> result : results) {
+          if (result.get() != null) {
+            consumed++;
+          }
+        }
+        Assertions.assertEquals(1, consumed);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testNonOwnerConsume() throws Exception {
+    this.cache.put("doc", document(100), "owner");
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("doc", true, "other"));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("doc", true, "own"));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("doc", true, null));
+    Assertions.assertEquals(1, this.server.size());
+
+    // Concurrent attempts by others to consume the entry must never make the owner miss it ...
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (int round = 0; round < 20; round++) {
+        this.cache.put("doc", document(100), "owner");
+        final List<Future<byte[]>> others = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+          others.add(executor.submit(() -> {
+            try {
+              return this.cache.get("doc", true, "other");
+            }
+            catch (final NoAccessException e) {
+              return null;
+            }
+          }));
+        }
+        final Future<byte[]> owner = executor.submit(() -> this.cache.get("doc", true, "owner"));
+        Assertions.assertNotNull(owner.get());
+        for (final Future<byte[]> other : others) {
+          Assertions.assertNull(other.get());
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testReconnect() throws Exception {
+    final byte[] document = document(100);
+    this.cache.put("doc", document, null);
+    this.cache.put("doc2", document, null);
+
+    // Broken connections should be replaced ...
+    this.server.disconnectAll();
+    Thread.sleep(100);
+    Assertions.assertArrayEquals(document, this.cache.get("doc", null));
+    Assertions.assertArrayEquals(document, this.cache.get("doc2", null));
+
+    this.server.close();
+    Assertions.assertThrows(UncheckedIOException.class, () -> this.cache.get("doc", null));
+  }
+
+  @Test
+  public void testDeserializationFilter() throws Exception {
+    final AbstractRemoteIntegrationServiceCache<Serializable> objectCache =
+        new AbstractRemoteIntegrationServiceCache<>("test:") {
+        };
+    objectCache.setClient(this.client);
+    objectCache.afterPropertiesSet();
+
+    objectCache.put("list", new ArrayList<>(List.of("a", "b")), null);
+    Assertions.assertEquals(List.of("a", "b"), objectCache.get("list", null));
+
+    objectCache.put("uri", URI.create("https://www.example.com"), null);
+    Assertions.assertThrows(UncheckedIOException.class, () -> objectCache.get("uri", null));
+  }
+
+  @Test
+  public void testInvalidReply() {
+    Assertions.assertThrows(IOException.class, () -> RespClient.readReply(
+        new ByteArrayInputStream(":abc\r\n".getBytes(StandardCharsets.US_ASCII))));
+    Assertions.assertThrows(IOException.class, () -> RespClient.readReply(
+        new ByteArrayInputStream("$x\r\n".getBytes(StandardCharsets.US_ASCII))));
+  }
+
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void benchmark() throws Exception {
+    final InMemoryBinaryDocumentCache inMemory = new InMemoryBinaryDocumentCache();
+    final byte[] document = document(100_000);
+    final int iterations = 5_000;
+
+    for (int pass = 0; pass < 2; pass++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        inMemory.put("doc-" + i, document, "owner");
+        inMemory.get("doc-" + i, true, "owner");
+      }
+      final long inMemoryTime = (System.nanoTime() - start) / iterations;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        this.cache.put("doc-" + i, document, "owner");
+        this.cache.get("doc-" + i, true, "owner");
+      }
+      final long remoteTime = (System.nanoTime() - start) / iterations;
+
+      // Concurrent access - requests from several threads are pipelined over the pooled connections ...
+      final ExecutorService executor = Executors.newFixedThreadPool(16);
+      start = System.nanoTime();
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < iterations / 16; i++) {
+            final String id = "doc-" + thread + "-" + i;
+            this.cache.put(id, document, "owner");
+            this.cache.get(id, true, "owner");
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+      final long concurrentTime = (System.nanoTime() - start) / iterations;
+      executor.shutdown();
+
+      System.out.printf("put+get/remove of %d bytes - in-memory: %d ns, remote: %d ns, remote (16 threads): %d ns%n",
+          document.length, inMemoryTime, remoteTime, concurrentTime);
+    }
+  }
+
+  private static byte[] document(final int size) {
+    final byte[] document = new byte[size];
+    new Random(size).nextBytes(document);
+    return document;
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Test cases for DocumentSource.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DocumentSourceTest {
+
+  private static final byte[] CONTENTS = createContents(100_000);
+
+  @Test
+  public void testBytes() throws Exception {
+    final DocumentSource source = DocumentSource.of(CONTENTS);
+    Assertions.assertTrue(source.isRepeatable());
+    Assertions.assertSame(CONTENTS, source.toByteArray());
+    Assertions.assertSame(CONTENTS, source.getBytes());
+    Assertions.assertArrayEquals(CONTENTS, read(source));
+  }
+
+  @Test
+  public void testByteBuffer() throws Exception {
+    final ByteBuffer buffer = ByteBuffer.allocate(CONTENTS.length + 10);
+    buffer.position(5);
+    buffer.put(CONTENTS);
+    buffer.position(5).limit(5 + CONTENTS.length);
+
+    final DocumentSource source = DocumentSource.of(buffer);
+    Assertions.assertTrue(source.isRepeatable());
+    Assertions.assertArrayEquals(CONTENTS, source.toByteArray());
+    Assertions.assertArrayEquals(CONTENTS, read(source));
+    Assertions.assertArrayEquals(CONTENTS, read(source));
+    Assertions.assertEquals(CONTENTS.length, source.getBuffer().remaining());
+    Assertions.assertEquals(5, buffer.position());
+  }
+
+  @Test
+  public void testPath() throws Exception {
+    final Path path = Files.createTempFile("document", ".bin");
+    try {
+      Files.write(path, CONTENTS);
+      final DocumentSource source = DocumentSource.of(path);
+      Assertions.assertTrue(source.isRepeatable());
+      Assertions.assertEquals(path, source.getPath());
+      Assertions.assertArrayEquals(CONTENTS, source.toByteArray());
+      Assertions.assertArrayEquals(CONTENTS, read(source));
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    final DocumentSource source = DocumentSource.of(new ByteArrayInputStream(CONTENTS));
+    Assertions.assertFalse(source.isRepeatable());
+    Assertions.assertArrayEquals(CONTENTS, source.toByteArray());
+    Assertions.assertThrows(IllegalStateException.class, source::openStream);
+  }
+
+  @Test
+  public void testBase64() throws Exception {
+    final String encoded = Base64.getEncoder().encodeToString(CONTENTS);
+
+    final DocumentSource source = DocumentSource.ofBase64(encoded);
+    Assertions.assertTrue(source.isRepeatable());
+    Assertions.assertEquals(encoded, source.getBase64());
+    Assertions.assertArrayEquals(CONTENTS, source.toByteArray());
+    Assertions.assertArrayEquals(CONTENTS, read(source));
+
+    final DocumentSource streamSource =
+        DocumentSource.ofBase64(new ByteArrayInputStream(encoded.getBytes(StandardCharsets.US_ASCII)));
+    Assertions.assertFalse(streamSource.isRepeatable());
+    Assertions.assertArrayEquals(CONTENTS, streamSource.toByteArray());
+  }
+
+  @Test
+  public void testInvalidBase64() {
+    final DocumentSource source = DocumentSource.ofBase64("not base64 !");
+    Assertions.assertThrows(IOException.class, source::toByteArray);
+  }
+
+  @Test
+  public void testNonAsciiBase64() {
+    // The low byte of 'Ł' (U+0141) is 'A', so the character must not be truncated into valid Base64 ...
+    final String encoded = Base64.getEncoder().encodeToString(CONTENTS);
+    final DocumentSource source = DocumentSource.ofBase64(encoded.substring(0, 100) + 'Ł' + encoded.substring(101));
+    Assertions.assertThrows(IOException.class, source::toByteArray);
+    Assertions.assertThrows(IOException.class, () -> read(source));
+    Assertions.assertThrows(IOException.class, () -> {
+      try (final InputStream is = source.openStream()) {
+        while (is.read() != -1) {
+        }
+      }
+    });
+  }
+
+  private static byte[] read(final DocumentSource source) throws IOException {
+    try (final InputStream is = source.openStream()) {
+      final byte[] buffer = new byte[1000];
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      int n;
+      while ((n = is.read(buffer, 0, buffer.length)) != -1) {
+        bos.write(buffer, 0, n);
+      }
+      return bos.toByteArray();
+    }
+  }
+
+  private static byte[] createContents(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test cases for DocumentProcessorRegistry.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DocumentProcessorRegistryTest {
+
+  @Test
+  public void testIndexedLookup() {
+    final TestProcessor xml = new TestProcessor(List.of("application/xml"), "application/xml");
+    final TestProcessor pdf = new TestProcessor(List.of("application/pdf"), "application/pdf");
+    final DocumentProcessorRegistry<TestProcessor, String> registry = createRegistry(List.of(xml, pdf));
+
+    Assertions.assertSame(pdf, registry.getProcessor("application/pdf").orElse(null));
+    Assertions.assertSame(xml, registry.getProcessor("APPLICATION/XML").orElse(null));
+
+    // Indexed lookups should not invoke the supports method ...
+    Assertions.assertEquals(0, xml.supportsCalls.get());
+    Assertions.assertEquals(0, pdf.supportsCalls.get());
+  }
+
+  @Test
+  public void testFirstProcessorWins() {
+    final TestProcessor first = new TestProcessor(List.of("application/xml"), "application/xml");
+    final TestProcessor second = new TestProcessor(List.of("application/xml"), "application/xml");
+    final DocumentProcessorRegistry<TestProcessor, String> registry = createRegistry(List.of(first, second));
+
+    Assertions.assertSame(first, registry.getProcessor("application/xml").orElse(null));
+  }
+
+  @Test
+  public void testFallbackToSupports() {
+    final TestProcessor xml = new TestProcessor(List.of("application/xml"), "application/xml", "text/xml");
+    final TestProcessor undeclared = new TestProcessor(List.of(), "application/custom");
+    final DocumentProcessorRegistry<TestProcessor, String> registry = createRegistry(List.of(xml, undeclared));
+
+    Assertions.assertSame(xml, registry.getProcessor("text/xml").orElse(null));
+    Assertions.assertSame(undeclared, registry.getProcessor("application/custom").orElse(null));
+    Assertions.assertTrue(registry.getProcessor("application/unknown").isEmpty());
+  }
+
+  private static DocumentProcessorRegistry<TestProcessor, String> createRegistry(final List<TestProcessor> processors) {
+    return new DocumentProcessorRegistry<>(processors, p -> p.declared, k -> k, TestProcessor::supports);
+  }
+
+  private static class TestProcessor {
+
+    private final List<String> declared;
+    private final List<String> supported;
+    private final AtomicInteger supportsCalls = new AtomicInteger();
+
+    TestProcessor(final List<String> declared, final String... supported) {
+      this.declared = declared;
+      this.supported = List.of(supported);
+    }
+
+    boolean supports(final String key) {
+      this.supportsCalls.incrementAndGet();
+      return this.supported.stream().anyMatch(s -> s.equalsIgnoreCase(key));
+    }
+  }
+
+}
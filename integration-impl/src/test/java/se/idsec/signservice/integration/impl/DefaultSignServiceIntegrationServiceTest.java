@@ -0,0 +1,297 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.SignRequestData;
+import se.idsec.signservice.integration.SignRequestInput;
+import se.idsec.signservice.integration.config.ConfigurationManager;
+import se.idsec.signservice.integration.config.IntegrationServiceConfiguration;
+import se.idsec.signservice.integration.config.PolicyNotFoundException;
+import se.idsec.signservice.integration.config.impl.DefaultIntegrationServiceConfiguration;
+import se.idsec.signservice.integration.core.error.InputValidationException;
+import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.document.TbsDocumentProcessor;
+import se.idsec.signservice.integration.document.pdf.PreparedPdfDocument;
+import se.idsec.signservice.integration.process.SignRequestProcessingResult;
+import se.idsec.signservice.integration.process.SignRequestProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test cases for the asynchronous and batch methods of DefaultSignServiceIntegrationService.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DefaultSignServiceIntegrationServiceTest {
+
+  @Test
+  public void testAsyncWithDefaultExecutor() throws Exception {
+    // No executor is assigned and afterPropertiesSet is not invoked - the default executor should be created ...
+    final DefaultSignServiceIntegrationService service = new DefaultSignServiceIntegrationService();
+    service.setConfigurationManager(new NoPoliciesConfigurationManager());
+
+    final CompletableFuture<SignRequestData> future =
+        service.createSignRequestAsync(SignRequestInput.builder().policy("unknown").build(), null);
+
+    final ExecutionException e =
+        Assertions.assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+    Assertions.assertTrue(e.getCause() instanceof PolicyNotFoundException);
+  }
+
+  @Test
+  public void testAsyncErrorReportedThroughFuture() throws Exception {
+    final DefaultSignServiceIntegrationService service = new DefaultSignServiceIntegrationService();
+    service.setConfigurationManager(new NoPoliciesConfigurationManager());
+    service.setAsyncExecutor(Runnable::run);
+
+    // No PdfSignaturePagePreparator is installed ...
+    final CompletableFuture<PreparedPdfDocument> future =
+        service.preparePdfDocumentAsync(null, new byte[] { 1, 2, 3 }, null, null, null);
+
+    Assertions.assertTrue(future.isCompletedExceptionally());
+    final ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+    Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+  }
+
+  @Test
+  public void testAsyncRejected() {
+    final DefaultSignServiceIntegrationService service = new DefaultSignServiceIntegrationService();
+    service.setConfigurationManager(new NoPoliciesConfigurationManager());
+    service.setAsyncExecutor(r -> {
+      throw new RejectedExecutionException("full");
+    });
+
+    final CompletableFuture<SignRequestData> future =
+        service.createSignRequestAsync(SignRequestInput.builder().policy("unknown").build(), null);
+
+    final ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+    Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+  }
+
+  @Test
+  public void testAsyncKeepsCallerCorrelationId() throws Exception {
+    final DefaultSignServiceIntegrationService service = new DefaultSignServiceIntegrationService();
+    service.setConfigurationManager(new NoPoliciesConfigurationManager());
+    service.setAsyncExecutor(Runnable::run);
+
+    CorrelationID.init("caller-id");
+    try {
+      // The blocking call clears the correlation ID of the thread it runs in ...
+      final CompletableFuture<SignRequestData> future =
+          service.createSignRequestAsync(SignRequestInput.builder().policy("unknown").build(), null);
+      Assertions.assertTrue(future.isCompletedExceptionally());
+      Assertions.assertEquals("caller-id", CorrelationID.id());
+    }
+    finally {
+      CorrelationID.clear();
+    }
+  }
+
+  @Test
+  public void testBatchOrderAndErrors() {
+    final FailingSignRequestProcessor processor = new FailingSignRequestProcessor(0);
+    final DefaultSignServiceIntegrationService service = new DefaultSignServiceIntegrationService();
+    service.setConfigurationManager(new BatchConfigurationManager());
+    service.setSignRequestProcessor(processor);
+
+    final List<SignRequestInput> inputs = new ArrayList<>();
+    inputs.add(SignRequestInput.builder().policy("default").correlationId("ID-0").build());
+    inputs.add(null);
+    inputs.add(SignRequestInput.builder().policy("unknown").correlationId("ID-2").build());
+    inputs.add(SignRequestInput.builder().policy("nodefaults").correlationId("ID-3").build());
+    inputs.add(SignRequestInput.builder().policy("nodefaults").correlationId("ID-4")
+        .signRequesterID("requester").returnUrl("https://www.example.com/return").build());
+    inputs.add(SignRequestInput.builder().policy("default").correlationId("ID-5").build());
+
+    final List<SignRequestBatchResult> results = service.createSignRequests(inputs, null);
+    Assertions.assertEquals(inputs.size(), results.size());
+    for (int i = 0; i < results.size(); i++) {
+      Assertions.assertEquals(i, results.get(i).getIndex());
+      Assertions.assertFalse(results.get(i).isSuccess());
+    }
+    Assertions.assertTrue(results.get(0).getError().getMessage().contains("ID-0"));
+    Assertions.assertTrue(results.get(1).getError() instanceof InputValidationException);
+    Assertions.assertTrue(results.get(2).getError() instanceof PolicyNotFoundException);
+    Assertions.assertTrue(results.get(3).getError() instanceof InputValidationException);
+    Assertions.assertFalse(results.get(3).getError().getMessage().contains("ID-3"));
+    Assertions.assertTrue(results.get(4).getError().getMessage().contains("ID-4"));
+    Assertions.assertTrue(results.get(5).getError().getMessage().contains("ID-5"));
+
+    // Inputs with an unknown policy, or relying on missing default values, should never be processed ...
+    Assertions.assertEquals(3, processor.getInvocations());
+  }
+
+  @Test
+  public void testBatchParallelismIsBounded() {
+    final FailingSignRequestProcessor processor = new FailingSignRequestProcessor(20);
+    final DefaultSignServiceIntegrationService service = new DefaultSignServiceIntegrationService();
+    service.setConfigurationManager(new BatchConfigurationManager());
+    service.setSignRequestProcessor(processor);
+    service.setBatchParallelism(2);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      service.setAsyncExecutor(executor);
+      final List<SignRequestInput> inputs = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        inputs.add(SignRequestInput.builder().policy("default").correlationId("ID-" + i).build());
+      }
+      final List<SignRequestBatchResult> results = service.createSignRequests(inputs, null);
+      for (int i = 0; i < results.size(); i++) {
+        Assertions.assertTrue(results.get(i).getError().getMessage().contains("ID-" + i));
+      }
+      Assertions.assertEquals(10, processor.getInvocations());
+      Assertions.assertTrue(processor.getMaxConcurrency() <= 2);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testInvalidBatchParallelism() {
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new DefaultSignServiceIntegrationService().setBatchParallelism(0));
+  }
+
+  /**
+   * Configuration manager without any policies.
+   */
+  private static class NoPoliciesConfigurationManager implements ConfigurationManager {
+
+    @Override
+    public IntegrationServiceConfiguration getConfiguration(@Nullable final String policy) {
+      return null;
+    }
+
+    @Override
+    public List<String> getPolicies() {
+      return List.of();
+    }
+
+    @Override
+    public String getDefaultPolicyName() {
+      return "default";
+    }
+
+    @Override
+    public void setDefaultPolicyName(@Nonnull final String defaultPolicyName) {
+    }
+  }
+
+  /**
+   * Configuration manager with a policy having default values and a policy lacking them.
+   */
+  private static class BatchConfigurationManager implements ConfigurationManager {
+
+    private final Map<String, IntegrationServiceConfiguration> policies = Map.of(
+        "default", DefaultIntegrationServiceConfiguration.builder()
+            .policy("default")
+            .defaultSignRequesterID("requester")
+            .defaultReturnUrl("https://www.example.com/return")
+            .build(),
+        "nodefaults", DefaultIntegrationServiceConfiguration.builder()
+            .policy("nodefaults")
+            .build());
+
+    @Override
+    public IntegrationServiceConfiguration getConfiguration(@Nullable final String policy) {
+      return this.policies.get(policy);
+    }
+
+    @Override
+    public List<String> getPolicies() {
+      return List.copyOf(this.policies.keySet());
+    }
+
+    @Override
+    public String getDefaultPolicyName() {
+      return "default";
+    }
+
+    @Override
+    public void setDefaultPolicyName(@Nonnull final String defaultPolicyName) {
+    }
+  }
+
+  /**
+   * A SignRequest processor that records its concurrency and fails the validation of all inputs.
+   */
+  private static class FailingSignRequestProcessor implements SignRequestProcessor {
+
+    private final long sleep;
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxConcurrency = new AtomicInteger();
+
+    FailingSignRequestProcessor(final long sleep) {
+      this.sleep = sleep;
+    }
+
+    @Override
+    public SignRequestInput preProcess(final SignRequestInput signRequestInput,
+        final IntegrationServiceConfiguration config, final String callerId) throws InputValidationException {
+      this.invocations.incrementAndGet();
+      this.maxConcurrency.accumulateAndGet(this.running.incrementAndGet(), Math::max);
+      try {
+        if (this.sleep > 0) {
+          Thread.sleep(this.sleep);
+        }
+      }
+      catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      finally {
+        this.running.decrementAndGet();
+      }
+      throw new InputValidationException("signRequestInput", "Failed " + signRequestInput.getCorrelationId());
+    }
+
+    @Override
+    public SignRequestProcessingResult process(final SignRequestInput signRequestInput, final String requestID,
+        final IntegrationServiceConfiguration config) {
+      throw new IllegalStateException("Not expected");
+    }
+
+    @Override
+    public List<TbsDocumentProcessor<?>> getTbsDocumentProcessors() {
+      return List.of();
+    }
+
+    int getInvocations() {
+      return this.invocations.get();
+    }
+
+    int getMaxConcurrency() {
+      return this.maxConcurrency.get();
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.process.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.SignResponseProcessingParameters;
+import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.SignedDocument;
+import se.idsec.signservice.integration.document.SignedDocumentProcessor;
+import se.idsec.signservice.integration.document.ades.AdesObject;
+import se.idsec.signservice.integration.document.impl.AbstractSignedDocumentProcessorTest;
+import se.idsec.signservice.integration.dss.SignRequestWrapper;
+import se.idsec.signservice.integration.dss.SignResponseWrapper;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+import se.swedenconnect.schemas.csig.dssext_1_1.SignTaskData;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test cases for the processing of signed documents in DefaultSignResponseProcessor.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DefaultSignResponseProcessorTest {
+
+  private static final se.swedenconnect.schemas.csig.dssext_1_1.ObjectFactory dssExtFactory =
+      new se.swedenconnect.schemas.csig.dssext_1_1.ObjectFactory();
+
+  private static ExecutorService executor;
+
+  @BeforeAll
+  public static void init() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterAll
+  public static void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSequential() throws Exception {
+    final TestProcessor processor = new TestProcessor(-1);
+
+    final List<SignedDocument> result = processor.processSignTaskDatas(
+        signTasks(4), List.of(), SignatureSessionState.builder().build(), new SignResponseWrapper(), null);
+
+    assertOrdered(result, 4);
+    Assertions.assertEquals(1, processor.threads.size());
+    Assertions.assertTrue(processor.threads.contains(Thread.currentThread().getName()));
+  }
+
+  @Test
+  public void testParallel() throws Exception {
+    final TestProcessor processor = new TestProcessor(-1);
+    processor.setSignedDocumentProcessingExecutor(executor);
+
+    CorrelationID.init("parallel-test");
+    try {
+      final List<SignedDocument> result = processor.processSignTaskDatas(
+          signTasks(8), List.of(), SignatureSessionState.builder().build(), new SignResponseWrapper(), null);
+
+      assertOrdered(result, 8);
+      Assertions.assertTrue(processor.maxConcurrent.get() > 1);
+      Assertions.assertFalse(processor.threads.contains(Thread.currentThread().getName()));
+      Assertions.assertEquals(Set.of("parallel-test"), processor.correlationIds);
+      Assertions.assertEquals("parallel-test", CorrelationID.id());
+    }
+    finally {
+      CorrelationID.clear();
+    }
+  }
+
+  @Test
+  public void testParallelError() {
+    final TestProcessor processor = new TestProcessor(2);
+    processor.setSignedDocumentProcessingExecutor(executor);
+
+    final DocumentProcessingException e = Assertions.assertThrows(DocumentProcessingException.class,
+        () -> processor.processSignTaskDatas(
+            signTasks(6), List.of(), SignatureSessionState.builder().build(), new SignResponseWrapper(), null));
+    Assertions.assertEquals("ID-2", e.getMessage());
+  }
+
+  private static List<SignTaskData> signTasks(final int count) {
+    final List<SignTaskData> signTasks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final SignTaskData signTaskData = dssExtFactory.createSignTaskData();
+      signTaskData.setSignTaskId("ID-" + i);
+      signTaskData.setSigType("TEST");
+      signTasks.add(signTaskData);
+    }
+    return signTasks;
+  }
+
+  private static void assertOrdered(final List<SignedDocument> result, final int count) {
+    Assertions.assertEquals(count, result.size());
+    for (int i = 0; i < count; i++) {
+      Assertions.assertEquals("ID-" + i, result.get(i).getId());
+    }
+  }
+
+  /**
+   * Processor that records the threads used and fails for the given index (unless -1). The first tasks are the
+   * slowest ones, so that later tasks complete first when processed in parallel.
+   */
+  private static class TestProcessor extends DefaultSignResponseProcessor {
+
+    private final int failIndex;
+
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> correlationIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    TestProcessor(final int failIndex) {
+      this.failIndex = failIndex;
+      this.setSignedDocumentProcessors(List.of(new AbstractSignedDocumentProcessorTest.SignedDocumentProcessor()));
+    }
+
+    @Override
+    protected void checkSignTaskData(final SignTaskData signTaskData, final SignRequestWrapper signRequest) {
+    }
+
+    @Override
+    protected <T, X extends AdesObject> SignedDocument processDocument(final SignedDocumentProcessor<T, X> processor,
+        final SignTaskData signTaskData, final List<X509Certificate> signerCertificateChain,
+        final SignatureSessionState state, final SignResponseWrapper signResponse,
+        final SignResponseProcessingParameters parameters) throws SignServiceIntegrationException {
+
+      final int index = Integer.parseInt(signTaskData.getSignTaskId().substring(3));
+      this.threads.add(Thread.currentThread().getName());
+      if (CorrelationID.id() != null) {
+        this.correlationIds.add(CorrelationID.id());
+      }
+      final int current = this.concurrent.incrementAndGet();
+      this.maxConcurrent.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep((10 - index) * 10L);
+      }
+      catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      finally {
+        this.concurrent.decrementAndGet();
+      }
+      if (index >= this.failIndex && this.failIndex >= 0) {
+        throw new DocumentProcessingException(new ErrorCode.Code("test"), signTaskData.getSignTaskId());
+      }
+      return SignedDocument.builder()
+          .id(signTaskData.getSignTaskId())
+          .signedContent("content-" + index)
+          .mimeType("text/plain")
+          .build();
+    }
+  }
+
+}
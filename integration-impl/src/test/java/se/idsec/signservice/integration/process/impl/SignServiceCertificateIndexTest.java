@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.process.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Test cases for SignServiceCertificateIndex.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class SignServiceCertificateIndexTest {
+
+  private final X509Certificate cert1;
+
+  private final X509Certificate cert2;
+
+  public SignServiceCertificateIndexTest() throws Exception {
+    try (final InputStream is = new ClassPathResource("idsec.se.cer").getInputStream()) {
+      this.cert1 = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(is);
+    }
+    try (final InputStream is = new ClassPathResource("signing.jks").getInputStream()) {
+      final KeyStore keyStore = KeyStore.getInstance("JKS");
+      keyStore.load(is, "secret".toCharArray());
+      this.cert2 = (X509Certificate) keyStore.getCertificate("default");
+    }
+  }
+
+  @Test
+  public void testKeyInfoCertificate() throws Exception {
+    final List<X509Certificate> certificates = List.of(this.cert1, this.cert2);
+    final SignServiceCertificateIndex index = new SignServiceCertificateIndex(certificates);
+    Assertions.assertTrue(index.isIndexFor(certificates));
+    Assertions.assertFalse(index.isIndexFor(List.of(this.cert1, this.cert2)));
+
+    final Document document = createSignResponse(
+        "<ds:X509Certificate>" + Base64.getEncoder().encodeToString(this.cert2.getEncoded()) + "</ds:X509Certificate>");
+    Assertions.assertEquals(List.of(this.cert2), index.getCertificates(document));
+  }
+
+  @Test
+  public void testNoMatch() throws Exception {
+    final SignServiceCertificateIndex index = new SignServiceCertificateIndex(List.of(this.cert1, this.cert2));
+
+    Assertions.assertEquals(2, index.getCertificates(createSignResponse(
+        "<ds:X509Certificate>" + Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3 })
+            + "</ds:X509Certificate>")).size());
+    Assertions.assertEquals(2, index.getCertificates(createSignResponse("<ds:X509SKI>AQID</ds:X509SKI>")).size());
+    Assertions.assertEquals(2, index.getCertificates(createSignResponse("<ds:X509SKI>***</ds:X509SKI>")).size());
+  }
+
+  private static Document createSignResponse(final String x509Data) throws Exception {
+    final String xml = "<SignResponse xmlns=\"urn:oasis:names:tc:dss:1.0:core:schema\">"
+        + "<OptionalOutputs><ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">"
+        + "<ds:KeyInfo><ds:X509Data>" + x509Data + "</ds:X509Data></ds:KeyInfo>"
+        + "</ds:Signature></OptionalOutputs></SignResponse>";
+    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+}
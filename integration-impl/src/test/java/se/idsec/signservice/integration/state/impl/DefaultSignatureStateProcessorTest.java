@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+import se.idsec.signservice.integration.core.impl.InMemoryDocumentCache;
+import se.idsec.signservice.integration.document.DocumentType;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+import se.idsec.signservice.integration.state.StateException;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test cases for the hybrid mode of DefaultSignatureStateProcessor where large documents are stored in a document
+ * cache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class DefaultSignatureStateProcessorTest {
+
+  private static final String LARGE_CONTENT = createContent(10_000);
+
+  private static final String SMALL_CONTENT = createContent(100);
+
+  @Test
+  public void testStoreAndRestore() throws Exception {
+    final InMemoryDocumentCache documentCache = new InMemoryDocumentCache();
+    final DefaultSignatureStateProcessor processor = createProcessor(documentCache);
+
+    final List<TbsDocument> stored = processor.storeLargeDocuments(createDocuments(), "state-1", "owner");
+    Assertions.assertEquals(2, stored.size());
+    Assertions.assertNull(stored.get(0).getContent());
+    Assertions.assertTrue(stored.get(0).getContentReference()
+        .startsWith(DefaultSignatureStateProcessor.STATE_DOCUMENT_REFERENCE_PREFIX));
+    Assertions.assertEquals(SMALL_CONTENT, stored.get(1).getContent());
+    Assertions.assertEquals(1, documentCache.size());
+
+    final SignatureSessionState state = SignatureSessionState.builder().tbsDocuments(stored).build();
+    processor.restoreLargeDocuments(state, "state-1", "owner");
+    Assertions.assertEquals(LARGE_CONTENT, state.getTbsDocuments().get(0).getContent());
+    Assertions.assertNull(state.getTbsDocuments().get(0).getContentReference());
+    Assertions.assertEquals(SMALL_CONTENT, state.getTbsDocuments().get(1).getContent());
+
+    // The restored contents should have been removed from the cache ...
+    Assertions.assertEquals(0, documentCache.size());
+  }
+
+  @Test
+  public void testOtherRequester() throws Exception {
+    final DefaultSignatureStateProcessor processor = createProcessor(new InMemoryDocumentCache());
+    final List<TbsDocument> stored = processor.storeLargeDocuments(createDocuments(), "state-1", "owner");
+
+    // The owner check of the document cache is used ...
+    final SignatureSessionState state = SignatureSessionState.builder().tbsDocuments(stored).build();
+    Assertions.assertThrows(NoAccessException.class,
+        () -> processor.restoreLargeDocuments(state, "state-1", "other"));
+  }
+
+  @Test
+  public void testOtherState() {
+    final DefaultSignatureStateProcessor processor = createProcessor(new InMemoryDocumentCache());
+    final List<TbsDocument> stored = processor.storeLargeDocuments(createDocuments(), "state-1", "owner");
+
+    // The contents are stored for the state, and can not be used by other states ...
+    final SignatureSessionState state = SignatureSessionState.builder().tbsDocuments(stored).build();
+    final StateException e = Assertions.assertThrows(StateException.class,
+        () -> processor.restoreLargeDocuments(state, "state-2", "owner"));
+    Assertions.assertTrue(e.getMessage().contains("is not available"));
+  }
+
+  @Test
+  public void testIntegrityError() throws Exception {
+    final InMemoryDocumentCache documentCache = new InMemoryDocumentCache();
+    final DefaultSignatureStateProcessor processor = createProcessor(documentCache);
+    final List<TbsDocument> stored = processor.storeLargeDocuments(createDocuments(), "state-1", "owner");
+
+    // Replace the cached contents ...
+    final String id = "state-1/" + stored.get(0).getContentReference();
+    Assertions.assertNotNull(documentCache.get(id, "owner"));
+    documentCache.put(id, createContent(5000), "owner");
+
+    final SignatureSessionState state = SignatureSessionState.builder().tbsDocuments(stored).build();
+    final StateException e = Assertions.assertThrows(StateException.class,
+        () -> processor.restoreLargeDocuments(state, "state-1", "owner"));
+    Assertions.assertTrue(e.getMessage().contains("does not match"));
+  }
+
+  @Test
+  public void testNoDocumentCache() {
+    final DefaultSignatureStateProcessor processor = createProcessor(new InMemoryDocumentCache());
+    final List<TbsDocument> stored = processor.storeLargeDocuments(createDocuments(), "state-1", "owner");
+
+    final DefaultSignatureStateProcessor otherProcessor = createProcessor(null);
+    final SignatureSessionState state = SignatureSessionState.builder().tbsDocuments(stored).build();
+    Assertions.assertThrows(StateException.class,
+        () -> otherProcessor.restoreLargeDocuments(state, "state-1", "owner"));
+  }
+
+  private static DefaultSignatureStateProcessor createProcessor(final InMemoryDocumentCache documentCache) {
+    final DefaultSignatureStateProcessor processor = new DefaultSignatureStateProcessor();
+    processor.setDocumentCache(documentCache);
+    processor.setInlineDocumentMaxSize(1000);
+    return processor;
+  }
+
+  private static List<TbsDocument> createDocuments() {
+    return List.of(
+        TbsDocument.builder().id("large").content(LARGE_CONTENT).mimeType(DocumentType.PDF).build(),
+        TbsDocument.builder().id("small").content(SMALL_CONTENT).mimeType(DocumentType.XML).build());
+  }
+
+  private static String createContent(final int size) {
+    final byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+}
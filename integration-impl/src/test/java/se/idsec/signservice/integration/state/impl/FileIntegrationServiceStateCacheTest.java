@@ -0,0 +1,297 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.IntegrationServiceStateCache;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serial;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Test cases for FileIntegrationServiceStateCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class FileIntegrationServiceStateCacheTest {
+
+  private Path directory;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    this.directory = Files.createTempDirectory("state-cache-test");
+  }
+
+  @AfterEach
+  public void cleanup() throws Exception {
+    try (final Stream<Path> files = Files.walk(this.directory)) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  @Test
+  public void testPutGetRemove() throws Exception {
+    final FileIntegrationServiceStateCache cache = this.createCache();
+    try {
+      cache.put("1", new TestState("1", "owner", 100));
+      cache.put("2", new TestState("2", null, 100));
+
+      Assertions.assertEquals("1", cache.get("1", "owner").getId());
+      Assertions.assertThrows(NoAccessException.class, () -> cache.get("1", "other"));
+      Assertions.assertEquals("2", cache.get("2", true, null).getId());
+      Assertions.assertNull(cache.get("2", null));
+      Assertions.assertEquals(1, cache.size());
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  public void testRecovery() throws Exception {
+    FileIntegrationServiceStateCache cache = this.createCache();
+    cache.put("1", new TestState("1", null, 100));
+    cache.put("2", new TestState("2", null, 100));
+    cache.put("1", new TestState("1", "owner", 200));
+    cache.remove("2");
+    cache.setMaxAge(-1000L);
+    cache.put("3", new TestState("3", null, 100));
+    cache.destroy();
+
+    // Simulate a crash during a write ...
+    try (final Stream<Path> files = Files.list(this.directory)) {
+      final Path segment = files.sorted().findFirst().orElseThrow();
+      try (final RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+        file.seek(file.length());
+        file.write(new byte[] { 1, 0, 0, 0, 5, 'a' });
+      }
+    }
+
+    cache = this.createCache();
+    try {
+      Assertions.assertEquals(1, cache.size());
+      final TestState state = (TestState) cache.get("1", "owner");
+      Assertions.assertEquals(200, state.data.length);
+      Assertions.assertNull(cache.get("2", null));
+      Assertions.assertNull(cache.get("3", null));
+
+      // Make sure that we can continue writing after recovery ...
+      cache.put("4", new TestState("4", null, 100));
+      Assertions.assertNotNull(cache.get("4", null));
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  public void testRecoveryCorruptPayload() throws Exception {
+    FileIntegrationServiceStateCache cache = this.createCache();
+    cache.put("1", new TestState("1", null, 100));
+    cache.put("2", new TestState("2", null, 1000));
+    cache.put("3", new TestState("3", null, 100));
+    cache.destroy();
+
+    // Flip a byte in the middle of the payload of the second state ...
+    final Path segment;
+    try (final Stream<Path> files = Files.list(this.directory)) {
+      segment = files.sorted().findFirst().orElseThrow();
+    }
+    final long size = Files.size(segment);
+    try (final RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      final long position = size / 2;
+      file.seek(position);
+      final int b = file.read();
+      file.seek(position);
+      file.write(b ^ 0xff);
+    }
+
+    cache = this.createCache();
+    try {
+      Assertions.assertEquals(1, cache.size());
+      Assertions.assertNotNull(cache.get("1", null));
+      Assertions.assertNull(cache.get("2", null));
+      Assertions.assertNull(cache.get("3", null));
+      Assertions.assertTrue(Files.size(segment) < size);
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  public void testDeserializationFilter() throws Exception {
+    final FileIntegrationServiceStateCache cache = this.createCache();
+    try {
+      cache.put("1", new UriState("1", URI.create("https://www.example.com")));
+      Assertions.assertThrows(IllegalStateException.class, () -> cache.get("1", null));
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    FileIntegrationServiceStateCache cache = this.createCache();
+    cache.setMaxSegmentSize(4096);
+    for (int i = 0; i < 100; i++) {
+      cache.put("state-" + i, new TestState("state-" + i, null, 500));
+      if (i % 10 != 0) {
+        cache.remove("state-" + i);
+      }
+    }
+    final int segments = cache.getSegmentCount();
+    cache.compact();
+    Assertions.assertTrue(cache.getSegmentCount() < segments);
+    Assertions.assertEquals(10, cache.size());
+    cache.destroy();
+
+    cache = this.createCache();
+    try {
+      Assertions.assertEquals(10, cache.size());
+      for (int i = 0; i < 100; i += 10) {
+        Assertions.assertNotNull(cache.get("state-" + i, null));
+      }
+    }
+    finally {
+      cache.destroy();
+    }
+  }
+
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void benchmark() throws Exception {
+    final int count = 20_000;
+    final FileIntegrationServiceStateCache fileCache = this.createCache();
+    try {
+      for (final IntegrationServiceStateCache cache : new IntegrationServiceStateCache[] {
+          new InMemoryIntegrationServiceStateCache(), fileCache }) {
+        final TestState[] states = new TestState[count];
+        for (int i = 0; i < count; i++) {
+          states[i] = new TestState("state-" + i, "owner", 8192);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          cache.put(states[i].getId(), states[i]);
+        }
+        final long putTime = (System.nanoTime() - start) / count;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          cache.get(states[i].getId(), true, "owner");
+        }
+        final long getTime = (System.nanoTime() - start) / count;
+        System.out.printf("%s: put: %d ns, get and remove: %d ns%n", cache.getClass().getSimpleName(), putTime,
+            getTime);
+      }
+      final long start = System.nanoTime();
+      fileCache.compact();
+      System.out.printf("Compaction: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+    }
+    finally {
+      fileCache.destroy();
+    }
+  }
+
+  private FileIntegrationServiceStateCache createCache() throws Exception {
+    final FileIntegrationServiceStateCache cache = new FileIntegrationServiceStateCache();
+    cache.setDirectory(this.directory.toFile());
+    cache.afterPropertiesSet();
+    return cache;
+  }
+
+  private static class TestState implements CacheableSignatureState {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+
+    private final String ownerId;
+
+    private final byte[] data;
+
+    TestState(final String id, final String ownerId, final int size) {
+      this.id = id;
+      this.ownerId = ownerId;
+      this.data = new byte[size];
+      new Random(size).nextBytes(this.data);
+    }
+
+    @Override
+    public String getId() {
+      return this.id;
+    }
+
+    @Override
+    public Serializable getState() {
+      return this.data;
+    }
+
+    @Override
+    public String getOwnerId() {
+      return this.ownerId;
+    }
+
+  }
+
+  private static class UriState implements CacheableSignatureState {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+
+    private final URI uri;
+
+    UriState(final String id, final URI uri) {
+      this.id = id;
+      this.uri = uri;
+    }
+
+    @Override
+    public String getId() {
+      return this.id;
+    }
+
+    @Override
+    public Serializable getState() {
+      return this.uri;
+    }
+
+    @Override
+    public String getOwnerId() {
+      return null;
+    }
+
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.idsec.signservice.integration.core.error.NoAccessException;
+import se.idsec.signservice.integration.core.impl.CacheStatistics;
+import se.idsec.signservice.integration.core.impl.LocalRespServer;
+import se.idsec.signservice.integration.core.impl.RespClient;
+import se.idsec.signservice.integration.document.DocumentType;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.document.TbsDocument.AdesType;
+import se.idsec.signservice.integration.document.TbsDocument.EtsiAdesRequirement;
+import se.idsec.signservice.integration.dss.SignRequestWrapper;
+import se.idsec.signservice.integration.signmessage.SignMessageParameters;
+import se.idsec.signservice.integration.state.CacheableSignatureState;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+
+import java.util.Base64;
+
+/**
+ * Test cases for RemoteIntegrationServiceStateCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class RemoteIntegrationServiceStateCacheTest {
+
+  private LocalRespServer server;
+
+  private RespClient client;
+
+  private RemoteIntegrationServiceStateCache cache;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    this.server = new LocalRespServer();
+    this.client = new RespClient();
+    this.client.setPort(this.server.getPort());
+    this.client.afterPropertiesSet();
+
+    this.cache = new RemoteIntegrationServiceStateCache();
+    this.cache.setClient(this.client);
+    this.cache.afterPropertiesSet();
+  }
+
+  @AfterEach
+  public void cleanup() throws Exception {
+    this.client.destroy();
+    this.server.close();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final DefaultSignatureState state = createState("state-1", "owner");
+    this.cache.put(state.getId(), state);
+    Assertions.assertEquals(1, this.server.size());
+
+    // The state is read using Java serialization restricted by the default deserialization filter, so a successful
+    // read means that all classes making up a populated state pass the filter ...
+    final CacheableSignatureState cached = this.cache.get("state-1", true, "owner");
+    Assertions.assertNotNull(cached);
+    Assertions.assertEquals("state-1", cached.getId());
+    Assertions.assertEquals("owner", cached.getOwnerId());
+    Assertions.assertEquals(0, this.server.size());
+
+    final SignatureSessionState expected = (SignatureSessionState) state.getState();
+    final SignatureSessionState actual = (SignatureSessionState) cached.getState();
+    Assertions.assertEquals(expected.getCorrelationId(), actual.getCorrelationId());
+    Assertions.assertEquals(expected.getPolicy(), actual.getPolicy());
+    Assertions.assertEquals(expected.getExpectedReturnUrl(), actual.getExpectedReturnUrl());
+    Assertions.assertEquals("Sign this", actual.getSignMessage().getSignMessage());
+    Assertions.assertEquals("request-1", actual.getSignRequest().getRequestID());
+
+    Assertions.assertEquals(2, actual.getTbsDocuments().size());
+    final TbsDocument pdf = actual.getTbsDocuments().get(0);
+    Assertions.assertEquals(expected.getTbsDocuments().get(0).getContent(), pdf.getContent());
+    Assertions.assertEquals(AdesType.BES, pdf.getAdesRequirement().getAdesFormat());
+    Assertions.assertEquals("1700000000000", pdf.getExtensionValue("signTimeAndId"));
+    Assertions.assertEquals("MIIB", pdf.getExtensionValue("cmsSignedData"));
+
+    final CacheStatistics statistics = this.cache.getStatistics();
+    Assertions.assertEquals(1, statistics.getTotals().getPuts());
+    Assertions.assertEquals(1, statistics.getTotals().getHits());
+    Assertions.assertEquals(1, statistics.getPolicies().get("default-policy").getHits());
+    Assertions.assertEquals(1, statistics.getOwners().get("owner").getHits());
+  }
+
+  @Test
+  public void testOwner() throws Exception {
+    this.cache.put("state-1", createState("state-1", "owner"));
+
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("state-1", "other"));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("state-1", true, "other"));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("state-1", true, null));
+    Assertions.assertThrows(NoAccessException.class, () -> this.cache.get("state-1", true, "own"));
+
+    // The failed attempts to consume the state should leave it in place ...
+    Assertions.assertEquals(1, this.server.size());
+    Assertions.assertEquals(4, this.cache.getStatistics().getOwners().get("owner").getAccessDenied());
+
+    Assertions.assertNotNull(this.cache.get("state-1", true, "owner"));
+    Assertions.assertNull(this.cache.get("state-1", true, "owner"));
+    Assertions.assertEquals(0, this.server.size());
+
+    // A state without an owner may be consumed by anyone ...
+    this.cache.put("state-2", createState("state-2", null));
+    Assertions.assertNotNull(this.cache.get("state-2", true, "other"));
+    Assertions.assertEquals(0, this.server.size());
+  }
+
+  private static DefaultSignatureState createState(final String id, final String ownerId) {
+    final TbsDocument pdf = TbsDocument.builder()
+        .id("doc-1")
+        .content(Base64.getEncoder().encodeToString(new byte[10_000]))
+        .mimeType(DocumentType.PDF)
+        .adesRequirement(EtsiAdesRequirement.builder().adesFormat(AdesType.BES).signaturePolicy("policy").build())
+        .build();
+    pdf.addExtensionValue("signTimeAndId", "1700000000000");
+    pdf.addExtensionValue("cmsSignedData", "MIIB");
+
+    final SignRequestWrapper signRequest = new SignRequestWrapper();
+    signRequest.setRequestID("request-1");
+
+    final SignatureSessionState sessionState = SignatureSessionState.builder()
+        .ownerId(ownerId)
+        .correlationId("correlation-id")
+        .policy("default-policy")
+        .expectedReturnUrl("https://www.example.com/sign/response")
+        .tbsDocument(pdf)
+        .tbsDocument(TbsDocument.builder()
+            .id("doc-2")
+            .content(Base64.getEncoder().encodeToString("<doc>Hello</doc>".getBytes()))
+            .mimeType(DocumentType.XML)
+            .build())
+        .signMessage(SignMessageParameters.builder().signMessage("Sign this").mustShow(true).build())
+        .signRequest(signRequest)
+        .build();
+
+    return DefaultSignatureState.builder()
+        .id(id)
+        .state(sessionState)
+        .build();
+  }
+
+}
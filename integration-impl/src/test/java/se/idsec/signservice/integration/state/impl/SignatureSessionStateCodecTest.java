@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.state.impl;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.idsec.signservice.integration.document.DocumentType;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.document.TbsDocument.AdesType;
+import se.idsec.signservice.integration.document.TbsDocument.EtsiAdesRequirement;
+import se.idsec.signservice.integration.signmessage.SignMessageParameters;
+import se.idsec.signservice.integration.state.SignatureSessionState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Test cases for SignatureSessionStateCodec and EncodedSignatureSessionState.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class SignatureSessionStateCodecTest {
+
+  private static final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final SignatureSessionState state = createState(10_000);
+
+    for (final boolean compress : new boolean[] { false, true }) {
+      final SignatureSessionState decoded =
+          SignatureSessionStateCodec.decode(SignatureSessionStateCodec.encode(state, compress));
+      assertStateEquals(state, decoded);
+    }
+  }
+
+  @Test
+  public void testNonCanonicalBase64() throws Exception {
+    final SignatureSessionState state = createState(100);
+    state.setEncodedSignRequest("not base64 ...");
+    state.getTbsDocuments().get(0).setContent(
+        Base64.getMimeEncoder().encodeToString(new byte[200]));
+
+    final SignatureSessionState decoded =
+        SignatureSessionStateCodec.decode(SignatureSessionStateCodec.encode(state, false));
+    assertStateEquals(state, decoded);
+  }
+
+  @Test
+  public void testEncodedSignatureSessionState() throws Exception {
+    final SignatureSessionState state = createState(1000);
+
+    for (final SessionStateEncoding encoding : SessionStateEncoding.values()) {
+      final EncodedSignatureSessionState encodedState = new EncodedSignatureSessionState(state, encoding);
+      // Simulate that the state has been passed back to us ...
+      final EncodedSignatureSessionState received = new EncodedSignatureSessionState(encodedState.getEncodedState());
+      assertStateEquals(state, received.getSignatureSessionState());
+    }
+
+    // Make sure that states encoded in the old way can be decoded ...
+    final EncodedSignatureSessionState oldState = new EncodedSignatureSessionState(state);
+    assertStateEquals(state,
+        new EncodedSignatureSessionState(oldState.getEncodedState()).getSignatureSessionState());
+  }
+
+  @Test
+  public void testAllFieldsRoundTrip() throws Exception {
+    final SignatureSessionState state = createState(1000);
+    state.setOwnerId("owner");
+    state.setSignMessage(SignMessageParameters.builder().signMessage("signMessage").mustShow(true).build());
+    state.getTbsDocuments().get(0).setAdesRequirement(
+        EtsiAdesRequirement.builder().adesFormat(AdesType.BES).signaturePolicy("policy").build());
+
+    for (final boolean compress : new boolean[] { false, true }) {
+      final SignatureSessionState decoded =
+          SignatureSessionStateCodec.decode(SignatureSessionStateCodec.encode(state, compress));
+      // The owner ID is never part of the encoding (it is received from the caller) ...
+      Assertions.assertNull(decoded.getOwnerId());
+      Assertions.assertEquals(mapper.writeValueAsString(state), mapper.writeValueAsString(decoded));
+    }
+
+    // Empty state ...
+    final SignatureSessionState empty = new SignatureSessionState();
+    final SignatureSessionState decoded =
+        SignatureSessionStateCodec.decode(SignatureSessionStateCodec.encode(empty, false));
+    Assertions.assertNull(decoded.getOwnerId());
+    Assertions.assertEquals(mapper.writeValueAsString(empty), mapper.writeValueAsString(decoded));
+  }
+
+  @Test
+  public void testDecompressionBomb() throws Exception {
+    // A highly compressible document that inflates to 10 MB ...
+    final SignatureSessionState state = createState(100);
+    state.getTbsDocuments().get(0).setContent(Base64.getEncoder().encodeToString(new byte[10 * 1024 * 1024]));
+    final byte[] encoding = SignatureSessionStateCodec.encode(state, true);
+    Assertions.assertTrue(encoding.length < 100_000);
+
+    Assertions.assertThrows(IOException.class, () -> SignatureSessionStateCodec.decode(encoding, 1024 * 1024));
+    Assertions.assertNotNull(SignatureSessionStateCodec.decode(encoding, 11 * 1024 * 1024));
+
+    final EncodedSignatureSessionState encodedState =
+        new EncodedSignatureSessionState(Base64.getEncoder().encodeToString(encoding));
+    Assertions.assertThrows(IOException.class, () -> encodedState.getSignatureSessionState(1024 * 1024));
+  }
+
+  @Test
+  public void testOversizedLength() throws Exception {
+    for (final boolean compress : new boolean[] { false, true }) {
+      // An encoding claiming that the header is 2 GB ...
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      bos.write(new byte[] { (byte) 0xB5, 0x53, SignatureSessionStateCodec.VERSION, (byte) (compress ? 1 : 0) });
+      try (final DataOutputStream out = new DataOutputStream(compress ? new DeflaterOutputStream(bos) : bos)) {
+        out.writeInt(Integer.MAX_VALUE);
+        out.write(new byte[100]);
+      }
+      final IOException e = Assertions.assertThrows(IOException.class,
+          () -> SignatureSessionStateCodec.decode(bos.toByteArray()));
+      Assertions.assertTrue(e.getMessage().contains("maximum size"));
+    }
+
+    // Truncated encoding ...
+    final byte[] encoding = SignatureSessionStateCodec.encode(createState(1000), false);
+    Assertions.assertThrows(IOException.class,
+        () -> SignatureSessionStateCodec.decode(Arrays.copyOf(encoding, encoding.length - 10)));
+  }
+
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void benchmark() throws Exception {
+    final int iterations = 50;
+    for (final int size : new int[] { 10_000, 1_000_000, 5_000_000 }) {
+      final SignatureSessionState state = createState(size);
+      for (final SessionStateEncoding encoding : SessionStateEncoding.values()) {
+        String encoded = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          encoded = new EncodedSignatureSessionState(state, encoding).getEncodedState();
+        }
+        final long encodeTime = (System.nanoTime() - start) / iterations / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          new EncodedSignatureSessionState(encoded).getSignatureSessionState();
+        }
+        final long decodeTime = (System.nanoTime() - start) / iterations / 1000;
+
+        System.out.printf("document: %d bytes, encoding: %s, state size: %d chars, encode: %d us, decode: %d us%n",
+            size, encoding, encoded.length(), encodeTime, decodeTime);
+      }
+    }
+  }
+
+  private static SignatureSessionState createState(final int documentSize) {
+    // Simulate a PDF document with a mix of compressible and non-compressible data ...
+    final byte[] document = new byte[documentSize];
+    new Random(17).nextBytes(document);
+    for (int i = 0; i < documentSize; i += 4) {
+      document[i] = 'A';
+    }
+    final byte[] signRequest = new byte[4096];
+    new Random(4711).nextBytes(signRequest);
+
+    return SignatureSessionState.builder()
+        .correlationId("correlation-id")
+        .policy("default")
+        .expectedReturnUrl("https://www.example.com/sign/response")
+        .tbsDocument(TbsDocument.builder()
+            .id("doc-1")
+            .content(Base64.getEncoder().encodeToString(document))
+            .mimeType(DocumentType.PDF)
+            .build())
+        .tbsDocument(TbsDocument.builder()
+            .id("doc-2")
+            .content(Base64.getEncoder().encodeToString("<doc>Hello</doc>".getBytes()))
+            .mimeType(DocumentType.XML)
+            .build())
+        .encodedSignRequest(Base64.getEncoder().encodeToString(signRequest))
+        .build();
+  }
+
+  private static void assertStateEquals(final SignatureSessionState expected, final SignatureSessionState actual) {
+    Assertions.assertEquals(expected.getCorrelationId(), actual.getCorrelationId());
+    Assertions.assertEquals(expected.getPolicy(), actual.getPolicy());
+    Assertions.assertEquals(expected.getExpectedReturnUrl(), actual.getExpectedReturnUrl());
+    Assertions.assertEquals(expected.getEncodedSignRequest(), actual.getEncodedSignRequest());
+    Assertions.assertEquals(expected.getTbsDocuments().size(), actual.getTbsDocuments().size());
+    for (int i = 0; i < expected.getTbsDocuments().size(); i++) {
+      final TbsDocument e = expected.getTbsDocuments().get(i);
+      final TbsDocument a = actual.getTbsDocuments().get(i);
+      Assertions.assertEquals(e.getId(), a.getId());
+      Assertions.assertEquals(e.getMimeType(), a.getMimeType());
+      Assertions.assertEquals(e.getContent(), a.getContent());
+    }
+  }
+
+}
@@ -26,14 +26,24 @@ import se.idsec.signservice.integration.core.DocumentCache;
 import se.idsec.signservice.integration.core.error.ErrorCode;
 import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
+import se.idsec.signservice.integration.core.error.impl.QuotaExceededException;
+import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.core.impl.OwnerQuotaExceededException;
 import se.idsec.signservice.integration.document.DocumentEncoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.pdf.pdfa.BasicMetadataPDFAConformanceChecker;
 import se.idsec.signservice.integration.document.pdf.pdfa.PDFAConformanceChecker;
 import se.idsec.signservice.integration.document.pdf.signpage.impl.PdfSignaturePagePreferencesValidator;
+import se.idsec.signservice.integration.document.pdf.signpage.impl.SignPageTemplateCache;
 import se.idsec.signservice.integration.document.pdf.utils.PDDocumentUtils;
 import se.idsec.signservice.integration.impl.PdfSignaturePagePreparator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -66,6 +76,10 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
   @Setter
   private TbsPdfDocumentIssueHandler issueHandler = new TbsPdfDocumentIssueHandler();
 
+  /** Cache of parsed sign pages. */
+  @Setter
+  private SignPageTemplateCache signPageTemplateCache = new SignPageTemplateCache();
+
   /** {@inheritDoc} */
   @Override
   @Nonnull
@@ -75,6 +89,24 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
       @Nullable final Boolean returnDocumentReference, @Nullable final String callerId)
       throws SignServiceIntegrationException {
 
+    return this.preparePdfDocumentFromSource(pdfDocument != null ? DocumentSource.of(pdfDocument) : null,
+        signaturePagePreferences, policyConfiguration, returnDocumentReference, callerId);
+  }
+
+  /**
+   * Prepares the PDF document without first reading it into memory. A document file is parsed directly from the file,
+   * and a document stream (that can only be read once) is buffered by PDFBox. If a document reference is to be
+   * returned, a document file or stream is first copied to a temporary file, since the original bytes are cached if
+   * the document is not updated.
+   */
+  @Override
+  @Nonnull
+  public PreparedPdfDocument preparePdfDocumentFromSource(@Nonnull final DocumentSource pdfDocument,
+      @Nullable final PdfSignaturePagePreferences signaturePagePreferences,
+      @Nonnull final IntegrationServiceConfiguration policyConfiguration,
+      @Nullable final Boolean returnDocumentReference, @Nullable final String callerId)
+      throws SignServiceIntegrationException {
+
     // We might update the preferences, so make a copy ...
     //
     final PdfSignaturePagePreferences preferences = signaturePagePreferences != null
@@ -91,15 +123,53 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
         .policy(policyConfiguration.getPolicy())
         .build();
 
+    // Check whether document references should be used ...
+    //
+    boolean returnReference = false;
+    if (!policyConfiguration.isStateless()) {
+      // If we are stateful, and the return document reference has not been assigned, the default is
+      // to use document references ...
+      //
+      // Also handle deprecated setting in preferences ...
+      //
+      if (returnDocumentReference == null) {
+        if (preferences == null) {
+          returnReference = true;
+        }
+        else if (preferences.getReturnDocumentReference() == null ||
+            Boolean.TRUE.equals(preferences.getReturnDocumentReference())) {
+          returnReference = true;
+        }
+      }
+      else {
+        returnReference = returnDocumentReference;
+      }
+      if (returnReference && this.documentCache == null) {
+        log.warn(
+            "Caller has requested a document reference instead of entire document, but no document cache is configured");
+        returnReference = false;
+      }
+    }
+
+    DocumentSource source = pdfDocument;
+    Path spoolFile = null;
     PDDocument document = null;
+    InsertedSignPage insertedSignPage = null;
 
     try {
-      // Load the PDF document ...
+      // Load the PDF document. If a document reference is returned, and the document is not updated, the original
+      // bytes are cached. A file or a stream is then first copied to a private spool file, so that the cached bytes
+      // are the bytes that were parsed (and so that a stream can be read again). Otherwise, a stream is buffered by
+      // PDFBox ...
       //
       try {
-        document = PDDocumentUtils.load(pdfDocument);
+        if (returnReference && (pdfDocument.getPath() != null || !pdfDocument.isRepeatable())) {
+          spoolFile = spool(pdfDocument);
+          source = DocumentSource.of(spoolFile);
+        }
+        document = PDDocumentUtils.load(source);
       }
-      catch (final DocumentProcessingException e) {
+      catch (final DocumentProcessingException | IOException | IllegalStateException e) {
         throw new InputValidationException("pdfDocument", String.format("Invalid pdfDocument - %s", e.getMessage()), e);
       }
 
@@ -109,44 +179,11 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
 
       // Next, add a visible signature (and possibly also a new sign page) ...
       //
-      final PDDocument updatedDocument =
-          this.processSignPageAndVisibleSignature(document, preferences, policyConfiguration, result);
-      final boolean signPageAdded;
-      if (updatedDocument != null) {
-        signPageAdded = true;
-        document = updatedDocument;
-      }
-      else {
-        signPageAdded = false;
-      }
-
-      // Check whether document references should be used ...
+      // The sign page is inserted in place, so the document is serialized only once, below ...
       //
-      boolean returnReference = false;
-      if (!policyConfiguration.isStateless()) {
-        // If we are stateful, and the return document reference has not been assigned, the default is
-        // to use document references ...
-        //
-        // Also handle deprecated setting in preferences ...
-        //
-        if (returnDocumentReference == null) {
-          if (preferences == null) {
-            returnReference = true;
-          }
-          else if (preferences.getReturnDocumentReference() == null ||
-              Boolean.TRUE.equals(preferences.getReturnDocumentReference())) {
-            returnReference = true;
-          }
-        }
-        else {
-          returnReference = returnDocumentReference;
-        }
-        if (returnReference && this.documentCache == null) {
-          log.warn(
-              "Caller has requested a document reference instead of entire document, but no document cache is configured");
-          returnReference = false;
-        }
-      }
+      insertedSignPage =
+          this.processSignPageAndVisibleSignature(document, preferences, policyConfiguration, result);
+      final boolean signPageAdded = insertedSignPage != null;
 
       if (returnReference) {
         // Return only the reference to the document. If the document was not updated, use the bytes that was
@@ -154,12 +191,17 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
         //
         final String documentReference = UUID.randomUUID().toString();
 
-        if (fixesApplied || signPageAdded) {
-          this.documentCache.put(documentReference, encoder.encodeDocument(PDDocumentUtils.toBytes(document)),
-              callerId);
+        try {
+          if (fixesApplied || signPageAdded) {
+            this.documentCache.putBytes(documentReference, PDDocumentUtils.toBytes(document), callerId);
+          }
+          else {
+            this.documentCache.putBytes(documentReference, this.getOriginalBytes(source), callerId);
+          }
         }
-        else {
-          this.documentCache.put(documentReference, encoder.encodeDocument(pdfDocument), callerId);
+        catch (final OwnerQuotaExceededException e) {
+          log.info("{}: Failed to cache prepared document - {}", CorrelationID.id(), e.getMessage());
+          throw new QuotaExceededException(e.getMessage(), e);
         }
         result.setPdfDocumentReference(documentReference);
       }
@@ -175,6 +217,36 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
     }
     finally {
       PDDocumentUtils.close(document);
+      if (insertedSignPage != null) {
+        insertedSignPage.release();
+      }
+      if (spoolFile != null) {
+        try {
+          Files.deleteIfExists(spoolFile);
+        }
+        catch (final IOException e) {
+          log.warn("{}: Failed to delete spool file {}", CorrelationID.id(), spoolFile, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies the (decoded) document to a new temporary file.
+   *
+   * @param source the document source
+   * @return the path of the temporary file
+   * @throws IOException for read or write errors
+   */
+  private static Path spool(final DocumentSource source) throws IOException {
+    final Path file = Files.createTempFile("signservice-pdf-", ".pdf");
+    try (final InputStream is = source.openStream()) {
+      Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
+      return file;
+    }
+    catch (final IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
     }
   }
 
@@ -208,17 +280,18 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
   /**
    * Method for adding sign pages and setting up requirements for visible signatures.
    * <p>
-   * If a sign page is added by the method, the updated document will be returned.
+   * If a sign page is added by the method, the document is updated and the sign page document whose pages were
+   * inserted is returned. It must be released when the document has been saved.
    * </p>
    *
    * @param document the document to add sign page to.
    * @param signPagePreferences the sign page preferences
    * @param configuration the configuration
    * @param result the result object that will be updated to reflect the updates to the document
-   * @return the updated document, or {@code null} if no sign page was added
+   * @return the inserted sign page, or {@code null} if no sign page was added
    * @throws SignServiceIntegrationException for errors
    */
-  private PDDocument processSignPageAndVisibleSignature(@Nonnull final PDDocument document,
+  private InsertedSignPage processSignPageAndVisibleSignature(@Nonnull final PDDocument document,
       @Nonnull final PdfSignaturePagePreferences signPagePreferences,
       @Nonnull final IntegrationServiceConfiguration configuration,
       @Nonnull final PreparedPdfDocument result) throws SignServiceIntegrationException {
@@ -241,7 +314,7 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
         return null; // No sign page added ...
       }
     }
-    PDDocument updatedDocument = null;
+    InsertedSignPage insertedSignPage = null;
 
     // OK, find out whether we should add a sign page (signatureCount == 0) or whether we
     // should add the signature image to an already existing page.
@@ -250,6 +323,8 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
     // The page number (1-based) where the signature page is inserted.
     //
     final int signPagePageNumber;
+    final SignPageTemplateCache.SignPageTemplate signPageTemplate =
+        this.signPageTemplateCache.getTemplate(configuration.getPolicy(), signPagePreferences.getSignaturePage());
     if (signatureCount == 0) {
       log.debug("Adding PDF signature page to document ...");
       final boolean enforcePdfaConsistency = Optional.ofNullable(configuration.getPdfPrepareSettings())
@@ -257,8 +332,8 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
           .isEnforcePdfaConsistency();
 
       final AddPageResult updateResult = this.addSignaturePage(document, signPagePreferences.getSignaturePage(),
-          signPagePreferences.getInsertPageAt(), enforcePdfaConsistency);
-      updatedDocument = updateResult.document;
+          signPageTemplate, signPagePreferences.getInsertPageAt(), enforcePdfaConsistency);
+      insertedSignPage = new InsertedSignPage(signPageTemplate, updateResult.signPageDocument);
       signPagePageNumber = updateResult.position;
       log.debug("PDF signature page was inserted at page number {}", signPagePageNumber);
 
@@ -272,7 +347,7 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
     else {
       log.debug("PDF document already contains signatures");
       signPagePageNumber = this.getSignaturePagePosition(document, signPagePreferences.getSignaturePage(),
-          signPagePreferences.getInsertPageAt(), signPagePreferences.getExistingSignaturePageNumber());
+          signPageTemplate, signPagePreferences.getInsertPageAt(), signPagePreferences.getExistingSignaturePageNumber());
       log.debug("PDF signature page is located at page number {}", signPagePageNumber);
     }
 
@@ -298,19 +373,37 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
     //
     result.setVisiblePdfSignatureRequirement(visiblePdfSignatureRequirement);
 
-    return updatedDocument;
+    return insertedSignPage;
+  }
+
+  /**
+   * Gets the original bytes of the document. A file or stream source has been spooled to a private file before it
+   * was parsed (see {@link #spool(DocumentSource)}), so the bytes are the ones that were parsed.
+   *
+   * @param source the document source
+   * @return the document bytes
+   * @throws DocumentProcessingException if the document can not be read
+   */
+  private byte[] getOriginalBytes(final DocumentSource source) throws DocumentProcessingException {
+    try {
+      return source.toByteArray();
+    }
+    catch (final IOException e) {
+      throw new DocumentProcessingException(new ErrorCode.Code("decode"), "Failed to read PDF document", e);
+    }
   }
 
   /**
    * Validates the input supplied to
-   * {@link #preparePdfDocument(byte[], PdfSignaturePagePreferences, IntegrationServiceConfiguration, Boolean, String)}
+   * {@link #preparePdfDocumentFromSource(DocumentSource, PdfSignaturePagePreferences, IntegrationServiceConfiguration,
+   * Boolean, String)}
    *
    * @param pdfDocument the PDF document
    * @param signaturePagePreferences the signature page preferences
    * @param policyConfiguration the policy configuration
    * @throws InputValidationException for validation errors
    */
-  private void validateInput(final byte[] pdfDocument,
+  private void validateInput(final DocumentSource pdfDocument,
       final PdfSignaturePagePreferences signaturePagePreferences,
       final IntegrationServiceConfiguration policyConfiguration)
       throws InputValidationException {
@@ -368,11 +461,28 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
   /**
    * Result record for {@code addSignaturePage}.
    *
-   * @param document the updated document
+   * @param signPageDocument the sign page document whose pages were inserted (borrowed from the template)
    * @param position the 1-based page number where the sign page is located in the updated document
    * @param pdfAWarning whether PDF/A inconsistency was detected
    */
-  private record AddPageResult(PDDocument document, Integer position, boolean pdfAWarning) {
+  private record AddPageResult(PDDocument signPageDocument, Integer position, boolean pdfAWarning) {
+  }
+
+  /**
+   * A sign page document whose pages have been inserted into the document being prepared. The inserted pages refer to
+   * resources of the sign page document, so it may not be returned to its template until the document has been saved.
+   *
+   * @param template the sign page template
+   * @param signPageDocument the borrowed sign page document
+   */
+  private record InsertedSignPage(SignPageTemplateCache.SignPageTemplate template, PDDocument signPageDocument) {
+
+    /**
+     * Returns the sign page document to its template.
+     */
+    void release() {
+      this.template.release(this.signPageDocument);
+    }
   }
 
   /**
@@ -380,18 +490,21 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
    *
    * @param document the document to update
    * @param signPage the sign page to add
+   * @param signPageTemplate the parsed sign page
    * @param insertPageAt the (one-based) directive where the sign page should be inserted
    * @param enforcePdfaConsistency whether to enforce PDF/A consistency between the document and the sign page
-   * @return an AddPageResult
+   * @return an AddPageResult (the caller must release the borrowed sign page document)
    * @throws SignServiceIntegrationException for processing errors
    * @throws PdfAConsistencyCheckException for PDF/A consistency errors
    */
   private AddPageResult addSignaturePage(@Nonnull final PDDocument document,
-      @Nonnull final PdfSignaturePage signPage, @Nonnull final Integer insertPageAt,
+      @Nonnull final PdfSignaturePage signPage, @Nonnull final SignPageTemplateCache.SignPageTemplate signPageTemplate,
+      @Nonnull final Integer insertPageAt,
       final boolean enforcePdfaConsistency)
       throws SignServiceIntegrationException, PdfAConsistencyCheckException {
 
-    final PDDocument signPageDocument = PDDocumentUtils.load(signPage.getContents());
+    final PDDocument signPageDocument = signPageTemplate.borrow();
+    boolean inserted = false;
     try {
       final int noPages = document.getNumberOfPages();
       final int newPagePos = insertPageAt == null || insertPageAt == 0 ? noPages + 1 : insertPageAt;
@@ -406,22 +519,25 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
         }
       }
 
-      final PDDocument updatedDocument = PDDocumentUtils.insertDocument(document, signPageDocument, newPagePos);
+      PDDocumentUtils.insertDocument(document, signPageDocument, newPagePos);
+      inserted = true;
 
       if (signPage.getImagePlacementConfiguration().getPage() == null
           || signPage.getImagePlacementConfiguration().getPage() == 1) {
-        return new AddPageResult(updatedDocument, newPagePos, pdfAWarning);
+        return new AddPageResult(signPageDocument, newPagePos, pdfAWarning);
       }
       else if (signPage.getImagePlacementConfiguration().getPage() == 0) {
-        return new AddPageResult(updatedDocument, newPagePos + signPageDocument.getNumberOfPages() - 1, pdfAWarning);
+        return new AddPageResult(signPageDocument, newPagePos + signPageTemplate.getNumberOfPages() - 1, pdfAWarning);
       }
       else {
-        return new AddPageResult(updatedDocument, newPagePos + signPage.getImagePlacementConfiguration().getPage() - 1,
-            pdfAWarning);
+        return new AddPageResult(signPageDocument,
+            newPagePos + signPage.getImagePlacementConfiguration().getPage() - 1, pdfAWarning);
       }
     }
     finally {
-      PDDocumentUtils.close(signPageDocument);
+      if (!inserted) {
+        signPageTemplate.release(signPageDocument);
+      }
     }
   }
 
@@ -431,13 +547,15 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
    *
    * @param document the document
    * @param signPage the sign page parameters
+   * @param signPageTemplate the parsed sign page
    * @param insertPageAt the original configuration where the sign page should be inserted
    * @param existingSignaturePageNumber a given number where the sign page is placed (may be null)
    * @return the page number
    * @throws SignServiceIntegrationException if the page doesn't contain a sign page
    */
   private int getSignaturePagePosition(final PDDocument document, final PdfSignaturePage signPage,
-      final Integer insertPageAt, final Integer existingSignaturePageNumber) throws SignServiceIntegrationException {
+      final SignPageTemplateCache.SignPageTemplate signPageTemplate, final Integer insertPageAt,
+      final Integer existingSignaturePageNumber) throws SignServiceIntegrationException {
 
     // The total number of pages of the document that contains the signature page.
     final int noTotalPages = document.getNumberOfPages();
@@ -453,36 +571,29 @@ public class DefaultPdfSignaturePagePreparator implements PdfSignaturePagePrepar
       return existingSignaturePageNumber;
     }
 
-    final PDDocument signPageDocument = PDDocumentUtils.load(signPage.getContents());
-    try {
-      // Number of pages of document before the sign page(s) was added.
-      final int docNoPages = noTotalPages - signPageDocument.getNumberOfPages();
+    // Number of pages of document before the sign page(s) was added.
+    final int docNoPages = noTotalPages - signPageTemplate.getNumberOfPages();
 
-      if (docNoPages <= 0) {
-        // This must mean that the document has signatures but no previous sign page.
-        final String msg = "Document has signature(s), but no previous sign page - cannot process";
-        log.error("{}", msg);
-        throw new DocumentProcessingException(new ErrorCode.Code("pdf"), msg);
-      }
+    if (docNoPages <= 0) {
+      // This must mean that the document has signatures but no previous sign page.
+      final String msg = "Document has signature(s), but no previous sign page - cannot process";
+      log.error("{}", msg);
+      throw new DocumentProcessingException(new ErrorCode.Code("pdf"), msg);
+    }
 
-      // First page of sign page document is located at document page:
-      final int firstSignPageDocPage = insertPageAt == null || insertPageAt == 0 ? docNoPages + 1 : insertPageAt;
+    // First page of sign page document is located at document page:
+    final int firstSignPageDocPage = insertPageAt == null || insertPageAt == 0 ? docNoPages + 1 : insertPageAt;
 
-      if (signPage.getImagePlacementConfiguration().getPage() == null
-          || signPage.getImagePlacementConfiguration().getPage() == 1) {
-        return firstSignPageDocPage;
-      }
-      else if (signPage.getImagePlacementConfiguration().getPage() == 0) {
-        return firstSignPageDocPage + signPageDocument.getNumberOfPages() - 1;
-      }
-      else {
-        return firstSignPageDocPage + signPage.getImagePlacementConfiguration().getPage() - 1;
-      }
+    if (signPage.getImagePlacementConfiguration().getPage() == null
+        || signPage.getImagePlacementConfiguration().getPage() == 1) {
+      return firstSignPageDocPage;
     }
-    finally {
-      PDDocumentUtils.close(signPageDocument);
+    else if (signPage.getImagePlacementConfiguration().getPage() == 0) {
+      return firstSignPageDocPage + signPageTemplate.getNumberOfPages() - 1;
+    }
+    else {
+      return firstSignPageDocPage + signPage.getImagePlacementConfiguration().getPage() - 1;
     }
-
   }
 
   /**
@@ -33,5 +33,18 @@ public enum PDFExtensionParams {
   visibleSignImage,
 
   /** ADeS requirement string. */
-  adesRequirement
+  adesRequirement,
+
+  /**
+   * The incremental update prepared in the pre-sign process (see
+   * {@link se.idsec.signservice.integration.document.pdf.utils.PreparedPdfRevision PreparedPdfRevision}). Holds the
+   * Base64-encoded bytes, or, if the revision is kept in a document cache, a reference to the cached revision.
+   */
+  preparedRevision,
+
+  /** The signature ByteRange of the prepared revision. */
+  preparedRevisionByteRange,
+
+  /** The Base64-encoded digest binding the prepared revision to the original document. */
+  preparedRevisionDigest
 }
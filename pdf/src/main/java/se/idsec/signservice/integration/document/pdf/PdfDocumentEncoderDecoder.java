@@ -41,6 +41,14 @@ public class PdfDocumentEncoderDecoder implements DocumentDecoder<byte[]>, Docum
     }
   }
 
+  /**
+   * Returns the supplied bytes, since the document object for PDF documents is the raw bytes.
+   */
+  @Override
+  public byte[] decodeDocument(final byte[] content) throws DocumentProcessingException {
+    return content;
+  }
+
   /** {@inheritDoc} */
   @Override
   public String encodeDocument(final byte[] document) throws DocumentProcessingException {
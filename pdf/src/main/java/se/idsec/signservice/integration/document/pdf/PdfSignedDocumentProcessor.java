@@ -18,24 +18,27 @@ package se.idsec.signservice.integration.document.pdf;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.cms.CMSException;
 import se.idsec.signservice.integration.SignResponseProcessingParameters;
+import se.idsec.signservice.integration.core.DocumentCache;
 import se.idsec.signservice.integration.core.error.ErrorCode;
+import se.idsec.signservice.integration.core.error.NoAccessException;
 import se.idsec.signservice.integration.core.error.SignServiceIntegrationException;
 import se.idsec.signservice.integration.core.impl.CorrelationID;
 import se.idsec.signservice.integration.document.CompiledSignedDocument;
 import se.idsec.signservice.integration.document.DocumentDecoder;
 import se.idsec.signservice.integration.document.DocumentEncoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.DocumentType;
 import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.document.impl.AbstractSignedDocumentProcessor;
 import se.idsec.signservice.integration.document.impl.DefaultCompiledSignedDocument;
 import se.idsec.signservice.integration.document.pdf.utils.PDDocumentUtils;
 import se.idsec.signservice.integration.document.pdf.utils.PDFIntegrationUtils;
+import se.idsec.signservice.integration.document.pdf.utils.PreparedPdfRevision;
 import se.idsec.signservice.integration.document.pdf.visiblesig.VisibleSignatureImageSerializer;
 import se.idsec.signservice.integration.dss.SignRequestWrapper;
 import se.idsec.signservice.integration.process.impl.SignResponseProcessingException;
@@ -72,12 +75,22 @@ public class PdfSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
   /** The document decoder. */
   private static final PdfDocumentEncoderDecoder documentEncoderDecoder = new PdfDocumentEncoderDecoder();
 
+  /** Optional cache holding PDF revisions retained in the pre-sign phase. */
+  private DocumentCache preparedRevisionCache;
+
   /** {@inheritDoc} */
   @Override
   public boolean supports(@Nonnull final SignTaskData signData) {
     return "PDF".equalsIgnoreCase(signData.getSigType());
   }
 
+  /** {@inheritDoc} */
+  @Nonnull
+  @Override
+  public List<String> getSupportedSigTypes() {
+    return List.of("PDF");
+  }
+
   /** {@inheritDoc} */
   @Override
   public CompiledSignedDocument<byte[], PAdESData> buildSignedDocument(
@@ -90,10 +103,6 @@ public class PdfSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
     log.debug("{}: Compiling signed PDF document for Sign task '{}' ... [request-id='{}']",
         CorrelationID.id(), signedData.getSignTaskId(), signRequest.getRequestID());
 
-    // First decode the original input document ...
-    //
-    final byte[] document = this.getDocumentDecoder().decodeDocument(tbsDocument.getContent());
-
     // Get the state parameters that we stored as extensions in the TbsDocument during the
     // pre-sign phase.
     //
@@ -149,28 +158,57 @@ public class PdfSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
     //
     final AdesProfileType adesType = PDFIntegrationUtils.getPadesRequirement(tbsDocument.getAdesRequirement());
 
-    // Now, put together the PDF signature that we prepared in the pre-sign phase.
+    // Now, put together the PDF signature that we prepared in the pre-sign phase. If the prepared revision was
+    // retained, we patch the signature into it. Otherwise, we sign the original document once again ...
     //
-    PDDocument pdfDocument = null;
+    final PreparedPdfRevision preparedRevision = this.getPreparedRevision(tbsDocument, signedData, signRequest);
     try {
-      pdfDocument = Loader.loadPDF(document);
+      byte[] signedDocument = null;
+      byte[] cmsSignedAttributes = null;
 
-      final PDFBoxSignatureInterface replaceSignatureInterface = new ReplacingSignatureInterface(
-          cmsSignedData,
-          signedData.getToBeSignedBytes(),
-          signedData.getBase64Signature().getValue(),
-          signerCertificateChain,
-          adesType);
+      if (preparedRevision != null) {
+        final byte[] originalDocument = Base64.getDecoder().decode(tbsDocument.getContent());
+        if (!preparedRevision.matches(originalDocument)) {
+          final String msg = String.format(
+              "Failed to process sign response (%s) - Prepared revision does not match document [request-id='%s']",
+              signedData.getSignTaskId(), signRequest.getRequestID());
+          log.error("{}: {}", CorrelationID.id(), msg);
+          throw new SignResponseProcessingException(new ErrorCode.Code("state-error"), msg);
+        }
+        final byte[] updatedCmsSignedData = PDFBoxSignatureUtils.updatePdfPKCS7(cmsSignedData,
+            signedData.getToBeSignedBytes(), signedData.getBase64Signature().getValue(), signerCertificateChain);
+
+        if (updatedCmsSignedData.length <= preparedRevision.getSignatureCapacity()) {
+          try {
+            signedDocument = preparedRevision.complete(originalDocument, updatedCmsSignedData);
+          }
+          catch (final SignatureException e) {
+            final String msg = String.format(
+                "Failed to process sign response (%s) - Prepared revision does not match signature - %s [request-id='%s']",
+                signedData.getSignTaskId(), e.getMessage(), signRequest.getRequestID());
+            log.error("{}: {}", CorrelationID.id(), msg);
+            throw new SignResponseProcessingException(new ErrorCode.Code("state-error"), msg, e);
+          }
+          cmsSignedAttributes = PDFBoxSignatureUtils.getCmsSignedAttributes(updatedCmsSignedData);
+        }
+        else {
+          log.info("{}: Signature for task '{}' does not fit into prepared revision, signing document again",
+              CorrelationID.id(), signedData.getSignTaskId());
+        }
+      }
 
-      final PDFSigningProcessor.Result signResult = PDFSigningProcessor.signPdfDocument(
-          pdfDocument, replaceSignatureInterface, signTimeAndID, visibleSignatureImage);
+      if (signedDocument == null) {
+        final PDFSigningProcessor.Result signResult = this.signDocument(tbsDocument, cmsSignedData, signedData,
+            signerCertificateChain, adesType, signTimeAndID, visibleSignatureImage);
+        signedDocument = signResult.getDocument();
+        cmsSignedAttributes = signResult.getCmsSignedAttributes();
+      }
 
       // Check if we have PAdES data ...
       //
       PAdESData padesData = null;
       final PDFBoxSignatureUtils.SignedCertRef signedCertRefAttribute =
-          PDFBoxSignatureUtils.getSignedCertRefAttribute(signResult
-              .getCmsSignedAttributes());
+          PDFBoxSignatureUtils.getSignedCertRefAttribute(cmsSignedAttributes);
       if (signedCertRefAttribute != null) {
         final SignatureAlgorithm algorithmProperties = PDFAlgorithmRegistry.getAlgorithmProperties(
             signedData.getBase64Signature().getType());
@@ -193,20 +231,108 @@ public class PdfSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
           CorrelationID.id(), signedData.getSignTaskId(), signRequest.getRequestID());
 
       return new DefaultCompiledSignedDocument<>(
-          signedData.getSignTaskId(), signResult.getDocument(), DocumentType.PDF.getMimeType(),
+          signedData.getSignTaskId(), signedDocument, DocumentType.PDF.getMimeType(),
           this.getDocumentEncoder(), padesData);
     }
-    catch (final IOException | NoSuchAlgorithmException | SignatureException e) {
+    catch (final IOException | NoSuchAlgorithmException | SignatureException | CMSException e) {
       final String msg =
           String.format("Failed to build signed PDF document - %s [request-id='%s']", e.getMessage(), signRequest
               .getRequestID());
       log.error("{}: {}", CorrelationID.id(), msg);
       throw new SignResponseProcessingException(new ErrorCode.Code("signature-processing"), msg, e);
     }
+
+  }
+
+  /**
+   * Completes the signature by loading the original document and signing it once again, using a
+   * {@link ReplacingSignatureInterface} that replaces the pre-sign signature with the one from the sign response.
+   *
+   * @param tbsDocument the TBS document
+   * @param cmsSignedData the CMS SignedData from the pre-sign phase
+   * @param signedData the sign task data from the sign response
+   * @param signerCertificateChain the signer certificate chain
+   * @param adesType the AdES type
+   * @param signTimeAndID the signing time and ID from the pre-sign phase
+   * @param visibleSignatureImage the visible signature image (may be null)
+   * @return the signing result
+   * @throws IOException for errors loading or saving the document
+   * @throws NoSuchAlgorithmException for unsupported algorithms
+   * @throws SignatureException for signature errors
+   */
+  private PDFSigningProcessor.Result signDocument(final TbsDocument tbsDocument, final byte[] cmsSignedData,
+      final SignTaskData signedData, final List<X509Certificate> signerCertificateChain,
+      final AdesProfileType adesType, final Long signTimeAndID, final VisibleSignatureImage visibleSignatureImage)
+      throws IOException, NoSuchAlgorithmException, SignatureException {
+
+    PDDocument pdfDocument = null;
+    try {
+      // Load the original input document. The Base64 encoded content is decoded while loaded ...
+      //
+      pdfDocument = PDDocumentUtils.loadPDF(DocumentSource.ofBase64(tbsDocument.getContent()));
+
+      final PDFBoxSignatureInterface replaceSignatureInterface = new ReplacingSignatureInterface(
+          cmsSignedData,
+          signedData.getToBeSignedBytes(),
+          signedData.getBase64Signature().getValue(),
+          signerCertificateChain,
+          adesType);
+
+      return PDFSigningProcessor.signPdfDocument(
+          pdfDocument, replaceSignatureInterface, signTimeAndID, visibleSignatureImage);
+    }
     finally {
       PDDocumentUtils.close(pdfDocument);
     }
+  }
+
+  /**
+   * Gets the PDF revision that was retained in the pre-sign phase (see
+   * {@link PdfTbsDocumentProcessor#setRetainPreparedRevision(boolean)}).
+   *
+   * @param tbsDocument the TBS document
+   * @param signedData the sign task data from the sign response
+   * @param signRequest the sign request
+   * @return the prepared revision, or null if no revision was retained (or if it is no longer cached)
+   * @throws SignResponseProcessingException for invalid state
+   */
+  private PreparedPdfRevision getPreparedRevision(final TbsDocument tbsDocument, final SignTaskData signedData,
+      final SignRequestWrapper signRequest) throws SignResponseProcessingException {
 
+    final String encodedRevision = getTbsDocumentExtension(tbsDocument, PDFExtensionParams.preparedRevision.name());
+    if (encodedRevision == null) {
+      return null;
+    }
+    try {
+      final byte[] increment;
+      if (encodedRevision.startsWith(PreparedPdfRevision.CACHE_REFERENCE_PREFIX)) {
+        if (this.preparedRevisionCache == null) {
+          log.warn("{}: Prepared revision for task '{}' is cached, but no cache is assigned",
+              CorrelationID.id(), signedData.getSignTaskId());
+          return null;
+        }
+        increment = this.preparedRevisionCache.getBytes(
+            encodedRevision.substring(PreparedPdfRevision.CACHE_REFERENCE_PREFIX.length()), true, null);
+        if (increment == null) {
+          log.info("{}: Prepared revision for task '{}' is no longer cached, signing document again",
+              CorrelationID.id(), signedData.getSignTaskId());
+          return null;
+        }
+      }
+      else {
+        increment = Base64.getDecoder().decode(encodedRevision);
+      }
+      return PreparedPdfRevision.restore(increment,
+          getTbsDocumentExtension(tbsDocument, PDFExtensionParams.preparedRevisionByteRange.name()),
+          getTbsDocumentExtension(tbsDocument, PDFExtensionParams.preparedRevisionDigest.name()));
+    }
+    catch (final IOException | IllegalArgumentException | NoAccessException e) {
+      final String msg = String.format(
+          "Failed to process sign response (%s) - Invalid prepared revision in state - %s [request-id='%s']",
+          signedData.getSignTaskId(), e.getMessage(), signRequest.getRequestID());
+      log.error("{}: {}", CorrelationID.id(), msg, e);
+      throw new SignResponseProcessingException(new ErrorCode.Code("state-error"), msg, e);
+    }
   }
 
   /** {@inheritDoc} */
@@ -275,6 +401,16 @@ public class PdfSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
     return tbsDocument.getExtension().get(extName);
   }
 
+  /**
+   * Assigns the cache holding PDF revisions retained in the pre-sign phase. This must be the same cache as assigned
+   * using {@link PdfTbsDocumentProcessor#setPreparedRevisionCache(DocumentCache)}.
+   *
+   * @param preparedRevisionCache the cache
+   */
+  public void setPreparedRevisionCache(final DocumentCache preparedRevisionCache) {
+    this.preparedRevisionCache = preparedRevisionCache;
+  }
+
   /** {@inheritDoc} */
   @Override
   public DocumentDecoder<byte[]> getDocumentDecoder() {
@@ -30,6 +30,7 @@ import se.idsec.signservice.integration.core.validation.ValidationResult;
 import se.idsec.signservice.integration.document.DocumentDecoder;
 import se.idsec.signservice.integration.document.DocumentEncoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.DocumentType;
 import se.idsec.signservice.integration.document.ProcessedTbsDocument;
 import se.idsec.signservice.integration.document.TbsDocument;
@@ -40,6 +41,7 @@ import se.idsec.signservice.integration.document.impl.TbsCalculationResult;
 import se.idsec.signservice.integration.document.impl.VisiblePdfSignatureRequirementValidator;
 import se.idsec.signservice.integration.document.pdf.utils.PDDocumentUtils;
 import se.idsec.signservice.integration.document.pdf.utils.PDFIntegrationUtils;
+import se.idsec.signservice.integration.document.pdf.utils.PreparedPdfRevision;
 import se.idsec.signservice.integration.document.pdf.visiblesig.VisiblePdfSignatureRequirementException;
 import se.idsec.signservice.integration.document.pdf.visiblesig.VisibleSignatureImageFactory;
 import se.idsec.signservice.integration.document.pdf.visiblesig.VisibleSignatureImageSerializer;
@@ -53,6 +55,7 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * PDF TBS-document processor.
@@ -73,6 +76,15 @@ public class PdfTbsDocumentProcessor extends AbstractTbsDocumentProcessor<byte[]
   /** Document decoder. */
   protected final static PdfDocumentEncoderDecoder documentEncoderDecoder = new PdfDocumentEncoderDecoder();
 
+  /**
+   * Whether the PDF revision prepared in the pre-sign process should be retained, so that the signature can be
+   * completed by patching the signature into the revision (see {@link PreparedPdfRevision}).
+   */
+  private boolean retainPreparedRevision = false;
+
+  /** Optional cache for retained revisions. If not assigned, the revisions are stored in the signature state. */
+  private DocumentCache preparedRevisionCache;
+
   /** {@inheritDoc} */
   @Override
   public boolean supports(@Nonnull final TbsDocument document) {
@@ -84,6 +96,13 @@ public class PdfTbsDocumentProcessor extends AbstractTbsDocumentProcessor<byte[]
     }
   }
 
+  /** {@inheritDoc} */
+  @Nonnull
+  @Override
+  public List<String> getSupportedMimeTypes() {
+    return List.of(DocumentType.PDF.getMimeType());
+  }
+
   /**
    * Handles settings for PDF visible signatures.
    */
@@ -211,6 +230,11 @@ public class PdfTbsDocumentProcessor extends AbstractTbsDocumentProcessor<byte[]
       tbsDocument.addExtensionValue(PDFExtensionParams.cmsSignedData.name(),
           Base64.getEncoder().encodeToString(pdfSignerResult.getSignedData()));
 
+      if (this.retainPreparedRevision) {
+        this.retainPreparedRevision(
+            tbsDocument, document.getDocumentObject(byte[].class), pdfSignerResult.getSignedDocument());
+      }
+
       return tbsResult;
     }
     catch (final NoSuchAlgorithmException | IllegalArgumentException | IOException | SignatureException e) {
@@ -222,16 +246,57 @@ public class PdfTbsDocumentProcessor extends AbstractTbsDocumentProcessor<byte[]
     }
   }
 
+  /**
+   * Stores the incremental update that was prepared in the pre-sign process, along with its signature ByteRange and
+   * digest, as extensions in the TBS document. If a {@code preparedRevisionCache} has been assigned, the update is
+   * stored in the cache and the extension only holds a reference.
+   * <p>
+   * Failure to retain the revision is not an error. The signature will then be completed by re-signing the document.
+   * </p>
+   *
+   * @param tbsDocument the TBS document
+   * @param originalDocument the original document
+   * @param preparedDocument the pre-signed document
+   */
+  private void retainPreparedRevision(final TbsDocument tbsDocument, final byte[] originalDocument,
+      final byte[] preparedDocument) {
+    try {
+      final PreparedPdfRevision revision = PreparedPdfRevision.create(originalDocument, preparedDocument);
+      if (this.preparedRevisionCache != null) {
+        // The revision is looked up using its digest when the sign response is processed, and since the caller
+        // isn't known at that point, no owner is registered ...
+        //
+        this.preparedRevisionCache.putBytes(revision.getId(), revision.getIncrement(), null);
+        tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevision.name(),
+            PreparedPdfRevision.CACHE_REFERENCE_PREFIX + revision.getId());
+      }
+      else {
+        tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevision.name(),
+            Base64.getEncoder().encodeToString(revision.getIncrement()));
+      }
+      tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevisionByteRange.name(),
+          revision.getEncodedByteRange());
+      tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevisionDigest.name(), revision.getEncodedDigest());
+
+      log.debug("{}: Retained prepared revision for PDF document '{}' ({} bytes)",
+          CorrelationID.id(), tbsDocument.getId(), revision.getIncrement().length);
+    }
+    catch (final IOException e) {
+      log.warn("{}: Failed to retain prepared revision for PDF document '{}' - {}",
+          CorrelationID.id(), tbsDocument.getId(), e.getMessage());
+    }
+  }
+
   /**
    * Overrides the default implementation and ensures that the bytes that makes up the PDF document really are OK, that
    * is, we ensure that they can be loaded into a {@link PDDocument}.
    */
   @Override
-  protected byte[] validateDocumentContent(final TbsDocument document, final IntegrationServiceConfiguration config,
-      final String fieldName)
+  protected byte[] validateDocumentContent(final TbsDocument document, final DocumentSource source,
+      final IntegrationServiceConfiguration config, final String fieldName)
       throws InputValidationException {
 
-    final byte[] pdfDocumentBytes = super.validateDocumentContent(document, config, fieldName);
+    final byte[] pdfDocumentBytes = super.validateDocumentContent(document, source, config, fieldName);
     PDDocument pdfDocument = null;
     try {
       pdfDocument = PDDocumentUtils.load(pdfDocumentBytes);
@@ -260,6 +325,31 @@ public class PdfTbsDocumentProcessor extends AbstractTbsDocumentProcessor<byte[]
     return documentEncoderDecoder;
   }
 
+  /**
+   * Tells whether the PDF revision prepared in the pre-sign process should be retained, so that the signature can be
+   * completed by patching the signature value into the revision instead of signing the document once more. The
+   * default is {@code false}.
+   * <p>
+   * Note that the revision is stored in the signature state, unless a {@code preparedRevisionCache} is assigned, and
+   * this will increase the size of stateless states.
+   * </p>
+   *
+   * @param retainPreparedRevision whether to retain prepared revisions
+   */
+  public void setRetainPreparedRevision(final boolean retainPreparedRevision) {
+    this.retainPreparedRevision = retainPreparedRevision;
+  }
+
+  /**
+   * Assigns a cache for retained PDF revisions (see {@link #setRetainPreparedRevision(boolean)}). The same cache must
+   * be assigned to the {@link PdfSignedDocumentProcessor}.
+   *
+   * @param preparedRevisionCache the cache
+   */
+  public void setPreparedRevisionCache(final DocumentCache preparedRevisionCache) {
+    this.preparedRevisionCache = preparedRevisionCache;
+  }
+
   /** {@inheritDoc} */
   @Override
   protected EtsiAdesRequirementValidator getEtsiAdesRequirementValidator() {
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.pdf.signpage.impl;
+
+import jakarta.annotation.Nonnull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import se.idsec.signservice.integration.core.impl.CorrelationID;
+import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePage;
+import se.idsec.signservice.integration.document.pdf.utils.PDDocumentUtils;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of parsed sign page templates, keyed by policy and sign page ID.
+ * <p>
+ * A sign page is configured per policy and is the same for every request, so there is no need to parse it each time
+ * it is added to a document. For each sign page, the cache holds its number of pages (which is all that is needed to
+ * locate an already added sign page) and a small pool of parsed {@link PDDocument} objects that are ready for their
+ * pages to be imported into a document.
+ * </p>
+ * <p>
+ * A {@link PDDocument} is not thread safe, and a document into which sign page pages have been imported refers to
+ * objects of the sign page document until it has been saved. Therefore, a parsed sign page is borrowed for the
+ * duration of the insertion (see {@link SignPageTemplate#borrow()}) and then returned to the pool (see
+ * {@link SignPageTemplate#release(PDDocument)}).
+ * </p>
+ * <p>
+ * If the policy configuration is changed, so that the contents of a sign page changes, the cached template is replaced
+ * the next time it is requested. The cache may also be explicitly invalidated using {@link #invalidate(String)} or
+ * {@link #clear()}.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Slf4j
+public class SignPageTemplateCache {
+
+  /** The default maximum number of parsed documents that are pooled per sign page. */
+  public static final int DEFAULT_MAX_POOLED_DOCUMENTS = 8;
+
+  /** The templates. */
+  private final ConcurrentMap<String, SignPageTemplate> templates = new ConcurrentHashMap<>();
+
+  /** The maximum number of parsed documents that are pooled per sign page. */
+  private int maxPooledDocuments = DEFAULT_MAX_POOLED_DOCUMENTS;
+
+  /**
+   * Gets the template for the supplied sign page. If the sign page has not been cached, or if its contents has changed
+   * since it was cached, it is parsed.
+   *
+   * @param policy the policy
+   * @param signPage the sign page
+   * @return the sign page template
+   * @throws DocumentProcessingException if the sign page can not be parsed
+   */
+  @Nonnull
+  public SignPageTemplate getTemplate(@Nonnull final String policy, @Nonnull final PdfSignaturePage signPage)
+      throws DocumentProcessingException {
+
+    final String key = policy + "/" + signPage.getId();
+    final byte[] contents = signPage.getContents();
+    final SignPageTemplate template = this.templates.get(key);
+    if (template != null && template.matches(contents)) {
+      return template;
+    }
+
+    // Parse the sign page outside of the map lock. If another thread concurrently parses the same page, one of the
+    // results wins, which is harmless ...
+    //
+    final SignPageTemplate newTemplate = new SignPageTemplate(contents, this.maxPooledDocuments);
+    log.debug("{}: Parsed sign page '{}' for policy '{}' ({} pages)", CorrelationID.id(), signPage.getId(), policy,
+        newTemplate.getNumberOfPages());
+
+    final SignPageTemplate previous = this.templates.put(key, newTemplate);
+    if (previous != null) {
+      log.info("{}: Sign page '{}' for policy '{}' has been updated - replacing cached template",
+          CorrelationID.id(), signPage.getId(), policy);
+      previous.invalidate();
+    }
+    return newTemplate;
+  }
+
+  /**
+   * Removes all cached templates for the given policy.
+   *
+   * @param policy the policy
+   */
+  public void invalidate(@Nonnull final String policy) {
+    final String prefix = policy + "/";
+    this.templates.entrySet().removeIf(e -> {
+      if (e.getKey().startsWith(prefix)) {
+        e.getValue().invalidate();
+        return true;
+      }
+      return false;
+    });
+  }
+
+  /**
+   * Removes all cached templates.
+   */
+  public void clear() {
+    this.templates.values().forEach(SignPageTemplate::invalidate);
+    this.templates.clear();
+  }
+
+  /**
+   * Gets the number of cached templates.
+   *
+   * @return the number of templates
+   */
+  public int size() {
+    return this.templates.size();
+  }
+
+  /**
+   * Assigns the maximum number of parsed documents that are pooled per sign page. This should correspond to the
+   * expected number of concurrent requests adding a sign page. The default is {@value #DEFAULT_MAX_POOLED_DOCUMENTS}.
+   *
+   * @param maxPooledDocuments the maximum number of pooled documents
+   */
+  public void setMaxPooledDocuments(final int maxPooledDocuments) {
+    this.maxPooledDocuments = maxPooledDocuments;
+  }
+
+  /**
+   * A parsed sign page.
+   */
+  public static class SignPageTemplate {
+
+    /** The sign page contents. */
+    private final byte[] contents;
+
+    /** The number of pages of the sign page. */
+    private final int numberOfPages;
+
+    /** The maximum number of pooled documents. */
+    private final int maxPooledDocuments;
+
+    /** Parsed documents that are not in use. */
+    private final Queue<PDDocument> pool = new ConcurrentLinkedQueue<>();
+
+    /** The number of documents in the pool. */
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /** Whether the template has been invalidated. */
+    private volatile boolean invalidated = false;
+
+    /**
+     * Constructor parsing the supplied sign page.
+     *
+     * @param contents the sign page contents
+     * @param maxPooledDocuments the maximum number of pooled documents
+     * @throws DocumentProcessingException if the sign page can not be parsed
+     */
+    SignPageTemplate(final byte[] contents, final int maxPooledDocuments) throws DocumentProcessingException {
+      this.contents = Objects.requireNonNull(contents, "Missing sign page contents");
+      this.maxPooledDocuments = maxPooledDocuments;
+      final PDDocument document = PDDocumentUtils.load(contents);
+      this.numberOfPages = document.getNumberOfPages();
+      this.release(document);
+    }
+
+    /**
+     * Gets the number of pages of the sign page.
+     *
+     * @return the number of pages
+     */
+    public int getNumberOfPages() {
+      return this.numberOfPages;
+    }
+
+    /**
+     * Borrows a parsed sign page document. The document must be returned using {@link #release(PDDocument)} when the
+     * document into which its pages are imported has been saved (or closed).
+     *
+     * @return a parsed sign page document
+     * @throws DocumentProcessingException if the sign page can not be parsed
+     */
+    @Nonnull
+    public PDDocument borrow() throws DocumentProcessingException {
+      final PDDocument document = this.pool.poll();
+      if (document != null) {
+        this.pooled.decrementAndGet();
+        return document;
+      }
+      return PDDocumentUtils.load(this.contents);
+    }
+
+    /**
+     * Returns a borrowed document to the pool. If the pool is full, or the template has been invalidated, the document
+     * is closed.
+     *
+     * @param document the document to return (may be null)
+     */
+    public void release(final PDDocument document) {
+      if (document == null) {
+        return;
+      }
+      if (!this.invalidated && this.pooled.incrementAndGet() <= this.maxPooledDocuments) {
+        this.pool.offer(document);
+        if (this.invalidated && this.pool.remove(document)) {
+          // Invalidated while we were adding ...
+          this.pooled.decrementAndGet();
+          PDDocumentUtils.close(document);
+        }
+      }
+      else {
+        if (!this.invalidated) {
+          this.pooled.decrementAndGet();
+        }
+        PDDocumentUtils.close(document);
+      }
+    }
+
+    /**
+     * Tells whether this template was created from the supplied contents.
+     *
+     * @param contents the sign page contents
+     * @return true if the contents matches and false otherwise
+     */
+    boolean matches(final byte[] contents) {
+      return this.contents == contents || Arrays.equals(this.contents, contents);
+    }
+
+    /**
+     * Invalidates the template and closes all pooled documents.
+     */
+    void invalidate() {
+      this.invalidated = true;
+      PDDocument document;
+      while ((document = this.pool.poll()) != null) {
+        PDDocumentUtils.close(document);
+      }
+    }
+
+  }
+
+}
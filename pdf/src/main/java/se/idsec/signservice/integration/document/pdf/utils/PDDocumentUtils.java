@@ -17,18 +17,24 @@ package se.idsec.signservice.integration.document.pdf.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
 import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageTree;
 import se.idsec.signservice.integration.core.error.ErrorCode;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.pdf.pdfa.BasicMetadataPDFAConformanceChecker;
 import se.idsec.signservice.integration.document.pdf.pdfa.PDFAConformanceChecker;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -43,10 +49,51 @@ public class PDDocumentUtils {
 
   public static final PDFAConformanceChecker pdfaChecker = new BasicMetadataPDFAConformanceChecker();
 
+  /** The memory policy for loaded documents. */
+  private static PdfMemoryPolicy memoryPolicy = new PdfMemoryPolicy();
+
+  /** The stream cache function corresponding to the memory policy. */
+  private static volatile RandomAccessStreamCache.StreamCacheCreateFunction streamCacheFunction =
+      memoryPolicy.createStreamCacheFunction();
+
+  /**
+   * Assigns the memory policy that is used for all documents loaded by the PDF document processors. The default is to
+   * keep everything on the heap.
+   *
+   * @param memoryPolicy the memory policy
+   * @throws IllegalArgumentException for invalid policy settings
+   */
+  public static synchronized void setMemoryPolicy(final PdfMemoryPolicy memoryPolicy) {
+    final PdfMemoryPolicy policy = memoryPolicy != null ? memoryPolicy : new PdfMemoryPolicy();
+    streamCacheFunction = policy.createStreamCacheFunction();
+    PDDocumentUtils.memoryPolicy = policy;
+    log.info("PDF memory policy: {}", policy);
+  }
+
+  /**
+   * Gets the memory policy that is used for loaded documents.
+   *
+   * @return the memory policy
+   */
+  public static synchronized PdfMemoryPolicy getMemoryPolicy() {
+    return memoryPolicy;
+  }
+
+  /**
+   * Gets the PDFBox stream cache function for the current memory policy. Code that loads documents directly using
+   * {@link Loader} should pass this function so that the memory policy is applied.
+   *
+   * @return the stream cache function
+   */
+  public static RandomAccessStreamCache.StreamCacheCreateFunction getStreamCacheFunction() {
+    return streamCacheFunction;
+  }
+
   /**
    * Loads a {@link PDDocument} given its byte contents.
    * <p>
-   * The returned object must later be closes (see {@link #close(PDDocument)}).
+   * The returned object must later be closes (see {@link #close(PDDocument)}). The document is loaded according to
+   * the current memory policy (see {@link #setMemoryPolicy(PdfMemoryPolicy)}).
    * </p>
    *
    * @param contents the PDF file contents
@@ -55,7 +102,7 @@ public class PDDocumentUtils {
    */
   public static PDDocument load(final byte[] contents) throws DocumentProcessingException {
     try {
-      return Loader.loadPDF(contents);
+      return Loader.loadPDF(contents, "", null, null, streamCacheFunction);
     }
     catch (final IOException e) {
       log.error("Failed to load PDF document", e);
@@ -63,6 +110,58 @@ public class PDDocumentUtils {
     }
   }
 
+  /**
+   * Loads a {@link PDDocument} from the supplied source.
+   * <p>
+   * The returned object must later be closes (see {@link #close(PDDocument)}). See {@link #loadPDF(DocumentSource)}.
+   * </p>
+   *
+   * @param source the PDF document source
+   * @return a loaded PDDocument object
+   * @throws DocumentProcessingException for loading errors
+   */
+  public static PDDocument load(final DocumentSource source) throws DocumentProcessingException {
+    try {
+      return loadPDF(source);
+    }
+    catch (final IOException | IllegalStateException e) {
+      log.error("Failed to load PDF document", e);
+      throw new DocumentProcessingException(new ErrorCode.Code("decode"), "Failed to load PDF object", e);
+    }
+  }
+
+  /**
+   * Loads a {@link PDDocument} from the supplied source according to the current memory policy (see
+   * {@link #setMemoryPolicy(PdfMemoryPolicy)}).
+   * <p>
+   * A document file is read by PDFBox directly from the file, and a buffer is read without being copied. Other sources
+   * are read (and Base64 decoded) into PDFBox's chunked buffer, i.e., never into one large array.
+   * </p>
+   *
+   * @param source the PDF document source
+   * @return a loaded PDDocument object
+   * @throws IOException for loading errors
+   */
+  public static PDDocument loadPDF(final DocumentSource source) throws IOException {
+    if (source.getPath() != null) {
+      return Loader.loadPDF(source.getPath().toFile(), "", null, null, streamCacheFunction);
+    }
+    if (source.getBytes() != null) {
+      return Loader.loadPDF(source.getBytes(), "", null, null, streamCacheFunction);
+    }
+    final ByteBuffer buffer = source.getBuffer();
+    final RandomAccessRead input;
+    if (buffer != null) {
+      input = new RandomAccessReadBuffer(buffer);
+    }
+    else {
+      try (final InputStream is = source.openStream()) {
+        input = new RandomAccessReadBuffer(is);
+      }
+    }
+    return Loader.loadPDF(input, "", null, null, streamCacheFunction);
+  }
+
   /**
    * Closes an open {@link PDDocument} object and releases its allocated resources.
    *
@@ -101,11 +200,16 @@ public class PDDocumentUtils {
   /**
    * Inserts the {@code insertDocument} in {@code document} at position {@code page} (1-based). This means that the
    * given page number is the page number for the first page of the {@code insertDocument} after insertion.
+   * <p>
+   * The document is updated in place, i.e., it is not saved and re-loaded. Note that the inserted pages refer to
+   * resources of {@code insertDocument}, so {@code insertDocument} must not be closed until {@code document} has been
+   * saved (see {@link #toBytes(PDDocument)}) or closed.
+   * </p>
    *
-   * @param document the document to be updated (will be closed)
+   * @param document the document to be updated
    * @param insertDocument the document to insert
    * @param page the page (1-based) number where to insert, 0 means at the end of the file
-   * @return the updated document
+   * @return the updated document (i.e., {@code document})
    * @throws DocumentProcessingException for errors
    */
   public static PDDocument insertDocument(final PDDocument document, final PDDocument insertDocument, final int page)
@@ -114,6 +218,9 @@ public class PDDocumentUtils {
       final int documentNumberOfPages = document.getNumberOfPages();
       final int pagesToAdd = insertDocument.getNumberOfPages();
       final boolean append = page == 0 || page == documentNumberOfPages + 1;
+      if (!append && (page < 1 || page > documentNumberOfPages)) {
+        throw new IndexOutOfBoundsException("No page " + page);
+      }
 
       for (final PDPage pdPage : insertDocument.getPages()) {
         document.importPage(pdPage);
@@ -136,7 +243,7 @@ public class PDDocumentUtils {
         }
       }
 
-      return PDDocumentUtils.load(PDDocumentUtils.toBytes(document));
+      return document;
     }
     catch (final IndexOutOfBoundsException | IllegalStateException | IllegalArgumentException e) {
       throw new DocumentProcessingException(new ErrorCode.Code("pdf"),
@@ -145,9 +252,6 @@ public class PDDocumentUtils {
     catch (final IOException e) {
       throw new DocumentProcessingException(new ErrorCode.Code("pdf"), "Failed to insert sign page into document", e);
     }
-    finally {
-      PDDocumentUtils.close(document);
-    }
   }
 
   private PDDocumentUtils() {
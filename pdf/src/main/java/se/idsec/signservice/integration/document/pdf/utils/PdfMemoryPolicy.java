@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.pdf.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
+import org.apache.pdfbox.io.ScratchFile;
+
+import java.io.File;
+
+/**
+ * Policy for how PDFBox buffers the streams it creates or decodes while a document is processed (see
+ * {@link PDDocumentUtils#setMemoryPolicy(PdfMemoryPolicy)}).
+ * <p>
+ * By default, everything is kept on the heap. For installations that handle very large documents, such as scanned
+ * documents of several hundred megabytes, the {@link Mode#MIXED} or {@link Mode#TEMP_FILE} modes should be used so
+ * that a few concurrent requests do not exhaust the heap.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PdfMemoryPolicy {
+
+  /**
+   * The buffering modes.
+   */
+  public enum Mode {
+
+    /** All buffers are kept on the heap. */
+    HEAP_ONLY,
+
+    /** Buffers are kept on the heap up to {@code maxMainMemoryBytes}, and after that in a temporary file. */
+    MIXED,
+
+    /** All buffers are kept in a temporary file. */
+    TEMP_FILE
+  }
+
+  /** The buffering mode. */
+  @Builder.Default
+  private Mode mode = Mode.HEAP_ONLY;
+
+  /** For {@link Mode#MIXED}, the number of bytes that may be buffered on the heap before a temporary file is used. */
+  @Builder.Default
+  private long maxMainMemoryBytes = -1L;
+
+  /**
+   * The maximum number of bytes (heap and temporary file) that may be buffered per document. Processing of a document
+   * that needs more fails. A value less than or equal to 0 means no limit.
+   */
+  @Builder.Default
+  private long maxStorageBytes = -1L;
+
+  /** The directory for temporary files. If not assigned, the system temporary directory is used. */
+  private File tempDirectory;
+
+  /**
+   * Creates the function that PDFBox uses to create a stream cache for each loaded document.
+   *
+   * @return a stream cache create function
+   * @throws IllegalArgumentException for invalid settings
+   */
+  public RandomAccessStreamCache.StreamCacheCreateFunction createStreamCacheFunction() {
+    final Mode m = this.mode != null ? this.mode : Mode.HEAP_ONLY;
+    if (m == Mode.HEAP_ONLY && this.maxStorageBytes <= 0) {
+      return IOUtils.createMemoryOnlyStreamCache();
+    }
+    final MemoryUsageSetting setting = switch (m) {
+      case HEAP_ONLY -> MemoryUsageSetting.setupMainMemoryOnly(this.maxStorageBytes);
+      case MIXED -> {
+        if (this.maxMainMemoryBytes <= 0) {
+          throw new IllegalArgumentException("maxMainMemoryBytes must be assigned for mode MIXED");
+        }
+        yield MemoryUsageSetting.setupMixed(this.maxMainMemoryBytes,
+            this.maxStorageBytes > 0 ? this.maxStorageBytes : -1L);
+      }
+      case TEMP_FILE -> this.maxStorageBytes > 0
+          ? MemoryUsageSetting.setupTempFileOnly(this.maxStorageBytes)
+          : MemoryUsageSetting.setupTempFileOnly();
+    };
+    if (this.tempDirectory != null && m != Mode.HEAP_ONLY) {
+      if (!this.tempDirectory.isDirectory()) {
+        throw new IllegalArgumentException("tempDirectory " + this.tempDirectory + " is not a directory");
+      }
+      setting.setTempDir(this.tempDirectory);
+    }
+    return () -> new ScratchFile(setting);
+  }
+
+}
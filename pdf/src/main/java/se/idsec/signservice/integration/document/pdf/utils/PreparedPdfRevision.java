@@ -0,0 +1,397 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.pdf.utils;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * A PDF signature revision that was prepared during the pre-sign phase, i.e., the incremental update holding the
+ * signature dictionary with a placeholder for the signature (/Contents) and the /ByteRange covering everything else.
+ * <p>
+ * By retaining the revision until the sign response has been received, the signed document may be completed by
+ * patching the CMS SignedData into the placeholder, instead of loading the original document and performing the
+ * signature process once again.
+ * </p>
+ * <p>
+ * The revision is bound to the original document by a SHA-256 digest computed over the original document followed by
+ * the incremental update. This digest is checked before the revision is used. Since the revision may be stored in a
+ * state held by the caller, the digest alone does not protect the revision from being replaced. Therefore, the
+ * completed document is also checked against the {@code messageDigest} signed attribute of the CMS SignedData (see
+ * {@link #complete(byte[], byte[])}), i.e., against what the signer actually signed.
+ * </p>
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public final class PreparedPdfRevision {
+
+  /** Prefix for references to revisions that are stored in a document cache (see {@link #getId()}). */
+  public static final String CACHE_REFERENCE_PREFIX = "cached:";
+
+  /** The digest algorithm used to bind the revision to the original document. */
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  /** The ByteRange keyword. */
+  private static final byte[] BYTE_RANGE = "/ByteRange".getBytes(StandardCharsets.US_ASCII);
+
+  /** The incremental update, i.e., the bytes following the original document. */
+  private final byte[] increment;
+
+  /** The ByteRange of the signature (offsets within the complete document). */
+  private final long[] byteRange;
+
+  /** The digest of the original document followed by the incremental update. */
+  private final byte[] digest;
+
+  /**
+   * Constructor.
+   *
+   * @param increment the incremental update
+   * @param byteRange the ByteRange
+   * @param digest the digest
+   */
+  private PreparedPdfRevision(final byte[] increment, final long[] byteRange, final byte[] digest) {
+    this.increment = increment;
+    this.byteRange = byteRange;
+    this.digest = digest;
+  }
+
+  /**
+   * Creates a {@link PreparedPdfRevision} given the original document and the pre-signed document (that must be an
+   * incremental update of the original document).
+   *
+   * @param originalDocument the original document
+   * @param preparedDocument the pre-signed document
+   * @return a {@link PreparedPdfRevision}
+   * @throws IOException if the prepared document is not an incremental update of the original document, or if the
+   *     signature ByteRange can not be found
+   */
+  public static PreparedPdfRevision create(final byte[] originalDocument, final byte[] preparedDocument)
+      throws IOException {
+    if (preparedDocument.length <= originalDocument.length
+        || !Arrays.equals(originalDocument, 0, originalDocument.length, preparedDocument, 0, originalDocument.length)) {
+      throw new IOException("Prepared document is not an incremental update of the original document");
+    }
+    final byte[] increment = Arrays.copyOfRange(preparedDocument, originalDocument.length, preparedDocument.length);
+    final long[] byteRange = parseByteRange(increment);
+    checkByteRange(byteRange, originalDocument.length, increment);
+
+    return new PreparedPdfRevision(increment, byteRange, digest(originalDocument, increment));
+  }
+
+  /**
+   * Restores a {@link PreparedPdfRevision} from its encoded parts (see {@link #getIncrement()},
+   * {@link #getEncodedByteRange()} and {@link #getEncodedDigest()}). The ByteRange is read from the incremental update
+   * and must be equal to the encoded ByteRange.
+   *
+   * @param increment the incremental update
+   * @param encodedByteRange the encoded ByteRange
+   * @param encodedDigest the encoded digest
+   * @return a {@link PreparedPdfRevision}
+   * @throws IOException for decoding errors
+   */
+  public static PreparedPdfRevision restore(final byte[] increment, final String encodedByteRange,
+      final String encodedDigest) throws IOException {
+    if (increment == null || encodedByteRange == null || encodedDigest == null) {
+      throw new IOException("Incomplete prepared revision");
+    }
+    try {
+      final long[] byteRange = parseByteRange(increment);
+      if (!Arrays.equals(byteRange, decodeByteRange(encodedByteRange))) {
+        throw new IOException("ByteRange does not match prepared revision - " + encodedByteRange);
+      }
+      return new PreparedPdfRevision(increment, byteRange, Base64.getDecoder().decode(encodedDigest));
+    }
+    catch (final IllegalArgumentException e) {
+      throw new IOException("Invalid encoding of prepared revision - " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Gets an identifier for this revision (the hex-encoded digest) that may be used as a cache key.
+   *
+   * @return the identifier
+   */
+  public String getId() {
+    return HexFormat.of().formatHex(this.digest);
+  }
+
+  /**
+   * Gets the incremental update, i.e., the bytes that follow the original document.
+   *
+   * @return the incremental update
+   */
+  public byte[] getIncrement() {
+    return this.increment;
+  }
+
+  /**
+   * Gets the signature ByteRange, encoded as four space separated integers.
+   *
+   * @return the encoded ByteRange
+   */
+  public String getEncodedByteRange() {
+    return String.format("%d %d %d %d", this.byteRange[0], this.byteRange[1], this.byteRange[2], this.byteRange[3]);
+  }
+
+  /**
+   * Gets the Base64-encoded digest of the original document followed by the incremental update.
+   *
+   * @return the encoded digest
+   */
+  public String getEncodedDigest() {
+    return Base64.getEncoder().encodeToString(this.digest);
+  }
+
+  /**
+   * Gets the maximum size (in bytes) of a CMS SignedData that fits into the signature placeholder.
+   *
+   * @return the number of bytes
+   */
+  public int getSignatureCapacity() {
+    return (int) ((this.byteRange[2] - this.byteRange[1] - 2) / 2);
+  }
+
+  /**
+   * Predicate that tells whether this revision was prepared for the supplied original document.
+   *
+   * @param originalDocument the original document
+   * @return true if the revision belongs to the supplied document and false otherwise
+   */
+  public boolean matches(final byte[] originalDocument) {
+    return MessageDigest.isEqual(this.digest, digest(originalDocument, this.increment));
+  }
+
+  /**
+   * Completes the signed document by writing the original document and the incremental update to a new byte array,
+   * and patching the hex-encoded CMS SignedData into the signature placeholder.
+   * <p>
+   * The digest of the bytes covered by the ByteRange of the completed document is checked against the
+   * {@code messageDigest} signed attribute of the CMS SignedData. This ensures that the revision is exactly the one
+   * that was signed.
+   * </p>
+   *
+   * @param originalDocument the original document (see {@link #matches(byte[])})
+   * @param cmsSignedData the CMS SignedData (ContentInfo)
+   * @return the signed document
+   * @throws IOException if the revision does not fit the original document, if the CMS does not fit into the
+   *     signature placeholder, or if the CMS can not be decoded
+   * @throws SignatureException if the signed messageDigest does not match the completed document
+   */
+  public byte[] complete(final byte[] originalDocument, final byte[] cmsSignedData)
+      throws IOException, SignatureException {
+    checkByteRange(this.byteRange, originalDocument.length, this.increment);
+    if (cmsSignedData.length > this.getSignatureCapacity()) {
+      throw new IOException(String.format("CMS SignedData (%d bytes) does not fit into signature placeholder (%d bytes)",
+          cmsSignedData.length, this.getSignatureCapacity()));
+    }
+    final byte[] document = new byte[originalDocument.length + this.increment.length];
+    System.arraycopy(originalDocument, 0, document, 0, originalDocument.length);
+    System.arraycopy(this.increment, 0, document, originalDocument.length, this.increment.length);
+
+    final byte[] hex = HexFormat.of().withUpperCase().formatHex(cmsSignedData).getBytes(StandardCharsets.US_ASCII);
+    final int start = (int) this.byteRange[1] + 1;
+    final int end = (int) this.byteRange[2] - 1;
+    System.arraycopy(hex, 0, document, start, hex.length);
+    Arrays.fill(document, start + hex.length, end, (byte) '0');
+
+    this.checkMessageDigest(document, cmsSignedData);
+
+    return document;
+  }
+
+  /**
+   * Checks that the digest of the bytes covered by the ByteRange equals the {@code messageDigest} signed attribute of
+   * the CMS SignedData.
+   *
+   * @param document the completed document
+   * @param cmsSignedData the CMS SignedData (ContentInfo)
+   * @throws IOException if the CMS can not be decoded, or lacks a messageDigest attribute
+   * @throws SignatureException if the digests do not match
+   */
+  private void checkMessageDigest(final byte[] document, final byte[] cmsSignedData)
+      throws IOException, SignatureException {
+    final byte[] messageDigest;
+    final byte[] calculatedDigest;
+    try {
+      final SignerInformation signer = new CMSSignedData(cmsSignedData).getSignerInfos().getSigners()
+          .iterator().next();
+      final Attribute attribute = signer.getSignedAttributes() != null
+          ? signer.getSignedAttributes().get(CMSAttributes.messageDigest)
+          : null;
+      if (attribute == null || attribute.getAttrValues().size() != 1) {
+        throw new IOException("No messageDigest attribute in CMS SignedData");
+      }
+      messageDigest = ASN1OctetString.getInstance(attribute.getAttrValues().getObjectAt(0)).getOctets();
+
+      final DigestCalculator digestCalculator =
+          new JcaDigestCalculatorProviderBuilder().build().get(signer.getDigestAlgorithmID());
+      try (final OutputStream os = digestCalculator.getOutputStream()) {
+        os.write(document, 0, (int) this.byteRange[1]);
+        os.write(document, (int) this.byteRange[2], (int) this.byteRange[3]);
+      }
+      calculatedDigest = digestCalculator.getDigest();
+    }
+    catch (final CMSException | OperatorCreationException | RuntimeException e) {
+      throw new IOException("Failed to decode CMS SignedData - " + e.getMessage(), e);
+    }
+    if (!MessageDigest.isEqual(messageDigest, calculatedDigest)) {
+      throw new SignatureException("Signed messageDigest does not match prepared revision");
+    }
+  }
+
+  /**
+   * Finds the last ByteRange in the incremental update.
+   *
+   * @param increment the incremental update
+   * @return the ByteRange
+   * @throws IOException if no valid ByteRange is found
+   */
+  private static long[] parseByteRange(final byte[] increment) throws IOException {
+    int pos = -1;
+    for (int i = increment.length - BYTE_RANGE.length; i >= 0; i--) {
+      if (Arrays.equals(increment, i, i + BYTE_RANGE.length, BYTE_RANGE, 0, BYTE_RANGE.length)) {
+        pos = i + BYTE_RANGE.length;
+        break;
+      }
+    }
+    if (pos < 0) {
+      throw new IOException("No signature ByteRange found in prepared revision");
+    }
+    final int open = skipWhitespace(increment, pos);
+    if (open >= increment.length || increment[open] != '[') {
+      throw new IOException("Invalid signature ByteRange in prepared revision");
+    }
+    final int close = indexOf(increment, (byte) ']', open);
+    if (close < 0) {
+      throw new IOException("Invalid signature ByteRange in prepared revision");
+    }
+    return decodeByteRange(new String(increment, open + 1, close - open - 1, StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Parses a ByteRange given as four whitespace separated non-negative integers.
+   *
+   * @param value the string to parse
+   * @return the ByteRange
+   * @throws IOException if the string is not a valid ByteRange
+   */
+  private static long[] decodeByteRange(final String value) throws IOException {
+    try {
+      final long[] byteRange = Arrays.stream(value.trim().split("\\s+"))
+          .mapToLong(Long::parseLong)
+          .toArray();
+      if (byteRange.length != 4 || Arrays.stream(byteRange).anyMatch(v -> v < 0 || v > Integer.MAX_VALUE)) {
+        throw new IOException("Invalid signature ByteRange - " + value);
+      }
+      return byteRange;
+    }
+    catch (final NumberFormatException e) {
+      throw new IOException("Invalid signature ByteRange - " + value, e);
+    }
+  }
+
+  /**
+   * Checks that the ByteRange points out a signature placeholder in the incremental update, and that it covers the
+   * rest of the document.
+   *
+   * @param byteRange the ByteRange
+   * @param originalLength the length of the original document
+   * @param increment the incremental update
+   * @throws IOException for invalid ByteRange
+   */
+  private static void checkByteRange(final long[] byteRange, final int originalLength, final byte[] increment)
+      throws IOException {
+    final long length = (long) originalLength + increment.length;
+    if (byteRange[0] != 0 || byteRange[1] < originalLength || byteRange[2] <= byteRange[1] + 1
+        || byteRange[3] < 0 || byteRange[2] + byteRange[3] != length
+        || increment[(int) (byteRange[1] - originalLength)] != '<'
+        || increment[(int) (byteRange[2] - 1 - originalLength)] != '>') {
+      throw new IOException("Signature ByteRange does not match prepared revision");
+    }
+  }
+
+  /**
+   * Calculates the digest of the original document followed by the incremental update.
+   *
+   * @param originalDocument the original document
+   * @param increment the incremental update
+   * @return the digest
+   */
+  private static byte[] digest(final byte[] originalDocument, final byte[] increment) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      md.update(originalDocument);
+      md.update(increment);
+      return md.digest();
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new SecurityException(e);
+    }
+  }
+
+  /**
+   * Returns the position of the first non-whitespace byte at or after {@code from}.
+   *
+   * @param bytes the bytes
+   * @param from the start position
+   * @return the position
+   */
+  private static int skipWhitespace(final byte[] bytes, final int from) {
+    int pos = from;
+    while (pos < bytes.length && (bytes[pos] == ' ' || bytes[pos] == '\n' || bytes[pos] == '\r'
+        || bytes[pos] == '\t' || bytes[pos] == '\f' || bytes[pos] == 0)) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Returns the position of the first occurrence of {@code b} at or after {@code from}.
+   *
+   * @param bytes the bytes
+   * @param b the byte to find
+   * @param from the start position
+   * @return the position, or -1 if not found
+   */
+  private static int indexOf(final byte[] bytes, final byte b, final int from) {
+    for (int i = from; i < bytes.length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+}
@@ -28,12 +28,18 @@ import se.idsec.signservice.integration.core.error.InputValidationException;
 import se.idsec.signservice.integration.core.error.NoAccessException;
 import se.idsec.signservice.integration.core.impl.InMemoryDocumentCache;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.pdf.PdfSignaturePage.PdfSignatureImagePlacementConfiguration;
 import se.idsec.signservice.integration.document.pdf.VisiblePdfSignatureUserInformation.SignerName;
 import se.idsec.signservice.integration.document.pdf.utils.PDDocumentUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * Test cases for DefaultPdfSignaturePagePreparator.
@@ -198,6 +204,81 @@ public class DefaultPdfSignaturePagePreparatorTest {
             .getFormatting());
   }
 
+  @Test
+  public void testInsertPageFromSource() throws Exception {
+    final DefaultPdfSignaturePagePreparator preparator = new DefaultPdfSignaturePagePreparator();
+    final byte[] contents = loadContents("pdf/sample-0-signature.pdf");
+    final Path path = Files.createTempFile("sample", ".pdf");
+    try {
+      Files.write(path, contents);
+      for (final DocumentSource source : List.of(DocumentSource.of(path),
+          DocumentSource.of(new ByteArrayInputStream(contents)),
+          DocumentSource.ofBase64(new ByteArrayInputStream(Base64.getEncoder().encode(contents))),
+          DocumentSource.of(ByteBuffer.wrap(contents)))) {
+
+        final PreparedPdfDocument result = preparator.preparePdfDocumentFromSource(
+            source, getDefaultPrefs(), this.configStateless, null, null);
+
+        final PDDocument doc = PDDocumentUtils.load(Base64.getDecoder().decode(result.getUpdatedPdfDocument()));
+        Assertions.assertEquals(2, doc.getNumberOfPages());
+        PDDocumentUtils.close(doc);
+        Assertions.assertEquals(2, result.getVisiblePdfSignatureRequirement().getPage().intValue());
+      }
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void testUnchangedDocumentFromStreamReturnReference() throws Exception {
+    final DocumentCache docCache = new InMemoryDocumentCache();
+    final DefaultPdfSignaturePagePreparator preparator = new DefaultPdfSignaturePagePreparator();
+    preparator.setDocumentCache(docCache);
+
+    // The document already has a signature, so it is not updated. The original bytes should be cached ...
+    final byte[] contents = loadContents("pdf/sample-1-signature.pdf");
+    final PreparedPdfDocument result = preparator.preparePdfDocumentFromSource(
+        DocumentSource.of(new ByteArrayInputStream(contents)), getDefaultPrefs(), this.configStateful, true, "caller");
+
+    Assertions.assertArrayEquals(contents, docCache.getBytes(result.getPdfDocumentReference(), true, "caller"));
+  }
+
+  @Test
+  public void testFromStreamReturnReference() throws Exception {
+    final DocumentCache docCache = new InMemoryDocumentCache();
+    final DefaultPdfSignaturePagePreparator preparator = new DefaultPdfSignaturePagePreparator();
+    preparator.setDocumentCache(docCache);
+
+    // The document is updated, so the updated document should be cached ...
+    final byte[] contents = loadContents("pdf/sample-0-signature.pdf");
+    final PreparedPdfDocument result = preparator.preparePdfDocumentFromSource(
+        DocumentSource.of(new ByteArrayInputStream(contents)), getDefaultPrefs(), this.configStateful, true, "caller");
+
+    final PDDocument doc = PDDocumentUtils.load(docCache.getBytes(result.getPdfDocumentReference(), true, "caller"));
+    Assertions.assertEquals(2, doc.getNumberOfPages());
+    PDDocumentUtils.close(doc);
+  }
+
+  @Test
+  public void testUnchangedDocumentFromFileReturnReference() throws Exception {
+    final DocumentCache docCache = new InMemoryDocumentCache();
+    final DefaultPdfSignaturePagePreparator preparator = new DefaultPdfSignaturePagePreparator();
+    preparator.setDocumentCache(docCache);
+
+    final byte[] contents = loadContents("pdf/sample-1-signature.pdf");
+    final Path path = Files.createTempFile("sample", ".pdf");
+    try {
+      Files.write(path, contents);
+      final PreparedPdfDocument result = preparator.preparePdfDocumentFromSource(
+          DocumentSource.of(path), getDefaultPrefs(), this.configStateful, true, "caller");
+      Assertions.assertArrayEquals(contents, docCache.getBytes(result.getPdfDocumentReference(), true, "caller"));
+    }
+    finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
   @Test
   public void testInsertPageReturnReferenceDeprecated() throws Exception {
 
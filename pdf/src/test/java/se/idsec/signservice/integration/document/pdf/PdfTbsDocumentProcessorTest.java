@@ -15,6 +15,48 @@
  */
 package se.idsec.signservice.integration.document.pdf;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import se.idsec.signservice.integration.config.impl.DefaultIntegrationServiceConfiguration;
+import se.idsec.signservice.integration.core.DocumentCache;
+import se.idsec.signservice.integration.core.impl.InMemoryDocumentCache;
+import se.idsec.signservice.integration.document.DocumentType;
+import se.idsec.signservice.integration.document.ProcessedTbsDocument;
+import se.idsec.signservice.integration.document.TbsDocument;
+import se.idsec.signservice.integration.document.pdf.utils.PreparedPdfRevision;
+import se.idsec.signservice.integration.dss.SignRequestWrapper;
+import se.idsec.signservice.integration.process.impl.SignResponseProcessingException;
+import se.swedenconnect.schemas.csig.dssext_1_1.Base64Signature;
+import se.swedenconnect.schemas.csig.dssext_1_1.ObjectFactory;
+import se.swedenconnect.schemas.csig.dssext_1_1.SignTaskData;
+
 /**
  * Test cases for PdfTbsDocumentProcessor.
  *
@@ -23,4 +65,164 @@ package se.idsec.signservice.integration.document.pdf;
  */
 public class PdfTbsDocumentProcessorTest {
 
+  private static final String SIGNATURE_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+  private static final ObjectFactory dssExtFactory = new ObjectFactory();
+
+  private static KeyPair signerKey;
+
+  private static X509Certificate signerCertificate;
+
+  private final DefaultIntegrationServiceConfiguration config =
+      DefaultIntegrationServiceConfiguration.builder().policy("default").build();
+
+  @BeforeAll
+  public static void init() throws Exception {
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    signerKey = generator.generateKeyPair();
+    final X500Name name = new X500Name("CN=Signer");
+    signerCertificate = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+        name, BigInteger.ONE, new Date(), new Date(System.currentTimeMillis() + 3600_000L), name,
+        signerKey.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withRSA").build(signerKey.getPrivate())));
+  }
+
+  @Test
+  public void testRetainedRevisionInState() throws Exception {
+    final PdfTbsDocumentProcessor tbsProcessor = new PdfTbsDocumentProcessor();
+    tbsProcessor.setRetainPreparedRevision(true);
+
+    final byte[] document = loadDocument();
+    final TbsDocument tbsDocument = createTbsDocument(document);
+    final SignTaskData signTaskData = this.sign(tbsProcessor, tbsDocument, document);
+
+    Assertions.assertFalse(tbsDocument.getExtension().get(PDFExtensionParams.preparedRevision.name())
+        .startsWith(PreparedPdfRevision.CACHE_REFERENCE_PREFIX));
+
+    final byte[] signedDocument = new PdfSignedDocumentProcessor()
+        .buildSignedDocument(tbsDocument, signTaskData, List.of(signerCertificate), createSignRequest(), null)
+        .getDocument();
+    assertSignedRevision(document, signedDocument);
+  }
+
+  @Test
+  public void testRetainedRevisionInCache() throws Exception {
+    final DocumentCache cache = new InMemoryDocumentCache();
+    final PdfTbsDocumentProcessor tbsProcessor = new PdfTbsDocumentProcessor();
+    tbsProcessor.setRetainPreparedRevision(true);
+    tbsProcessor.setPreparedRevisionCache(cache);
+
+    final byte[] document = loadDocument();
+    final TbsDocument tbsDocument = createTbsDocument(document);
+    final SignTaskData signTaskData = this.sign(tbsProcessor, tbsDocument, document);
+
+    final String reference = tbsDocument.getExtension().get(PDFExtensionParams.preparedRevision.name());
+    Assertions.assertTrue(reference.startsWith(PreparedPdfRevision.CACHE_REFERENCE_PREFIX));
+
+    final PdfSignedDocumentProcessor signedProcessor = new PdfSignedDocumentProcessor();
+    signedProcessor.setPreparedRevisionCache(cache);
+    final byte[] signedDocument = signedProcessor
+        .buildSignedDocument(tbsDocument, signTaskData, List.of(signerCertificate), createSignRequest(), null)
+        .getDocument();
+    assertSignedRevision(document, signedDocument);
+
+    // The cached revision is consumed ...
+    Assertions.assertNull(cache.getBytes(
+        reference.substring(PreparedPdfRevision.CACHE_REFERENCE_PREFIX.length()), false, null));
+  }
+
+  @Test
+  public void testReplacedRevision() throws Exception {
+    final PdfTbsDocumentProcessor tbsProcessor = new PdfTbsDocumentProcessor();
+    tbsProcessor.setRetainPreparedRevision(true);
+
+    final byte[] document = loadDocument();
+    final TbsDocument tbsDocument = createTbsDocument(document);
+    final SignTaskData signTaskData = this.sign(tbsProcessor, tbsDocument, document);
+
+    // Replace the revision in the state with a modified one, along with a matching ByteRange and digest ...
+    //
+    final byte[] increment =
+        Base64.getDecoder().decode(tbsDocument.getExtension().get(PDFExtensionParams.preparedRevision.name()));
+    final byte[] modified = Arrays.copyOf(document, document.length + increment.length);
+    System.arraycopy(increment, 0, modified, document.length, increment.length);
+    final int eof = new String(modified, StandardCharsets.ISO_8859_1).lastIndexOf("%%EOF");
+    modified[eof + 2] = 'X';
+
+    final PreparedPdfRevision revision = PreparedPdfRevision.create(document, modified);
+    tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevision.name(),
+        Base64.getEncoder().encodeToString(revision.getIncrement()));
+    tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevisionByteRange.name(),
+        revision.getEncodedByteRange());
+    tbsDocument.addExtensionValue(PDFExtensionParams.preparedRevisionDigest.name(), revision.getEncodedDigest());
+
+    final SignResponseProcessingException e = Assertions.assertThrows(SignResponseProcessingException.class,
+        () -> new PdfSignedDocumentProcessor().buildSignedDocument(
+            tbsDocument, signTaskData, List.of(signerCertificate), createSignRequest(), null));
+    Assertions.assertTrue(e.getMessage().contains("Prepared revision does not match signature"));
+  }
+
+  /**
+   * Runs the pre-sign process and signs the resulting to-be-signed bytes (as the signature service would).
+   */
+  private SignTaskData sign(final PdfTbsDocumentProcessor tbsProcessor, final TbsDocument tbsDocument,
+      final byte[] document) throws Exception {
+
+    final SignTaskData signTaskData =
+        tbsProcessor.process(new ProcessedTbsDocument(tbsDocument, document), SIGNATURE_ALGORITHM, this.config);
+    Assertions.assertNotNull(tbsDocument.getExtension().get(PDFExtensionParams.preparedRevision.name()));
+    Assertions.assertNotNull(tbsDocument.getExtension().get(PDFExtensionParams.preparedRevisionByteRange.name()));
+    Assertions.assertNotNull(tbsDocument.getExtension().get(PDFExtensionParams.preparedRevisionDigest.name()));
+
+    final Signature signature = Signature.getInstance("SHA256withRSA");
+    signature.initSign(signerKey.getPrivate());
+    signature.update(signTaskData.getToBeSignedBytes());
+
+    final Base64Signature base64Signature = dssExtFactory.createBase64Signature();
+    base64Signature.setType(SIGNATURE_ALGORITHM);
+    base64Signature.setValue(signature.sign());
+    signTaskData.setBase64Signature(base64Signature);
+    return signTaskData;
+  }
+
+  /**
+   * Asserts that the signed document is the original document followed by one revision holding a valid signature.
+   */
+  private static void assertSignedRevision(final byte[] document, final byte[] signedDocument) throws Exception {
+    Assertions.assertArrayEquals(document, Arrays.copyOf(signedDocument, document.length));
+
+    try (final PDDocument pdfDocument = Loader.loadPDF(signedDocument)) {
+      final List<PDSignature> signatures = pdfDocument.getSignatureDictionaries();
+      Assertions.assertEquals(1, signatures.size());
+      final PDSignature pdfSignature = signatures.get(0);
+      Assertions.assertEquals(signedDocument.length,
+          pdfSignature.getByteRange()[2] + pdfSignature.getByteRange()[3]);
+
+      final CMSSignedData cmsSignedData = new CMSSignedData(
+          new CMSProcessableByteArray(pdfSignature.getSignedContent(signedDocument)),
+          pdfSignature.getContents(signedDocument));
+      final SignerInformation signer = cmsSignedData.getSignerInfos().getSigners().iterator().next();
+      Assertions.assertTrue(signer.verify(new JcaSimpleSignerInfoVerifierBuilder().build(signerCertificate)));
+    }
+  }
+
+  private static byte[] loadDocument() throws IOException {
+    return IOUtils.toByteArray(new ClassPathResource("pdf/sample-0-signature.pdf").getInputStream());
+  }
+
+  private static TbsDocument createTbsDocument(final byte[] document) {
+    return TbsDocument.builder()
+        .id("doc-1")
+        .mimeType(DocumentType.PDF.getMimeType())
+        .content(Base64.getEncoder().encodeToString(document))
+        .build();
+  }
+
+  private static SignRequestWrapper createSignRequest() {
+    final SignRequestWrapper signRequest = new SignRequestWrapper();
+    signRequest.setRequestID("request-1");
+    return signRequest;
+  }
+
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.pdf.signpage.impl;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import se.idsec.signservice.integration.core.FileResource;
+import se.idsec.signservice.integration.document.pdf.PdfSignaturePage;
+import se.idsec.signservice.integration.document.pdf.utils.PDDocumentUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Test cases for SignPageTemplateCache.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class SignPageTemplateCacheTest {
+
+  @Test
+  public void testCachedPerPolicy() throws Exception {
+    final SignPageTemplateCache cache = new SignPageTemplateCache();
+    final PdfSignaturePage signPage = createSignPage(loadContents("config/eduSign-page.pdf"));
+
+    final SignPageTemplateCache.SignPageTemplate template = cache.getTemplate("policy", signPage);
+    Assertions.assertEquals(1, template.getNumberOfPages());
+    Assertions.assertSame(template, cache.getTemplate("policy", signPage));
+    Assertions.assertNotSame(template, cache.getTemplate("other-policy", signPage));
+    Assertions.assertEquals(2, cache.size());
+
+    cache.invalidate("other-policy");
+    Assertions.assertEquals(1, cache.size());
+    Assertions.assertSame(template, cache.getTemplate("policy", signPage));
+
+    cache.clear();
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertNotSame(template, cache.getTemplate("policy", signPage));
+  }
+
+  @Test
+  public void testUpdatedSignPage() throws Exception {
+    final SignPageTemplateCache cache = new SignPageTemplateCache();
+    final SignPageTemplateCache.SignPageTemplate template =
+        cache.getTemplate("policy", createSignPage(loadContents("config/eduSign-page.pdf")));
+
+    // Same contents, but a new array ...
+    Assertions.assertSame(template,
+        cache.getTemplate("policy", createSignPage(loadContents("config/eduSign-page.pdf"))));
+
+    // Changed contents ...
+    final PDDocument twoPages = PDDocumentUtils.load(loadContents("config/eduSign-page.pdf"));
+    final PDDocument updated = PDDocumentUtils.insertDocument(twoPages,
+        PDDocumentUtils.load(loadContents("config/eduSign-page.pdf")), 0);
+    final byte[] updatedContents = PDDocumentUtils.toBytes(updated);
+    PDDocumentUtils.close(updated);
+
+    final SignPageTemplateCache.SignPageTemplate updatedTemplate =
+        cache.getTemplate("policy", createSignPage(updatedContents));
+    Assertions.assertNotSame(template, updatedTemplate);
+    Assertions.assertEquals(2, updatedTemplate.getNumberOfPages());
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testBorrowAndRelease() throws Exception {
+    final SignPageTemplateCache cache = new SignPageTemplateCache();
+    cache.setMaxPooledDocuments(1);
+    final SignPageTemplateCache.SignPageTemplate template =
+        cache.getTemplate("policy", createSignPage(loadContents("config/eduSign-page.pdf")));
+
+    final PDDocument doc1 = template.borrow();
+    final PDDocument doc2 = template.borrow();
+    Assertions.assertNotSame(doc1, doc2);
+    template.release(doc1);
+    template.release(doc2);
+
+    // The pool holds one document, the other was closed ...
+    final PDDocument doc3 = template.borrow();
+    Assertions.assertSame(doc1, doc3);
+    Assertions.assertEquals(1, doc3.getNumberOfPages());
+    template.release(doc3);
+
+    // When the template is invalidated, pooled documents are closed and released documents are not pooled ...
+    final PDDocument doc4 = template.borrow();
+    cache.clear();
+    template.release(doc4);
+    Assertions.assertNotSame(doc4, template.borrow());
+  }
+
+  @Test
+  public void testImportIntoSeveralDocuments() throws Exception {
+    final SignPageTemplateCache cache = new SignPageTemplateCache();
+    cache.setMaxPooledDocuments(1);
+    final byte[] signPageContents = loadContents("config/eduSign-page.pdf");
+    final SignPageTemplateCache.SignPageTemplate template =
+        cache.getTemplate("policy", createSignPage(signPageContents));
+
+    final byte[] expectedPageContents;
+    try (final PDDocument signPage = PDDocumentUtils.load(signPageContents)) {
+      expectedPageContents = pageContents(signPage, 0);
+    }
+
+    // Import the same pooled sign page document into two documents, and save both ...
+    final PDDocument signPageDocument = template.borrow();
+    final PDDocument target1 = PDDocumentUtils.load(loadContents("pdf/one-page.pdf"));
+    final PDDocument target2 = PDDocumentUtils.load(loadContents("pdf/two-pages.pdf"));
+    PDDocumentUtils.insertDocument(target1, signPageDocument, 0);
+    PDDocumentUtils.insertDocument(target2, signPageDocument, 1);
+    final byte[] saved1 = PDDocumentUtils.toBytes(target1);
+    final byte[] saved2 = PDDocumentUtils.toBytes(target2);
+    PDDocumentUtils.close(target1);
+    PDDocumentUtils.close(target2);
+    template.release(signPageDocument);
+
+    // The pooled document is handed out again, and can be used for yet another document ...
+    final PDDocument reused = template.borrow();
+    Assertions.assertSame(signPageDocument, reused);
+    final PDDocument target3 = PDDocumentUtils.load(loadContents("pdf/one-page.pdf"));
+    PDDocumentUtils.insertDocument(target3, reused, 0);
+    final byte[] saved3 = PDDocumentUtils.toBytes(target3);
+    PDDocumentUtils.close(target3);
+    template.release(reused);
+
+    // Reload all documents and make sure that the sign page is intact in each of them ...
+    try (final PDDocument doc1 = PDDocumentUtils.load(saved1);
+        final PDDocument doc2 = PDDocumentUtils.load(saved2);
+        final PDDocument doc3 = PDDocumentUtils.load(saved3)) {
+      Assertions.assertEquals(2, doc1.getNumberOfPages());
+      Assertions.assertArrayEquals(expectedPageContents, pageContents(doc1, 1));
+      Assertions.assertEquals(3, doc2.getNumberOfPages());
+      Assertions.assertArrayEquals(expectedPageContents, pageContents(doc2, 0));
+      Assertions.assertEquals(2, doc3.getNumberOfPages());
+      Assertions.assertArrayEquals(expectedPageContents, pageContents(doc3, 1));
+    }
+  }
+
+  private static byte[] pageContents(final PDDocument document, final int page) throws IOException {
+    try (final InputStream contents = document.getPage(page).getContents()) {
+      return contents.readAllBytes();
+    }
+  }
+
+  private static PdfSignaturePage createSignPage(final byte[] contents) {
+    return PdfSignaturePage.builder()
+        .id("default-sign-page")
+        .pdfDocument(FileResource.builder()
+            .contents(Base64.getEncoder().encodeToString(contents))
+            .build())
+        .build();
+  }
+
+  private static byte[] loadContents(final String resource) throws IOException {
+    return IOUtils.toByteArray(new ClassPathResource(resource).getInputStream());
+  }
+
+}
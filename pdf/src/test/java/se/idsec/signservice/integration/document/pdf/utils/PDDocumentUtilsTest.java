@@ -15,15 +15,27 @@
  */
 package se.idsec.signservice.integration.document.pdf.utils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.core.io.ClassPathResource;
 
+import se.idsec.signservice.integration.document.DocumentProcessingException;
+
 /**
  * Test cases for PDDocumentUtils.
  *
@@ -114,6 +126,219 @@ public class PDDocumentUtilsTest {
     }
   }
 
+  @Test
+  public void testInsertInvalidPage() throws Exception {
+    final PDDocument doc = load("pdf/four-pages.pdf");
+    final PDDocument ins = load("pdf/one-page.pdf");
+    try {
+      Assertions.assertThrows(DocumentProcessingException.class, () -> PDDocumentUtils.insertDocument(doc, ins, 7));
+
+      // The document is left unchanged and may still be used ...
+      Assertions.assertEquals(4, doc.getNumberOfPages());
+      Assertions.assertEquals(5, PDDocumentUtils.insertDocument(doc, ins, 0).getNumberOfPages());
+    }
+    finally {
+      PDDocumentUtils.close(doc);
+      PDDocumentUtils.close(ins);
+    }
+  }
+
+  @Test
+  public void testInsertAndSave() throws Exception {
+    PDDocument doc = null;
+    PDDocument ins = null;
+    try {
+      doc = load("pdf/four-pages.pdf");
+      ins = load("pdf/one-page.pdf");
+
+      final byte[] bytes = PDDocumentUtils.toBytes(PDDocumentUtils.insertDocument(doc, ins, 2));
+
+      try (final PDDocument saved = Loader.loadPDF(bytes)) {
+        Assertions.assertEquals(5, saved.getNumberOfPages());
+        Assertions.assertTrue(getContents(saved, 2).contains("Document 1: This is page one"));
+        Assertions.assertTrue(getContents(saved, 3).contains("Document 4: This is page two"));
+      }
+    }
+    finally {
+      PDDocumentUtils.close(doc);
+      PDDocumentUtils.close(ins);
+    }
+  }
+
+  @Test
+  public void testMemoryPolicy() throws Exception {
+    final File tempDirectory = Files.createTempDirectory("pdf-scratch").toFile();
+    try {
+      for (final PdfMemoryPolicy policy : new PdfMemoryPolicy[] {
+          PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.HEAP_ONLY).maxStorageBytes(100_000_000L).build(),
+          PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.MIXED).maxMainMemoryBytes(4096L).build(),
+          PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.TEMP_FILE).tempDirectory(tempDirectory).build() }) {
+
+        PDDocumentUtils.setMemoryPolicy(policy);
+        Assertions.assertSame(policy, PDDocumentUtils.getMemoryPolicy());
+
+        final PDDocument doc = PDDocumentUtils.load(createDocument(4, 50_000));
+        final PDDocument ins = PDDocumentUtils.load(
+            IOUtils.toByteArray((new ClassPathResource("pdf/one-page.pdf")).getInputStream()));
+        try {
+          final byte[] bytes = PDDocumentUtils.toBytes(PDDocumentUtils.insertDocument(doc, ins, 1));
+          try (final PDDocument saved = Loader.loadPDF(bytes)) {
+            Assertions.assertEquals(5, saved.getNumberOfPages());
+            Assertions.assertTrue(getContents(saved, 1).contains("Document 1: This is page one"));
+          }
+        }
+        finally {
+          PDDocumentUtils.close(doc);
+          PDDocumentUtils.close(ins);
+        }
+      }
+    }
+    finally {
+      PDDocumentUtils.setMemoryPolicy(null);
+      final File[] files = tempDirectory.listFiles();
+      if (files != null) {
+        for (final File f : files) {
+          f.delete();
+        }
+      }
+      tempDirectory.delete();
+    }
+  }
+
+  @Test
+  public void testInvalidMemoryPolicy() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> PDDocumentUtils.setMemoryPolicy(
+        PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.MIXED).build()));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> PDDocumentUtils.setMemoryPolicy(
+        PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.TEMP_FILE).tempDirectory(new File("not-a-dir")).build()));
+    Assertions.assertEquals(PdfMemoryPolicy.Mode.HEAP_ONLY, PDDocumentUtils.getMemoryPolicy().getMode());
+  }
+
+  /**
+   * Reports the heap used while a large document is imported into a sign page document, and the bytes allocated
+   * by the import and serialization, for each memory policy mode.
+   */
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void benchmarkMemoryPolicy() throws Exception {
+    final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final byte[] signPage = IOUtils.toByteArray((new ClassPathResource("config/eduSign-page.pdf")).getInputStream());
+    final byte[] contents = createDocument(50, 1_000_000);
+
+    try {
+      for (final PdfMemoryPolicy policy : new PdfMemoryPolicy[] {
+          PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.HEAP_ONLY).build(),
+          PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.MIXED).maxMainMemoryBytes(4_000_000L).build(),
+          PdfMemoryPolicy.builder().mode(PdfMemoryPolicy.Mode.TEMP_FILE).build() }) {
+
+        PDDocumentUtils.setMemoryPolicy(policy);
+        System.gc();
+        final long baseline = memoryBean.getHeapMemoryUsage().getUsed();
+        final long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+
+        final PDDocument doc = PDDocumentUtils.load(signPage);
+        final PDDocument ins = PDDocumentUtils.load(contents);
+        try {
+          PDDocumentUtils.insertDocument(doc, ins, 0);
+          System.gc();
+          final long retained = memoryBean.getHeapMemoryUsage().getUsed() - baseline;
+          final int size = PDDocumentUtils.toBytes(doc).length;
+
+          System.out.printf("mode: %s, document: %d KiB, retained heap: %d KiB, allocated: %d KiB, time: %d ms%n",
+              policy.getMode(), size / 1024, retained / 1024,
+              (threadBean.getThreadAllocatedBytes(threadId) - startAllocated) / 1024,
+              (System.nanoTime() - start) / 1_000_000);
+        }
+        finally {
+          PDDocumentUtils.close(doc);
+          PDDocumentUtils.close(ins);
+        }
+      }
+    }
+    finally {
+      PDDocumentUtils.setMemoryPolicy(null);
+    }
+  }
+
+  /**
+   * Compares inserting a sign page and serializing the result, with and without the save-and-reload that
+   * {@code insertDocument} used to do.
+   */
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void benchmarkInsertDocument() throws Exception {
+    final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final byte[] signPage = IOUtils.toByteArray((new ClassPathResource("config/eduSign-page.pdf")).getInputStream());
+    final int count = 5;
+
+    for (final int pages : new int[] { 1, 20, 200 }) {
+      for (final int pageSize : new int[] { 10_000, 250_000 }) {
+        final byte[] contents = createDocument(pages, pageSize);
+        for (final boolean reload : new boolean[] { true, false }) {
+          long allocated = 0;
+          long time = 0;
+          int size = 0;
+          for (int i = 0; i < count; i++) {
+            final long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            PDDocument doc = PDDocumentUtils.load(contents);
+            final PDDocument ins = PDDocumentUtils.load(signPage);
+            try {
+              doc = PDDocumentUtils.insertDocument(doc, ins, 0);
+              if (reload) {
+                final PDDocument reloaded = PDDocumentUtils.load(PDDocumentUtils.toBytes(doc));
+                PDDocumentUtils.close(doc);
+                doc = reloaded;
+              }
+              size = PDDocumentUtils.toBytes(doc).length;
+            }
+            finally {
+              PDDocumentUtils.close(doc);
+              PDDocumentUtils.close(ins);
+            }
+            time += System.nanoTime() - start;
+            allocated += threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
+          }
+          System.out.printf("pages: %d, document: %d KiB, reload: %s, allocated: %d KiB, time: %d ms%n",
+              pages, size / 1024, reload, allocated / count / 1024, time / count / 1_000_000);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a document with the given number of pages, where each page has an (uncompressed) content stream of
+   * {@code pageSize} bytes. Importing such a page copies the stream into the stream cache of the target document.
+   */
+  private static byte[] createDocument(final int pages, final int pageSize) throws IOException {
+    final byte[] text = "BT /F1 12 Tf 72 712 Td (Employment contract) Tj ET\n".getBytes(StandardCharsets.US_ASCII);
+    final byte[] content = new byte[pageSize];
+    for (int i = 0; i < pageSize; i++) {
+      content[i] = text[i % text.length];
+    }
+    try (final PDDocument doc = new PDDocument()) {
+      for (int i = 0; i < pages; i++) {
+        final PDPage page = new PDPage();
+        final PDStream stream = new PDStream(doc);
+        try (final OutputStream os = stream.createOutputStream()) {
+          os.write(content);
+        }
+        page.setContents(stream);
+        doc.addPage(page);
+      }
+      return PDDocumentUtils.toBytes(doc);
+    }
+    catch (final DocumentProcessingException e) {
+      throw new IOException(e);
+    }
+  }
+
   private static PDDocument load(final String resource) throws IOException {
     return Loader.loadPDF((new ClassPathResource(resource)).getFile());
   }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019-2025 IDsec Solutions AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.idsec.signservice.integration.document.pdf.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HexFormat;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for PreparedPdfRevision.
+ *
+ * @author Martin Lindström (martin@idsec.se)
+ * @author Stefan Santesson (stefan@idsec.se)
+ */
+public class PreparedPdfRevisionTest {
+
+  private static final String ORIGINAL = "%PDF-1.7\n1 0 obj\n<< /Type /Catalog >>\nendobj\n%%EOF\n";
+
+  /** The size of the signature placeholder (in hex digits). */
+  private static final int PLACEHOLDER_SIZE = 8192;
+
+  private static KeyPair signerKey;
+
+  private static X509Certificate signerCertificate;
+
+  @BeforeAll
+  public static void init() throws Exception {
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    signerKey = generator.generateKeyPair();
+    final X500Name name = new X500Name("CN=Signer");
+    signerCertificate = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+        name, BigInteger.ONE, new Date(), new Date(System.currentTimeMillis() + 3600_000L), name,
+        signerKey.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withRSA").build(signerKey.getPrivate())));
+  }
+
+  @Test
+  public void testCreateAndComplete() throws Exception {
+    final byte[] original = ORIGINAL.getBytes(StandardCharsets.US_ASCII);
+    final byte[] prepared = prepare(original, "0".repeat(PLACEHOLDER_SIZE));
+
+    final PreparedPdfRevision revision = PreparedPdfRevision.create(original, prepared);
+    Assertions.assertEquals(PLACEHOLDER_SIZE / 2, revision.getSignatureCapacity());
+    Assertions.assertTrue(revision.matches(original));
+
+    final PreparedPdfRevision restored = PreparedPdfRevision.restore(
+        revision.getIncrement(), revision.getEncodedByteRange(), revision.getEncodedDigest());
+    Assertions.assertTrue(restored.matches(original));
+
+    final byte[] cms = createCms(prepared);
+    final byte[] signed = restored.complete(original, cms);
+    final String hex = HexFormat.of().withUpperCase().formatHex(cms);
+    Assertions.assertArrayEquals(prepare(original, hex + "0".repeat(PLACEHOLDER_SIZE - hex.length())), signed);
+  }
+
+  @Test
+  public void testReplacedRevision() throws Exception {
+    final byte[] original = ORIGINAL.getBytes(StandardCharsets.US_ASCII);
+    final byte[] prepared = prepare(original, "0".repeat(PLACEHOLDER_SIZE));
+    final byte[] cms = createCms(prepared);
+
+    // Replace the revision with another one (with a valid digest), and make sure that the signature isn't
+    // patched into it ...
+    final byte[] replaced = prepared.clone();
+    replaced[replaced.length - 8] = 'X';
+    final PreparedPdfRevision revision = PreparedPdfRevision.create(original, replaced);
+    Assertions.assertTrue(revision.matches(original));
+    Assertions.assertThrows(SignatureException.class, () -> revision.complete(original, cms));
+  }
+
+  @Test
+  public void testInvalidByteRange() throws Exception {
+    final byte[] original = ORIGINAL.getBytes(StandardCharsets.US_ASCII);
+    final PreparedPdfRevision revision = PreparedPdfRevision.create(original, prepare(original, "0000000000000000"));
+
+    // The encoded ByteRange must be the one from the revision ...
+    Assertions.assertThrows(IOException.class, () -> PreparedPdfRevision.restore(
+        revision.getIncrement(), "0 1 2 3", revision.getEncodedDigest()));
+    Assertions.assertThrows(IOException.class, () -> PreparedPdfRevision.restore(
+        revision.getIncrement(), "0 1 2", revision.getEncodedDigest()));
+
+    // A negative ByteRange in the revision itself ...
+    final String increment = new String(revision.getIncrement(), StandardCharsets.US_ASCII);
+    final String[] byteRange = revision.getEncodedByteRange().split(" ");
+    final String invalidByteRange = String.format("0 %s %s -%s", byteRange[1], byteRange[2], byteRange[3]);
+    final byte[] invalidIncrement = increment
+        .replace("[" + revision.getEncodedByteRange() + "]", "[" + invalidByteRange + "]")
+        .getBytes(StandardCharsets.US_ASCII);
+    Assertions.assertThrows(IOException.class, () -> PreparedPdfRevision.restore(
+        invalidIncrement, invalidByteRange, revision.getEncodedDigest()));
+  }
+
+  @Test
+  public void testNotMatchingOriginal() throws Exception {
+    final byte[] original = ORIGINAL.getBytes(StandardCharsets.US_ASCII);
+    final PreparedPdfRevision revision = PreparedPdfRevision.create(original, prepare(original, "0000000000000000"));
+
+    final byte[] other = ORIGINAL.replace("1.7", "1.6").getBytes(StandardCharsets.US_ASCII);
+    Assertions.assertFalse(revision.matches(other));
+
+    Assertions.assertThrows(IOException.class, () -> PreparedPdfRevision.create(other, prepare(original, "00")));
+  }
+
+  @Test
+  public void testSignatureTooLarge() throws Exception {
+    final byte[] original = ORIGINAL.getBytes(StandardCharsets.US_ASCII);
+    final PreparedPdfRevision revision = PreparedPdfRevision.create(original, prepare(original, "0000"));
+
+    Assertions.assertThrows(IOException.class, () -> revision.complete(original, new byte[] { 1, 2, 3 }));
+  }
+
+  @Test
+  public void testMissingByteRange() {
+    final byte[] original = ORIGINAL.getBytes(StandardCharsets.US_ASCII);
+    final byte[] prepared = (ORIGINAL + "2 0 obj\n<< /Contents <00> >>\nendobj\n").getBytes(StandardCharsets.US_ASCII);
+
+    Assertions.assertThrows(IOException.class, () -> PreparedPdfRevision.create(original, prepared));
+  }
+
+  /**
+   * Creates a detached CMS SignedData over the bytes covered by the ByteRange of the prepared document.
+   */
+  private static byte[] createCms(final byte[] prepared) throws Exception {
+    final PreparedPdfRevision revision =
+        PreparedPdfRevision.create(ORIGINAL.getBytes(StandardCharsets.US_ASCII), prepared);
+    final long[] byteRange = Arrays.stream(revision.getEncodedByteRange().split(" "))
+        .mapToLong(Long::parseLong)
+        .toArray();
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    content.write(prepared, 0, (int) byteRange[1]);
+    content.write(prepared, (int) byteRange[2], (int) byteRange[3]);
+
+    final CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+    generator.addSignerInfoGenerator(
+        new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().build())
+            .build(new JcaContentSignerBuilder("SHA256withRSA").build(signerKey.getPrivate()), signerCertificate));
+    return generator.generate(new CMSProcessableByteArray(content.toByteArray()), false).getEncoded();
+  }
+
+  /**
+   * Simulates an incremental update holding a signature dictionary. The ByteRange is padded to a fixed width, in the
+   * same way as PDFBox does it.
+   */
+  private static byte[] prepare(final byte[] original, final String contents) {
+    final String head = "2 0 obj\n<< /Type /Sig /Contents ";
+    final String byteRangeTemplate = " /ByteRange [0 %d %d %d]";
+    final String tail = " >>\nendobj\n%%EOF\n";
+    final int byteRangeLength = String.format(byteRangeTemplate, 0, 0, 0).length() + 30;
+
+    final long a = original.length + head.length();
+    final long b = a + contents.length() + 2;
+    final long total = b + byteRangeLength + tail.length();
+    final String byteRange = String.format("%-" + byteRangeLength + "s",
+        String.format(byteRangeTemplate, a, b, total - b));
+
+    return (new String(original, StandardCharsets.US_ASCII) + head + "<" + contents + ">" + byteRange + tail)
+        .getBytes(StandardCharsets.US_ASCII);
+  }
+
+}
@@ -15,12 +15,15 @@
  */
 package se.idsec.signservice.integration.document.xml;
 
+import java.io.InputStream;
+
 import org.w3c.dom.Document;
 
 import se.idsec.signservice.integration.core.error.ErrorCode;
 import se.idsec.signservice.integration.document.DocumentDecoder;
 import se.idsec.signservice.integration.document.DocumentEncoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.xml.DOMUtils;
 
 /**
@@ -42,6 +45,33 @@ public class XmlDocumentEncoderDecoder implements DocumentDecoder<Document>, Doc
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public Document decodeDocument(final byte[] content) throws DocumentProcessingException {
+    try {
+      return DOMUtils.bytesToDocument(content);
+    }
+    catch (final Exception e) {
+      throw new DocumentProcessingException(new ErrorCode.Code("decode"), "Failed to decode XML object", e);
+    }
+  }
+
+  /**
+   * Parses the document directly from the source stream. Base64 encoded sources are decoded while being parsed.
+   */
+  @Override
+  public Document decodeDocument(final DocumentSource source) throws DocumentProcessingException {
+    if (source.getBytes() != null) {
+      return this.decodeDocument(source.getBytes());
+    }
+    try (final InputStream is = source.openStream()) {
+      return DOMUtils.inputStreamToDocument(is);
+    }
+    catch (final Exception e) {
+      throw new DocumentProcessingException(new ErrorCode.Code("decode"), "Failed to decode XML object", e);
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public String encodeDocument(final Document document) throws DocumentProcessingException {
@@ -33,6 +33,7 @@ import se.idsec.signservice.integration.document.CompiledSignedDocument;
 import se.idsec.signservice.integration.document.DocumentDecoder;
 import se.idsec.signservice.integration.document.DocumentEncoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.DocumentType;
 import se.idsec.signservice.integration.document.TbsDocument;
 import se.idsec.signservice.integration.document.impl.AbstractSignedDocumentProcessor;
@@ -73,6 +74,13 @@ public class XmlSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
     return "XML".equalsIgnoreCase(signData.getSigType());
   }
 
+  /** {@inheritDoc} */
+  @Nonnull
+  @Override
+  public List<String> getSupportedSigTypes() {
+    return List.of("XML");
+  }
+
   /** {@inheritDoc} */
   @Override
   public CompiledSignedDocument<Document, XadesQualifyingProperties> buildSignedDocument(
@@ -87,7 +95,8 @@ public class XmlSignedDocumentProcessor extends AbstractSignedDocumentProcessor<
 
     // First decode the original input document into a document object ...
     //
-    final Document document = this.getDocumentDecoder().decodeDocument(tbsDocument.getContent());
+    final Document document =
+        this.getDocumentDecoder().decodeDocument(DocumentSource.ofBase64(tbsDocument.getContent()));
 
     // We need to figure out where in the document the signature should be installed.
     // By default, it is added as the last child element of the document root, but the parameters
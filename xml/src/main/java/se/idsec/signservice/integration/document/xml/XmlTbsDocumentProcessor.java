@@ -33,6 +33,7 @@ import se.idsec.signservice.integration.core.validation.ValidationResult;
 import se.idsec.signservice.integration.document.DocumentDecoder;
 import se.idsec.signservice.integration.document.DocumentEncoder;
 import se.idsec.signservice.integration.document.DocumentProcessingException;
+import se.idsec.signservice.integration.document.DocumentSource;
 import se.idsec.signservice.integration.document.DocumentType;
 import se.idsec.signservice.integration.document.ProcessedTbsDocument;
 import se.idsec.signservice.integration.document.TbsDocument;
@@ -50,6 +51,7 @@ import se.swedenconnect.schemas.etsi.xades_1_3_2.SignaturePolicyIdentifier;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * Implementation of the XML TBS document processor.
@@ -83,6 +85,13 @@ public class XmlTbsDocumentProcessor extends AbstractTbsDocumentProcessor<Docume
     }
   }
 
+  /** {@inheritDoc} */
+  @Nonnull
+  @Override
+  public List<String> getSupportedMimeTypes() {
+    return List.of(DocumentType.XML.getMimeType());
+  }
+
   /** {@inheritDoc} */
   @Override
   public ProcessedTbsDocument preProcess(final TbsDocument document, final SignRequestInput signRequestInput,
@@ -139,7 +148,7 @@ public class XmlTbsDocumentProcessor extends AbstractTbsDocumentProcessor<Docume
     Document domDocument = document.getDocumentObject() != null ? document.getDocumentObject(Document.class) : null;
     if (domDocument == null) {
       // Should never happen since we always set the document ...
-      domDocument = this.getDocumentDecoder().decodeDocument(tbsDocument.getContent());
+      domDocument = this.getDocumentDecoder().decodeDocument(DocumentSource.ofBase64(tbsDocument.getContent()));
     }
     final boolean requireXadesSignature = tbsDocument.getAdesRequirement() != null;
 